@@ -7,8 +7,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import com.codex.apk.ai.AIModel;
 import com.codex.apk.ai.AIProvider;
+import com.codex.apk.ai.ContextPacker;
+import com.codex.apk.ai.StreamChannel;
+import com.codex.apk.ai.TokenEstimator;
 
 public class AIAssistant {
 
@@ -18,12 +23,22 @@ public class AIAssistant {
     private boolean webSearchEnabled = false;
     private boolean agentModeEnabled = false; // New agent mode flag
     private List<ToolSpec> enabledTools = new ArrayList<>();
+    private Supplier<List<TabItem>> openTabsSupplier;
     private AIAssistant.AIActionListener actionListener;
     private File projectDir; // Track project directory for tool operations
     private String apiKey = ""; // Tracks Gemini (official) API key
+    private final Context appContext;
+    private final FirstTokenLatency firstTokenLatency = new FirstTokenLatency();
+    // Request lifecycle: every send gets an id; callbacks carrying another id are stale
+    private final AtomicLong requestIds = new AtomicLong();
+    private volatile long activeRequestId = 0L; // 0 after stop or shutdown
+    private volatile boolean requestInFlight = false; // until the reply (or an error) is delivered
+    private volatile boolean completionPending = false; // until onAiRequestCompleted or an error
+    private final AIActionListener requestGate = new RequestGate();
 
     public AIAssistant(Context context, ExecutorService executorService, AIActionListener actionListener) {
         this.actionListener = actionListener;
+        this.appContext = context.getApplicationContext();
         this.currentModel = AIModel.fromModelId("qwen3-coder-plus");
         initializeApiClients(context, null);
     }
@@ -32,6 +47,7 @@ public class AIAssistant {
     public AIAssistant(Context context, String apiKey, File projectDir, String projectName,
         ExecutorService executorService, AIActionListener actionListener) {
         this.actionListener = actionListener;
+        this.appContext = context.getApplicationContext();
         this.currentModel = AIModel.fromModelId("qwen3-coder-plus");
         this.projectDir = projectDir;
         initializeApiClients(context, projectDir);
@@ -40,64 +56,139 @@ public class AIAssistant {
     }
 
     private void initializeApiClients(Context context, File projectDir) {
-        apiClients.put(AIProvider.ALIBABA, new QwenApiClient(context, actionListener, projectDir));
-        apiClients.put(AIProvider.DEEPINFRA, new DeepInfraApiClient(context, actionListener));
-        apiClients.put(AIProvider.FREE, new AnyProviderApiClient(context, actionListener));
-        apiClients.put(AIProvider.COOKIES, new GeminiFreeApiClient(context, actionListener));
+        apiClients.put(AIProvider.ALIBABA, new QwenApiClient(context, requestGate, projectDir));
+        apiClients.put(AIProvider.DEEPINFRA, new DeepInfraApiClient(context, requestGate));
+        apiClients.put(AIProvider.FREE, new AnyProviderApiClient(context, requestGate));
+        apiClients.put(AIProvider.COOKIES, new GeminiFreeApiClient(context, requestGate));
         String initialKey = SettingsActivity.getGeminiApiKey(context);
         this.apiKey = initialKey != null ? initialKey : "";
-        apiClients.put(AIProvider.GOOGLE, new GeminiOfficialApiClient(context, actionListener, this.apiKey));
-        apiClients.put(AIProvider.OIVSCodeSer0501, new OIVSCodeSer0501ApiClient(context, actionListener));
-        apiClients.put(AIProvider.WEWORDLE, new WeWordleApiClient(context, actionListener));
-        apiClients.put(AIProvider.OPENROUTER, new OpenRouterApiClient(context, actionListener));
+        apiClients.put(AIProvider.GOOGLE, new GeminiOfficialApiClient(context, requestGate, this.apiKey));
+        apiClients.put(AIProvider.OIVSCodeSer0501, new OIVSCodeSer0501ApiClient(context, requestGate));
+        apiClients.put(AIProvider.WEWORDLE, new WeWordleApiClient(context, requestGate));
+        apiClients.put(AIProvider.OPENROUTER, new OpenRouterApiClient(context, requestGate));
     }
 
-    public void sendPrompt(String userPrompt, List<ChatMessage> chatHistory, QwenConversationState qwenState, String fileName, String fileContent) {
+    public void sendPrompt(String userPrompt, List<ChatMessage> chatHistory, QwenConversationState qwenState, File file, String fileContent) {
         // For now, attachments are not handled in this refactored version.
         // This would need to be threaded through if a model that uses them is selected.
-        sendMessage(userPrompt, chatHistory, qwenState, new ArrayList<>(), fileName, fileContent);
+        sendMessage(userPrompt, chatHistory, qwenState, new ArrayList<>(), file, fileContent);
     }
 
     public void sendMessage(String message, List<ChatMessage> chatHistory, QwenConversationState qwenState, List<File> attachments) {
         sendMessage(message, chatHistory, qwenState, attachments, null, null);
     }
 
-    public void sendMessage(String message, List<ChatMessage> chatHistory, QwenConversationState qwenState, List<File> attachments, String fileName, String fileContent) {
-        ApiClient client = apiClients.get(currentModel.getProvider());
-        if (client != null) {
-            String finalMessage = message;
+    public void sendMessage(String message, List<ChatMessage> chatHistory, QwenConversationState qwenState, List<File> attachments, File file, String fileContent) {
+        // Only the in-memory tab state is read here; ranking and reading files runs in the request task
+        List<TabItem> tabs = openTabs();
+        File activeFile = activeFile(file, tabs);
+        String fileName = file != null ? file.getName() : null;
+        AIModel model = currentModel;
+        dispatch(() -> withFileContext(message, fileName, fileContent, tabs, activeFile, model), chatHistory, qwenState, attachments);
+    }
 
-            if (fileContent != null && !fileContent.isEmpty()) {
-                finalMessage = "Here is the content of the file `" + fileName + "`:\n\n```\n" + fileContent + "\n```\n\nNow, please perform the following task: " + message;
-            }
+    /**
+     * Sends a prompt that carries its own context, such as a plan step. promptBuilder runs
+     * inside the request task, so it may read project files; the calling thread only enqueues.
+     */
+    public void sendPreparedPrompt(Supplier<String> promptBuilder, List<ChatMessage> chatHistory, QwenConversationState qwenState) {
+        dispatch(promptBuilder, chatHistory, qwenState, new ArrayList<>());
+    }
 
-            // Choose system prompt based on agent mode
-            String system = null;
-            if (agentModeEnabled && enabledTools != null && !enabledTools.isEmpty()) {
-                system = PromptManager.getDefaultFileOpsPrompt();
-            } else {
-                system = PromptManager.getDefaultGeneralPrompt();
+    private String withFileContext(String message, String fileName, String fileContent, List<TabItem> tabs, File activeFile, AIModel model) {
+        if (fileContent == null || fileContent.isEmpty()) return message;
+        // Ranked project files packed into a token budget, instead of the whole active file
+        int budget = ContextPacker.budgetFor(model != null ? model.getCapabilities() : null);
+        String context;
+        if (projectDir != null) {
+            context = "Relevant project files (the active file is `" + fileName + "`):\n\n"
+                    + ContextPacker.pack(projectDir, message, tabs, activeFile, fileContent, budget);
+        } else {
+            context = "Here is the content of the file `" + fileName + "`:\n\n```\n"
+                    + TokenEstimator.truncate(fileContent, budget) + "\n```\n";
+        }
+        return context + "\nNow, please perform the following task: " + message;
+    }
+
+    /**
+     * Starts a send: supersedes the active request, then builds the message and hands it to
+     * the provider client inside one chat task. Stopping or superseding the send while the
+     * message is still being built drops it before anything goes out.
+     */
+    private void dispatch(Supplier<String> messageBuilder, List<ChatMessage> chatHistory, QwenConversationState qwenState, List<File> attachments) {
+        AIModel model = currentModel;
+        ApiClient client = model != null ? apiClients.get(model.getProvider()) : null;
+        if (client == null) {
+            if (actionListener != null) {
+                actionListener.onAiError("API client for provider " + (model != null ? model.getProvider() : null) + " not found.");
             }
-            if (system != null && !system.isEmpty()) {
-                finalMessage = system + "\n\n" + finalMessage;
+            return;
+        }
+        // Choose system prompt based on agent mode
+        String system = null;
+        if (agentModeEnabled && enabledTools != null && !enabledTools.isEmpty()) {
+            system = PromptManager.getDefaultFileOpsPrompt();
+        } else {
+            system = PromptManager.getDefaultGeneralPrompt();
+        }
+        // Note: Gemini Free context is maintained via server-side conversation metadata (cid,rid,rcid)
+        List<File> safeAttachments = attachments;
+        if (model.getProvider() != AIProvider.COOKIES) {
+            safeAttachments = new ArrayList<>();
+        }
+        supersedeActiveRequest();
+        long requestId = requestIds.incrementAndGet();
+        activeRequestId = requestId;
+        requestInFlight = true;
+        completionPending = true;
+        String prewarmUrl = client.getPrewarmUrl();
+        firstTokenLatency.onRequestStarted(model.getProvider(),
+                prewarmUrl != null && CodeXApplication.getHttpRuntime().isPrewarmed(prewarmUrl));
+        final String systemPrompt = system;
+        final List<File> files = safeAttachments;
+        final boolean thinking = thinkingModeEnabled;
+        final boolean webSearch = webSearchEnabled;
+        final List<ToolSpec> tools = enabledTools;
+        AiRequestExecutor.withRequestId(requestId, () -> CodeXApplication.getAiRequestExecutor().submitChat(handle -> {
+            String prompt;
+            try {
+                prompt = messageBuilder.get();
+            } catch (RuntimeException e) {
+                requestGate.onAiError("Could not build the prompt: " + e.getMessage());
+                return;
             }
-            // Note: Gemini Free context is maintained via server-side conversation metadata (cid,rid,rcid)
-            List<File> safeAttachments = attachments;
-            if (currentModel != null && currentModel.getProvider() != AIProvider.COOKIES) {
-                safeAttachments = new ArrayList<>();
+            if (handle.isCancelled() || activeRequestId != requestId) return;
+            if (systemPrompt != null && !systemPrompt.isEmpty()) {
+                prompt = systemPrompt + "\n\n" + prompt;
             }
-            client.sendMessage(finalMessage, currentModel, chatHistory, qwenState, thinkingModeEnabled, webSearchEnabled, enabledTools, safeAttachments);
-        } else {
-            if (actionListener != null) {
-                actionListener.onAiError("API client for provider " + currentModel.getProvider() + " not found.");
+            client.sendMessage(prompt, model, chatHistory, qwenState, thinking, webSearch, tools, files);
+        }));
+    }
+
+    private List<TabItem> openTabs() {
+        try {
+            return openTabsSupplier != null ? new ArrayList<>(openTabsSupplier.get()) : new ArrayList<>();
+        } catch (Exception e) {
+            return new ArrayList<>();
+        }
+    }
+
+    /** File of the open tab with the same path as file, or null when no tab matches. */
+    private File activeFile(File file, List<TabItem> tabs) {
+        if (file == null) return null;
+        String path = file.getAbsolutePath();
+        for (TabItem tab : tabs) {
+            if (tab != null && tab.getFile() != null && tab.getFile().getAbsolutePath().equals(path)) {
+                return tab.getFile();
             }
         }
+        return null;
     }
 
     public void refreshModelsForProvider(AIProvider provider, RefreshCallback callback) {
         ApiClient client = apiClients.get(provider);
         if (client != null) {
-            new Thread(() -> {
+            CodeXApplication.getAiRequestExecutor().submit("models", AiRequestExecutor.Priority.BACKGROUND, 60_000L, handle -> {
                 List<AIModel> models = client.fetchModels();
                 if (models != null && !models.isEmpty()) {
                     AIModel.updateModelsForProvider(provider, models);
@@ -105,7 +196,7 @@ public class AIAssistant {
                 } else {
                     callback.onRefreshComplete(false, "Failed to refresh models for " + provider.name());
                 }
-            }).start();
+            });
         } else {
             callback.onRefreshComplete(false, "API client for provider " + provider.name() + " not found.");
         }
@@ -124,14 +215,39 @@ public class AIAssistant {
                                  String aiModelDisplayName);
         void onAiError(String errorMessage);
         void onAiRequestStarted();
+        /** Snapshot update: partialResponse replaces everything streamed so far. */
         void onAiStreamUpdate(String partialResponse, boolean isThinking);
+        /**
+         * Append-only update: delta carries only the newly generated text for channel.
+         * sequence starts at 0 for each stream (0 resets the accumulated text) and increases by one per delta.
+         */
+        void onAiStreamDelta(String delta, long sequence, StreamChannel channel);
         void onAiRequestCompleted();
+        /** The user stopped the request; no further callbacks arrive for it. Replaces onAiRequestCompleted. */
+        void onAiRequestCancelled();
         void onQwenConversationStateUpdated(QwenConversationState state);
     }
 
     // Getters and Setters
     public AIModel getCurrentModel() { return currentModel; }
-    public void setCurrentModel(AIModel model) { this.currentModel = model; }
+    public void setCurrentModel(AIModel model) {
+        this.currentModel = model;
+        prewarmCurrentModel();
+    }
+
+    /**
+     * Opens the connection to the current model's provider ahead of the next send, so DNS,
+     * TCP and TLS are not part of first-token latency. Called on model selection and when
+     * the chat input gains focus; cheap to call repeatedly.
+     */
+    public void prewarmCurrentModel() {
+        if (currentModel == null || !SettingsActivity.isConnectionPrewarmEnabled(appContext)) return;
+        ApiClient client = apiClients.get(currentModel.getProvider());
+        if (client != null) client.prewarm();
+    }
+
+    /** Time-to-first-token measurements, split by pre-warmed vs cold connections. */
+    public FirstTokenLatency getFirstTokenLatency() { return firstTokenLatency; }
     public boolean isThinkingModeEnabled() { return thinkingModeEnabled; }
     public void setThinkingModeEnabled(boolean enabled) { this.thinkingModeEnabled = enabled; }
     public boolean isWebSearchEnabled() { return webSearchEnabled; }
@@ -139,6 +255,8 @@ public class AIAssistant {
     public boolean isAgentModeEnabled() { return agentModeEnabled; }
     public void setAgentModeEnabled(boolean enabled) { this.agentModeEnabled = enabled; }
     public void setEnabledTools(List<ToolSpec> tools) { this.enabledTools = tools; }
+    /** Source of the editor's open tabs, used to rank files for the prompt context. */
+    public void setOpenTabsSupplier(Supplier<List<TabItem>> supplier) { this.openTabsSupplier = supplier; }
     public void setActionListener(AIActionListener listener) { this.actionListener = listener; }
     public String getApiKey() { return this.apiKey; }
     public void setApiKey(String apiKey) {
@@ -148,5 +266,137 @@ public class AIAssistant {
             ((GeminiOfficialApiClient) google).setApiKey(this.apiKey);
         }
     }
-    public void shutdown() {}
+    /**
+     * Stops the in-flight chat request: aborts its HTTP call (releasing the socket) and any
+     * queued retry or continuation, then tells the listener the request was cancelled.
+     */
+    public void stopGenerating() {
+        activeRequestId = 0L;
+        requestInFlight = false;
+        completionPending = false;
+        CodeXApplication.getAiRequestExecutor().cancelAll(AiRequestExecutor.TAG_CHAT);
+        if (actionListener != null) actionListener.onAiRequestCancelled();
+    }
+
+    /** Id of the send whose callbacks are currently delivered; 0 when none. */
+    public long getActiveRequestId() { return activeRequestId; }
+
+    /** Cancels in-flight requests without notifying the listener; the owner is going away. */
+    public void shutdown() {
+        activeRequestId = 0L;
+        requestInFlight = false;
+        completionPending = false;
+        CodeXApplication.getAiRequestExecutor().cancelAll(AiRequestExecutor.TAG_CHAT);
+    }
+
+    /**
+     * A send while another is still generating replaces it: the older request's calls are
+     * cancelled so it stops using bandwidth, and its partial answer is closed off before the
+     * new request starts streaming into the chat. A follow-up sent from the older request's
+     * reply (tool results, next plan step) only gets that request's completion delivered
+     * first, since its own completion callback is dropped from here on.
+     */
+    private void supersedeActiveRequest() {
+        boolean wasInFlight = requestInFlight;
+        boolean wasPending = completionPending;
+        activeRequestId = 0L;
+        requestInFlight = false;
+        completionPending = false;
+        CodeXApplication.getAiRequestExecutor().cancelAll(AiRequestExecutor.TAG_CHAT);
+        if (actionListener == null) return;
+        if (wasInFlight) actionListener.onAiRequestCancelled();
+        else if (wasPending) actionListener.onAiRequestCompleted();
+    }
+
+    /**
+     * Listener handed to the API clients. Forwards to the current actionListener, dropping
+     * callbacks from requests that were superseded or stopped (late chunks, errors raised by
+     * the cancellation itself, duplicate completions).
+     */
+    private final class RequestGate implements AIActionListener {
+
+        /** From a request other than the active one (superseded or stopped). */
+        private boolean isSuperseded() {
+            long requestId = AiRequestExecutor.currentRequestId();
+            return requestId != 0L && requestId != activeRequestId;
+        }
+
+        private boolean isStale() {
+            return isSuperseded() || AiRequestExecutor.isCurrentCancelled();
+        }
+
+        /** Records that the active request delivered its reply, and with completed, that it ended. */
+        private void finish(boolean completed) {
+            long requestId = AiRequestExecutor.currentRequestId();
+            if (requestId != 0L && requestId != activeRequestId) return;
+            requestInFlight = false;
+            if (completed) completionPending = false;
+        }
+
+        @Override
+        public void onAiActionsProcessed(String rawAiResponseJson, String explanation, List<String> suggestions,
+                                         List<ChatMessage.FileActionDetail> proposedFileChanges, String aiModelDisplayName) {
+            if (isStale()) return;
+            finish(false);
+            AIActionListener l = actionListener;
+            if (l != null) l.onAiActionsProcessed(rawAiResponseJson, explanation, suggestions, proposedFileChanges, aiModelDisplayName);
+        }
+
+        @Override
+        public void onAiActionsProcessed(String rawAiResponseJson, String explanation, List<String> suggestions,
+                                         List<ChatMessage.FileActionDetail> proposedFileChanges,
+                                         List<ChatMessage.PlanStep> planSteps, String aiModelDisplayName) {
+            if (isStale()) return;
+            finish(false);
+            AIActionListener l = actionListener;
+            if (l != null) l.onAiActionsProcessed(rawAiResponseJson, explanation, suggestions, proposedFileChanges, planSteps, aiModelDisplayName);
+        }
+
+        @Override
+        public void onAiError(String errorMessage) {
+            if (isSuperseded()) return; // a timed-out active request still reports its error
+            finish(true);
+            AIActionListener l = actionListener;
+            if (l != null) l.onAiError(errorMessage);
+        }
+
+        @Override
+        public void onAiRequestStarted() {
+            AIActionListener l = actionListener;
+            if (l != null && !isStale()) l.onAiRequestStarted();
+        }
+
+        @Override
+        public void onAiStreamUpdate(String partialResponse, boolean isThinking) {
+            AIActionListener l = actionListener;
+            if (l != null && !isStale()) l.onAiStreamUpdate(partialResponse, isThinking);
+        }
+
+        @Override
+        public void onAiStreamDelta(String delta, long sequence, StreamChannel channel) {
+            AIActionListener l = actionListener;
+            if (l != null && !isStale()) l.onAiStreamDelta(delta, sequence, channel);
+        }
+
+        @Override
+        public void onAiRequestCompleted() {
+            if (isStale()) return;
+            finish(true);
+            AIActionListener l = actionListener;
+            if (l != null) l.onAiRequestCompleted();
+        }
+
+        @Override
+        public void onAiRequestCancelled() {
+            AIActionListener l = actionListener;
+            if (l != null) l.onAiRequestCancelled();
+        }
+
+        @Override
+        public void onQwenConversationStateUpdated(QwenConversationState state) {
+            // Conversation ids stay valid even for a superseded reply, so they are always kept
+            AIActionListener l = actionListener;
+            if (l != null) l.onQwenConversationStateUpdated(state);
+        }
+    }
 }
@@ -35,6 +35,7 @@ public class AIChatFragment extends Fragment implements ChatMessageAdapter.OnAiA
         void onAiAcceptActions(int messagePosition, ChatMessage message);
         void onAiDiscardActions(int messagePosition, ChatMessage message);
         void onReapplyActions(int messagePosition, ChatMessage message);
+        void onAiRevertActions(int messagePosition, ChatMessage message);
         void onAiFileChangeClicked(ChatMessage.FileActionDetail fileActionDetail);
         void onQwenConversationStateUpdated(QwenConversationState state);
         void onPlanAcceptClicked(int messagePosition, ChatMessage message);
@@ -179,6 +180,10 @@ public class AIChatFragment extends Fragment implements ChatMessageAdapter.OnAiA
         return null;
     }
 
+    public void stopGenerating() {
+        if (aiAssistant != null) aiAssistant.stopGenerating();
+    }
+
     public void sendPrompt() {
         if (aiAssistant == null || aiAssistant.getCurrentModel() == null) {
             Toast.makeText(requireContext(), "Please select an AI model first.", Toast.LENGTH_SHORT).show();
@@ -192,7 +197,7 @@ public class AIChatFragment extends Fragment implements ChatMessageAdapter.OnAiA
             return;
         }
 
-        uiManager.setSendButtonEnabled(false);
+        uiManager.setGenerating(true);
 
         ChatMessage userMsg = new ChatMessage(ChatMessage.SENDER_USER, prompt, System.currentTimeMillis());
         if (!pendingAttachments.isEmpty()) {
@@ -252,7 +257,7 @@ public class AIChatFragment extends Fragment implements ChatMessageAdapter.OnAiA
                 }
                 isAiProcessing = false;
                 currentAiStatusMessage = null;
-                uiManager.setSendButtonEnabled(true);
+                uiManager.setGenerating(false);
                 uiManager.scrollToBottom();
             }
         } else {
@@ -330,7 +335,7 @@ public class AIChatFragment extends Fragment implements ChatMessageAdapter.OnAiA
         }
         isAiProcessing = false;
         currentAiStatusMessage = null;
-        uiManager.setSendButtonEnabled(true);
+        uiManager.setGenerating(false);
     }
 
     public void updateMessage(int position, ChatMessage updatedMessage) {
@@ -342,6 +347,15 @@ public class AIChatFragment extends Fragment implements ChatMessageAdapter.OnAiA
         }
     }
 
+    /** Rebinds a message that is still streaming. History is persisted once the final message lands. */
+    public void updateStreamingMessage(int position, ChatMessage updatedMessage) {
+        if (position >= 0 && position < chatHistory.size()) {
+            chatHistory.set(position, updatedMessage);
+            chatMessageAdapter.notifyItemChanged(position);
+            if (uiManager != null) uiManager.scrollToBottom();
+        }
+    }
+
     @Override
     public void onDetach() {
         super.onDetach();
@@ -355,6 +369,8 @@ public class AIChatFragment extends Fragment implements ChatMessageAdapter.OnAiA
     @Override
     public void onReapplyClicked(int pos, ChatMessage msg) { if (listener != null) listener.onReapplyActions(pos, msg); }
     @Override
+    public void onRevertClicked(int pos, ChatMessage msg) { if (listener != null) listener.onAiRevertActions(pos, msg); }
+    @Override
     public void onFileChangeClicked(ChatMessage.FileActionDetail detail) { if (listener != null) listener.onAiFileChangeClicked(detail); }
     @Override
     public void onPlanAcceptClicked(int pos, ChatMessage msg) { if (listener != null) listener.onPlanAcceptClicked(pos, msg); }
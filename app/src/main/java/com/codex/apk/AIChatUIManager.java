@@ -28,6 +28,7 @@ public class AIChatUIManager {
     public RecyclerView recyclerViewChatHistory;
     public EditText editTextAiPrompt;
     public MaterialButton buttonAiSend;
+    private boolean generating = false;
     public RecyclerView recyclerAttachedFilesPreview;
     public LinearLayout layoutEmptyState;
     public TextView textGreeting;
@@ -210,7 +211,10 @@ public class AIChatUIManager {
     }
 
     public void setListeners() {
-        buttonAiSend.setOnClickListener(v -> fragment.sendPrompt());
+        buttonAiSend.setOnClickListener(v -> {
+            if (generating) fragment.stopGenerating();
+            else fragment.sendPrompt();
+        });
         layoutModelSelectorCustom.setOnClickListener(v -> showModelPickerDialog(fragment.getAIAssistant()));
         buttonAiSettings.setOnClickListener(v -> showAiSettingsDialog(fragment.getAIAssistant()));
         if (buttonAiAttach != null) {
@@ -223,6 +227,11 @@ public class AIChatUIManager {
                 }
             });
         }
+        editTextAiPrompt.setOnFocusChangeListener((v, hasFocus) -> {
+            if (hasFocus && fragment.getAIAssistant() != null) {
+                fragment.getAIAssistant().prewarmCurrentModel();
+            }
+        });
         editTextAiPrompt.setOnEditorActionListener((v, actionId, event) -> {
             if (actionId == android.view.inputmethod.EditorInfo.IME_ACTION_SEND) {
                 fragment.sendPrompt();
@@ -249,6 +258,15 @@ public class AIChatUIManager {
         return editTextAiPrompt.getText().toString();
     }
 
+    /** While generating, the send button turns into a stop button. */
+    public void setGenerating(boolean generating) {
+        this.generating = generating;
+        buttonAiSend.setEnabled(true);
+        buttonAiSend.setAlpha(1.0f);
+        buttonAiSend.setIconResource(generating ? R.drawable.ic_stop : R.drawable.icon_send_round);
+        buttonAiSend.setContentDescription(generating ? "Stop generating" : "Send");
+    }
+
     public void setSendButtonEnabled(boolean isEnabled) {
         buttonAiSend.setEnabled(isEnabled);
         buttonAiSend.setAlpha(isEnabled ? 1.0f : 0.5f);
@@ -9,6 +9,8 @@ import java.util.ArrayList;
 import com.google.gson.Gson;
 import com.codex.apk.util.FileContentValidator;
 import com.codex.apk.util.FileOps;
+import com.codex.apk.util.FileTransaction;
+import com.codex.apk.util.SnapshotStore;
 
 public class AiProcessor {
     private static final String TAG = "AiProcessor";
@@ -21,33 +23,45 @@ public class AiProcessor {
         this.fileManager = fileManager;
     }
 
+    /** Applies one action on its own; see {@link #stageFileAction} to batch several. */
     public String applyFileAction(ChatMessage.FileActionDetail detail) throws IOException, IllegalArgumentException {
-        Log.d(TAG, "Applying file action: " + gson.toJson(detail));
+        FileTransaction tx = new FileTransaction(projectDir);
+        String summary = stageFileAction(tx, detail);
+        commit(tx);
+        return summary;
+    }
+
+    /**
+     * Adds an action to tx without touching the disk. It sees the effects of the actions
+     * staged before it, and it fails the same way applying it directly would.
+     */
+    public String stageFileAction(FileTransaction tx, ChatMessage.FileActionDetail detail) throws IOException, IllegalArgumentException {
+        Log.d(TAG, "Staging file action: " + gson.toJson(detail));
         String actionType = detail.type;
         String summary = "";
 
         switch (actionType) {
             case "createFile":
-                summary = handleCreateFile(detail);
+                summary = handleCreateFile(tx, detail);
                 break;
             case "updateFile":
             case "smartUpdate":
-                summary = handleAdvancedUpdateFile(detail);
+                summary = handleAdvancedUpdateFile(tx, detail);
                 break;
             case "modifyLines":
-                summary = handleModifyLines(detail);
+                summary = handleModifyLines(tx, detail);
                 break;
             case "deleteFile":
-                summary = handleDeleteFile(detail);
+                summary = handleDeleteFile(tx, detail);
                 break;
             case "renameFile":
-                summary = handleRenameFile(detail);
+                summary = handleRenameFile(tx, detail);
                 break;
             case "searchAndReplace":
-                summary = handleSearchAndReplace(detail);
+                summary = handleSearchAndReplace(tx, detail);
                 break;
             case "patchFile":
-                summary = handlePatchFile(detail);
+                summary = handlePatchFile(tx, detail);
                 break;
             default:
                 throw new IllegalArgumentException("Unknown action type: " + actionType);
@@ -55,91 +69,121 @@ public class AiProcessor {
         return summary;
     }
 
-    private String handleAdvancedUpdateFile(ChatMessage.FileActionDetail detail) throws IOException {
-        String path = detail.path;
-        String content = detail.newContent;
-        File fileToUpdate = new File(projectDir, path);
+    /** Writes everything staged in tx and tells FileManager's listeners, once per change. */
+    public List<FileTransaction.Change> commit(FileTransaction tx) throws IOException {
+        List<FileTransaction.Change> changes = tx.commit();
+        fileManager.notifyCommitted(changes);
+        return changes;
+    }
 
-        if (!fileToUpdate.exists()) {
-            throw new IOException("File not found for update: " + path);
+    /**
+     * Commits tx like {@link #commit(FileTransaction)}, first snapshotting the files it touches
+     * when any of details asks for a backup. On success every detail gets the snapshot's
+     * versionId and backupPath, which {@link #revert} takes. A failing snapshot is logged and
+     * does not stop the edit.
+     */
+    public List<FileTransaction.Change> commit(FileTransaction tx, List<ChatMessage.FileActionDetail> details,
+                                               String label) throws IOException {
+        for (ChatMessage.FileActionDetail detail : details) {
+            // Only ids of snapshots taken here are meaningful to revert
+            detail.versionId = null;
+            detail.backupPath = null;
+        }
+        SnapshotStore.Snapshot snapshot = null;
+        if (wantsBackup(details)) {
+            try {
+                snapshot = SnapshotStore.forProject(projectDir).prepare(tx, label);
+            } catch (IOException e) {
+                Log.w(TAG, "Snapshot failed, applying without one", e);
+            }
+        }
+        List<FileTransaction.Change> changes = commit(tx);
+        if (snapshot != null) {
+            try {
+                snapshot.save();
+                for (ChatMessage.FileActionDetail detail : details) {
+                    detail.versionId = snapshot.getId();
+                    detail.backupPath = snapshot.getManifestPath();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not save snapshot " + snapshot.getId(), e);
+            }
         }
+        return changes;
+    }
 
-        String updateType = detail.updateType != null ? detail.updateType : "full";
-        boolean validateContent = detail.validateContent;
-        String contentType = detail.contentType;
-        String errorHandling = detail.errorHandling != null ? detail.errorHandling : "strict";
+    /**
+     * Puts back the files of snapshot versionId as they were before it was applied. Refused
+     * when one of them was changed since, unless force is set.
+     */
+    public List<FileTransaction.Change> revert(String versionId, boolean force) throws IOException {
+        SnapshotStore store = SnapshotStore.forProject(projectDir);
+        List<FileTransaction.Change> changes = commit(store.planRevert(versionId, force));
+        store.finishRevert(versionId);
+        return changes;
+    }
 
-        FileManager.FileOperationResult result = fileManager.smartUpdateFile(
-            fileToUpdate, content, updateType, validateContent, contentType, errorHandling
-        );
+    private static boolean wantsBackup(List<ChatMessage.FileActionDetail> details) {
+        for (ChatMessage.FileActionDetail detail : details) {
+            if (detail.createBackup) return true;
+        }
+        return false;
+    }
 
-        if (!result.isSuccess()) {
-            throw new IOException("Update failed: " + result.getMessage());
+    private String handleAdvancedUpdateFile(FileTransaction tx, ChatMessage.FileActionDetail detail) throws IOException {
+        String path = detail.path;
+        if (!tx.exists(path)) {
+            throw new IOException("File not found for update: " + path);
         }
 
+        String updateType = detail.updateType != null ? detail.updateType : "full";
+        String errorHandling = detail.errorHandling != null ? detail.errorHandling : "strict";
+        stageUpdate(tx, path, detail.newContent, updateType, detail.validateContent, detail.contentType, errorHandling, "Update failed");
+
         return "Updated file: " + path;
     }
 
-    private String handleSearchAndReplace(ChatMessage.FileActionDetail detail) throws IOException {
+    private String handleSearchAndReplace(FileTransaction tx, ChatMessage.FileActionDetail detail) throws IOException {
         String path = detail.path;
         String search = detail.search;
         String replace = detail.replace;
         String searchPattern = detail.searchPattern;
-        File fileToUpdate = new File(projectDir, path);
-        
-        if (!fileToUpdate.exists()) {
+        String content = tx.read(path);
+
+        if (content == null) {
             throw new IOException("File not found for search and replace: " + path);
         }
 
-        String content = fileManager.readFileContent(fileToUpdate);
         String pattern = (searchPattern != null && !searchPattern.isEmpty()) ? searchPattern : search;
         String newContent = FileOps.applySearchReplace(content, pattern, replace);
-
-        FileManager.FileOperationResult result = fileManager.smartUpdateFile(
-            fileToUpdate, newContent, "replace", true, detail.contentType, "strict"
-        );
-
-        if (!result.isSuccess()) {
-            throw new IOException("Search and replace failed: " + result.getMessage());
-        }
+        stageUpdate(tx, path, newContent, "replace", true, detail.contentType, "strict", "Search and replace failed");
 
         return "Performed search and replace on file: " + path;
     }
 
-    private String handleModifyLines(ChatMessage.FileActionDetail detail) throws IOException {
+    private String handleModifyLines(FileTransaction tx, ChatMessage.FileActionDetail detail) throws IOException {
         String path = detail.path;
-        File fileToUpdate = new File(projectDir, path);
+        String content = tx.read(path);
 
-        if (!fileToUpdate.exists()) {
+        if (content == null) {
             throw new IOException("File not found for modifyLines: " + path);
         }
 
-        String content = fileManager.readFileContent(fileToUpdate);
         int startLine = Math.max(1, detail.startLine);
         int deleteCount = Math.max(0, detail.deleteCount);
         java.util.List<String> insertLines = detail.insertLines != null ? detail.insertLines : new java.util.ArrayList<>();
         String newContent = FileOps.applyModifyLines(content, startLine, deleteCount, insertLines);
-
-        FileManager.FileOperationResult result = fileManager.smartUpdateFile(
-            fileToUpdate, newContent, "replace",
-            detail.validateContent,
-            detail.contentType,
-            detail.errorHandling != null ? detail.errorHandling : "strict"
-        );
-
-        if (!result.isSuccess()) {
-            throw new IOException("modifyLines failed: " + result.getMessage());
-        }
+        stageUpdate(tx, path, newContent, "replace", detail.validateContent, detail.contentType,
+                detail.errorHandling != null ? detail.errorHandling : "strict", "modifyLines failed");
 
         return "Modified lines in file: " + path + " at line " + startLine;
     }
 
-    private String handlePatchFile(ChatMessage.FileActionDetail detail) throws IOException {
+    private String handlePatchFile(FileTransaction tx, ChatMessage.FileActionDetail detail) throws IOException {
         String path = detail.path;
         String patchContent = detail.diffPatch;
-        File fileToUpdate = new File(projectDir, path);
 
-        if (!fileToUpdate.exists()) {
+        if (!tx.exists(path)) {
             throw new IOException("File not found for patch: " + path);
         }
 
@@ -147,26 +191,43 @@ public class AiProcessor {
             throw new IllegalArgumentException("Patch content is empty");
         }
 
-        FileManager.FileOperationResult result = fileManager.smartUpdateFile(
-            fileToUpdate, patchContent, "patch", true, detail.contentType, "strict"
-        );
+        stageUpdate(tx, path, patchContent, "patch", true, detail.contentType, "strict", "Patch application failed");
+
+        return "Applied patch to file: " + path;
+    }
 
-        if (!result.isSuccess()) {
-            throw new IOException("Patch application failed: " + result.getMessage());
+    /**
+     * Stages the result of an update as FileManager.smartUpdateFile would write it:
+     * validation failures throw under "strict" and fail with failurePrefix otherwise, and
+     * an unchanged result stages nothing.
+     */
+    private void stageUpdate(FileTransaction tx, String path, String newContent, String updateType, boolean validate,
+                             String contentType, String errorHandling, String failurePrefix) throws IOException {
+        String currentContent = tx.read(path);
+        if (currentContent == null) currentContent = "";
+        String finalContent;
+        try {
+            finalContent = fileManager.applyUpdateType(currentContent, newContent, updateType);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(failurePrefix + ": " + e.getMessage(), e);
         }
 
-        return "Applied patch to file: " + path;
+        if (validate) {
+            FileContentValidator.ValidationResult validation = FileContentValidator.validate(finalContent, contentType);
+            if (!validation.isValid()) {
+                if ("strict".equals(errorHandling)) {
+                    throw new IllegalArgumentException("Content validation failed: " + validation.getReason());
+                }
+                throw new IOException(failurePrefix + ": " + validation.getReason());
+            }
+        }
+
+        if (!finalContent.equals(currentContent)) tx.write(path, finalContent);
     }
 
-    private String handleCreateFile(ChatMessage.FileActionDetail detail) throws IOException {
+    private String handleCreateFile(FileTransaction tx, ChatMessage.FileActionDetail detail) throws IOException {
         String path = detail.path;
         String content = detail.newContent != null ? detail.newContent : "";
-        File newFile = new File(projectDir, path);
-        
-        File parentDir = newFile.getParentFile();
-        if (parentDir != null && !parentDir.exists()) {
-            parentDir.mkdirs();
-        }
 
         if (detail.validateContent) {
             FileContentValidator.ValidationResult validation = FileContentValidator.validate(content, detail.contentType);
@@ -175,42 +236,36 @@ public class AiProcessor {
             }
         }
 
-        fileManager.writeFileContent(newFile, content);
+        tx.write(path, content);
         
         return "Created file: " + path;
     }
 
-    private String handleDeleteFile(ChatMessage.FileActionDetail detail) throws IOException {
+    private String handleDeleteFile(FileTransaction tx, ChatMessage.FileActionDetail detail) throws IOException {
         String path = detail.path;
-        File fileToDelete = new File(projectDir, path);
         
-        if (!fileToDelete.exists()) {
+        if (!tx.exists(path)) {
             throw new IOException("File not found for deletion: " + path);
         }
-        // Use centralized delete logic that supports files and directories
-        FileOps.deleteRecursively(fileToDelete);
+        // Directories go too; the transaction moves the whole tree aside
+        tx.delete(path);
         
         return "Deleted file/directory: " + path;
     }
 
-    private String handleRenameFile(ChatMessage.FileActionDetail detail) throws IOException {
+    private String handleRenameFile(FileTransaction tx, ChatMessage.FileActionDetail detail) throws IOException {
         String oldPath = detail.oldPath;
         String newPath = detail.newPath;
-        File oldFile = new File(projectDir, oldPath);
-        File newFile = new File(projectDir, newPath);
         
-        if (!oldFile.exists()) {
+        if (!tx.exists(oldPath)) {
             throw new IOException("Source file/directory not found for rename: " + oldPath);
         }
 
-        if (newFile.exists()) {
+        if (tx.exists(newPath)) {
             throw new IOException("Target file/directory already exists for rename: " + newPath);
         }
-        // Delegate to FileOps (creates parent dirs as needed)
-        boolean success = FileOps.renameFile(projectDir, oldPath, newPath);
-        if (!success) {
-            throw new IOException("Failed to rename file from " + oldPath + " to " + newPath);
-        }
+        // Parent dirs of the target are created at commit
+        tx.rename(oldPath, newPath);
         
         return "Renamed " + oldPath + " to " + newPath;
     }
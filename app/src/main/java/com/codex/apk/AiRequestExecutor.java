@@ -0,0 +1,356 @@
+package com.codex.apk;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+
+/**
+ * Shared, bounded executor for AI provider requests (sends, retries, continuations, model
+ * refreshes). Replaces a raw thread per request.
+ *
+ * Every submission returns a {@link Handle} that can be cancelled or time out. Cancelling
+ * aborts the OkHttp calls bound to the handle, which releases their sockets, and interrupts
+ * the worker. Code running inside a task reaches its handle via {@link #currentHandle()};
+ * SseClient binds its calls that way, so providers get cancellation without extra plumbing.
+ * Owned by {@link CodeXApplication}.
+ */
+public final class AiRequestExecutor {
+    private static final String TAG = "AiRequestExecutor";
+    private static final int MAX_THREADS = 4;
+    public static final String TAG_CHAT = "chat";
+    /** Upper bound for one chat request including its stream. */
+    public static final long CHAT_TIMEOUT_MS = 10 * 60 * 1000L;
+    /** Finished handles that still have bound calls (async streams) kept for cancelAll. */
+    private static final int MAX_LINGERING = 16;
+
+    public enum Priority {
+        /** A send the user is waiting on. */
+        INTERACTIVE,
+        /** Tool continuations and retries of an interactive request. */
+        CONTINUATION,
+        /** Model list refreshes, warm-ups and other work nobody is waiting on. */
+        BACKGROUND
+    }
+
+    public interface Task {
+        void run(Handle handle) throws Exception;
+    }
+
+    private static final ThreadLocal<Handle> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Long> REQUEST_SCOPE = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timeouts;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final List<Handle> live = new ArrayList<>();
+
+    AiRequestExecutor() {
+        final AtomicInteger threadIds = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "CodeX-AI-" + threadIds.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timeouts = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "CodeX-AI-timeouts");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Handle of the task running on the calling thread, or null outside a task. */
+    public static Handle currentHandle() {
+        return CURRENT.get();
+    }
+
+    /** Request id of the task running on the calling thread, or 0 outside a request. */
+    public static long currentRequestId() {
+        Handle handle = CURRENT.get();
+        return handle != null ? handle.requestId : 0L;
+    }
+
+    /**
+     * Runs block with requestId as the request scope: every task it submits (and their
+     * follow-ups) carries that id, so callbacks can be matched to the send that caused them.
+     */
+    public static void withRequestId(long requestId, Runnable block) {
+        Long previous = REQUEST_SCOPE.get();
+        REQUEST_SCOPE.set(requestId);
+        try {
+            block.run();
+        } finally {
+            if (previous != null) REQUEST_SCOPE.set(previous); else REQUEST_SCOPE.remove();
+        }
+    }
+
+    /**
+     * Runs block as if it were part of handle's task. Used for OkHttp callbacks of enqueued
+     * calls, which run on dispatcher threads outside the task that made them.
+     */
+    public static void runAs(Handle handle, Runnable block) {
+        if (handle == null) {
+            block.run();
+            return;
+        }
+        Handle previous = CURRENT.get();
+        CURRENT.set(handle);
+        try {
+            block.run();
+        } finally {
+            if (previous != null) CURRENT.set(previous); else CURRENT.remove();
+        }
+    }
+
+    /** Binds call to the current task's handle so cancelling the handle aborts it. */
+    public static void bindCurrent(Call call) {
+        Handle handle = CURRENT.get();
+        if (handle != null) handle.bind(call);
+    }
+
+    /** {@link #bindCurrent(Call)} inline: {@code bound(client.newCall(req)).execute()}. */
+    public static Call bound(Call call) {
+        bindCurrent(call);
+        return call;
+    }
+
+    /** True when the current task was cancelled or timed out; loops should stop early. */
+    public static boolean isCurrentCancelled() {
+        Handle handle = CURRENT.get();
+        return handle != null && handle.isCancelled();
+    }
+
+    /** True when the current task was cancelled by its timeout rather than by a caller. */
+    public static boolean isCurrentTimedOut() {
+        Handle handle = CURRENT.get();
+        return handle != null && handle.isTimedOut();
+    }
+
+    /** Submits a user-facing chat send. */
+    public Handle submitChat(Task task) {
+        return submit(TAG_CHAT, Priority.INTERACTIVE, CHAT_TIMEOUT_MS, task);
+    }
+
+    /**
+     * Submits a retry or continuation of the calling task under the same tag, so cancelling
+     * the request also cancels it. Does nothing if the calling task was cancelled.
+     */
+    public Handle followUp(Task task) {
+        Handle parent = CURRENT.get();
+        if (parent != null && parent.isCancelled()) return null;
+        return submit(parent != null ? parent.tag : TAG_CHAT, Priority.CONTINUATION, CHAT_TIMEOUT_MS, task);
+    }
+
+    public Handle submit(String tag, Priority priority, Task task) {
+        return submit(tag, priority, 0L, task);
+    }
+
+    /**
+     * @param tag       groups handles for {@link #cancelAll(String)}, e.g. "chat"
+     * @param timeoutMs cancels the request after this long; 0 for no timeout
+     */
+    public Handle submit(String tag, Priority priority, long timeoutMs, Task task) {
+        Long scoped = REQUEST_SCOPE.get();
+        Handle parent = CURRENT.get();
+        long requestId = scoped != null ? scoped : parent != null ? parent.requestId : 0L;
+        Handle handle = new Handle(sequence.incrementAndGet(), requestId, tag, priority);
+        synchronized (live) { live.add(handle); }
+        PrioritizedTask future = new PrioritizedTask(handle, task);
+        handle.future = future;
+        if (timeoutMs > 0) {
+            handle.timeout = timeouts.schedule(() -> {
+                // Released before the timeout could be cancelled (it is set after scheduling)
+                if (handle.done) return;
+                if (!handle.cancelledFlag) handle.timedOutFlag = true;
+                if (handle.cancelInternal()) {
+                    timedOut.incrementAndGet();
+                    Log.w(TAG, "Request " + handle.id + " (" + tag + ") timed out after " + timeoutMs + " ms");
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        executor.execute(future);
+        return handle;
+    }
+
+    /** Cancels every live request with tag. */
+    public void cancelAll(String tag) {
+        List<Handle> snapshot;
+        synchronized (live) { snapshot = new ArrayList<>(live); }
+        for (Handle h : snapshot) {
+            if (tag == null || tag.equals(h.tag)) h.cancel();
+        }
+    }
+
+    public Metrics getMetrics() {
+        int liveCount;
+        synchronized (live) { liveCount = live.size(); }
+        return new Metrics(executor.getQueue().size(), executor.getActiveCount(), liveCount,
+                completed.get(), cancelled.get(), timedOut.get());
+    }
+
+    private void release(Handle handle) {
+        boolean lingering;
+        synchronized (handle.calls) { lingering = !handle.cancelledFlag && !handle.calls.isEmpty(); }
+        synchronized (live) {
+            if (!lingering) {
+                live.remove(handle);
+            } else {
+                // The task returned but an enqueued call may still be streaming; keep it
+                // cancellable, dropping the oldest finished handles past the cap
+                int finished = 0;
+                for (int i = live.size() - 1; i >= 0; i--) {
+                    Handle h = live.get(i);
+                    if (h.done && ++finished > MAX_LINGERING) live.remove(i);
+                }
+            }
+        }
+        if (handle.timeout != null) handle.timeout.cancel(false);
+    }
+
+    public final class Handle {
+        public final long id;
+        /** Id of the send this task belongs to (see {@link #withRequestId}); 0 if none. */
+        public final long requestId;
+        public final String tag;
+        public final Priority priority;
+        private final List<Call> calls = new ArrayList<>();
+        private volatile boolean cancelledFlag;
+        private volatile boolean timedOutFlag;
+        private volatile boolean done;
+        private Future<?> future;
+        private ScheduledFuture<?> timeout;
+
+        Handle(long id, long requestId, String tag, Priority priority) {
+            this.id = id;
+            this.requestId = requestId;
+            this.tag = tag;
+            this.priority = priority;
+        }
+
+        /**
+         * Registers an in-flight call. Bound calls are aborted on cancel even after the task
+         * returned, which covers asynchronously enqueued streams.
+         */
+        public void bind(Call call) {
+            if (call == null) return;
+            synchronized (calls) {
+                if (cancelledFlag) {
+                    call.cancel();
+                    return;
+                }
+                calls.add(call);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelledFlag;
+        }
+
+        public boolean isTimedOut() {
+            return timedOutFlag && cancelledFlag;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /** Aborts bound calls (releasing their sockets) and interrupts or dequeues the task. */
+        public void cancel() {
+            if (cancelInternal()) cancelled.incrementAndGet();
+        }
+
+        boolean cancelInternal() {
+            List<Call> toCancel;
+            synchronized (calls) {
+                if (cancelledFlag) return false;
+                cancelledFlag = true;
+                toCancel = new ArrayList<>(calls);
+                calls.clear();
+            }
+            for (Call c : toCancel) c.cancel();
+            if (future != null) future.cancel(true);
+            release(this);
+            return true;
+        }
+    }
+
+    /** Orders queued work by priority, then by submission order. */
+    private final class PrioritizedTask extends FutureTask<Void> implements Comparable<PrioritizedTask> {
+        final Handle handle;
+
+        PrioritizedTask(Handle handle, Task task) {
+            super(() -> {
+                CURRENT.set(handle);
+                try {
+                    if (!handle.isCancelled()) task.run(handle);
+                } finally {
+                    CURRENT.remove();
+                }
+                return null;
+            });
+            this.handle = handle;
+        }
+
+        @Override
+        protected void done() {
+            handle.done = true;
+            completed.incrementAndGet();
+            release(handle);
+            if (!isCancelled()) {
+                try {
+                    get();
+                } catch (Exception e) {
+                    Log.w(TAG, "Request " + handle.id + " (" + handle.tag + ") failed", e.getCause() != null ? e.getCause() : e);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int byPriority = handle.priority.compareTo(other.handle.priority);
+            return byPriority != 0 ? byPriority : Long.compare(handle.id, other.handle.id);
+        }
+    }
+
+    public static final class Metrics {
+        public final int queued;
+        public final int active;
+        public final int live;
+        public final long completed;
+        public final long cancelled;
+        public final long timedOut;
+        // live: running or queued requests plus finished ones whose streams may still be open
+
+        Metrics(int queued, int active, int live, long completed, long cancelled, long timedOut) {
+            this.queued = queued;
+            this.active = active;
+            this.live = live;
+            this.completed = completed;
+            this.cancelled = cancelled;
+            this.timedOut = timedOut;
+        }
+
+        @Override
+        public String toString() {
+            return "ai{queued=" + queued + ", active=" + active + ", live=" + live + ", completed=" + completed
+                    + ", cancelled=" + cancelled + ", timedOut=" + timedOut + "}";
+        }
+    }
+}
@@ -7,13 +7,13 @@ import android.util.Log;
 import com.codex.apk.ai.AIModel;
 import com.codex.apk.ai.AIProvider;
 import com.codex.apk.ai.ModelCapabilities;
+import com.codex.apk.ai.StreamChannel;
+import com.codex.apk.ai.StreamDelta;
+import com.codex.apk.ai.StreamDeltaExtractor;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
-import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -52,7 +52,7 @@ public class AnyProviderApiClient implements ApiClient {
     public AnyProviderApiClient(Context context, AIAssistant.AIActionListener actionListener) {
         this.context = context.getApplicationContext();
         this.actionListener = actionListener;
-        this.httpClient = new OkHttpClient.Builder()
+        this.httpClient = CodeXApplication.getHttpRuntime().newClientBuilder("free", 8, 4)
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(0, TimeUnit.SECONDS) // stream
@@ -68,7 +68,7 @@ public class AnyProviderApiClient implements ApiClient {
                             boolean webSearchEnabled,
                             List<ToolSpec> enabledTools,
                             List<File> attachments) {
-        new Thread(() -> {
+        CodeXApplication.getAiRequestExecutor().submitChat(handle -> {
             try {
                 if (actionListener != null) actionListener.onAiRequestStarted();
                 String providerModel = mapToProviderModel(model != null ? model.getModelId() : null);
@@ -86,34 +86,32 @@ public class AnyProviderApiClient implements ApiClient {
 
                 SseClient sse = new SseClient(httpClient);
                 StringBuilder finalText = new StringBuilder();
-                StringBuilder rawSse = new StringBuilder();
+                final RawStreamCapture rawSse = RawStreamCapture.open("free");
+                final long[] streamSeq = new long[]{0L};
+                final StreamDeltaExtractor extractor = new StreamDeltaExtractor(getDeltaSchema());
                 sse.postStream(OPENAI_ENDPOINT, req.headers(), body, new SseClient.Listener() {
                     @Override public void onOpen() {}
-                    @Override public void onDelta(JsonObject chunk) {
-                        rawSse.append("data: ").append(chunk.toString()).append('\n');
-                        try {
-                            if (chunk.has("choices")) {
-                                JsonArray choices = chunk.getAsJsonArray("choices");
-                                for (int i = 0; i < choices.size(); i++) {
-                                    JsonObject c = choices.get(i).getAsJsonObject();
-                                    if (c.has("delta") && c.get("delta").isJsonObject()) {
-                                        JsonObject delta = c.getAsJsonObject("delta");
-                                        if (delta.has("content") && !delta.get("content").isJsonNull()) {
-                                            finalText.append(delta.get("content").getAsString());
-                                            actionListener.onAiStreamUpdate(finalText.toString(), false);
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (Exception ignore) {}
+                    @Override public boolean onEvent(SseEventParser.Event event) {
+                        CharSequence data = event.dataView();
+                        if (SseClient.isBlankOrDone(data)) return true;
+                        rawSse.appendEvent(data);
+                        StreamDelta delta = extractor.extract(data);
+                        if (delta != null && delta.hasContent()) {
+                            finalText.append(delta.content);
+                            actionListener.onAiStreamDelta(delta.content, streamSeq[0]++, StreamChannel.ANSWER);
+                        }
+                        return true;
                     }
+                    @Override public void onDelta(JsonObject chunk) {}
                     @Override public void onUsage(JsonObject usage) {}
                     @Override public void onError(String message, int code) {
+                        rawSse.close();
                         if (actionListener != null) actionListener.onAiError("Free endpoint request failed: " + code + (message != null ? (" | body: " + message) : ""));
                     }
                     @Override public void onComplete() {
+                        rawSse.close();
                         if (actionListener == null) return;
-                        ResponseDemuxer.handleGeneric(actionListener, model != null ? model.getDisplayName() : "Free", rawSse.toString(), finalText.toString(), null);
+                        ResponseDemuxer.handleGeneric(actionListener, model != null ? model.getDisplayName() : "Free", rawSse.snapshot(), finalText.toString(), null);
                         actionListener.onAiRequestCompleted();
                     }
                 });
@@ -122,7 +120,7 @@ public class AnyProviderApiClient implements ApiClient {
                 if (actionListener != null) actionListener.onAiError("Error: " + e.getMessage());
                 if (actionListener != null) actionListener.onAiRequestCompleted();
             }
-        }).start();
+        });
     }
 
     protected JsonObject buildOpenAIStyleBody(String modelId, String userMessage, List<ChatMessage> history, boolean thinkingModeEnabled) {
@@ -159,76 +157,42 @@ public class AnyProviderApiClient implements ApiClient {
         return root;
     }
 
-    protected void streamOpenAiSse(Response response, StringBuilder finalText, StringBuilder rawAnswer) throws IOException {
+    protected void streamOpenAiSse(Response response, StringBuilder finalText, RawStreamCapture rawAnswer) throws IOException {
         BufferedSource source = response.body().source();
         try { source.timeout().timeout(60, TimeUnit.SECONDS); } catch (Exception ignore) {}
-        StringBuilder eventBuf = new StringBuilder();
         // Throttle
         long[] lastEmitNs = new long[]{0L};
         int[] lastSentLen = new int[]{0};
-        while (true) {
-            String line;
-            try {
-                line = source.readUtf8LineStrict();
-            } catch (EOFException eof) { break; }
-            catch (java.io.InterruptedIOException timeout) { Log.w(TAG, "Free SSE read timed out"); break; }
-            if (line == null) break;
-            if (line.isEmpty()) {
-                handleOpenAiEvent(eventBuf.toString(), finalText, rawAnswer, lastEmitNs, lastSentLen);
-                eventBuf.setLength(0);
-                continue;
-            }
-            eventBuf.append(line).append('\n');
-        }
-        if (eventBuf.length() > 0) {
-            handleOpenAiEvent(eventBuf.toString(), finalText, rawAnswer, lastEmitNs, lastSentLen);
+        long[] streamSeq = new long[]{0L};
+        StreamDeltaExtractor extractor = new StreamDeltaExtractor(getDeltaSchema());
+        try {
+            new SseEventParser(true).parse(source, event -> handleOpenAiEvent(event.dataView(), extractor, finalText, rawAnswer, lastEmitNs, lastSentLen, streamSeq));
+        } catch (java.io.InterruptedIOException timeout) {
+            Log.w(TAG, "Free SSE read timed out");
         }
-        // Force final emit
+        // Force final emit of whatever the throttle held back
         if (actionListener != null && finalText.length() != lastSentLen[0]) {
-            actionListener.onAiStreamUpdate(finalText.toString(), false);
+            actionListener.onAiStreamDelta(finalText.substring(lastSentLen[0]), streamSeq[0]++, StreamChannel.ANSWER);
         }
     }
 
-    protected void handleOpenAiEvent(String rawEvent, StringBuilder finalText, StringBuilder rawAnswer, long[] lastEmitNs, int[] lastSentLen) {
-        String prefix = "data:";
-        int idx = rawEvent.indexOf(prefix);
-        if (idx < 0) return;
-        String jsonPart = rawEvent.substring(idx + prefix.length()).trim();
-        if (jsonPart.isEmpty() || jsonPart.equals("[DONE]") || jsonPart.equalsIgnoreCase("data: [DONE]")) return;
-        try {
-            if (rawAnswer != null) rawAnswer.append(jsonPart).append('\n');
-            JsonElement elem = JsonParser.parseString(jsonPart);
-            if (!elem.isJsonObject()) return;
-            JsonObject obj = elem.getAsJsonObject();
-            if (obj.has("choices") && obj.get("choices").isJsonArray()) {
-                JsonArray choices = obj.getAsJsonArray("choices");
-                if (choices.size() > 0) {
-                    JsonObject choice = choices.get(0).getAsJsonObject();
-                    JsonObject delta = choice.has("delta") && choice.get("delta").isJsonObject() ? choice.getAsJsonObject("delta") : null;
-                    if (delta != null) {
-                        if (delta.has("content")) {
-                            String content = delta.get("content").isJsonNull() ? null : delta.get("content").getAsString();
-                            if (content != null && !content.isEmpty()) {
-                                finalText.append(content);
-                                maybeEmit(finalText, lastEmitNs, lastSentLen);
-                            }
-                        }
-                    } else if (choice.has("message") && choice.get("message").isJsonObject()) {
-                        // Non-streaming fallback chunk
-                        JsonObject msg = choice.getAsJsonObject("message");
-                        if (msg.has("content") && !msg.get("content").isJsonNull()) {
-                            finalText.append(msg.get("content").getAsString());
-                            maybeEmit(finalText, lastEmitNs, lastSentLen);
-                        }
-                    }
-                }
-            }
-        } catch (Exception ex) {
-            Log.w(TAG, "Failed to parse OpenAI-like SSE: " + ex.getMessage());
+    protected void handleOpenAiEvent(CharSequence jsonPart, StreamDeltaExtractor extractor, StringBuilder finalText, RawStreamCapture rawAnswer, long[] lastEmitNs, int[] lastSentLen, long[] streamSeq) {
+        if (SseClient.isBlankOrDone(jsonPart)) return;
+        if (rawAnswer != null) rawAnswer.appendLine(jsonPart);
+        StreamDelta delta = extractor.extract(jsonPart);
+        if (delta == null) {
+            Log.w(TAG, "Failed to parse OpenAI-like SSE chunk");
+            return;
+        }
+        String content = delta.content != null ? delta.content : delta.messageContent; // message: non-streaming fallback chunk
+        if (content != null && !content.isEmpty()) {
+            finalText.append(content);
+            maybeEmit(finalText, lastEmitNs, lastSentLen, streamSeq);
         }
     }
 
-    protected void maybeEmit(StringBuilder buf, long[] lastEmitNs, int[] lastSentLen) {
+    /** Emits the text appended since the last emit as a single delta, throttled by time, size and line boundaries. */
+    protected void maybeEmit(StringBuilder buf, long[] lastEmitNs, int[] lastSentLen, long[] streamSeq) {
         if (actionListener == null) return;
         int len = buf.length();
         if (len == lastSentLen[0]) return;
@@ -238,7 +202,7 @@ public class AnyProviderApiClient implements ApiClient {
         boolean sizeReady = (len - lastSentLen[0]) >= 24;
         boolean boundaryReady = len > 0 && buf.charAt(len - 1) == '\n';
         if (timeReady || sizeReady || boundaryReady) {
-            actionListener.onAiStreamUpdate(buf.toString(), false);
+            actionListener.onAiStreamDelta(buf.substring(lastSentLen[0]), streamSeq[0]++, StreamChannel.ANSWER);
             lastEmitNs[0] = now;
             lastSentLen[0] = len;
         }
@@ -251,6 +215,16 @@ public class AnyProviderApiClient implements ApiClient {
         return lower;
     }
 
+    @Override
+    public String getPrewarmUrl() {
+        return OPENAI_ENDPOINT;
+    }
+
+    @Override
+    public void prewarm() {
+        CodeXApplication.getHttpRuntime().prewarm(httpClient, getPrewarmUrl());
+    }
+
     @Override
     public List<AIModel> fetchModels() {
         return new ArrayList<>();
@@ -4,6 +4,7 @@ import java.util.List;
 
 import java.io.File;
 import com.codex.apk.ai.AIModel;
+import com.codex.apk.ai.DeltaSchema;
 
 public interface ApiClient {
     void sendMessage(
@@ -17,4 +18,17 @@ public interface ApiClient {
         List<File> attachments
     );
     List<AIModel> fetchModels();
+
+    /** Shape of this provider's streaming chunks, used to pick the StreamDeltaExtractor paths. */
+    default DeltaSchema getDeltaSchema() {
+        return DeltaSchema.OPENAI_CHAT;
+    }
+
+    /** URL on the host that serves chat requests; its connection is opened by {@link #prewarm()}. */
+    default String getPrewarmUrl() {
+        return null;
+    }
+
+    /** Opens the provider connection (and refreshes tokens) ahead of the first request. Must not block. */
+    default void prewarm() {}
 }
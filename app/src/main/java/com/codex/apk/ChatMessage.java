@@ -22,6 +22,7 @@ public class ChatMessage {
     public static final int STATUS_PENDING_APPROVAL = 0; // AI proposed actions, waiting for user decision
     public static final int STATUS_ACCEPTED = 1; // User accepted the AI's proposed actions
     public static final int STATUS_DISCARDED = 2; // User discarded the AI's proposed actions
+    public static final int STATUS_REVERTED = 3; // Accepted actions were later undone from their snapshot
 
     private int sender; // SENDER_USER or SENDER_AI
     private String content; // Message text for user, explanation for AI
@@ -50,6 +51,11 @@ public class ChatMessage {
     private String fid; // Unique message id
     private String parentId; // Parent message id
     private List<String> childrenIds; // Children message ids
+
+    // UI-only: true while the AI response is still streaming into this message (never persisted)
+    private transient boolean streaming;
+    // UI-only: the streaming handler's growing buffer, rendered without copying it each frame
+    private transient CharSequence streamingContent;
     
     /**
      * Constructor for user messages.
@@ -96,7 +102,7 @@ public class ChatMessage {
 
     // Getters
     public int getSender() { return sender; }
-    public String getContent() { return content; }
+    public String getContent() { return streamingContent != null ? streamingContent.toString() : content; }
     public List<String> getActionSummaries() { return actionSummaries; }
     public List<String> getSuggestions() { return suggestions; }
     public String getAiModelName() { return aiModelName; }
@@ -122,11 +128,16 @@ public class ChatMessage {
 
 
     // Setters (for updating message properties after creation, e.g., status)
-    public void setContent(String content) { this.content = content; }
+    public void setContent(String content) { this.content = content; this.streamingContent = null; }
     public void setStatus(int status) { this.status = status; }
     public void setActionSummaries(List<String> actionSummaries) { this.actionSummaries = actionSummaries; }
     public void setProposedFileChanges(List<FileActionDetail> proposedFileChanges) { this.proposedFileChanges = proposedFileChanges; }
     public void setThinkingContent(String thinkingContent) { this.thinkingContent = thinkingContent; }
+    public boolean isStreaming() { return streaming; }
+    public void setStreaming(boolean streaming) { this.streaming = streaming; }
+    /** Text that keeps growing while the message streams; replaced by the next setContent. */
+    public CharSequence getStreamingContent() { return streamingContent; }
+    public void setStreamingContent(CharSequence streamingContent) { this.streamingContent = streamingContent; }
     public void setWebSources(List<WebSource> webSources) { this.webSources = webSources; }
     public void setPlanSteps(List<PlanStep> planSteps) { this.planSteps = planSteps; }
     public void setUserAttachmentPaths(List<String> paths) { this.userAttachmentPaths = paths != null ? new ArrayList<>(paths) : new ArrayList<>(); }
@@ -135,7 +146,7 @@ public class ChatMessage {
     public com.google.gson.JsonObject toJsonObject() {
         com.google.gson.JsonObject jsonObject = new com.google.gson.JsonObject();
         jsonObject.addProperty("role", sender == SENDER_USER ? "user" : "assistant");
-        jsonObject.addProperty("content", content);
+        jsonObject.addProperty("content", getContent());
         return jsonObject;
     }
 
@@ -313,7 +324,7 @@ public class ChatMessage {
     public Map<String, Object> toMap() {
         Map<String, Object> map = new HashMap<>();
         map.put("sender", sender);
-        map.put("content", content);
+        map.put("content", getContent());
         map.put("timestamp", timestamp);
         map.put("status", status); // Include status
 
@@ -13,6 +13,8 @@ import java.io.StringWriter;
 public class CodeXApplication extends Application {
 
     private static CodeXApplication instance;
+    private static HttpRuntime httpRuntime;
+    private static AiRequestExecutor aiRequestExecutor;
 
     @Override
     public void onCreate() {
@@ -31,6 +33,26 @@ public class CodeXApplication extends Application {
         });
     }
 
+    /** Shared HTTP runtime; created on first use so it also works before onCreate (e.g. in tools). */
+    public static synchronized HttpRuntime getHttpRuntime() {
+        if (httpRuntime == null) httpRuntime = new HttpRuntime();
+        return httpRuntime;
+    }
+
+    /** Shared executor for AI provider requests. */
+    public static synchronized AiRequestExecutor getAiRequestExecutor() {
+        if (aiRequestExecutor == null) aiRequestExecutor = new AiRequestExecutor();
+        return aiRequestExecutor;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_BACKGROUND && httpRuntime != null) {
+            httpRuntime.evictIdleConnections();
+        }
+    }
+
     public static Context getAppContext() {
         return instance != null ? instance.getApplicationContext() : null;
     }
@@ -7,13 +7,15 @@ import android.util.Log;
 import com.codex.apk.ai.AIModel;
 import com.codex.apk.ai.AIProvider;
 import com.codex.apk.ai.ModelCapabilities;
+import com.codex.apk.ai.StreamChannel;
+import com.codex.apk.ai.StreamDelta;
+import com.codex.apk.ai.StreamDeltaExtractor;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
-import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -26,8 +28,6 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
-import com.codex.apk.util.JsonUtils;
-import okio.BufferedSource;
 
 /**
  * DeepInfraApiClient
@@ -48,7 +48,7 @@ public class DeepInfraApiClient implements ApiClient {
     public DeepInfraApiClient(Context context, AIAssistant.AIActionListener actionListener) {
         this.context = context.getApplicationContext();
         this.actionListener = actionListener;
-        this.httpClient = new OkHttpClient.Builder()
+        this.httpClient = CodeXApplication.getHttpRuntime().newClientBuilder("deepinfra", 8, 4)
                 .connectTimeout(20, TimeUnit.SECONDS)
                 .readTimeout(60, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
@@ -64,7 +64,7 @@ public class DeepInfraApiClient implements ApiClient {
                             boolean webSearchEnabled,
                             List<ToolSpec> enabledTools,
                             List<File> attachments) {
-        new Thread(() -> {
+        CodeXApplication.getAiRequestExecutor().submitChat(handle -> {
             try {
                 if (actionListener != null) actionListener.onAiRequestStarted();
                 String modelId = model != null ? model.getModelId() : "deepseek-v3";
@@ -78,41 +78,35 @@ public class DeepInfraApiClient implements ApiClient {
 
                 SseClient sse = new SseClient(httpClient);
                 StringBuilder finalText = new StringBuilder();
-                StringBuilder rawSse = new StringBuilder();
+                final RawStreamCapture rawSse = RawStreamCapture.open("deepinfra");
                 String modelDisplay = model != null ? model.getDisplayName() : (modelId != null ? modelId : "DeepInfra");
+                final long[] streamSeq = new long[]{0L};
+                final StreamDeltaExtractor extractor = new StreamDeltaExtractor(getDeltaSchema());
                 sse.postStream(DI_CHAT, req.headers(), body, new SseClient.Listener() {
                     @Override public void onOpen() {}
-                    @Override public void onDelta(JsonObject chunk) {
-                        rawSse.append("data: ").append(chunk.toString()).append('\n');
-                        try {
-                            if (chunk.has("choices") && chunk.get("choices").isJsonArray()) {
-                                JsonArray choices = chunk.getAsJsonArray("choices");
-                                for (int i = 0; i < choices.size(); i++) {
-                                    JsonObject choice = choices.get(i).getAsJsonObject();
-                                    if (choice.has("delta") && choice.get("delta").isJsonObject()) {
-                                        JsonObject delta = choice.getAsJsonObject("delta");
-                                        if (delta.has("content") && !delta.get("content").isJsonNull()) {
-                                            finalText.append(delta.get("content").getAsString());
-                                            actionListener.onAiStreamUpdate(finalText.toString(), false);
-                                        }
-                                    } else if (choice.has("message") && choice.get("message").isJsonObject()) {
-                                        JsonObject msg = choice.getAsJsonObject("message");
-                                        if (msg.has("content") && !msg.get("content").isJsonNull()) {
-                                            finalText.append(msg.get("content").getAsString());
-                                            actionListener.onAiStreamUpdate(finalText.toString(), false);
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (Exception ignore) {}
+                    @Override public boolean onEvent(SseEventParser.Event event) {
+                        CharSequence data = event.dataView();
+                        if (SseClient.isBlankOrDone(data)) return true;
+                        rawSse.appendEvent(data);
+                        StreamDelta delta = extractor.extract(data);
+                        if (delta == null) return true;
+                        String content = delta.content != null ? delta.content : delta.messageContent;
+                        if (content != null && !content.isEmpty()) {
+                            finalText.append(content);
+                            actionListener.onAiStreamDelta(content, streamSeq[0]++, StreamChannel.ANSWER);
+                        }
+                        return true;
                     }
+                    @Override public void onDelta(JsonObject chunk) {}
                     @Override public void onUsage(JsonObject usage) {}
                     @Override public void onError(String message, int code) {
+                        rawSse.close();
                         if (actionListener != null) actionListener.onAiError("DeepInfra error: " + code);
                     }
                     @Override public void onComplete() {
+                        rawSse.close();
                         if (actionListener != null) {
-                            ResponseDemuxer.handleGeneric(actionListener, modelDisplay, rawSse.toString(), finalText.toString(), null);
+                            ResponseDemuxer.handleGeneric(actionListener, modelDisplay, rawSse.snapshot(), finalText.toString(), null);
                             actionListener.onAiRequestCompleted();
                         }
                     }
@@ -122,7 +116,7 @@ public class DeepInfraApiClient implements ApiClient {
                 if (actionListener != null) actionListener.onAiError("Error: " + e.getMessage());
                 if (actionListener != null) actionListener.onAiRequestCompleted();
             }
-        }).start();
+        });
     }
 
     private JsonObject buildOpenAIStyleBody(String modelId, String userMessage, List<ChatMessage> history) {
@@ -150,115 +144,14 @@ public class DeepInfraApiClient implements ApiClient {
         return root;
     }
 
-    private void streamOpenAiSse(Response response, String modelDisplayName) throws IOException {
-        BufferedSource source = response.body().source();
-        try { source.timeout().timeout(60, TimeUnit.SECONDS); } catch (Exception ignore) {}
-        StringBuilder eventBuf = new StringBuilder();
-        StringBuilder finalText = new StringBuilder();
-        long[] lastEmitNs = new long[]{0L};
-        int[] lastSentLen = new int[]{0};
-        while (true) {
-            String line;
-            try {
-                line = source.readUtf8LineStrict();
-            } catch (EOFException eof) { break; }
-            catch (java.io.InterruptedIOException timeout) { Log.w(TAG, "DeepInfra SSE read timed out"); break; }
-            if (line == null) break;
-            if (line.isEmpty()) {
-                handleOpenAiEvent(eventBuf.toString(), finalText, lastEmitNs, lastSentLen);
-                eventBuf.setLength(0);
-                continue;
-            }
-            eventBuf.append(line).append('\n');
-        }
-        if (eventBuf.length() > 0) {
-            handleOpenAiEvent(eventBuf.toString(), finalText, lastEmitNs, lastSentLen);
-        }
-        if (actionListener != null) {
-            if (finalText.length() != lastSentLen[0]) {
-                actionListener.onAiStreamUpdate(finalText.toString(), false);
-            }
-            String jsonToParse = JsonUtils.extractJsonFromCodeBlock(finalText.toString());
-            if (jsonToParse == null && JsonUtils.looksLikeJson(finalText.toString())) {
-                jsonToParse = finalText.toString();
-            }
-
-            if (jsonToParse != null) {
-                try {
-                    QwenResponseParser.ParsedResponse parsed = QwenResponseParser.parseResponse(jsonToParse);
-                    if (parsed != null && parsed.isValid) {
-                        // Check if the response is a plan
-                        if ("plan".equals(parsed.action) && parsed.planSteps != null && !parsed.planSteps.isEmpty()) {
-                            List<ChatMessage.PlanStep> planSteps = QwenResponseParser.toPlanSteps(parsed);
-                            actionListener.onAiActionsProcessed(jsonToParse, parsed.explanation, new ArrayList<>(), new ArrayList<>(), planSteps, modelDisplayName);
-                        } else {
-                            // It's a file operation or other valid JSON
-                            List<ChatMessage.FileActionDetail> fileActions = QwenResponseParser.toFileActionDetails(parsed);
-                            actionListener.onAiActionsProcessed(jsonToParse, parsed.explanation, new ArrayList<>(), fileActions, modelDisplayName);
-                        }
-                    } else {
-                        // Not a valid structured response, treat as plain text
-                        actionListener.onAiActionsProcessed(finalText.toString(), finalText.toString(), new java.util.ArrayList<>(), new java.util.ArrayList<>(), modelDisplayName);
-                    }
-                } catch (Exception e) {
-                    Log.w(TAG, "DeepInfra JSON parse failed, treating as text: " + e.getMessage());
-                    actionListener.onAiActionsProcessed(finalText.toString(), finalText.toString(), new java.util.ArrayList<>(), new java.util.ArrayList<>(), modelDisplayName);
-                }
-            } else {
-                // No JSON found, treat as plain text
-                actionListener.onAiActionsProcessed(finalText.toString(), finalText.toString(), new java.util.ArrayList<>(), new java.util.ArrayList<>(), modelDisplayName);
-            }
-        }
-    }
-
-    private void handleOpenAiEvent(String rawEvent, StringBuilder finalText, long[] lastEmitNs, int[] lastSentLen) {
-        String prefix = "data:";
-        int idx = rawEvent.indexOf(prefix);
-        if (idx < 0) return;
-        String jsonPart = rawEvent.substring(idx + prefix.length()).trim();
-        if (jsonPart.isEmpty() || jsonPart.equals("[DONE]") || jsonPart.equalsIgnoreCase("data: [DONE]")) return;
-        try {
-            JsonElement elem = JsonParser.parseString(jsonPart);
-            if (!elem.isJsonObject()) return;
-            JsonObject obj = elem.getAsJsonObject();
-            if (obj.has("choices") && obj.get("choices").isJsonArray()) {
-                JsonArray choices = obj.getAsJsonArray("choices");
-                for (int i = 0; i < choices.size(); i++) {
-                    JsonObject choice = choices.get(i).getAsJsonObject();
-                    if (choice.has("delta") && choice.get("delta").isJsonObject()) {
-                        JsonObject delta = choice.getAsJsonObject("delta");
-                        if (delta.has("content") && !delta.get("content").isJsonNull()) {
-                            finalText.append(delta.get("content").getAsString());
-                            maybeEmit(finalText, lastEmitNs, lastSentLen);
-                        }
-                    } else if (choice.has("message") && choice.get("message").isJsonObject()) {
-                        JsonObject msg = choice.getAsJsonObject("message");
-                        if (msg.has("content") && !msg.get("content").isJsonNull()) {
-                            finalText.append(msg.get("content").getAsString());
-                            maybeEmit(finalText, lastEmitNs, lastSentLen);
-                        }
-                    }
-                }
-            }
-        } catch (Exception ex) {
-            Log.w(TAG, "DeepInfra SSE parse error: " + ex.getMessage());
-        }
+    @Override
+    public String getPrewarmUrl() {
+        return DI_CHAT;
     }
 
-    private void maybeEmit(StringBuilder buf, long[] lastEmitNs, int[] lastSentLen) {
-        if (actionListener == null) return;
-        int len = buf.length();
-        if (len == lastSentLen[0]) return;
-        long now = System.nanoTime();
-        long last = lastEmitNs[0];
-        boolean timeReady = (last == 0L) || (now - last) >= 40_000_000L; // ~40ms
-        boolean sizeReady = (len - lastSentLen[0]) >= 24;
-        boolean boundaryReady = len > 0 && buf.charAt(len - 1) == '\n';
-        if (timeReady || sizeReady || boundaryReady) {
-            actionListener.onAiStreamUpdate(buf.toString(), false);
-            lastEmitNs[0] = now;
-            lastSentLen[0] = len;
-        }
+    @Override
+    public void prewarm() {
+        CodeXApplication.getHttpRuntime().prewarm(httpClient, getPrewarmUrl());
     }
 
     @Override
@@ -271,7 +164,7 @@ public class DeepInfraApiClient implements ApiClient {
                     .addHeader("user-agent", "Mozilla/5.0 (Linux; Android) CodeX-Android/1.0")
                     .addHeader("accept", "*/*")
                     .build();
-            try (Response r = client.newCall(req).execute()) {
+            try (Response r = AiRequestExecutor.bound(client.newCall(req)).execute()) {
                 if (r.isSuccessful() && r.body() != null) {
                     String body = new String(r.body().bytes(), StandardCharsets.UTF_8);
                     try {
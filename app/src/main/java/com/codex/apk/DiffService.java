@@ -0,0 +1,199 @@
+package com.codex.apk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Computes diff metrics off the main thread for list adapters. Results are memoized in an
+ * LRU keyed by the texts themselves, so rebinding a row, or scrolling back to it, is a map
+ * lookup. The keys reference the strings the messages already hold, and String caches its
+ * hash, so a lookup costs an equals() check that usually ends at the identity test.
+ * Callbacks run on the main thread.
+ *
+ * Concurrent requests for the same key share one computation. Adapters should try the
+ * peek methods first and only fall back to the async call on a miss, then make sure the
+ * holder still shows the same item when the callback arrives.
+ */
+public final class DiffService {
+    private static final String TAG = "DiffService";
+    private static final int MAX_COUNTS = 256;
+    private static final int MAX_PARSED = 32;
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CodeX-Diff");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    /** A parsed unified diff with its line counts. */
+    public static final class Parsed {
+        public final List<DiffUtils.DiffLine> lines;
+        public final int added;
+        public final int removed;
+
+        Parsed(List<DiffUtils.DiffLine> lines) {
+            this.lines = lines;
+            int a = 0, r = 0;
+            for (DiffUtils.DiffLine l : lines) {
+                if (l.type == DiffUtils.LineType.ADDED) a++;
+                else if (l.type == DiffUtils.LineType.REMOVED) r++;
+            }
+            this.added = a;
+            this.removed = r;
+        }
+    }
+
+    private static final Map<Key, int[]> COUNTS = lru(MAX_COUNTS);
+    private static final Map<Key, Parsed> PARSED = lru(MAX_PARSED);
+    // Guarded by PENDING itself; the callbacks waiting on each in-flight key
+    private static final Map<Key, List<Consumer<Object>>> PENDING = new HashMap<>();
+
+    private DiffService() {}
+
+    /** {added, removed} between the two contents if already computed, else null. */
+    public static int[] peekCounts(String oldContent, String newContent) {
+        Key key = Key.pair(oldContent, newContent);
+        synchronized (COUNTS) {
+            return COUNTS.get(key);
+        }
+    }
+
+    /**
+     * Delivers {added, removed} between the two contents on the main thread. A cached
+     * result is delivered synchronously.
+     */
+    public static void countAddRemove(String oldContent, String newContent, Consumer<int[]> callback) {
+        Key key = Key.pair(oldContent, newContent);
+        int[] cached;
+        synchronized (COUNTS) {
+            cached = COUNTS.get(key);
+        }
+        if (cached != null) {
+            callback.accept(cached);
+            return;
+        }
+        submit(key, callback, () -> {
+            int[] counts = DiffUtils.countAddRemoveFromContents(oldContent, newContent);
+            synchronized (COUNTS) {
+                COUNTS.put(key, counts);
+            }
+            return counts;
+        });
+    }
+
+    /** The parsed form of a unified diff if already computed, else null. */
+    public static Parsed peekParsed(String diffText) {
+        Key key = Key.single(diffText);
+        synchronized (PARSED) {
+            return PARSED.get(key);
+        }
+    }
+
+    /** Delivers the parsed diff on the main thread; a cached result is delivered synchronously. */
+    public static void parse(String diffText, Consumer<Parsed> callback) {
+        Key key = Key.single(diffText);
+        Parsed cached;
+        synchronized (PARSED) {
+            cached = PARSED.get(key);
+        }
+        if (cached != null) {
+            callback.accept(cached);
+            return;
+        }
+        submit(key, callback, () -> {
+            Parsed parsed = new Parsed(DiffUtils.parseUnifiedDiff(diffText));
+            synchronized (PARSED) {
+                PARSED.put(key, parsed);
+            }
+            return parsed;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void submit(Key key, Consumer<T> callback, java.util.concurrent.Callable<T> work) {
+        synchronized (PENDING) {
+            List<Consumer<Object>> waiting = PENDING.get(key);
+            if (waiting != null) {
+                waiting.add((Consumer<Object>) callback);
+                return;
+            }
+            waiting = new ArrayList<>();
+            waiting.add((Consumer<Object>) callback);
+            PENDING.put(key, waiting);
+        }
+        WORKER.execute(() -> {
+            Object result;
+            try {
+                result = work.call();
+            } catch (Throwable t) {
+                Log.w(TAG, "Diff failed", t);
+                result = null;
+            }
+            List<Consumer<Object>> waiting;
+            synchronized (PENDING) {
+                waiting = PENDING.remove(key);
+            }
+            if (result == null || waiting == null) return;
+            final Object r = result;
+            MAIN.post(() -> {
+                for (Consumer<Object> c : waiting) {
+                    try { c.accept(r); } catch (Exception e) { Log.w(TAG, "Diff callback failed", e); }
+                }
+            });
+        });
+    }
+
+    /** One text, or both sides of a pair; null counts as "". Compared in full, so distinct texts never share a result. */
+    private static final class Key {
+        final String a;
+        final String b; // null for a single text
+        final int hash;
+
+        private Key(String a, String b) {
+            this.a = a;
+            this.b = b;
+            this.hash = a.hashCode() * 31 + (b != null ? b.hashCode() : 0);
+        }
+
+        static Key single(String a) {
+            return new Key(a != null ? a : "", null);
+        }
+
+        static Key pair(String a, String b) {
+            return new Key(a != null ? a : "", b != null ? b : "");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return hash == k.hash && a.equals(k.a) && (b == null ? k.b == null : b.equals(k.b));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static <V> Map<Key, V> lru(int max) {
+        return new LinkedHashMap<Key, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+                return size() > max;
+            }
+        };
+    }
+}
@@ -24,6 +24,11 @@ import com.codex.apk.editor.FileTreeManager;
 import com.codex.apk.editor.TabManager;
 import com.codex.apk.editor.EditorViewModel;
 import com.codex.apk.editor.adapters.MainPagerAdapter;
+import com.codex.apk.util.FileTransaction;
+import com.codex.apk.util.ProjectChanges;
+import com.codex.apk.util.ProjectSearchIndex;
+import com.codex.apk.util.ProjectSnapshot;
+import com.codex.apk.util.SymbolIndex;
 import com.codex.apk.SimpleSoraTabAdapter;
 import com.google.android.material.tabs.TabLayout;
 import com.google.android.material.tabs.TabLayoutMediator;
@@ -100,7 +105,18 @@ public class EditorActivity extends AppCompatActivity implements
             return;
         }
 
+        // Undo an AI batch that a crash interrupted halfway, before anything reads the project
+        FileTransaction.recover(projectDir);
         fileManager = new FileManager(this, projectDir);
+        // Trigram index for project search; built in the background, kept current from file events
+        ProjectSearchIndex.open(this, projectDir);
+        // Cached listings and stat info for the file tree, prompts and tools
+        ProjectSnapshot.open(projectDir);
+        // Definitions in HTML/CSS/JS files for the findSymbol and fileOutline tools
+        SymbolIndex.open(projectDir);
+        // Passes each FileManager event on to every index opened for the project
+        fileManager.addFileChangeListener(ProjectChanges.asFileChangeListener());
+        fileManager.addFileChangeListener(ToolResultCache.asFileChangeListener());
         // DialogHelper will need references to the new managers for its callbacks, and it needs EditorActivity
         dialogHelper = new DialogHelper(this, fileManager, this);
 
@@ -271,6 +287,11 @@ public class EditorActivity extends AppCompatActivity implements
         if (aiAssistantManager != null) {
             aiAssistantManager.shutdown(); // FIX: Call shutdown on AiAssistantManager
         }
+        if (projectDir != null) {
+            ProjectSearchIndex.close(projectDir);
+            ProjectSnapshot.close(projectDir);
+            SymbolIndex.close(projectDir);
+        }
     }
 
     // --- CodeEditorFragmentListener methods implementation (delegating to TabManager and UiManager) ---
@@ -377,6 +398,11 @@ public class EditorActivity extends AppCompatActivity implements
         aiAssistantManager.onReapplyActions(messagePosition, message); // FIX: Delegate to AiAssistantManager
     }
 
+    @Override
+    public void onAiRevertActions(int messagePosition, ChatMessage message) {
+        aiAssistantManager.onAiRevertActions(messagePosition, message);
+    }
+
     @Override
     public void onAiFileChangeClicked(ChatMessage.FileActionDetail fileActionDetail) {
         aiAssistantManager.onAiFileChangeClicked(fileActionDetail); // Delegate to AiAssistantManager
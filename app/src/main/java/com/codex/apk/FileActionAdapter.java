@@ -39,8 +39,21 @@ public class FileActionAdapter extends RecyclerView.Adapter<FileActionAdapter.Vi
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         List<ChatMessage.FileActionDetail> displayActions = getDisplayActions();
         ChatMessage.FileActionDetail action = displayActions.get(position);
-        int[] counts = computeAggregatedCountsForDisplayAction(action);
+        holder.boundAction = action;
+        List<String[]> pending = new ArrayList<>();
+        int[] counts = computeAggregatedCountsForDisplayAction(action, pending);
+        // A partial sum would flicker; badges stay hidden until every diff is in
+        if (!pending.isEmpty()) counts = new int[]{0, 0};
         holder.bind(action, listener, counts[0], counts[1]);
+        // Content diffs not yet cached are computed off the main thread; badges fill in when they land
+        for (String[] pair : pending) {
+            DiffService.countAddRemove(pair[0], pair[1], result -> {
+                if (holder.boundAction != action) return;
+                List<String[]> stillPending = new ArrayList<>();
+                int[] c = computeAggregatedCountsForDisplayAction(action, stillPending);
+                if (stillPending.isEmpty()) holder.setCounts(c[0], c[1]);
+            });
+        }
     }
 
     @Override
@@ -78,6 +91,7 @@ public class FileActionAdapter extends RecyclerView.Adapter<FileActionAdapter.Vi
         private final TextView textChangeLabel;
         private final TextView textAddedBadge;
         private final TextView textRemovedBadge;
+        ChatMessage.FileActionDetail boundAction;
 
         ViewHolder(View itemView) {
             super(itemView);
@@ -151,7 +165,12 @@ public class FileActionAdapter extends RecyclerView.Adapter<FileActionAdapter.Vi
             // No status label in the new UI
 
             // Diff badges (+ added / - removed lines) provided by adapter pre-computation
+            setCounts(added, removed);
+
+            itemView.setOnClickListener(v -> listener.onFileActionClicked(action));
+        }
 
+        void setCounts(int added, int removed) {
             // Configure + badge
             if (added > 0) {
                 textAddedBadge.setVisibility(View.VISIBLE);
@@ -169,8 +188,6 @@ public class FileActionAdapter extends RecyclerView.Adapter<FileActionAdapter.Vi
             } else {
                 textRemovedBadge.setVisibility(View.GONE);
             }
-
-            itemView.setOnClickListener(v -> listener.onFileActionClicked(action));
         }
 
         private int countLines(String s) {
@@ -188,8 +205,9 @@ public class FileActionAdapter extends RecyclerView.Adapter<FileActionAdapter.Vi
     /**
      * Compute aggregated add/remove counts for a displayed action by summing all
      * changes to the same effective file path within this message (handles renames).
+     * Content pairs whose diff is not cached yet are left out of the sum and added to pending.
      */
-    private int[] computeAggregatedCountsForDisplayAction(ChatMessage.FileActionDetail displayed) {
+    private int[] computeAggregatedCountsForDisplayAction(ChatMessage.FileActionDetail displayed, List<String[]> pending) {
         String displayPath = "renameFile".equals(displayed.type) && displayed.newPath != null && !displayed.newPath.isEmpty()
                 ? displayed.newPath
                 : displayed.path;
@@ -228,7 +246,11 @@ public class FileActionAdapter extends RecyclerView.Adapter<FileActionAdapter.Vi
             } else if ("deleteFile".equals(a.type) && a.oldContent != null) {
                 removed += countLinesStatic(a.oldContent);
             } else if (a.oldContent != null || a.newContent != null) {
-                int[] c = DiffUtils.countAddRemoveFromContents(a.oldContent, a.newContent);
+                int[] c = DiffService.peekCounts(a.oldContent, a.newContent);
+                if (c == null) {
+                    pending.add(new String[]{a.oldContent, a.newContent});
+                    continue;
+                }
                 added += c[0];
                 removed += c[1];
             }
@@ -7,6 +7,7 @@ import android.widget.Toast;
 import com.codex.apk.DiffGenerator;
 import com.codex.apk.util.FileContentValidator;
 import com.codex.apk.util.FileContentValidator.ValidationResult;
+import com.codex.apk.util.FileTransaction;
 import com.codex.apk.util.UnifiedDiffApplier;
 
 import java.io.BufferedReader;
@@ -20,6 +21,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 
 public class FileManager {
@@ -37,11 +39,53 @@ public class FileManager {
     }
 
     private FileChangeListener fileChangeListener;
+    // Project-wide observers (search index, caches) that live alongside the primary listener
+    private final List<FileChangeListener> extraListeners = new CopyOnWriteArrayList<>();
 
     public void setFileChangeListener(FileChangeListener listener) {
         this.fileChangeListener = listener;
     }
 
+    public void addFileChangeListener(FileChangeListener listener) {
+        if (listener != null && !extraListeners.contains(listener)) extraListeners.add(listener);
+    }
+
+    public void removeFileChangeListener(FileChangeListener listener) {
+        extraListeners.remove(listener);
+    }
+
+    private void notifyCreated(File file) {
+        if (fileChangeListener != null) fileChangeListener.onFileCreated(file);
+        for (FileChangeListener l : extraListeners) l.onFileCreated(file);
+    }
+
+    private void notifyModified(File file) {
+        if (fileChangeListener != null) fileChangeListener.onFileModified(file);
+        for (FileChangeListener l : extraListeners) l.onFileModified(file);
+    }
+
+    private void notifyDeleted(File file) {
+        if (fileChangeListener != null) fileChangeListener.onFileDeleted(file);
+        for (FileChangeListener l : extraListeners) l.onFileDeleted(file);
+    }
+
+    private void notifyRenamed(File oldFile, File newFile) {
+        if (fileChangeListener != null) fileChangeListener.onFileRenamed(oldFile, newFile);
+        for (FileChangeListener l : extraListeners) l.onFileRenamed(oldFile, newFile);
+    }
+
+    /** Fires the listener events for a committed transaction, in commit order. */
+    public void notifyCommitted(List<FileTransaction.Change> changes) {
+        for (FileTransaction.Change c : changes) {
+            switch (c.type) {
+                case CREATED: notifyCreated(c.file); break;
+                case MODIFIED: notifyModified(c.file); break;
+                case DELETED: notifyDeleted(c.file); break;
+                case RENAMED: notifyRenamed(c.oldFile, c.file); break;
+            }
+        }
+    }
+
     public FileManager(Context context, File projectDir) {
         this.context = context;
         this.projectDir = projectDir;
@@ -64,9 +108,7 @@ public class FileManager {
              OutputStreamWriter writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
             writer.write(content);
         }
-        if (fileChangeListener != null) {
-            fileChangeListener.onFileModified(file);
-        }
+        notifyModified(file);
     }
 
     public FileOperationResult smartUpdateFile(File file,
@@ -112,7 +154,7 @@ public class FileManager {
         return result;
     }
 
-    private String applyUpdateType(String currentContent, String newContent, String updateType) {
+    public String applyUpdateType(String currentContent, String newContent, String updateType) {
         if (newContent == null) newContent = "";
         switch (updateType != null ? updateType : "") {
             case "append":
@@ -148,12 +190,20 @@ public class FileManager {
         if (patchContent == null || patchContent.trim().isEmpty()) {
             return currentContent;
         }
+        UnifiedDiffApplier.Result result;
         try {
-            return UnifiedDiffApplier.apply(currentContent, patchContent);
+            result = UnifiedDiffApplier.apply(currentContent, patchContent, UnifiedDiffApplier.DEFAULT_FUZZ);
         } catch (Exception e) {
             Log.e(TAG, "Patch application failed", e);
             return currentContent;
         }
+        // Half a patch is worse than none; fail with the per-hunk report instead
+        if (!result.isComplete()) {
+            Log.w(TAG, "Patch rejected:\n" + result);
+            throw new IllegalArgumentException(result.failedCount() + " of " + result.hunks.size()
+                    + " hunks did not apply\n" + result);
+        }
+        return result.content;
     }
 
     public void createNewFile(File parentDirectory, String fileName) throws IOException {
@@ -182,9 +232,7 @@ public class FileManager {
             throw new IOException("Failed to create file");
         }
 
-        if (fileChangeListener != null) {
-            fileChangeListener.onFileCreated(newFile);
-        }
+        notifyCreated(newFile);
     }
 
     public void createNewDirectory(File parentDirectory, String folderName) throws IOException {
@@ -213,9 +261,7 @@ public class FileManager {
             throw new IOException("Failed to create folder");
         }
 
-        if (fileChangeListener != null) {
-            fileChangeListener.onFileCreated(newFolder);
-        }
+        notifyCreated(newFolder);
     }
 
     public List<FileItem> loadFileTree() {
@@ -277,9 +323,7 @@ public class FileManager {
             throw new IOException("Failed to rename " + oldFile.getAbsolutePath() + " to " + newFile.getAbsolutePath());
         }
 
-        if (fileChangeListener != null) {
-            fileChangeListener.onFileRenamed(oldFile, newFile);
-        }
+        notifyRenamed(oldFile, newFile);
     }
 
     public void deleteFileOrDirectory(File fileOrDirectory) throws IOException {
@@ -298,9 +342,7 @@ public class FileManager {
             }
         }
 
-        if (fileChangeListener != null) {
-            fileChangeListener.onFileDeleted(fileOrDirectory);
-        }
+        notifyDeleted(fileOrDirectory);
     }
 
     private boolean deleteDirectoryRecursive(File dir) {
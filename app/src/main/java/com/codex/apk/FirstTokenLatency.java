@@ -0,0 +1,74 @@
+package com.codex.apk;
+
+import android.util.Log;
+
+import com.codex.apk.ai.AIProvider;
+
+import java.util.Arrays;
+
+/**
+ * Time-to-first-token of chat requests, split by whether the provider connection was
+ * pre-warmed when the request was sent. Each sample is logged with the running medians of
+ * both groups so the effect of pre-warming can be read straight from logcat.
+ */
+public final class FirstTokenLatency {
+    private static final String TAG = "FirstTokenLatency";
+    private static final int WINDOW = 32;
+
+    private final Samples warm = new Samples();
+    private final Samples cold = new Samples();
+    private long startNs = 0L; // 0 when no request is waiting for its first token
+    private boolean startPrewarmed;
+    private AIProvider startProvider;
+
+    public synchronized void onRequestStarted(AIProvider provider, boolean prewarmed) {
+        startNs = System.nanoTime();
+        startPrewarmed = prewarmed;
+        startProvider = provider;
+    }
+
+    /** Records the pending request's first token; later calls for the same request are ignored. */
+    public void onFirstToken() {
+        long elapsedMs;
+        String summary;
+        synchronized (this) {
+            if (startNs == 0L) return;
+            elapsedMs = (System.nanoTime() - startNs) / 1_000_000L;
+            startNs = 0L;
+            (startPrewarmed ? warm : cold).add(elapsedMs);
+            summary = "TTFT " + elapsedMs + " ms provider=" + startProvider
+                    + " prewarmed=" + startPrewarmed + " | " + describe();
+        }
+        // Pool and per-provider dispatcher load alongside, to tell slow servers from queuing
+        Log.i(TAG, summary + " | " + CodeXApplication.getHttpRuntime().getStats());
+    }
+
+    /** Request ended (error, cancel or non-streaming reply) before a token was seen. */
+    public synchronized void onRequestFinished() {
+        startNs = 0L;
+    }
+
+    /** e.g. "prewarmed median=210ms n=12, cold median=640ms n=5" */
+    public synchronized String describe() {
+        return "prewarmed median=" + warm.median() + "ms n=" + warm.count
+                + ", cold median=" + cold.median() + "ms n=" + cold.count;
+    }
+
+    private static final class Samples {
+        final long[] window = new long[WINDOW];
+        int count = 0;
+
+        void add(long value) {
+            window[count % WINDOW] = value;
+            count++;
+        }
+
+        long median() {
+            int n = Math.min(count, WINDOW);
+            if (n == 0) return -1L;
+            long[] sorted = Arrays.copyOf(window, n);
+            Arrays.sort(sorted);
+            return sorted[n / 2];
+        }
+    }
+}
@@ -54,7 +54,7 @@ public class GeminiFreeApiClient implements ApiClient {
     public GeminiFreeApiClient(Context context, AIAssistant.AIActionListener actionListener) {
         this.context = context.getApplicationContext();
         this.actionListener = actionListener;
-        this.httpClient = new OkHttpClient.Builder()
+        this.httpClient = CodeXApplication.getHttpRuntime().newClientBuilder("gemini-free", 4, 2)
                 .followRedirects(true)
                 .connectTimeout(60, TimeUnit.SECONDS)
                 .writeTimeout(120, TimeUnit.SECONDS)
@@ -64,7 +64,7 @@ public class GeminiFreeApiClient implements ApiClient {
 
     @Override
     public void sendMessage(String message, AIModel model, List<ChatMessage> history, QwenConversationState unused, boolean thinkingModeEnabled, boolean webSearchEnabled, List<ToolSpec> enabledTools, List<File> attachments) {
-        new Thread(() -> {
+        CodeXApplication.getAiRequestExecutor().submitChat(handle -> {
             try {
                 if (actionListener != null) actionListener.onAiRequestStarted();
                 String psid = SettingsActivity.getSecure1PSID(context);
@@ -144,7 +144,7 @@ public class GeminiFreeApiClient implements ApiClient {
                         .post(formBody)
                         .build();
 
-                try (Response resp = httpClient.newCall(req).execute()) {
+                try (Response resp = AiRequestExecutor.bound(httpClient.newCall(req)).execute()) {
                     if (!resp.isSuccessful() || resp.body() == null) {
                         String errBody = null;
                         try { errBody = resp.body() != null ? resp.body().string() : null; } catch (Exception ignore) {}
@@ -158,7 +158,7 @@ public class GeminiFreeApiClient implements ApiClient {
                                     .header("Cookie", buildCookieHeader(cookies))
                                     .post(buildGenerateForm(accessToken, message, chatMeta, uploaded))
                                     .build();
-                            try (Response resp2 = httpClient.newCall(retry).execute()) {
+                            try (Response resp2 = AiRequestExecutor.bound(httpClient.newCall(retry)).execute()) {
                                 if (!resp2.isSuccessful() || resp2.body() == null) {
                                     String errBody2 = null;
                                     try { errBody2 = resp2.body() != null ? resp2.body().string() : null; } catch (Exception ignore) {}
@@ -242,7 +242,17 @@ public class GeminiFreeApiClient implements ApiClient {
             } finally {
                 if (actionListener != null) actionListener.onAiRequestCompleted();
             }
-        }).start();
+        });
+    }
+
+    @Override
+    public String getPrewarmUrl() {
+        return GENERATE_URL;
+    }
+
+    @Override
+    public void prewarm() {
+        CodeXApplication.getHttpRuntime().prewarm(httpClient, getPrewarmUrl());
     }
 
     @Override
@@ -262,7 +272,7 @@ public class GeminiFreeApiClient implements ApiClient {
                 .headers(Headers.of(defaultGeminiHeaders()))
                 .header("Cookie", buildCookieHeader(cookies))
                 .build();
-        try (Response resp = httpClient.newCall(init).execute()) {
+        try (Response resp = AiRequestExecutor.bound(httpClient.newCall(init)).execute()) {
             if (!resp.isSuccessful() || resp.body() == null) return null;
             // Merge Set-Cookie from INIT into cookies map
             if (resp.headers("Set-Cookie") != null) {
@@ -293,7 +303,7 @@ public class GeminiFreeApiClient implements ApiClient {
                     }}))
                     .header("Cookie", buildCookieHeader(cookies))
                     .build();
-            try (Response resp = httpClient.newCall(req).execute()) {
+            try (Response resp = AiRequestExecutor.bound(httpClient.newCall(req)).execute()) {
                 if (resp.code() == 401) return; // unauthorized, keep old
                 if (!resp.isSuccessful()) return;
                 if (resp.headers("Set-Cookie") != null) {
@@ -309,7 +319,7 @@ public class GeminiFreeApiClient implements ApiClient {
 
     private Map<String, String> warmupAndMergeCookies(Map<String, String> baseCookies) throws IOException {
         Map<String, String> cookies = new HashMap<>(baseCookies);
-        try (Response r = httpClient.newCall(new Request.Builder().url(GOOGLE_URL).get().build()).execute()) {
+        try (Response r = AiRequestExecutor.bound(httpClient.newCall(new Request.Builder().url(GOOGLE_URL).get().build())).execute()) {
             if (r.headers("Set-Cookie") != null) {
                 for (String c : r.headers("Set-Cookie")) {
                     String[] parts = c.split(";", 2);
@@ -347,7 +357,7 @@ public class GeminiFreeApiClient implements ApiClient {
                 .headers(Headers.of(new HashMap<String, String>() {{ put("Push-ID", "feeds/mcudyrk2a4khkz"); }}))
                 .post(multipart)
                 .build();
-        try (Response r = httpClient.newCall(upload).execute()) {
+        try (Response r = AiRequestExecutor.bound(httpClient.newCall(upload)).execute()) {
             if (!r.isSuccessful() || r.body() == null) throw new IOException("Upload failed: " + r.code());
             return r.body().string();
         }
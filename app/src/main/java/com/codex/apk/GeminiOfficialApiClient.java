@@ -43,7 +43,7 @@ public class GeminiOfficialApiClient implements ApiClient {
         this.context = context.getApplicationContext();
         this.actionListener = actionListener;
         this.apiKey = apiKey;
-        this.http = new OkHttpClient.Builder()
+        this.http = CodeXApplication.getHttpRuntime().newClientBuilder("gemini", 8, 4)
                 .connectTimeout(60, TimeUnit.SECONDS)
                 .readTimeout(180, TimeUnit.SECONDS)
                 .writeTimeout(120, TimeUnit.SECONDS)
@@ -62,7 +62,7 @@ public class GeminiOfficialApiClient implements ApiClient {
                             boolean webSearchEnabled,
                             List<ToolSpec> enabledTools,
                             List<File> attachments) {
-        new Thread(() -> {
+        CodeXApplication.getAiRequestExecutor().submitChat(handle -> {
             if (actionListener != null) actionListener.onAiRequestStarted();
             try {
                 String key = apiKey;
@@ -94,7 +94,7 @@ public class GeminiOfficialApiClient implements ApiClient {
                         .post(RequestBody.create(req.toString(), JSON))
                         .build();
 
-                try (Response resp = http.newCall(httpReq).execute()) {
+                try (Response resp = AiRequestExecutor.bound(http.newCall(httpReq)).execute()) {
                     if (!resp.isSuccessful() || resp.body() == null) {
                         String err = resp.body() != null ? resp.body().string() : null;
                         if (actionListener != null) actionListener.onAiError("Gemini API error: " + resp.code() + (err != null ? ": " + err : ""));
@@ -145,7 +145,17 @@ public class GeminiOfficialApiClient implements ApiClient {
             } finally {
                 if (actionListener != null) actionListener.onAiRequestCompleted();
             }
-        }).start();
+        });
+    }
+
+    @Override
+    public String getPrewarmUrl() {
+        return "https://generativelanguage.googleapis.com/v1beta/models";
+    }
+
+    @Override
+    public void prewarm() {
+        CodeXApplication.getHttpRuntime().prewarm(http, getPrewarmUrl());
     }
 
     @Override
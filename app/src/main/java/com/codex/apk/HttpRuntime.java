@@ -0,0 +1,204 @@
+package com.codex.apk;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Process-wide HTTP runtime shared by every ApiClient and tool.
+ *
+ * All clients derive from one base OkHttpClient, so they share a single connection pool,
+ * one TLS socket factory (and with it the TLS session cache) and the dispatcher threads.
+ * Each provider gets its own Dispatcher on the shared executor so its request limits are
+ * enforced separately. Owned by {@link CodeXApplication}; obtain it via
+ * {@link CodeXApplication#getHttpRuntime()}.
+ */
+public final class HttpRuntime {
+    private static final String TAG = "HttpRuntime";
+
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5L;
+    /** A host pre-warmed more recently than this still has a pooled connection. */
+    private static final long PREWARM_FRESH_MS = 2 * 60 * 1000L;
+
+    private final ConnectionPool connectionPool;
+    private final ExecutorService dispatchExecutor;
+    private final OkHttpClient base;
+    private final Map<String, Dispatcher> dispatchers = new LinkedHashMap<>();
+    private final Map<String, Long> prewarmedHosts = new HashMap<>(); // host -> time the warm-up connected
+
+    HttpRuntime() {
+        this.connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+        final AtomicInteger threadIds = new AtomicInteger();
+        this.dispatchExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, "CodeX-Http-" + threadIds.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.base = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(new Dispatcher(dispatchExecutor))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .retryOnConnectionFailure(true)
+                .pingInterval(30, TimeUnit.SECONDS) // keeps idle HTTP/2 connections alive between turns
+                .build();
+    }
+
+    /**
+     * Builder for a provider client on the shared pool. The returned builder keeps the pool,
+     * protocols and TLS factory; callers add their timeouts, cookie jar and so on.
+     *
+     * @param provider           dispatcher key, e.g. "qwen"
+     * @param maxRequests        concurrent calls allowed for this provider
+     * @param maxRequestsPerHost concurrent calls per host for this provider
+     */
+    public OkHttpClient.Builder newClientBuilder(String provider, int maxRequests, int maxRequestsPerHost) {
+        return base.newBuilder().dispatcher(dispatcherFor(provider, maxRequests, maxRequestsPerHost));
+    }
+
+    /**
+     * Dispatcher for provider, created on first use with the given limits. Clients of one
+     * provider share it, so a later caller asking for higher limits raises them; lower ones
+     * leave them as they are.
+     */
+    public synchronized Dispatcher dispatcherFor(String provider, int maxRequests, int maxRequestsPerHost) {
+        int max = Math.max(1, maxRequests);
+        int perHost = Math.max(1, maxRequestsPerHost);
+        Dispatcher dispatcher = dispatchers.get(provider);
+        if (dispatcher == null) {
+            dispatcher = new Dispatcher(dispatchExecutor);
+            dispatcher.setMaxRequests(max);
+            dispatcher.setMaxRequestsPerHost(perHost);
+            dispatchers.put(provider, dispatcher);
+        } else if (max > dispatcher.getMaxRequests() || perHost > dispatcher.getMaxRequestsPerHost()) {
+            String before = dispatcher.getMaxRequests() + "/" + dispatcher.getMaxRequestsPerHost();
+            dispatcher.setMaxRequests(Math.max(max, dispatcher.getMaxRequests()));
+            dispatcher.setMaxRequestsPerHost(Math.max(perHost, dispatcher.getMaxRequestsPerHost()));
+            Log.i(TAG, "Raised " + provider + " limits from " + before + " to "
+                    + dispatcher.getMaxRequests() + "/" + dispatcher.getMaxRequestsPerHost());
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Opens (DNS, TCP, TLS) a pooled connection to the host of url ahead of the first request,
+     * with a HEAD request on client whose response is discarded. Skipped while a previous
+     * warm-up of the same host is still fresh.
+     */
+    public void prewarm(OkHttpClient client, String url) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (client == null || parsed == null) return;
+        final String host = parsed.host();
+        synchronized (prewarmedHosts) {
+            Long last = prewarmedHosts.get(host);
+            if (last != null && System.currentTimeMillis() - last < PREWARM_FRESH_MS) return;
+            prewarmedHosts.put(host, System.currentTimeMillis()); // claim; replaced with the connect time below
+        }
+        Request request = new Request.Builder().url(parsed.resolve("/")).head().build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override public void onFailure(Call call, IOException e) {
+                synchronized (prewarmedHosts) { prewarmedHosts.remove(host); }
+                Log.w(TAG, "Pre-warm of " + host + " failed: " + e.getMessage());
+            }
+            @Override public void onResponse(Call call, Response response) {
+                response.close(); // any status means the connection is up
+                synchronized (prewarmedHosts) { prewarmedHosts.put(host, System.currentTimeMillis()); }
+            }
+        });
+    }
+
+    /** True if a warm-up of url's host connected recently enough to still be pooled. */
+    public boolean isPrewarmed(String url) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null) return false;
+        synchronized (prewarmedHosts) {
+            Long last = prewarmedHosts.get(parsed.host());
+            return last != null && System.currentTimeMillis() - last < PREWARM_FRESH_MS;
+        }
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /** Closes idle pooled connections, e.g. when the system is low on memory. */
+    public void evictIdleConnections() {
+        Log.i(TAG, "Evicting idle connections: " + getStats());
+        connectionPool.evictAll();
+        synchronized (prewarmedHosts) { prewarmedHosts.clear(); }
+    }
+
+    public synchronized Stats getStats() {
+        List<DispatcherStats> perProvider = new ArrayList<>();
+        for (Map.Entry<String, Dispatcher> e : dispatchers.entrySet()) {
+            Dispatcher d = e.getValue();
+            perProvider.add(new DispatcherStats(e.getKey(), d.runningCallsCount(), d.queuedCallsCount(),
+                    d.getMaxRequests(), d.getMaxRequestsPerHost()));
+        }
+        return new Stats(connectionPool.connectionCount(), connectionPool.idleConnectionCount(), perProvider);
+    }
+
+    public static final class Stats {
+        public final int connections;
+        public final int idleConnections;
+        public final List<DispatcherStats> dispatchers;
+
+        Stats(int connections, int idleConnections, List<DispatcherStats> dispatchers) {
+            this.connections = connections;
+            this.idleConnections = idleConnections;
+            this.dispatchers = dispatchers;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("pool{connections=").append(connections)
+                    .append(", idle=").append(idleConnections).append('}');
+            for (DispatcherStats d : dispatchers) sb.append(' ').append(d);
+            return sb.toString();
+        }
+    }
+
+    public static final class DispatcherStats {
+        public final String provider;
+        public final int running;
+        public final int queued;
+        public final int maxRequests;
+        public final int maxRequestsPerHost;
+
+        DispatcherStats(String provider, int running, int queued, int maxRequests, int maxRequestsPerHost) {
+            this.provider = provider;
+            this.running = running;
+            this.queued = queued;
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+        }
+
+        @Override
+        public String toString() {
+            return provider + "{running=" + running + ", queued=" + queued
+                    + ", max=" + maxRequests + "/" + maxRequestsPerHost + "}";
+        }
+    }
+}
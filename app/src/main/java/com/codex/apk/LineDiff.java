@@ -0,0 +1,226 @@
+package com.codex.apk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line diff in linear space: Myers' O(ND) algorithm run divide-and-conquer on the middle
+ * snake, as in diff-match-patch's bisect, so memory stays O(N+M) however large the edit
+ * distance.
+ *
+ * Lines are interned to int ids first, so the inner loops compare ints. Every range
+ * has its common prefix and suffix stripped before searching. A range whose middle
+ * snake costs more than {@link #costCap} d-steps is handed to a patience diff instead.
+ * Patience anchors on lines that occur once on each side and recurses between them. A
+ * range with no such anchors becomes one replace. The result is then close to minimal
+ * rather than minimal, but time stays bounded on files rewritten wholesale.
+ */
+public final class LineDiff {
+    private static final int MIN_COST_CAP = 256;
+
+    /** Lines aStart..aEnd of a replaced by lines bStart..bEnd of b (end exclusive); one side may be empty. */
+    public static final class Edit {
+        public final int aStart, aEnd, bStart, bEnd;
+
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    private final int[] a;
+    private final int[] b;
+    private final int costCap;
+    private final List<Edit> edits = new ArrayList<>();
+
+    private LineDiff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        this.costCap = Math.max(MIN_COST_CAP, 8 * (int) Math.sqrt(a.length + b.length));
+    }
+
+    /** Edits turning a into b, in order and non-adjacent. */
+    public static List<Edit> diff(String[] a, String[] b) {
+        Map<String, Integer> ids = new HashMap<>(Math.max(16, (a.length + b.length) * 2));
+        LineDiff d = new LineDiff(intern(a, ids), intern(b, ids));
+        d.diffRange(0, a.length, 0, b.length);
+        return d.edits;
+    }
+
+    /** {added, removed} line counts between two texts split on '\n'. */
+    public static int[] countAddRemove(String oldContent, String newContent) {
+        int added = 0;
+        int removed = 0;
+        for (Edit e : diff(oldContent.split("\n", -1), newContent.split("\n", -1))) {
+            added += e.bEnd - e.bStart;
+            removed += e.aEnd - e.aStart;
+        }
+        return new int[]{added, removed};
+    }
+
+    private static int[] intern(String[] lines, Map<String, Integer> ids) {
+        int[] out = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            Integer id = ids.get(lines[i]);
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines[i], id);
+            }
+            out[i] = id;
+        }
+        return out;
+    }
+
+    private void diffRange(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) { aLo++; bLo++; }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) { aHi--; bHi--; }
+        if (aLo == aHi || bLo == bHi) {
+            emit(aLo, aHi, bLo, bHi);
+            return;
+        }
+        int[] split = bisect(aLo, aHi, bLo, bHi);
+        if (split == null) {
+            patience(aLo, aHi, bLo, bHi);
+        } else {
+            diffRange(aLo, split[0], bLo, split[1]);
+            diffRange(split[0], aHi, split[1], bHi);
+        }
+    }
+
+    /**
+     * A point on an optimal path through the range, found where the forward and backward
+     * searches overlap; null when that takes more than costCap steps.
+     */
+    private int[] bisect(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] v1 = new int[length];
+        int[] v2 = new int[length];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[offset + 1] = 0;
+        v2[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0; // odd delta: paths meet on a forward step
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        int limit = Math.min(maxD, costCap);
+        for (int d = 0; d < limit; d++) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int k1o = offset + k1;
+                int x1 = k1 == -d || (k1 != d && v1[k1o - 1] < v1[k1o + 1]) ? v1[k1o + 1] : v1[k1o - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) { x1++; y1++; }
+                v1[k1o] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int k2o = offset + delta - k1;
+                    if (k2o >= 0 && k2o < length && v2[k2o] != -1 && x1 >= n - v2[k2o]) {
+                        return new int[]{aLo + x1, bLo + y1};
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int k2o = offset + k2;
+                int x2 = k2 == -d || (k2 != d && v2[k2o - 1] < v2[k2o + 1]) ? v2[k2o + 1] : v2[k2o - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && a[aHi - 1 - x2] == b[bHi - 1 - y2]) { x2++; y2++; }
+                v2[k2o] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int k1o = offset + delta - k2;
+                    if (k1o >= 0 && k1o < length && v1[k1o] != -1) {
+                        int x1 = v1[k1o];
+                        int y1 = offset + x1 - k1o;
+                        if (x1 >= n - x2) return new int[]{aLo + x1, bLo + y1};
+                    }
+                }
+            }
+        }
+        if (limit < maxD) return null;
+        // No common line at all: the range is one replace
+        return new int[]{aHi, bLo};
+    }
+
+    /**
+     * Anchors on lines unique to both sides, keeps the longest run of them that appears in
+     * the same order on both sides, and diffs the gaps between them.
+     */
+    private void patience(int aLo, int aHi, int bLo, int bHi) {
+        Map<Integer, int[]> seen = new HashMap<>(); // id -> {count in a, pos in a, count in b, pos in b}
+        for (int i = aLo; i < aHi; i++) {
+            int[] s = seen.get(a[i]);
+            if (s == null) seen.put(a[i], s = new int[4]);
+            s[0]++;
+            s[1] = i;
+        }
+        for (int j = bLo; j < bHi; j++) {
+            int[] s = seen.get(b[j]);
+            if (s == null) continue;
+            s[2]++;
+            s[3] = j;
+        }
+        List<int[]> unique = new ArrayList<>();
+        for (int i = aLo; i < aHi; i++) {
+            int[] s = seen.get(a[i]);
+            if (s[0] == 1 && s[2] == 1) unique.add(new int[]{i, s[3]});
+        }
+        if (unique.isEmpty()) {
+            emit(aLo, aHi, bLo, bHi);
+            return;
+        }
+
+        // Longest increasing subsequence of b positions (patience sorting)
+        int[] tails = new int[unique.size()];
+        int[] prev = new int[unique.size()];
+        int piles = 0;
+        for (int i = 0; i < unique.size(); i++) {
+            int bj = unique.get(i)[1];
+            int lo = 0, hi = piles;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (unique.get(tails[mid])[1] < bj) lo = mid + 1; else hi = mid;
+            }
+            prev[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == piles) piles++;
+        }
+        int[] anchors = new int[piles];
+        for (int i = piles - 1, at = tails[piles - 1]; i >= 0; i--, at = prev[at]) anchors[i] = at;
+
+        int ai = aLo, bj = bLo;
+        for (int idx : anchors) {
+            int[] anchor = unique.get(idx);
+            diffRange(ai, anchor[0], bj, anchor[1]);
+            ai = anchor[0] + 1;
+            bj = anchor[1] + 1;
+        }
+        diffRange(ai, aHi, bj, bHi);
+    }
+
+    private void emit(int aLo, int aHi, int bLo, int bHi) {
+        if (aLo == aHi && bLo == bHi) return;
+        int last = edits.size() - 1;
+        if (last >= 0) {
+            Edit e = edits.get(last);
+            if (e.aEnd == aLo && e.bEnd == bLo) {
+                edits.set(last, new Edit(e.aStart, aHi, e.bStart, bHi));
+                return;
+            }
+        }
+        edits.add(new Edit(aLo, aHi, bLo, bHi));
+    }
+}
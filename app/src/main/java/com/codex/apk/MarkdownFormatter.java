@@ -6,6 +6,9 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import io.noties.markwon.Markwon;
 import io.noties.markwon.ext.strikethrough.StrikethroughPlugin;
 import io.noties.markwon.ext.tables.TablePlugin;
@@ -16,9 +19,17 @@ import io.noties.markwon.linkify.LinkifyPlugin;
 
 public class MarkdownFormatter {
     
+    private static final Pattern FENCE_LANG_LINE_END = Pattern.compile("```(\\w+)\\r?\\n");
+    private static final Pattern BULLET_AFTER_LINE = Pattern.compile("(?<!\\n)\\n([*+-]\\s)");
+    private static final Pattern NUMBERED_AFTER_LINE = Pattern.compile("(?<!\\n)\\n(\\d+\\.\\s)");
+    private static final Pattern CITATION = Pattern.compile("\\[\\[(\\d+)\\]\\]");
+    private static final Pattern OPEN_TAG = Pattern.compile("<([a-zA-Z][a-zA-Z0-9-]*)[^>]*>");
+    private static final int MAX_TAGS_CHECKED = 16;
+
     private static MarkdownFormatter instance;
     private final Markwon markwon;
     private final Markwon thinkingMarkwon;
+    private final StreamingMarkdownRenderer streamingRenderer;
     
     private MarkdownFormatter(Context context) {
         // Create main markwon instance for AI messages
@@ -36,6 +47,8 @@ public class MarkdownFormatter {
                 .usePlugin(StrikethroughPlugin.create())
                 .usePlugin(LinkifyPlugin.create())
                 .build();
+
+        streamingRenderer = new StreamingMarkdownRenderer(block -> markwon.toMarkdown(normalizeMarkdown(block)));
     }
     
     public static synchronized MarkdownFormatter getInstance(Context context) {
@@ -52,6 +65,30 @@ public class MarkdownFormatter {
         markwon.setMarkdown(textView, markdown);
     }
     
+    /**
+     * Sets markdown for a message that is still streaming. Completed blocks are parsed once and
+     * cached under messageKey; only the open trailing block is re-parsed on each update.
+     */
+    public void setStreamingMarkdown(@NonNull TextView textView, @NonNull String messageKey, @NonNull CharSequence markdown) {
+        if (startsWithTag(markdown)) {
+            String text = markdown.toString();
+            if (looksLikeRawHtml(text.trim())) {
+                // Whole-message HTML is wrapped into one fence by preprocessMarkdown; no stable blocks to cache
+                markwon.setMarkdown(textView, preprocessMarkdown(text));
+                return;
+            }
+        }
+        CharSequence rendered = streamingRenderer.render(messageKey, markdown);
+        markwon.setParsedMarkdown(textView, rendered instanceof android.text.Spanned
+                ? (android.text.Spanned) rendered
+                : new android.text.SpannableString(rendered));
+    }
+
+    /** Drops cached blocks of a message once it stops streaming. */
+    public void releaseStreamingMarkdown(@NonNull String messageKey) {
+        streamingRenderer.release(messageKey);
+    }
+
     /**
      * Formats and sets markdown content to a TextView for thinking content
      */
@@ -82,32 +119,54 @@ public class MarkdownFormatter {
 
         // Heuristic: if looks like raw/minified HTML and not already fenced, wrap and pretty-print
         String trimmed = s.trim();
-        boolean alreadyFenced = trimmed.contains("```");
-        boolean looksHtml = !alreadyFenced && trimmed.startsWith("<") && trimmed.contains(">") && (
-                trimmed.contains("<html") || trimmed.contains("<!DOCTYPE") || trimmed.contains("<head") ||
-                trimmed.contains("<body") || trimmed.contains("<div") || trimmed.contains("<span") ||
-                trimmed.contains("<p ") || trimmed.contains("<p>") || trimmed.matches("(?s).*<([a-zA-Z][a-zA-Z0-9-]*)([^>]*)>.*</\\1>.*")
-        );
-        if (looksHtml) {
+        if (looksLikeRawHtml(trimmed)) {
             // Insert newlines between adjacent tags to improve readability
             String pretty = trimmed.replace("><", ">\n<");
             return "```html\n" + pretty + "\n```";
         }
+        return normalizeMarkdown(s);
+    }
 
+    private static String normalizeMarkdown(String s) {
         // Handle code blocks with language specification (normalize line endings after language)
-        s = s.replaceAll("```(\\w+)\\r?\\n", "```$1\n");
+        if (s.indexOf("```") >= 0) s = FENCE_LANG_LINE_END.matcher(s).replaceAll("```$1\n");
 
         // Ensure proper line breaks for lists
-        s = s.replaceAll("(?<!\\n)\\n([*+-]\\s)", "\n\n$1");
+        s = BULLET_AFTER_LINE.matcher(s).replaceAll("\n\n$1");
 
         // Handle numbered lists
-        s = s.replaceAll("(?<!\\n)\\n(\\d+\\.\\s)", "\n\n$1");
+        s = NUMBERED_AFTER_LINE.matcher(s).replaceAll("\n\n$1");
 
         // Normalize citations spacing: [[n]] -> [[n]] with surrounding spaces ensured by renderer
-        s = s.replaceAll("\\[\\[(\\d+)\\]\\]", "[[$1]]");
+        if (s.indexOf("[[") >= 0) s = CITATION.matcher(s).replaceAll("[[$1]]");
 
         return s;
     }
+
+    /** Cheap pre-check for looksLikeRawHtml that does not copy a streaming buffer. */
+    private static boolean startsWithTag(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c > ' ') return c == '<'; // same cut as String.trim()
+        }
+        return false;
+    }
+
+    private static boolean looksLikeRawHtml(String trimmed) {
+        if (!trimmed.startsWith("<") || !trimmed.contains(">") || trimmed.contains("```")) return false;
+        if (trimmed.contains("<html") || trimmed.contains("<!DOCTYPE") || trimmed.contains("<head") ||
+                trimmed.contains("<body") || trimmed.contains("<div") || trimmed.contains("<span") ||
+                trimmed.contains("<p ") || trimmed.contains("<p>")) {
+            return true;
+        }
+        // Any element with a matching closing tag later on; linear scan instead of a backtracking regex
+        Matcher m = OPEN_TAG.matcher(trimmed);
+        int checked = 0;
+        while (checked++ < MAX_TAGS_CHECKED && m.find()) {
+            if (trimmed.indexOf("</" + m.group(1), m.end()) >= 0) return true;
+        }
+        return false;
+    }
     
     /**
      * Extracts code blocks from markdown for special handling
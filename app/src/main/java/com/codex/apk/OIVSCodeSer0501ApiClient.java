@@ -19,9 +19,14 @@ public class OIVSCodeSer0501ApiClient extends AnyProviderApiClient {
         super(context, actionListener);
     }
 
+    @Override
+    public String getPrewarmUrl() {
+        return API_ENDPOINT;
+    }
+
     @Override
     public void sendMessage(String message, AIModel model, List<ChatMessage> history, QwenConversationState state, boolean thinkingModeEnabled, boolean webSearchEnabled, List<ToolSpec> enabledTools, List<File> attachments) {
-        new Thread(() -> {
+        CodeXApplication.getAiRequestExecutor().submitChat(handle -> {
             Response response = null;
             try {
                 if (actionListener != null) actionListener.onAiRequestStarted();
@@ -38,7 +43,7 @@ public class OIVSCodeSer0501ApiClient extends AnyProviderApiClient {
                         .addHeader("userid", userid)
                         .build();
 
-                response = httpClient.newCall(request).execute();
+                response = AiRequestExecutor.bound(httpClient.newCall(request)).execute();
                 if (!response.isSuccessful() || response.body() == null) {
                     String errBody = null;
                     try { if (response != null && response.body() != null) errBody = response.body().string(); } catch (Exception ignore) {}
@@ -48,12 +53,16 @@ public class OIVSCodeSer0501ApiClient extends AnyProviderApiClient {
                 }
 
                 StringBuilder finalText = new StringBuilder();
-                StringBuilder rawSse = new StringBuilder();
-                streamOpenAiSse(response, finalText, rawSse);
+                RawStreamCapture rawSse = RawStreamCapture.open("oivscode");
+                try {
+                    streamOpenAiSse(response, finalText, rawSse);
+                } finally {
+                    rawSse.close();
+                }
 
                 if (finalText.length() > 0) {
                     if (actionListener != null) {
-                        actionListener.onAiActionsProcessed(rawSse.toString(), finalText.toString(), new java.util.ArrayList<>(), new java.util.ArrayList<>(), model.getDisplayName());
+                        actionListener.onAiActionsProcessed(rawSse.snapshot(), finalText.toString(), new java.util.ArrayList<>(), new java.util.ArrayList<>(), model.getDisplayName());
                     }
                 } else {
                     if (actionListener != null) actionListener.onAiError("No response from provider");
@@ -64,7 +73,7 @@ public class OIVSCodeSer0501ApiClient extends AnyProviderApiClient {
                 try { if (response != null) response.close(); } catch (Exception ignore) {}
                 if (actionListener != null) actionListener.onAiRequestCompleted();
             }
-        }).start();
+        });
     }
 
     private String generateUserId() {
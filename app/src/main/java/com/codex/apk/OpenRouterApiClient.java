@@ -5,6 +5,9 @@ import android.util.Log;
 
 import com.codex.apk.ai.AIModel;
 import com.codex.apk.ai.AIProvider;
+import com.codex.apk.ai.StreamChannel;
+import com.codex.apk.ai.StreamDelta;
+import com.codex.apk.ai.StreamDeltaExtractor;
 import com.codex.apk.ai.ModelCapabilities;
 import com.codex.apk.ai.ModelCapabilities;
 import com.codex.apk.ai.ModelCapabilities;
@@ -38,7 +41,7 @@ public class OpenRouterApiClient implements ApiClient {
     public OpenRouterApiClient(Context context, AIAssistant.AIActionListener actionListener) {
         this.context = context.getApplicationContext();
         this.actionListener = actionListener;
-        this.http = new OkHttpClient.Builder()
+        this.http = CodeXApplication.getHttpRuntime().newClientBuilder("openrouter", 8, 4)
                 .connectTimeout(60, TimeUnit.SECONDS)
                 .readTimeout(180, TimeUnit.SECONDS)
                 .writeTimeout(120, TimeUnit.SECONDS)
@@ -54,7 +57,7 @@ public class OpenRouterApiClient implements ApiClient {
                             boolean webSearchEnabled,
                             List<ToolSpec> enabledTools,
                             List<File> attachments) {
-        new Thread(() -> {
+        CodeXApplication.getAiRequestExecutor().submitChat(handle -> {
             if (actionListener != null) actionListener.onAiRequestStarted();
             try {
                 String apiKey = SettingsActivity.getOpenRouterApiKey(context);
@@ -91,32 +94,32 @@ public class OpenRouterApiClient implements ApiClient {
 
                 SseClient sse = new SseClient(http);
                 StringBuilder finalText = new StringBuilder();
-                StringBuilder rawSse = new StringBuilder();
+                final RawStreamCapture rawSse = RawStreamCapture.open("openrouter");
+                final long[] streamSeq = new long[]{0L};
+                final StreamDeltaExtractor extractor = new StreamDeltaExtractor(getDeltaSchema());
                 sse.postStream(url, httpReq.headers(), req.getAsJsonObject(), new SseClient.Listener() {
                     @Override public void onOpen() {}
-                    @Override public void onDelta(JsonObject chunk) {
-                        rawSse.append("data: ").append(chunk.toString()).append('\n');
-                        try {
-                            if (chunk.has("choices") && chunk.get("choices").isJsonArray()) {
-                                JsonArray choices = chunk.getAsJsonArray("choices");
-                                for (int i = 0; i < choices.size(); i++) {
-                                    JsonObject c = choices.get(i).getAsJsonObject();
-                                    JsonObject delta = c.has("delta") && c.get("delta").isJsonObject() ? c.getAsJsonObject("delta") : null;
-                                    if (delta != null && delta.has("content") && !delta.get("content").isJsonNull()) {
-                                        finalText.append(delta.get("content").getAsString());
-                                        actionListener.onAiStreamUpdate(finalText.toString(), false);
-                                    }
-                                }
-                            }
-                        } catch (Exception ignore) {}
+                    @Override public boolean onEvent(SseEventParser.Event event) {
+                        CharSequence data = event.dataView();
+                        if (SseClient.isBlankOrDone(data)) return true;
+                        rawSse.appendEvent(data);
+                        StreamDelta delta = extractor.extract(data);
+                        if (delta != null && delta.hasContent()) {
+                            finalText.append(delta.content);
+                            actionListener.onAiStreamDelta(delta.content, streamSeq[0]++, StreamChannel.ANSWER);
+                        }
+                        return true;
                     }
+                    @Override public void onDelta(JsonObject chunk) {}
                     @Override public void onUsage(JsonObject usage) {}
                     @Override public void onError(String message, int code) {
+                        rawSse.close();
                         if (actionListener != null) actionListener.onAiError("OpenRouter API error: " + code + (message != null ? ": " + message : ""));
                     }
                     @Override public void onComplete() {
+                        rawSse.close();
                         if (actionListener == null) return;
-                        ResponseDemuxer.handleGeneric(actionListener, model.getDisplayName(), rawSse.toString(), finalText.toString(), null);
+                        ResponseDemuxer.handleGeneric(actionListener, model.getDisplayName(), rawSse.snapshot(), finalText.toString(), null);
                         actionListener.onAiRequestCompleted();
                     }
                 });
@@ -126,7 +129,17 @@ public class OpenRouterApiClient implements ApiClient {
             } finally {
                 if (actionListener != null) actionListener.onAiRequestCompleted();
             }
-        }).start();
+        });
+    }
+
+    @Override
+    public String getPrewarmUrl() {
+        return BASE_URL;
+    }
+
+    @Override
+    public void prewarm() {
+        CodeXApplication.getHttpRuntime().prewarm(http, getPrewarmUrl());
     }
 
     @Override
@@ -141,7 +154,7 @@ public class OpenRouterApiClient implements ApiClient {
                 .addHeader("Authorization", "Bearer " + apiKey)
                 .build();
 
-        try (Response response = http.newCall(request).execute()) {
+        try (Response response = AiRequestExecutor.bound(http.newCall(request)).execute()) {
             if (!response.isSuccessful()) {
                 return new ArrayList<>();
             }
@@ -7,6 +7,7 @@ import android.os.Environment;
 import android.util.Log;
 import android.widget.Toast;
 import androidx.core.content.FileProvider;
+import com.codex.apk.util.FileTransaction;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -164,6 +165,7 @@ public class ProjectImportExportManager {
         byte[] buffer = new byte[1024];
         if (sourceFile.isDirectory()) {
             for (File file : sourceFile.listFiles()) {
+                if (FileTransaction.isInternal(file)) continue;
                 zipFile(rootDir, file, zos);
             }
         } else {
@@ -90,6 +90,8 @@ public class PromptManager {
                "TOOL PROTOCOL:\n" +
                "- When needing context, first call tools (never guess).\n" +
                "```json\n{\n  \"action\": \"tool_call\",\n  \"tool_calls\": [\n    { \"name\": \"listProjectTree\", \"args\": { \"path\": \".\", \"depth\": 3, \"maxEntries\": 400 } },\n    { \"name\": \"searchInProject\", \"args\": { \"query\": \"<head>|tailwindcss\", \"maxResults\": 50, \"regex\": false } },\n    { \"name\": \"readFile\", \"args\": { \"path\": \"index.html\" } }\n  ]\n}\n```\n" +
+               "- For large files, page with readFileRange { \"path\", \"startLine\", \"endLine\" } instead of reading the whole file.\n" +
+               "- To locate a function, class, selector or id, call findSymbol { \"query\" } or fileOutline { \"path\" } before grepping.\n" +
                "- The IDE will respond with:\n" +
                "```json\n{\n  \"action\": \"tool_result\",\n  \"results\": [\n    { \"name\": \"listProjectTree\", \"ok\": true, \"entries\": [/* ... */] },\n    { \"name\": \"searchInProject\", \"ok\": true, \"matches\": [/* ... */] },\n    { \"name\": \"readFile\", \"ok\": true, \"content\": \"...\" }\n  ]\n}\n```\n" +
                "- After tool_result, emit a single file_operation JSON focusing on minimal diffs. Do not include a plan here.\n\n" +
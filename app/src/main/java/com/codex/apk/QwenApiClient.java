@@ -5,6 +5,10 @@ import android.util.Log;
 import com.codex.apk.ai.AIModel;
 import com.codex.apk.ai.AIProvider;
 import com.codex.apk.ai.ModelCapabilities;
+import com.codex.apk.ai.DeltaSchema;
+import com.codex.apk.ai.StreamChannel;
+import com.codex.apk.ai.StreamDelta;
+import com.codex.apk.ai.StreamDeltaExtractor;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -37,7 +41,7 @@ public class QwenApiClient implements ApiClient {
     public QwenApiClient(Context context, AIAssistant.AIActionListener actionListener, File projectDir) {
         this.actionListener = actionListener;
         this.projectDir = projectDir;
-        this.httpClient = new OkHttpClient.Builder()
+        this.httpClient = CodeXApplication.getHttpRuntime().newClientBuilder("qwen", 8, 4)
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(0, TimeUnit.SECONDS)
@@ -49,7 +53,7 @@ public class QwenApiClient implements ApiClient {
 
     @Override
     public void sendMessage(String message, AIModel model, List<ChatMessage> history, QwenConversationState state, boolean thinkingModeEnabled, boolean webSearchEnabled, List<ToolSpec> enabledTools, List<File> attachments) {
-        new Thread(() -> {
+        CodeXApplication.getAiRequestExecutor().submitChat(handle -> {
             try {
                 if (actionListener != null) actionListener.onAiRequestStarted();
                 String conversationId = conversationManager.startOrContinueConversation(state, model, webSearchEnabled);
@@ -62,7 +66,7 @@ public class QwenApiClient implements ApiClient {
             } catch (IOException e) {
                 if (actionListener != null) actionListener.onAiError("Error: " + e.getMessage());
             }
-        }).start();
+        });
     }
 
     private void performCompletion(QwenConversationState state, AIModel model, boolean thinkingModeEnabled, boolean webSearchEnabled, List<ToolSpec> enabledTools, String userMessage) throws IOException {
@@ -72,105 +76,86 @@ public class QwenApiClient implements ApiClient {
                 .newBuilder().set("Accept", "text/event-stream").build();
         SseClient sse = new SseClient(httpClient);
         StringBuilder finalText = new StringBuilder();
-        StringBuilder rawSse = new StringBuilder();
+        final RawStreamCapture rawSse = RawStreamCapture.open("qwen");
         final StringBuilder thinkingText = new StringBuilder();
         final boolean[] aborted = new boolean[]{false};
         final boolean[] retriedJsonError = new boolean[]{false};
         final boolean[] retriedHttpError = new boolean[]{false};
+        final long[] streamSeq = new long[]{0L};
+        final StreamDeltaExtractor extractor = new StreamDeltaExtractor(getDeltaSchema());
         sse.postStreamWithRetry(QWEN_BASE_URL + "/chat/completions?chat_id=" + state.getConversationId(), headers, requestBody, 3, 500L, new SseClient.Listener() {
             @Override public void onOpen() {
                 // If midtoken is near expiry by use or age, proactively refresh for next calls
                 try { midTokenManager.ensureMidToken(false); } catch (Exception ignore) {}
             }
-            @Override public void onDelta(JsonObject chunk) {
-                if (aborted[0]) return;
-                rawSse.append("data: ").append(chunk.toString()).append('\n');
-                try {
-                    // Detect JSON-signaled errors (rate limit/auth/invalid)
-                    boolean isJsonError = false;
-                    String errorCodeStr = null;
-                    if (chunk.has("data") && chunk.get("data").isJsonObject()) {
-                        JsonObject dataObj = chunk.getAsJsonObject("data");
-                        if (dataObj.has("code")) { isJsonError = true; errorCodeStr = String.valueOf(dataObj.get("code")); }
-                    }
-                    if (!isJsonError && chunk.has("code")) { isJsonError = true; errorCodeStr = String.valueOf(chunk.get("code")); }
-                    if (!isJsonError && chunk.has("error") && chunk.get("error").isJsonObject()) {
-                        JsonObject err = chunk.getAsJsonObject("error");
-                        if (err.has("code")) { isJsonError = true; errorCodeStr = String.valueOf(err.get("code")); }
-                        else if (err.has("message")) { isJsonError = true; errorCodeStr = err.get("message").getAsString(); }
-                    }
-                    if (isJsonError) {
-                        if (!retriedJsonError[0]) {
-                            retriedJsonError[0] = true;
-                            aborted[0] = true;
-                            try { midTokenManager.ensureMidToken(true); } catch (Exception ignore) {}
-                            new Thread(() -> {
-                                try { performCompletion(state, model, thinkingModeEnabled, webSearchEnabled, enabledTools, userMessage); } catch (IOException ignore) {}
-                            }).start();
-                            return;
-                        } else {
-                            if (actionListener != null) actionListener.onAiError("Qwen error: " + (errorCodeStr != null ? errorCodeStr : "unknown"));
-                            return;
-                        }
-                    }
-                    if (chunk.has("response.created")) {
-                        JsonObject created = chunk.getAsJsonObject("response.created");
-                        if (created.has("chat_id")) state.setConversationId(created.get("chat_id").getAsString());
-                        if (created.has("response_id")) state.setLastParentId(created.get("response_id").getAsString());
-                        if (actionListener != null) actionListener.onQwenConversationStateUpdated(state);
-                        return;
-                    }
-                    if (chunk.has("choices")) {
-                        JsonArray choices = chunk.getAsJsonArray("choices");
-                        if (choices.size() > 0) {
-                            JsonObject choice = choices.get(0).getAsJsonObject();
-                            JsonObject delta = choice.has("delta") && choice.get("delta").isJsonObject() ? choice.getAsJsonObject("delta") : new JsonObject();
-                            String status = delta.has("status") ? delta.get("status").getAsString() : "";
-                            String content = delta.has("content") && !delta.get("content").isJsonNull() ? delta.get("content").getAsString() : "";
-                            String phase = delta.has("phase") ? delta.get("phase").getAsString() : "";
-                            if ("think".equals(phase)) {
-                                thinkingText.append(content);
-                                actionListener.onAiStreamUpdate(thinkingText.toString(), true);
-                            } else if ("answer".equals(phase)) {
-                                finalText.append(content);
-                                actionListener.onAiStreamUpdate(finalText.toString(), false);
-                            }
-                            // Some providers put the final message at choices[0].message
-                            if ((content == null || content.isEmpty()) && choice.has("message") && choice.get("message").isJsonObject()) {
-                                JsonObject msg = choice.getAsJsonObject("message");
-                                if (msg.has("content") && !msg.get("content").isJsonNull()) {
-                                    finalText.append(msg.get("content").getAsString());
-                                    actionListener.onAiStreamUpdate(finalText.toString(), false);
-                                }
-                            }
-                            if ("finished".equals(status)) {
-                                // Completed; handled onComplete
-                            }
-                        }
+            @Override public boolean onEvent(SseEventParser.Event event) {
+                if (aborted[0]) return true;
+                CharSequence data = event.dataView();
+                if (SseClient.isBlankOrDone(data)) return true;
+                rawSse.appendEvent(data);
+                StreamDelta delta = extractor.extract(data);
+                if (delta == null) return true; // partial or malformed chunk; still captured for recovery
+                // Detect JSON-signaled errors (rate limit/auth/invalid)
+                if (delta.errorCode != null) {
+                    if (!retriedJsonError[0]) {
+                        retriedJsonError[0] = true;
+                        aborted[0] = true;
+                        rawSse.close();
+                        try { midTokenManager.ensureMidToken(true); } catch (Exception ignore) {}
+                        CodeXApplication.getAiRequestExecutor().followUp(handle -> {
+                            try { performCompletion(state, model, thinkingModeEnabled, webSearchEnabled, enabledTools, userMessage); } catch (IOException ignore) {}
+                        });
+                    } else {
+                        if (actionListener != null) actionListener.onAiError("Qwen error: " + delta.errorCode);
                     }
-                } catch (Exception ignore) {}
+                    return true;
+                }
+                if (delta.created) {
+                    applyCreated(state, delta);
+                    return true;
+                }
+                String content = delta.content != null ? delta.content : "";
+                if ("think".equals(delta.phase)) {
+                    thinkingText.append(content);
+                    if (!content.isEmpty()) actionListener.onAiStreamDelta(content, streamSeq[0]++, StreamChannel.THINKING);
+                } else if ("answer".equals(delta.phase)) {
+                    finalText.append(content);
+                    if (!content.isEmpty()) actionListener.onAiStreamDelta(content, streamSeq[0]++, StreamChannel.ANSWER);
+                }
+                // Some providers put the final message at choices[0].message
+                if (content.isEmpty() && delta.messageContent != null) {
+                    finalText.append(delta.messageContent);
+                    actionListener.onAiStreamDelta(delta.messageContent, streamSeq[0]++, StreamChannel.ANSWER);
+                }
+                return true;
+            }
+            @Override public void onDelta(JsonObject chunk) {
+                // Chunks are consumed in onEvent without building a JSON tree
             }
             @Override public void onUsage(JsonObject usage) {
                 // Heuristic: if server reports low output tokens but many input tokens repeatedly, we may be rate-limited soon.
                 // No-op here but could log/telemetry in future.
             }
             @Override public void onError(String message, int code) {
+                rawSse.close();
                 if ((code == 401 || code == 403 || code == 429) && !retriedHttpError[0]) {
                     retriedHttpError[0] = true;
                     try { midTokenManager.ensureMidToken(true); } catch (Exception ignore) {}
-                    new Thread(() -> {
+                    CodeXApplication.getAiRequestExecutor().followUp(handle -> {
                         try { performCompletion(state, model, thinkingModeEnabled, webSearchEnabled, enabledTools, userMessage); } catch (IOException ignore) {}
-                    }).start();
+                    });
                     return;
                 }
                 if (actionListener != null) actionListener.onAiError("Failed to send message (HTTP " + code + ")" + (message != null ? (": " + message) : ""));
             }
             @Override public void onComplete() {
+                rawSse.close();
                 if (aborted[0]) return;
+                final String rawSnapshot = rawSse.snapshot();
                 // Prefer answer content; if empty, fallback to thinking. If still empty, try salvage from raw.
                 String completedText = finalText.length() > 0 ? finalText.toString() : thinkingText.toString();
                 if (completedText == null || completedText.trim().isEmpty()) {
-                    completedText = new QwenStreamProcessor(actionListener, state, model, projectDir).recoverContentFromRaw(rawSse.toString());
+                    completedText = new QwenStreamProcessor(actionListener, state, model, projectDir).recoverContentFromRaw(rawSse);
                 }
                 // Final safety: if still empty and we received no valid chunks, perform a non-streaming fallback request
                 if ((completedText == null || completedText.trim().isEmpty())) {
@@ -191,17 +176,7 @@ public class QwenApiClient implements ApiClient {
                             JsonObject maybe = JsonParser.parseString(jsonToParse).getAsJsonObject();
                             if (maybe.has("action") && "tool_call".equalsIgnoreCase(maybe.get("action").getAsString()) && maybe.has("tool_calls")) {
                                 JsonArray calls = maybe.getAsJsonArray("tool_calls");
-                                JsonArray results = new JsonArray();
-                                for (int i = 0; i < calls.size(); i++) {
-                                    JsonObject c = calls.get(i).getAsJsonObject();
-                                    String name = c.get("name").getAsString();
-                                    JsonObject args = c.has("args") && c.get("args").isJsonObject() ? c.getAsJsonObject("args") : new JsonObject();
-                                    JsonObject toolResult = ToolExecutor.execute(projectDir, name, args);
-                                    JsonObject res = new JsonObject();
-                                    res.addProperty("name", name);
-                                    res.add("result", toolResult);
-                                    results.add(res);
-                                }
+                                JsonArray results = ToolBatch.execute(projectDir, calls, null);
                                 String continuation = ToolExecutor.buildToolResultContinuation(results);
                                 performContinuation(state, model, continuation);
                                 return; // continuation will complete the request lifecycle
@@ -212,27 +187,38 @@ public class QwenApiClient implements ApiClient {
                         if (parsed != null && parsed.isValid) {
                             if ("plan".equals(parsed.action)) {
                                 List<ChatMessage.PlanStep> planSteps = QwenResponseParser.toPlanSteps(parsed);
-                                actionListener.onAiActionsProcessed(rawSse.toString(), parsed.explanation, new ArrayList<>(), new ArrayList<>(), planSteps, model.getDisplayName());
+                                actionListener.onAiActionsProcessed(rawSnapshot, parsed.explanation, new ArrayList<>(), new ArrayList<>(), planSteps, model.getDisplayName());
                             } else if (parsed.action != null && parsed.action.contains("file")) {
                                 List<ChatMessage.FileActionDetail> details = QwenResponseParser.toFileActionDetails(parsed);
-                                actionListener.onAiActionsProcessed(rawSse.toString(), parsed.explanation, new ArrayList<>(), details, model.getDisplayName());
+                                actionListener.onAiActionsProcessed(rawSnapshot, parsed.explanation, new ArrayList<>(), details, model.getDisplayName());
                             } else {
-                                actionListener.onAiActionsProcessed(rawSse.toString(), parsed.explanation, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
+                                actionListener.onAiActionsProcessed(rawSnapshot, parsed.explanation, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
                             }
                         } else {
-                            actionListener.onAiActionsProcessed(rawSse.toString(), completedText, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
+                            actionListener.onAiActionsProcessed(rawSnapshot, completedText, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
                         }
                     } catch (Exception e) {
-                        actionListener.onAiActionsProcessed(rawSse.toString(), completedText, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
+                        actionListener.onAiActionsProcessed(rawSnapshot, completedText, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
                     }
                 } else {
-                    actionListener.onAiActionsProcessed(rawSse.toString(), completedText, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
+                    actionListener.onAiActionsProcessed(rawSnapshot, completedText, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
                 }
                 if (actionListener != null) actionListener.onAiRequestCompleted();
             }
         });
     }
 
+    @Override
+    public DeltaSchema getDeltaSchema() {
+        return DeltaSchema.QWEN_PHASE;
+    }
+
+    private void applyCreated(QwenConversationState state, StreamDelta delta) {
+        if (delta.createdChatId != null) state.setConversationId(delta.createdChatId);
+        if (delta.createdResponseId != null) state.setLastParentId(delta.createdResponseId);
+        if (actionListener != null) actionListener.onQwenConversationStateUpdated(state);
+    }
+
     /**
      * Fallback: perform a non-streaming completion to recover content when SSE yields nothing.
      */
@@ -252,7 +238,7 @@ public class QwenApiClient implements ApiClient {
                 .headers(headers)
                 .post(RequestBody.create(body.toString(), MediaType.parse("application/json")))
                 .build();
-        try (Response resp = httpClient.newCall(req).execute()) {
+        try (Response resp = AiRequestExecutor.bound(httpClient.newCall(req)).execute()) {
             if (!resp.isSuccessful() || resp.body() == null) return null;
             String text = resp.body().string();
             try {
@@ -300,49 +286,42 @@ public class QwenApiClient implements ApiClient {
                 .newBuilder().add("Accept", "text/event-stream").build();
         SseClient sse = new SseClient(httpClient);
         StringBuilder finalText = new StringBuilder();
-        StringBuilder rawSse = new StringBuilder();
+        final RawStreamCapture rawSse = RawStreamCapture.open("qwen");
+        final long[] streamSeq = new long[]{0L};
+        final StreamDeltaExtractor extractor = new StreamDeltaExtractor(getDeltaSchema());
         sse.postStreamWithRetry(QWEN_BASE_URL + "/chat/completions?chat_id=" + state.getConversationId(), headers, requestBody, 3, 500L, new SseClient.Listener() {
             @Override public void onOpen() {}
-            @Override public void onDelta(JsonObject chunk) {
-                rawSse.append("data: ").append(chunk.toString()).append('\n');
-                try {
-                    if (chunk.has("response.created")) {
-                        JsonObject created = chunk.getAsJsonObject("response.created");
-                        if (created.has("chat_id")) state.setConversationId(created.get("chat_id").getAsString());
-                        if (created.has("response_id")) state.setLastParentId(created.get("response_id").getAsString());
-                        if (actionListener != null) actionListener.onQwenConversationStateUpdated(state);
-                        return;
-                    }
-                    if (chunk.has("choices")) {
-                        JsonArray choices = chunk.getAsJsonArray("choices");
-                        if (choices.size() > 0) {
-                            JsonObject choice = choices.get(0).getAsJsonObject();
-                            JsonObject delta = choice.has("delta") && choice.get("delta").isJsonObject() ? choice.getAsJsonObject("delta") : new JsonObject();
-                            String status = delta.has("status") ? delta.get("status").getAsString() : "";
-                            String content = delta.has("content") && !delta.get("content").isJsonNull() ? delta.get("content").getAsString() : "";
-                            String phase = delta.has("phase") ? delta.get("phase").getAsString() : "";
-                            if ("answer".equals(phase)) {
-                                finalText.append(content);
-                                actionListener.onAiStreamUpdate(finalText.toString(), false);
-                            }
-                            // message fallback
-                            if ((content == null || content.isEmpty()) && choice.has("message") && choice.get("message").isJsonObject()) {
-                                JsonObject msg = choice.getAsJsonObject("message");
-                                if (msg.has("content") && !msg.get("content").isJsonNull()) {
-                                    finalText.append(msg.get("content").getAsString());
-                                    actionListener.onAiStreamUpdate(finalText.toString(), false);
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception ignore) {}
+            @Override public boolean onEvent(SseEventParser.Event event) {
+                CharSequence data = event.dataView();
+                if (SseClient.isBlankOrDone(data)) return true;
+                rawSse.appendEvent(data);
+                StreamDelta delta = extractor.extract(data);
+                if (delta == null) return true;
+                if (delta.created) {
+                    applyCreated(state, delta);
+                    return true;
+                }
+                String content = delta.content != null ? delta.content : "";
+                if ("answer".equals(delta.phase)) {
+                    finalText.append(content);
+                    if (!content.isEmpty()) actionListener.onAiStreamDelta(content, streamSeq[0]++, StreamChannel.ANSWER);
+                }
+                // message fallback
+                if (content.isEmpty() && delta.messageContent != null) {
+                    finalText.append(delta.messageContent);
+                    actionListener.onAiStreamDelta(delta.messageContent, streamSeq[0]++, StreamChannel.ANSWER);
+                }
+                return true;
             }
+            @Override public void onDelta(JsonObject chunk) {}
             @Override public void onUsage(JsonObject usage) {}
-            @Override public void onError(String message, int code) {}
+            @Override public void onError(String message, int code) { rawSse.close(); }
             @Override public void onComplete() {
+                rawSse.close();
+                final String rawSnapshot = rawSse.snapshot();
                 String completed = finalText.toString();
                 if (completed == null || completed.trim().isEmpty()) {
-                    completed = new QwenStreamProcessor(actionListener, state, model, projectDir).recoverContentFromRaw(rawSse.toString());
+                    completed = new QwenStreamProcessor(actionListener, state, model, projectDir).recoverContentFromRaw(rawSse);
                     if (completed == null || completed.trim().isEmpty()) {
                         try {
                             String nonStream = performNonStreamingCompletion(state, model, false, false, new java.util.ArrayList<>(), "");
@@ -358,12 +337,12 @@ public class QwenApiClient implements ApiClient {
                         if (parsed != null && parsed.isValid) {
                             if ("plan".equals(parsed.action)) {
                                 List<ChatMessage.PlanStep> planSteps = QwenResponseParser.toPlanSteps(parsed);
-                                actionListener.onAiActionsProcessed(rawSse.toString(), parsed.explanation, new ArrayList<>(), new ArrayList<>(), planSteps, model.getDisplayName());
+                                actionListener.onAiActionsProcessed(rawSnapshot, parsed.explanation, new ArrayList<>(), new ArrayList<>(), planSteps, model.getDisplayName());
                             } else if (parsed.action != null && parsed.action.contains("file")) {
                                 List<ChatMessage.FileActionDetail> details = QwenResponseParser.toFileActionDetails(parsed);
-                                actionListener.onAiActionsProcessed(rawSse.toString(), parsed.explanation, new ArrayList<>(), details, model.getDisplayName());
+                                actionListener.onAiActionsProcessed(rawSnapshot, parsed.explanation, new ArrayList<>(), details, model.getDisplayName());
                             } else {
-                                actionListener.onAiActionsProcessed(rawSse.toString(), completed, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
+                                actionListener.onAiActionsProcessed(rawSnapshot, completed, new ArrayList<>(), new ArrayList<>(), model.getDisplayName());
                             }
                         }
                     } catch (Exception ignore) {}
@@ -396,6 +375,20 @@ public class QwenApiClient implements ApiClient {
         }
     }
 
+    @Override
+    public String getPrewarmUrl() {
+        return QWEN_BASE_URL;
+    }
+
+    @Override
+    public void prewarm() {
+        CodeXApplication.getHttpRuntime().prewarm(httpClient, QWEN_BASE_URL);
+        CodeXApplication.getAiRequestExecutor().submit("prewarm", AiRequestExecutor.Priority.BACKGROUND, 30_000L, handle -> {
+            // Fetches a mid-token only if none is cached; a rejected one is force-refreshed on the request's error path
+            try { midTokenManager.ensureMidToken(false); } catch (Exception e) { Log.w(TAG, "Mid-token pre-warm failed: " + e.getMessage()); }
+        });
+    }
+
     @Override
     public List<AIModel> fetchModels() {
         String mid;
@@ -410,7 +403,7 @@ public class QwenApiClient implements ApiClient {
                 .headers(QwenRequestFactory.buildQwenHeaders(mid, null))
                 .build();
 
-        try (Response response = httpClient.newCall(request).execute()) {
+        try (Response response = AiRequestExecutor.bound(httpClient.newCall(request)).execute()) {
             if (response.isSuccessful() && response.body() != null) {
                 String responseBody = response.body().string();
                 JsonObject responseJson = JsonParser.parseString(responseBody).getAsJsonObject();
@@ -52,7 +52,7 @@ public class QwenConversationManager {
                 .headers(QwenRequestFactory.buildQwenHeaders(qwenToken, null))
                 .build();
 
-        try (Response response = httpClient.newCall(request).execute()) {
+        try (Response response = AiRequestExecutor.bound(httpClient.newCall(request)).execute()) {
             if (response.isSuccessful() && response.body() != null) {
                 String responseBody = response.body().string();
                 JsonObject responseJson = JsonParser.parseString(responseBody).getAsJsonObject();
@@ -68,7 +68,7 @@ public class QwenConversationManager {
                             .post(RequestBody.create(requestBody.toString(), MediaType.parse("application/json")))
                             .headers(QwenRequestFactory.buildQwenHeaders(qwenToken, null))
                             .build();
-                    try (Response resp2 = httpClient.newCall(retry).execute()) {
+                    try (Response resp2 = AiRequestExecutor.bound(httpClient.newCall(retry)).execute()) {
                         if (resp2.isSuccessful() && resp2.body() != null) {
                             String responseBody2 = resp2.body().string();
                             JsonObject responseJson2 = JsonParser.parseString(responseBody2).getAsJsonObject();
@@ -49,7 +49,7 @@ public class QwenMidTokenManager {
                 .addHeader("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/138.0.0.0 Safari/537.36")
                 .addHeader("Accept", "*/*")
                 .build();
-        try (Response resp = httpClient.newCall(req).execute()) {
+        try (Response resp = AiRequestExecutor.bound(httpClient.newCall(req)).execute()) {
             if (!resp.isSuccessful() || resp.body() == null) {
                 throw new IOException("Failed to fetch midtoken: HTTP " + resp.code());
             }
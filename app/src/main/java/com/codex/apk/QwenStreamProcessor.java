@@ -2,6 +2,10 @@ package com.codex.apk;
 
 import android.util.Log;
 import com.codex.apk.ai.AIModel;
+import com.codex.apk.ai.DeltaSchema;
+import com.codex.apk.ai.StreamChannel;
+import com.codex.apk.ai.StreamDelta;
+import com.codex.apk.ai.StreamDeltaExtractor;
 import com.codex.apk.ai.WebSource;
 import com.codex.apk.ChatMessage;
 import com.codex.apk.ToolExecutor;
@@ -90,146 +94,110 @@ public class QwenStreamProcessor {
         StringBuilder answerContent = new StringBuilder();
         List<com.codex.apk.ai.WebSource> webSources = new ArrayList<>();
         Set<String> seenWebUrls = new HashSet<>();
-        StringBuilder rawStreamData = new StringBuilder();
+        long streamSeq = 0L;
+        StreamDeltaExtractor extractor = new StreamDeltaExtractor(DeltaSchema.QWEN_PHASE);
 
-        String line;
-        boolean firstLineChecked = false;
-        while ((line = response.body().source().readUtf8Line()) != null) {
-            rawStreamData.append(line).append("\n");
-            String t = line.trim();
-            if (t.isEmpty()) continue;
-            if (!firstLineChecked) {
-                firstLineChecked = true;
-                // Some servers send an initial JSON line before SSE data:
-                if (t.startsWith("{") || t.startsWith("[")) {
-                    try {
-                        JsonObject data = JsonParser.parseString(t).getAsJsonObject();
-                        if (data.has("response.created")) {
-                            JsonObject created = data.getAsJsonObject("response.created");
-                            if (created.has("chat_id")) conversationState.setConversationId(created.get("chat_id").getAsString());
-                            if (created.has("response_id")) conversationState.setLastParentId(created.get("response_id").getAsString());
-                            if (actionListener != null) actionListener.onQwenConversationStateUpdated(conversationState);
+        try (RawStreamCapture rawStreamData = RawStreamCapture.open("qwen")) {
+            String line;
+            boolean firstLineChecked = false;
+            while ((line = response.body().source().readUtf8Line()) != null) {
+                rawStreamData.appendLine(line);
+                String t = line.trim();
+                if (t.isEmpty()) continue;
+                if (!firstLineChecked) {
+                    firstLineChecked = true;
+                    // Some servers send an initial JSON line before SSE data:
+                    if (t.startsWith("{") || t.startsWith("[")) {
+                        StreamDelta first = extractor.extract(t);
+                        if (first != null && first.created) {
+                            applyCreated(first);
                             continue;
                         }
-                    } catch (Exception ignore) {}
-                }
-            }
-            if ("data: [DONE]".equals(t) || "[DONE]".equals(t)) {
-                String finalContentDone = answerContent.length() > 0 ? answerContent.toString() : thinkingContent.toString();
-                notifyListener(rawStreamData.toString(), finalContentDone, thinkingContent.toString(), webSources);
-                if (actionListener != null) actionListener.onQwenConversationStateUpdated(conversationState);
-                break;
-            }
-            if (t.startsWith("data: ")) {
-                String jsonData = t.substring(6);
-                if (jsonData.trim().isEmpty()) continue;
-                String trimmedJson = jsonData.trim();
-                if (!(trimmedJson.startsWith("{") || trimmedJson.startsWith("["))) continue;
-                try {
-                    JsonObject data = JsonParser.parseString(trimmedJson).getAsJsonObject();
-                    if (data.has("response.created")) {
-                        JsonObject created = data.getAsJsonObject("response.created");
-                        if (created.has("chat_id")) conversationState.setConversationId(created.get("chat_id").getAsString());
-                        if (created.has("response_id")) conversationState.setLastParentId(created.get("response_id").getAsString());
-                        if (actionListener != null) actionListener.onQwenConversationStateUpdated(conversationState);
-                        continue;
                     }
+                }
+                if ("data: [DONE]".equals(t) || "[DONE]".equals(t)) {
+                    String finalContentDone = answerContent.length() > 0 ? answerContent.toString() : thinkingContent.toString();
+                    notifyListener(rawStreamData.snapshot(), finalContentDone, thinkingContent.toString(), webSources);
+                    if (actionListener != null) actionListener.onQwenConversationStateUpdated(conversationState);
+                    break;
+                }
+                if (t.startsWith("data: ")) {
+                    String jsonData = t.substring(6);
+                    if (jsonData.trim().isEmpty()) continue;
+                    String trimmedJson = jsonData.trim();
+                    if (!(trimmedJson.startsWith("{") || trimmedJson.startsWith("["))) continue;
+                    try {
+                        StreamDelta delta = extractor.extract(trimmedJson);
+                        if (delta == null) throw new IOException("Malformed stream chunk");
+                        if (delta.created) {
+                            applyCreated(delta);
+                            continue;
+                        }
 
-                    if (data.has("choices")) {
-                        JsonArray choices = data.getAsJsonArray("choices");
-                        if (choices.size() > 0) {
-                            JsonObject choice = choices.get(0).getAsJsonObject();
-                            JsonObject delta = choice.getAsJsonObject("delta");
-                            String status = delta.has("status") ? delta.get("status").getAsString() : "";
-                            String content = delta.has("content") ? delta.get("content").getAsString() : "";
-                            String phase = delta.has("phase") ? delta.get("phase").getAsString() : "";
-                            JsonObject extra = delta.has("extra") && delta.get("extra").isJsonObject() ? delta.getAsJsonObject("extra") : null;
+                        String status = delta.status;
+                        String content = delta.content != null ? delta.content : "";
+                        String phase = delta.phase;
 
-                            if ("think".equals(phase)) {
-                                thinkingContent.append(content);
-                                if (actionListener != null) actionListener.onAiStreamUpdate(thinkingContent.toString(), true);
-                            } else if ("answer".equals(phase)) {
-                                answerContent.append(content);
-                                if (actionListener != null) actionListener.onAiStreamUpdate(answerContent.toString(), false);
-                            }
+                        if ("think".equals(phase)) {
+                            thinkingContent.append(content);
+                            if (actionListener != null && !content.isEmpty()) actionListener.onAiStreamDelta(content, streamSeq++, StreamChannel.THINKING);
+                        } else if ("answer".equals(phase)) {
+                            answerContent.append(content);
+                            if (actionListener != null && !content.isEmpty()) actionListener.onAiStreamDelta(content, streamSeq++, StreamChannel.ANSWER);
+                        }
 
-                            // Collect web sources when present in extra
-                            if (extra != null && extra.has("sources") && extra.get("sources").isJsonArray()) {
-                                try {
-                                    JsonArray srcArr = extra.getAsJsonArray("sources");
-                                    for (int i = 0; i < srcArr.size(); i++) {
-                                        JsonObject s = srcArr.get(i).getAsJsonObject();
-                                        String url = s.has("url") ? s.get("url").getAsString() : null;
-                                        String title = s.has("title") ? s.get("title").getAsString() : null;
-                                        String snippet = s.has("snippet") ? s.get("snippet").getAsString() : null;
-                                        String favicon = s.has("favicon") ? s.get("favicon").getAsString() : null;
-                                        if (url != null && !seenWebUrls.contains(url)) {
-                                            seenWebUrls.add(url);
-                                            webSources.add(new WebSource(url, title, snippet, favicon));
-                                        }
-                                    }
-                                } catch (Exception ignore) {}
+                        // Collect web sources when present in extra
+                        for (WebSource source : delta.webSources) {
+                            if (source.url != null && seenWebUrls.add(source.url)) {
+                                webSources.add(source);
                             }
+                        }
 
-                            if ("finished".equals(status)) {
-                                String finalContent = answerContent.length() > 0 ? answerContent.toString() : thinkingContent.toString();
-                                // Defensive: some responses end with empty content but valid fenced JSON earlier
-                                String jsonToParse = extractJsonFromCodeBlock(finalContent);
-                                if (jsonToParse == null && QwenResponseParser.looksLikeJson(finalContent)) {
-                                    jsonToParse = finalContent;
-                                }
+                        if ("finished".equals(status)) {
+                            String finalContent = answerContent.length() > 0 ? answerContent.toString() : thinkingContent.toString();
+                            // Defensive: some responses end with empty content but valid fenced JSON earlier
+                            String jsonToParse = extractJsonFromCodeBlock(finalContent);
+                            if (jsonToParse == null && QwenResponseParser.looksLikeJson(finalContent)) {
+                                jsonToParse = finalContent;
+                            }
 
-                                if (jsonToParse != null) {
-                                    try {
-                                        JsonObject maybe = JsonParser.parseString(jsonToParse).getAsJsonObject();
-                                        if (maybe.has("action") && "tool_call".equals(maybe.get("action").getAsString())) {
-                                            JsonArray calls = maybe.getAsJsonArray("tool_calls");
-                                            JsonArray results = new JsonArray();
-                                            List<ChatMessage.ToolUsage> usages = new ArrayList<>();
-                                            for (int i = 0; i < calls.size(); i++) {
-                                                JsonObject c = calls.get(i).getAsJsonObject();
-                                                String name = c.get("name").getAsString();
-                                                JsonObject args = c.has("args") && c.get("args").isJsonObject() ? c.getAsJsonObject("args") : new JsonObject();
-                                                ChatMessage.ToolUsage usage = buildToolUsage(name, args);
-                                                usages.add(usage);
-                                                long start = System.currentTimeMillis();
-                                                JsonObject toolResult;
-                                                try {
-                                                    toolResult = ToolExecutor.execute(projectDir, name, args);
-                                                } catch (Exception ex) {
-                                                    toolResult = new JsonObject();
-                                                    toolResult.addProperty("ok", false);
-                                                    toolResult.addProperty("error", ex.getMessage());
-                                                }
-                                                updateToolUsageFromResult(usage, name, args, toolResult, System.currentTimeMillis() - start);
-                                                JsonObject res = new JsonObject();
-                                                res.addProperty("name", name);
-                                                res.add("result", toolResult);
-                                                results.add(res);
-                                            }
-                                            recordToolUsages(usages);
-                                            String continuation = ToolExecutor.buildToolResultContinuation(results);
-                                            return new StreamProcessingResult(true, continuation);
+                            if (jsonToParse != null) {
+                                try {
+                                    JsonObject maybe = JsonParser.parseString(jsonToParse).getAsJsonObject();
+                                    if (maybe.has("action") && "tool_call".equals(maybe.get("action").getAsString())) {
+                                        JsonArray calls = maybe.getAsJsonArray("tool_calls");
+                                        List<ChatMessage.ToolUsage> usages = new ArrayList<>();
+                                        for (int i = 0; i < calls.size(); i++) {
+                                            JsonObject c = calls.get(i).getAsJsonObject();
+                                            String name = c.get("name").getAsString();
+                                            JsonObject args = c.has("args") && c.get("args").isJsonObject() ? c.getAsJsonObject("args") : new JsonObject();
+                                            usages.add(buildToolUsage(name, args));
                                         }
-                                    } catch (Exception e) {
-                                        // Not a tool call, proceed with normal parsing
+                                        // Independent calls run in parallel; results stay in call order
+                                        JsonArray results = ToolBatch.execute(projectDir, calls, (index, name, args, toolResult, durationMs) ->
+                                                updateToolUsageFromResult(usages.get(index), name, args, toolResult, durationMs));
+                                        recordToolUsages(usages);
+                                        String continuation = ToolExecutor.buildToolResultContinuation(results);
+                                        return new StreamProcessingResult(true, continuation);
                                     }
+                                } catch (Exception e) {
+                                    // Not a tool call, proceed with normal parsing
                                 }
+                            }
 
-                                // If still empty, try to salvage from last non-empty delta content
-                                if ((finalContent == null || finalContent.trim().isEmpty())) {
-                                    finalContent = recoverContentFromRaw(rawStreamData.toString());
-                                }
-                                notifyListener(rawStreamData.toString(), finalContent, thinkingContent.toString(), webSources);
-                                if (actionListener != null) actionListener.onQwenConversationStateUpdated(conversationState);
-                                break;
+                            // If still empty, try to salvage from last non-empty delta content
+                            if ((finalContent == null || finalContent.trim().isEmpty())) {
+                                finalContent = recoverContentFromRaw(rawStreamData);
                             }
+                            notifyListener(rawStreamData.snapshot(), finalContent, thinkingContent.toString(), webSources);
+                            if (actionListener != null) actionListener.onQwenConversationStateUpdated(conversationState);
+                            break;
                         }
+                    } catch (Exception e) {
+                        Log.w(TAG, "Error processing stream data chunk", e);
+                        if (actionListener != null) actionListener.onAiError("Stream error: " + e.getMessage());
+                        break;
                     }
-                } catch (Exception e) {
-                    Log.w(TAG, "Error processing stream data chunk", e);
-                    if (actionListener != null) actionListener.onAiError("Stream error: " + e.getMessage());
-                    break;
                 }
             }
         }
@@ -237,6 +205,12 @@ public class QwenStreamProcessor {
         return new StreamProcessingResult(false, null);
     }
 
+    private void applyCreated(StreamDelta delta) {
+        if (delta.createdChatId != null) conversationState.setConversationId(delta.createdChatId);
+        if (delta.createdResponseId != null) conversationState.setLastParentId(delta.createdResponseId);
+        if (actionListener != null) actionListener.onQwenConversationStateUpdated(conversationState);
+    }
+
     private void notifyListener(String rawResponse, String finalContent, String thinkingContent, List<com.codex.apk.ai.WebSource> webSources) {
         String jsonToParse = extractJsonFromCodeBlock(finalContent);
         if (jsonToParse == null && QwenResponseParser.looksLikeJson(finalContent)) {
@@ -271,34 +245,41 @@ public class QwenStreamProcessor {
 
     public String recoverContentFromRaw(String raw) {
         if (raw == null || raw.isEmpty()) return "";
-        // Heuristic: concatenate all answer-phase content fragments (delta.content) between code fences
-        StringBuilder sb = new StringBuilder();
-        try {
-            String[] lines = raw.split("\n");
-            boolean inside = false;
-            for (String l : lines) {
-                String t = l.trim();
-                if (!t.startsWith("data: ")) continue;
-                String json = t.substring(6).trim();
-                if (!(json.startsWith("{") || json.startsWith("["))) continue;
-                JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
-                if (!obj.has("choices")) continue;
-                JsonArray choices = obj.getAsJsonArray("choices");
-                if (choices.size() == 0) continue;
-                JsonObject delta = choices.get(0).getAsJsonObject().getAsJsonObject("delta");
-                if (delta == null) continue;
-                String phase = delta.has("phase") ? delta.get("phase").getAsString() : "";
-                String content = delta.has("content") && !delta.get("content").isJsonNull() ? delta.get("content").getAsString() : "";
-                if (content == null) content = "";
-                // Track code fence blocks; if the model emitted ```json ... ``` chunks, try to reassemble
-                if ("answer".equals(phase)) {
-                    if (content.startsWith("```")) inside = true;
-                    if (inside) sb.append(content);
-                    if (content.endsWith("```")) inside = false;
-                }
+        RawContentRecovery recovery = new RawContentRecovery();
+        for (String l : raw.split("\n")) recovery.onLine(l);
+        return recovery.sb.toString();
+    }
+
+    /** Same salvage as {@link #recoverContentFromRaw(String)}, streamed over a capture store. */
+    public String recoverContentFromRaw(RawStreamCapture capture) {
+        if (capture == null) return "";
+        RawContentRecovery recovery = new RawContentRecovery();
+        capture.forEachLine(recovery);
+        return recovery.sb.toString();
+    }
+
+    /** Heuristic: concatenate all answer-phase content fragments (delta.content) between code fences. */
+    private static final class RawContentRecovery implements RawStreamCapture.LineVisitor {
+        final StringBuilder sb = new StringBuilder();
+        final StreamDeltaExtractor extractor = new StreamDeltaExtractor(DeltaSchema.QWEN_PHASE);
+        boolean inside = false;
+
+        @Override
+        public void onLine(String l) {
+            String t = l.trim();
+            if (!t.startsWith("data: ")) return;
+            String json = t.substring(6).trim();
+            if (!(json.startsWith("{") || json.startsWith("["))) return;
+            StreamDelta delta = extractor.extract(json);
+            if (delta == null) return; // skip a truncated chunk instead of giving up on the rest
+            String content = delta.content != null ? delta.content : "";
+            // Track code fence blocks; if the model emitted ```json ... ``` chunks, try to reassemble
+            if ("answer".equals(delta.phase)) {
+                if (content.startsWith("```")) inside = true;
+                if (inside) sb.append(content);
+                if (content.endsWith("```")) inside = false;
             }
-        } catch (Exception ignore) {}
-        return sb.toString();
+        }
     }
 
     private void enrichFileActionDetails(List<ChatMessage.FileActionDetail> details) {
@@ -0,0 +1,230 @@
+package com.codex.apk;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Bounded capture of the raw SSE text of one response, used for salvage
+ * (QwenStreamProcessor#recoverContentFromRaw, ResponseDemuxer) and debugging.
+ *
+ * Modes:
+ * - OFF: nothing is kept.
+ * - RING: the last N KB are kept in a fixed char ring; older lines are dropped.
+ * - DISK: every line is spilled to a file under the cache dir; only the last N KB are
+ *   ever read back into the heap as a snapshot, while line recovery streams the whole file.
+ *
+ * Thread-safe; chunks are appended from the network thread.
+ */
+public final class RawStreamCapture implements Closeable {
+    private static final String TAG = "RawStreamCapture";
+    private static final String SPILL_DIR = "raw-streams";
+    private static final int MAX_SPILL_FILES = 8;
+
+    public enum Mode {
+        OFF, RING, DISK;
+
+        public static Mode fromPreference(String value) {
+            if ("off".equalsIgnoreCase(value)) return OFF;
+            if ("disk".equalsIgnoreCase(value)) return DISK;
+            return RING;
+        }
+    }
+
+    public interface LineVisitor {
+        void onLine(String line);
+    }
+
+    private final Mode mode;
+    private final char[] ring;
+    private int ringStart = 0; // index of the oldest char
+    private int ringSize = 0;
+    private boolean wrapped = false;
+    private final File spillFile;
+    private BufferedWriter spillWriter;
+    private final int tailChars;
+
+    private RawStreamCapture(Mode mode, int limitKb, File spillFile) {
+        this.mode = mode;
+        this.tailChars = Math.max(1, limitKb) * 1024;
+        this.ring = mode == Mode.RING ? new char[tailChars] : null;
+        this.spillFile = spillFile;
+    }
+
+    /** Opens a capture configured from settings; tag names the spill file in DISK mode. */
+    public static RawStreamCapture open(String tag) {
+        Context context = CodeXApplication.getAppContext();
+        if (context == null) return new RawStreamCapture(Mode.RING, 64, null);
+        Mode mode = Mode.fromPreference(SettingsActivity.getRawCaptureMode(context));
+        int limitKb = SettingsActivity.getRawCaptureLimitKb(context);
+        if (mode != Mode.DISK) return new RawStreamCapture(mode, limitKb, null);
+        File dir = new File(context.getCacheDir(), SPILL_DIR);
+        if (!dir.exists() && !dir.mkdirs()) return new RawStreamCapture(Mode.RING, limitKb, null);
+        pruneSpillFiles(dir);
+        File file = new File(dir, (tag != null ? tag : "stream") + "-" + System.currentTimeMillis() + ".sse");
+        return new RawStreamCapture(Mode.DISK, limitKb, file);
+    }
+
+    public static RawStreamCapture off() {
+        return new RawStreamCapture(Mode.OFF, 1, null);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /** Records one SSE data payload as a "data: " line. */
+    public void appendEvent(CharSequence data) {
+        if (mode == Mode.OFF) return;
+        synchronized (this) {
+            write("data: ");
+            write(data);
+            write("\n");
+        }
+    }
+
+    /** Records one raw line as received. */
+    public void appendLine(CharSequence line) {
+        if (mode == Mode.OFF) return;
+        synchronized (this) {
+            write(line);
+            write("\n");
+        }
+    }
+
+    /**
+     * Captured text, bounded to the configured tail size and starting at a line boundary.
+     * Returns null in OFF mode.
+     */
+    public synchronized String snapshot() {
+        if (mode == Mode.OFF) return null;
+        if (mode == Mode.RING) {
+            StringBuilder sb = new StringBuilder(ringSize);
+            int first = Math.min(ringSize, ring.length - ringStart);
+            sb.append(ring, ringStart, first);
+            sb.append(ring, 0, ringSize - first);
+            return wrapped ? dropPartialFirstLine(sb) : sb.toString();
+        }
+        flushQuietly();
+        if (!spillFile.exists()) return "";
+        try (RandomAccessFile raf = new RandomAccessFile(spillFile, "r")) {
+            long length = raf.length();
+            long maxBytes = tailChars * 4L; // UTF-8 worst case for tailChars chars
+            long start = Math.max(0L, length - maxBytes);
+            byte[] bytes = new byte[(int) (length - start)];
+            raf.seek(start);
+            raf.readFully(bytes);
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            if (text.length() > tailChars) text = text.substring(text.length() - tailChars);
+            return start > 0 || text.length() == tailChars ? dropPartialFirstLine(new StringBuilder(text)) : text;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read raw stream capture", e);
+            return "";
+        }
+    }
+
+    /** Visits every captured line in order; DISK mode streams the spill file instead of loading it. */
+    public void forEachLine(LineVisitor visitor) {
+        if (mode == Mode.OFF) return;
+        if (mode == Mode.RING) {
+            String text = snapshot();
+            int pos = 0;
+            while (pos < text.length()) {
+                int nl = text.indexOf('\n', pos);
+                if (nl < 0) nl = text.length();
+                visitor.onLine(text.substring(pos, nl));
+                pos = nl + 1;
+            }
+            return;
+        }
+        synchronized (this) {
+            flushQuietly();
+        }
+        if (!spillFile.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(spillFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) visitor.onLine(line);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read raw stream capture", e);
+        }
+    }
+
+    /** Finishes writing; the spill file is kept (and pruned later) so it can be inspected. */
+    @Override
+    public synchronized void close() {
+        if (spillWriter != null) {
+            try { spillWriter.close(); } catch (IOException ignore) {}
+            spillWriter = null;
+        }
+    }
+
+    private void write(CharSequence text) {
+        if (mode == Mode.RING) {
+            writeRing(text);
+            return;
+        }
+        try {
+            if (spillWriter == null) {
+                spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile, true), StandardCharsets.UTF_8));
+            }
+            spillWriter.append(text);
+        } catch (IOException e) {
+            Log.w(TAG, "Raw stream spill failed", e);
+        }
+    }
+
+    private void writeRing(CharSequence text) {
+        int capacity = ring.length;
+        int length = text.length();
+        int from = 0;
+        if (length >= capacity) {
+            // Only the last capacity chars can survive
+            from = length - capacity;
+            ringStart = 0;
+            ringSize = 0;
+            wrapped = true;
+        }
+        for (int i = from; i < length; i++) {
+            int idx = ringStart + ringSize;
+            if (idx >= capacity) idx -= capacity;
+            ring[idx] = text.charAt(i);
+            if (ringSize < capacity) {
+                ringSize++;
+            } else {
+                ringStart = ringStart + 1 == capacity ? 0 : ringStart + 1;
+                wrapped = true;
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        if (spillWriter == null) return;
+        try { spillWriter.flush(); } catch (IOException ignore) {}
+    }
+
+    private static String dropPartialFirstLine(StringBuilder sb) {
+        int nl = sb.indexOf("\n");
+        return nl >= 0 ? sb.substring(nl + 1) : "";
+    }
+
+    private static void pruneSpillFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length < MAX_SPILL_FILES) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i <= files.length - MAX_SPILL_FILES; i++) {
+            if (!files[i].delete()) Log.w(TAG, "Could not delete " + files[i]);
+        }
+    }
+}
@@ -308,4 +308,24 @@ public class SettingsActivity extends AppCompatActivity {
     public static boolean isDefaultWordWrap(android.content.Context context) {
         return getPreferences(context).getBoolean("default_word_wrap", true);
     }
+
+    // Upper bound for chat re-renders while an AI response streams in
+    public static int getStreamMaxUpdatesPerSecond(android.content.Context context) {
+        return getPreferences(context).getInt("stream_max_updates_per_second", 60);
+    }
+
+    /** Open the provider connection when a model is selected or the chat input gains focus. */
+    public static boolean isConnectionPrewarmEnabled(android.content.Context context) {
+        return getPreferences(context).getBoolean("connection_prewarm_enabled", true);
+    }
+
+    /** Raw SSE capture mode: "off", "ring" (default) or "disk". */
+    public static String getRawCaptureMode(android.content.Context context) {
+        return getPreferences(context).getString("raw_stream_capture_mode", "ring");
+    }
+
+    /** Size of the kept raw SSE tail, in KB. */
+    public static int getRawCaptureLimitKb(android.content.Context context) {
+        return getPreferences(context).getInt("raw_stream_capture_kb", 64);
+    }
 }
\ No newline at end of file
@@ -50,7 +50,7 @@ public class SimpleSoraTabAdapter extends RecyclerView.Adapter<RecyclerView.View
     private static final int MAX_DIFF_CACHE = 16;
 
     private static class DiffCacheEntry {
-        java.util.List<DiffUtils.DiffLine> lines;
+        DiffService.Parsed parsed;
         int hash;
     }
 
@@ -247,10 +247,6 @@ public class SimpleSoraTabAdapter extends RecyclerView.Adapter<RecyclerView.View
                 if (displayName.startsWith("DIFF_")) displayName = displayName.substring(5);
                 editorViewHolder.diffFilename.setText(displayName);
             }
-            String content = tabItem.getContent();
-            int[] counts = DiffUtils.countAddRemove(content);
-            if (editorViewHolder.diffAddedCount != null) editorViewHolder.diffAddedCount.setText("+" + counts[0]);
-            if (editorViewHolder.diffRemovedCount != null) editorViewHolder.diffRemovedCount.setText("-" + counts[1]);
             // Toggle handlers
             if (editorViewHolder.diffToggleInline != null) {
                 editorViewHolder.diffToggleInline.setOnClickListener(v -> {
@@ -271,26 +267,6 @@ public class SimpleSoraTabAdapter extends RecyclerView.Adapter<RecyclerView.View
                     editorViewHolder.diffRecycler.setHasFixedSize(true);
                     editorViewHolder.diffRecycler.setItemViewCacheSize(64);
                 }
-                // Parse and bind diff lines with LRU caching
-                String key = tabId;
-                int h = content != null ? content.hashCode() : 0;
-                java.util.List<DiffUtils.DiffLine> lines;
-                DiffCacheEntry entry = diffCache.get(key);
-                if (entry == null || entry.hash != h) {
-                    lines = DiffUtils.parseUnifiedDiff(content);
-                    DiffCacheEntry newEntry = new DiffCacheEntry();
-                    newEntry.lines = lines;
-                    newEntry.hash = h;
-                    diffCache.put(key, newEntry);
-                } else {
-                    lines = entry.lines;
-                }
-                if (editorViewHolder.diffAdapter == null) {
-                    editorViewHolder.diffAdapter = new InlineDiffAdapter(context, lines);
-                    editorViewHolder.diffRecycler.setAdapter(editorViewHolder.diffAdapter);
-                } else {
-                    editorViewHolder.diffAdapter.updateLines(lines);
-                }
             }
             // Prepare split view adapter scaffold (to be fully wired by SplitDiffAdapter)
             if (editorViewHolder.diffRecyclerSplit != null) {
@@ -299,27 +275,26 @@ public class SimpleSoraTabAdapter extends RecyclerView.Adapter<RecyclerView.View
                     editorViewHolder.diffRecyclerSplit.setHasFixedSize(true);
                     editorViewHolder.diffRecyclerSplit.setItemViewCacheSize(64);
                 }
-                // Bind split adapter data from same unified lines
-                String key = tabId;
-                int h = content != null ? content.hashCode() : 0;
-                java.util.List<DiffUtils.DiffLine> lines;
-                DiffCacheEntry entry = diffCache.get(key);
-                if (entry == null || entry.hash != h) {
-                    lines = DiffUtils.parseUnifiedDiff(content);
+            }
+            // Parse and count off the main thread; the per-tab LRU makes rebinding free
+            String content = tabItem.getContent();
+            int h = hashOf(content);
+            DiffCacheEntry entry = diffCache.get(tabId);
+            if (entry != null && entry.hash == h) {
+                bindDiff(editorViewHolder, entry.parsed);
+            } else {
+                if (editorViewHolder.diffAddedCount != null) editorViewHolder.diffAddedCount.setText("+…");
+                if (editorViewHolder.diffRemovedCount != null) editorViewHolder.diffRemovedCount.setText("-…");
+                DiffService.parse(content, parsed -> {
                     DiffCacheEntry newEntry = new DiffCacheEntry();
-                    newEntry.lines = lines;
+                    newEntry.parsed = parsed;
                     newEntry.hash = h;
-                    diffCache.put(key, newEntry);
-                } else {
-                    lines = entry.lines;
-                }
-                SplitDiffAdapter split = (SplitDiffAdapter) editorViewHolder.diffRecyclerSplit.getAdapter();
-                if (split == null) {
-                    split = new SplitDiffAdapter(context, lines);
-                    editorViewHolder.diffRecyclerSplit.setAdapter(split);
-                } else {
-                    split.setData(lines);
-                }
+                    diffCache.put(tabId, newEntry);
+                    // The holder may have been rebound to another tab or newer content meanwhile
+                    if (tabId.equals(editorViewHolder.currentTabId) && h == hashOf(tabItem.getContent())) {
+                        bindDiff(editorViewHolder, parsed);
+                    }
+                });
             }
         } else {
             // Show normal editor
@@ -562,6 +537,33 @@ public class SimpleSoraTabAdapter extends RecyclerView.Adapter<RecyclerView.View
         super.onViewRecycled(rawHolder);
     }
 
+    private void bindDiff(ViewHolder holder, DiffService.Parsed parsed) {
+        if (holder.diffAddedCount != null) holder.diffAddedCount.setText("+" + parsed.added);
+        if (holder.diffRemovedCount != null) holder.diffRemovedCount.setText("-" + parsed.removed);
+        if (holder.diffRecycler != null) {
+            if (holder.diffAdapter == null) {
+                holder.diffAdapter = new InlineDiffAdapter(context, parsed.lines);
+                holder.diffRecycler.setAdapter(holder.diffAdapter);
+            } else {
+                holder.diffAdapter.updateLines(parsed.lines);
+            }
+        }
+        if (holder.diffRecyclerSplit != null) {
+            // Bind split adapter data from same unified lines
+            SplitDiffAdapter split = (SplitDiffAdapter) holder.diffRecyclerSplit.getAdapter();
+            if (split == null) {
+                split = new SplitDiffAdapter(context, parsed.lines);
+                holder.diffRecyclerSplit.setAdapter(split);
+            } else {
+                split.setData(parsed.lines);
+            }
+        }
+    }
+
+    private static int hashOf(String s) {
+        return s != null ? s.hashCode() : 0;
+    }
+
     public ViewHolder getHolderForPosition(int position) {
         return holders.get(position);
     }
@@ -1,7 +1,7 @@
 package com.codex.apk;
 
 import android.util.Log;
-import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import okhttp3.Call;
@@ -13,12 +13,14 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 import okio.BufferedSource;
 
-import java.io.EOFException;
 import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Shared SSE client with unified parsing and lifecycle callbacks.
+ * Framing is done on raw bytes by {@link SseEventParser}; only event payloads are decoded.
  */
 public class SseClient {
     public interface Listener {
@@ -27,13 +29,37 @@ public class SseClient {
         void onUsage(JsonObject usage); // optional usage block
         void onError(String message, int code);
         void onComplete();
+
+        /**
+         * Sees every event before JSON parsing. Return true to consume it (onDelta/onUsage are
+         * then skipped); the event is a reused view and is only valid during the call.
+         */
+        default boolean onEvent(SseEventParser.Event event) { return false; }
+
+        /** Payload that was not a JSON object (partial or malformed chunk). */
+        default void onMalformed(String data) {}
     }
 
+    /** Streaming variants of each provider client, derived once instead of per request. */
+    private static final Map<OkHttpClient, OkHttpClient> STREAMING_CLIENTS = new WeakHashMap<>();
+
     private final OkHttpClient http;
 
     public SseClient(OkHttpClient base) {
-        // Derive a client with longer read timeout for streaming.
-        this.http = base.newBuilder().readTimeout(0, TimeUnit.SECONDS).build();
+        this.http = streamingClientFor(base);
+    }
+
+    private static OkHttpClient streamingClientFor(OkHttpClient base) {
+        if (base.readTimeoutMillis() == 0) return base;
+        synchronized (STREAMING_CLIENTS) {
+            OkHttpClient streaming = STREAMING_CLIENTS.get(base);
+            if (streaming == null) {
+                // Same pool and dispatcher, no read timeout for long-lived streams
+                streaming = base.newBuilder().readTimeout(0, TimeUnit.SECONDS).build();
+                STREAMING_CLIENTS.put(base, streaming);
+            }
+            return streaming;
+        }
     }
 
     public void postStream(String url, okhttp3.Headers headers, JsonObject body, Listener listener) {
@@ -43,94 +69,112 @@ public class SseClient {
                 .post(RequestBody.create(body.toString(), MediaType.parse("application/json")))
                 .addHeader("accept", "text/event-stream")
                 .build();
-        http.newCall(req).enqueue(new Callback() {
+        Call streamCall = http.newCall(req);
+        AiRequestExecutor.bindCurrent(streamCall);
+        // Callbacks run on a dispatcher thread; they act on behalf of the request that made the call
+        final AiRequestExecutor.Handle owner = AiRequestExecutor.currentHandle();
+        streamCall.enqueue(new Callback() {
             @Override public void onFailure(Call call, IOException e) {
-                if (listener != null) listener.onError(e.getMessage(), -1);
+                AiRequestExecutor.runAs(owner, () -> {
+                    if (listener != null && !isSilenced(call)) listener.onError(errorMessage(e), -1);
+                });
             }
             @Override public void onResponse(Call call, Response response) {
-                if (!response.isSuccessful() || response.body() == null) {
-                    int code = response.code();
-                    String msg;
-                    try { msg = response.body() != null ? response.body().string() : null; } catch (Exception ignore) { msg = null; }
-                    if (listener != null) listener.onError(msg != null ? msg : ("HTTP " + code), code);
-                    try { response.close(); } catch (Exception ignore) {}
-                    return;
-                }
-                if (listener != null) listener.onOpen();
-                try (BufferedSource source = response.body().source()) {
-                    while (true) {
-                        String line;
-                        try {
-                            line = source.readUtf8LineStrict();
-                        } catch (EOFException eof) { break; }
-                        catch (java.io.InterruptedIOException timeout) { break; }
-                        if (line == null) break;
-                        if (line.isEmpty()) {
-                            continue; // no buffering; handle each line independently
-                        }
-                        handleEvent(line, listener);
-                    }
-                } catch (Exception e) {
-                    if (listener != null) listener.onError(e.getMessage(), -1);
-                } finally {
-                    if (listener != null) listener.onComplete();
-                }
+                AiRequestExecutor.runAs(owner, () -> handleResponse(call, response, listener));
             }
         });
     }
 
-    private void handleEvent(String rawEvent, Listener listener) {
-        String trimmedBlock = rawEvent == null ? "" : rawEvent.trim();
-        if (trimmedBlock.isEmpty()) return;
-        // Split into individual lines and process each; many providers emit multiple
-        // data: lines without blank separators. We must parse each line separately.
-        String[] lines = trimmedBlock.split("\n");
-        for (String line : lines) {
-            if (line == null) continue;
-            String trimmed = line.trim();
-            if (trimmed.isEmpty()) continue;
-            if (trimmed.startsWith("data:")) {
-                String jsonPart = trimmed.substring("data:".length()).trim();
-                if (jsonPart.isEmpty()) continue;
-                if ("[DONE]".equals(jsonPart) || "data: [DONE]".equalsIgnoreCase(jsonPart)) continue;
-                try {
-                    JsonObject obj = JsonParser.parseString(jsonPart).getAsJsonObject();
-                    if (obj.has("usage") && obj.get("usage").isJsonObject()) {
-                        if (listener != null) listener.onUsage(obj.getAsJsonObject("usage"));
-                    }
-                    if (listener != null) listener.onDelta(obj);
-                } catch (Exception ignore) { /* malformed partials: still surface raw for debugging/recovery */
-                    try {
-                        com.google.gson.JsonObject rawObj = new com.google.gson.JsonObject();
-                        rawObj.addProperty("_raw", jsonPart);
-                        if (listener != null) listener.onDelta(rawObj);
-                    } catch (Exception ignored2) {}
-                }
-                continue;
-            }
-            // Fallback: initial JSON line with no data: prefix
-            if (trimmed.startsWith("{") || trimmed.startsWith("[")) {
-                try {
-                    JsonObject obj = JsonParser.parseString(trimmed).getAsJsonObject();
-                    if (obj.has("usage") && obj.get("usage").isJsonObject()) {
-                        if (listener != null) listener.onUsage(obj.getAsJsonObject("usage"));
-                    }
-                    if (listener != null) listener.onDelta(obj);
-                } catch (Exception ignore) { /* surface raw */
-                    try {
-                        com.google.gson.JsonObject rawObj = new com.google.gson.JsonObject();
-                        rawObj.addProperty("_raw", trimmed);
-                        if (listener != null) listener.onDelta(rawObj);
-                    } catch (Exception ignored2) {}
-                }
-            }
+    private void handleResponse(Call call, Response response, Listener listener) {
+        if (!response.isSuccessful() || response.body() == null) {
+            int code = response.code();
+            String msg;
+            try { msg = response.body() != null ? response.body().string() : null; } catch (Exception ignore) { msg = null; }
+            if (listener != null) listener.onError(msg != null ? msg : ("HTTP " + code), code);
+            try { response.close(); } catch (Exception ignore) {}
+            return;
+        }
+        if (listener != null) listener.onOpen();
+        try (BufferedSource source = response.body().source()) {
+            readEvents(source, listener);
+        } catch (Exception e) {
+            if (listener != null && !isSilenced(call)) listener.onError(errorMessage(e), -1);
+        } finally {
+            if (listener != null && !call.isCanceled()) listener.onComplete();
+        }
+    }
+
+    /**
+     * A stream cancelled by the user or by a newer request is silent; whoever cancelled it
+     * reports to the UI. A request that hit its executor timeout still reports an error.
+     */
+    private static boolean isSilenced(Call call) {
+        return call.isCanceled() && !AiRequestExecutor.isCurrentTimedOut();
+    }
+
+    private static String errorMessage(Exception e) {
+        return AiRequestExecutor.isCurrentTimedOut() ? "Request timed out" : e.getMessage();
+    }
+
+    private void readEvents(BufferedSource source, Listener listener) throws IOException {
+        try {
+            new SseEventParser(true).parse(source, event -> {
+                // Events already buffered when the request was cancelled or superseded are dropped
+                if (!AiRequestExecutor.isCurrentCancelled()) handleEvent(event, listener);
+            });
+        } catch (java.io.InterruptedIOException timeout) {
+            // Read timeout ends the stream like EOF
         }
     }
 
+    private void handleEvent(SseEventParser.Event event, Listener listener) {
+        if (listener == null) return;
+        CharSequence data = event.dataView();
+        if (isBlankOrDone(data)) return;
+        if (listener.onEvent(event)) return;
+        String json = event.data();
+        JsonElement parsed;
+        try {
+            parsed = JsonParser.parseString(json);
+        } catch (Exception malformed) {
+            parsed = null;
+        }
+        if (parsed == null || !parsed.isJsonObject()) {
+            listener.onMalformed(json);
+            return;
+        }
+        JsonObject obj = parsed.getAsJsonObject();
+        if (obj.has("usage") && obj.get("usage").isJsonObject()) {
+            listener.onUsage(obj.getAsJsonObject("usage"));
+        }
+        listener.onDelta(obj);
+    }
+
+    /** True for empty payloads and the OpenAI-style "[DONE]" terminator, without allocating. */
+    static boolean isBlankOrDone(CharSequence data) {
+        int start = 0;
+        int end = data.length();
+        while (start < end && Character.isWhitespace(data.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(data.charAt(end - 1))) end--;
+        if (start == end) return true;
+        if (regionEquals(data, start, end, "[DONE]")) return true;
+        // Some providers double-prefix the terminator: "data: data: [DONE]"
+        return regionEquals(data, start, end, "data: [DONE]");
+    }
+
+    private static boolean regionEquals(CharSequence data, int start, int end, String expected) {
+        if (end - start != expected.length()) return false;
+        for (int i = 0; i < expected.length(); i++) {
+            if (Character.toLowerCase(data.charAt(start + i)) != Character.toLowerCase(expected.charAt(i))) return false;
+        }
+        return true;
+    }
+
     // Synchronous streaming with simple retry/backoff for 429/5xx
     public void postStreamWithRetry(String url, okhttp3.Headers headers, JsonObject body, int maxAttempts, long baseBackoffMs, Listener listener) {
         int attempts = 0;
         while (attempts < maxAttempts) {
+            if (AiRequestExecutor.isCurrentCancelled()) return;
             attempts++;
             Request req = new Request.Builder()
                     .url(url)
@@ -138,7 +182,9 @@ public class SseClient {
                     .post(RequestBody.create(body.toString(), MediaType.parse("application/json")))
                     .addHeader("accept", "text/event-stream")
                     .build();
-            try (Response response = http.newCall(req).execute()) {
+            Call call = http.newCall(req);
+            AiRequestExecutor.bindCurrent(call);
+            try (Response response = call.execute()) {
                 if (!response.isSuccessful() || response.body() == null) {
                     int code = response.code();
                     boolean retry = (code == 429 || (code >= 500 && code < 600));
@@ -153,23 +199,16 @@ public class SseClient {
                 }
                 if (listener != null) listener.onOpen();
                 try (BufferedSource source = response.body().source()) {
-                    while (true) {
-                        String line;
-                        try {
-                            line = source.readUtf8LineStrict();
-                        } catch (EOFException eof) { break; }
-                        catch (java.io.InterruptedIOException timeout) { break; }
-                        if (line == null) break;
-                        if (line.isEmpty()) {
-                            continue; // no buffering; handle each line independently
-                        }
-                        handleEvent(line, listener);
-                    }
+                    readEvents(source, listener);
                 } finally {
-                    if (listener != null) listener.onComplete();
+                    if (listener != null && !call.isCanceled()) listener.onComplete();
                 }
                 return;
             } catch (IOException e) {
+                if (call.isCanceled()) {
+                    if (listener != null && !isSilenced(call)) listener.onError(errorMessage(e), -1);
+                    return;
+                }
                 if (attempts >= maxAttempts) {
                     if (listener != null) listener.onError(e.getMessage(), -1);
                     return;
@@ -0,0 +1,228 @@
+package com.codex.apk;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Byte-level Server-Sent Events framing.
+ *
+ * Lines are located with {@link BufferedSource#indexOf(byte)} and field names are matched on
+ * the raw bytes in the source buffer; only field values are decoded. Supports multi-line
+ * data, event:, id:, retry: and comments per the SSE spec. The {@link Event} handed to the
+ * handler is reused for every dispatch, so handlers must not keep references to it.
+ *
+ * Lenient mode keeps compatibility with providers that (a) emit one JSON object per data:
+ * line without blank separators and (b) send a bare JSON line before the stream starts.
+ * Once the data collected so far is a complete JSON value, the next data: line always
+ * starts a new event, whether or not it is JSON itself (e.g. a trailing "[DONE]" or "ok").
+ */
+public final class SseEventParser {
+
+    public interface Handler {
+        void onEvent(Event event) throws IOException;
+    }
+
+    /** Reusable view of the current event. */
+    public static final class Event {
+        private final StringBuilder multiLine = new StringBuilder();
+        private String singleLine;
+        private int dataLines;
+        private String type;
+        private String lastEventId;
+        private long retryMs = -1L;
+
+        /** Payload as a view; valid only until the handler returns. */
+        public CharSequence dataView() {
+            if (dataLines <= 1) return singleLine != null ? singleLine : "";
+            return multiLine;
+        }
+
+        /** Payload as a String; free for single-line events, one copy for multi-line ones. */
+        public String data() {
+            if (dataLines <= 1) return singleLine != null ? singleLine : "";
+            return multiLine.toString();
+        }
+
+        public String type() { return type != null ? type : "message"; }
+        public String lastEventId() { return lastEventId; }
+        /** Reconnection time requested by the server, or -1 if none was sent. */
+        public long retryMs() { return retryMs; }
+
+        void appendData(String value) {
+            if (dataLines == 0) {
+                singleLine = value;
+            } else {
+                if (dataLines == 1) {
+                    multiLine.setLength(0);
+                    multiLine.append(singleLine);
+                }
+                multiLine.append('\n').append(value);
+            }
+            dataLines++;
+        }
+
+        boolean hasData() { return dataLines > 0; }
+
+        void reset() {
+            singleLine = null;
+            dataLines = 0;
+            type = null; // id and retry persist across events per spec
+        }
+    }
+
+    private static final byte[] DATA = {'d', 'a', 't', 'a'};
+    private static final byte[] EVENT = {'e', 'v', 'e', 'n', 't'};
+    private static final byte[] ID = {'i', 'd'};
+    private static final byte[] RETRY = {'r', 'e', 't', 'r', 'y'};
+
+    private final boolean lenient;
+    private final Event event = new Event();
+
+    public SseEventParser(boolean lenient) {
+        this.lenient = lenient;
+    }
+
+    /** Reads until the source is exhausted, dispatching each complete event to handler. */
+    public void parse(BufferedSource source, Handler handler) throws IOException {
+        Buffer buffer = source.getBuffer();
+        while (true) {
+            long newline = source.indexOf((byte) '\n');
+            if (newline == -1L) {
+                long remaining = buffer.size();
+                if (remaining > 0) processLine(buffer, trimCr(buffer, remaining), handler);
+                buffer.clear();
+                break;
+            }
+            long lineLength = trimCr(buffer, newline);
+            processLine(buffer, lineLength, handler);
+            buffer.skip(newline + 1 - lineLength);
+        }
+        // Flush a trailing event without the terminating blank line; providers often omit it
+        dispatch(handler);
+    }
+
+    private static long trimCr(Buffer buffer, long length) {
+        return length > 0 && buffer.getByte(length - 1) == '\r' ? length - 1 : length;
+    }
+
+    /** Consumes exactly lineLength bytes from the head of buffer. */
+    private void processLine(Buffer buffer, long lineLength, Handler handler) throws IOException {
+        if (lineLength == 0) {
+            dispatch(handler);
+            return;
+        }
+        byte first = buffer.getByte(0);
+        if (first == ':') { // comment / keep-alive
+            buffer.skip(lineLength);
+            return;
+        }
+        if (lenient && (first == '{' || first == '[')) {
+            // Bare JSON line outside the data: framing is an event of its own
+            dispatch(handler);
+            event.appendData(buffer.readUtf8(lineLength));
+            dispatch(handler);
+            return;
+        }
+        long colon = -1L;
+        for (long i = 0; i < lineLength; i++) {
+            if (buffer.getByte(i) == ':') { colon = i; break; }
+        }
+        long nameLength = colon >= 0 ? colon : lineLength;
+        long valueStart = colon >= 0 ? colon + 1 : lineLength;
+        if (valueStart < lineLength && buffer.getByte(valueStart) == ' ') valueStart++;
+        long valueLength = lineLength - valueStart;
+
+        if (nameEquals(buffer, nameLength, DATA)) {
+            buffer.skip(valueStart);
+            onDataLine(valueLength > 0 ? buffer.readUtf8(valueLength) : "", handler);
+        } else if (nameEquals(buffer, nameLength, EVENT)) {
+            buffer.skip(valueStart);
+            event.type = buffer.readUtf8(valueLength);
+        } else if (nameEquals(buffer, nameLength, ID)) {
+            buffer.skip(valueStart);
+            String id = buffer.readUtf8(valueLength);
+            if (id.indexOf('\0') < 0) event.lastEventId = id;
+        } else if (nameEquals(buffer, nameLength, RETRY)) {
+            buffer.skip(valueStart);
+            event.retryMs = parseRetry(buffer, valueLength, event.retryMs);
+        } else {
+            buffer.skip(lineLength); // unknown field: ignored per spec
+        }
+    }
+
+    private void onDataLine(String value, Handler handler) throws IOException {
+        if (lenient && event.hasData() && isCompleteJson(event.dataView())) {
+            // A data: line after a complete JSON value without a blank separator is a new event
+            dispatch(handler);
+        }
+        event.appendData(value);
+    }
+
+    private void dispatch(Handler handler) throws IOException {
+        if (!event.hasData()) {
+            event.reset();
+            return;
+        }
+        try {
+            handler.onEvent(event);
+        } finally {
+            event.reset();
+        }
+    }
+
+    private static boolean nameEquals(Buffer buffer, long nameLength, byte[] name) {
+        if (nameLength != name.length) return false;
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.getByte(i) != name[i]) return false;
+        }
+        return true;
+    }
+
+    private static long parseRetry(Buffer buffer, long length, long previous) throws IOException {
+        if (length <= 0) return previous;
+        long value = 0L;
+        for (long i = 0; i < length; i++) {
+            byte b = buffer.getByte(i);
+            if (b < '0' || b > '9') {
+                buffer.skip(length);
+                return previous; // spec: ignore non-digit retry values
+            }
+            value = value * 10 + (b - '0');
+        }
+        buffer.skip(length);
+        return value;
+    }
+
+    /**
+     * True if data is one JSON object or array whose brackets close at its last non-blank
+     * character. Brackets inside strings are skipped, so a multi-line value whose first
+     * line merely ends in '}' is not mistaken for a complete one.
+     */
+    private static boolean isCompleteJson(CharSequence data) {
+        int start = 0;
+        int end = data.length() - 1;
+        while (start <= end && Character.isWhitespace(data.charAt(start))) start++;
+        while (end >= start && Character.isWhitespace(data.charAt(end))) end--;
+        if (start >= end) return false;
+        char open = data.charAt(start);
+        if (open != '{' && open != '[') return false;
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i <= end; i++) {
+            char c = data.charAt(i);
+            if (inString) {
+                if (c == '\\') i++;
+                else if (c == '"') inString = false;
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0) return i == end;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,157 @@
+package com.codex.apk;
+
+import android.text.SpannableStringBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Incremental markdown rendering for messages that are still streaming.
+ *
+ * The text is split at block boundaries that can no longer change as more text arrives:
+ * blank lines outside code fences, closing fences and the start of an opening fence.
+ * Blocks before the last boundary are rendered once and cached per message; each update
+ * only parses the newly completed blocks plus the open trailing block.
+ *
+ * The line scan resumes where the previous update stopped, so the text before it is not
+ * read again. Passing the same CharSequence instance as last time promises it has only
+ * been appended to (AiStreamingHandler's buffers keep that promise); any other text is
+ * compared against the scanned prefix and rendered from scratch if it differs.
+ */
+final class StreamingMarkdownRenderer {
+
+    interface BlockRenderer {
+        CharSequence render(String block);
+    }
+
+    private static final int MAX_CACHED_MESSAGES = 4;
+    private static final String BLOCK_SEPARATOR = "\n\n";
+
+    private final BlockRenderer blockRenderer;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_CACHED_MESSAGES;
+        }
+    };
+
+    private static final class Entry {
+        final SpannableStringBuilder display = new SpannableStringBuilder(); // committed blocks, then the open tail
+        int committedEnd = 0; // end of the committed blocks in display
+        CharSequence source = ""; // last markdown seen for this message
+        int committedLength = 0; // prefix of source covered by committed blocks; always at a boundary
+        int scanned = 0; // start of the first line not scanned yet
+        boolean inFence = false;
+        char fenceChar = 0;
+        int fenceLength = 0;
+    }
+
+    StreamingMarkdownRenderer(BlockRenderer blockRenderer) {
+        this.blockRenderer = blockRenderer;
+    }
+
+    /**
+     * Renders the current text of a message. The result is reused by the next call for the
+     * same key, so callers must copy it (TextView.setText does).
+     */
+    CharSequence render(String key, CharSequence markdown) {
+        if (markdown == null) markdown = "";
+        Entry entry = entries.get(key);
+        if (entry == null || !continues(entry, markdown)) {
+            // New message, or the already scanned prefix was rewritten: start over
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        entry.source = markdown;
+        entry.display.delete(entry.committedEnd, entry.display.length());
+
+        int pos = entry.scanned;
+        int length = markdown.length();
+        while (pos < length) {
+            int lineEnd = indexOf(markdown, '\n', pos);
+            if (lineEnd < 0) break; // unterminated last line belongs to the open tail
+            int next = lineEnd + 1;
+            int fence = fenceLength(markdown, pos, lineEnd);
+            if (entry.inFence) {
+                if (fence >= entry.fenceLength && markdown.charAt(firstNonSpace(markdown, pos, lineEnd)) == entry.fenceChar
+                        && isBlank(markdown, firstNonSpace(markdown, pos, lineEnd) + fence, lineEnd)) {
+                    entry.inFence = false;
+                    commit(entry, markdown, entry.committedLength, next);
+                    entry.committedLength = next;
+                }
+            } else if (fence >= 3) {
+                // An opening fence interrupts whatever block precedes it
+                commit(entry, markdown, entry.committedLength, pos);
+                entry.committedLength = pos;
+                entry.inFence = true;
+                entry.fenceChar = markdown.charAt(firstNonSpace(markdown, pos, lineEnd));
+                entry.fenceLength = fence;
+            } else if (isBlank(markdown, pos, lineEnd)) {
+                commit(entry, markdown, entry.committedLength, next);
+                entry.committedLength = next;
+            }
+            pos = next;
+        }
+        entry.scanned = pos;
+
+        if (isBlank(markdown, entry.committedLength, length)) {
+            return entry.display;
+        }
+        if (entry.display.length() > 0) entry.display.append(BLOCK_SEPARATOR);
+        entry.display.append(blockRenderer.render(markdown.subSequence(entry.committedLength, length).toString()));
+        return entry.display;
+    }
+
+    void release(String key) {
+        entries.remove(key);
+    }
+
+    private static boolean continues(Entry entry, CharSequence markdown) {
+        if (markdown.length() < entry.scanned) return false;
+        if (markdown == entry.source) return true;
+        for (int i = 0; i < entry.scanned; i++) {
+            if (markdown.charAt(i) != entry.source.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void commit(Entry entry, CharSequence markdown, int start, int end) {
+        if (end <= start || isBlank(markdown, start, end)) return;
+        CharSequence rendered = blockRenderer.render(markdown.subSequence(start, end).toString());
+        if (rendered == null || rendered.length() == 0) return;
+        if (entry.committedEnd > 0) entry.display.append(BLOCK_SEPARATOR);
+        entry.display.append(rendered);
+        entry.committedEnd = entry.display.length();
+    }
+
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    /** Length of a ``` or ~~~ run opening the line (after at most three spaces), or 0. */
+    private static int fenceLength(CharSequence s, int start, int end) {
+        int i = firstNonSpace(s, start, end);
+        if (i - start > 3 || i >= end) return 0;
+        char c = s.charAt(i);
+        if (c != '`' && c != '~') return 0;
+        int n = 0;
+        while (i + n < end && s.charAt(i + n) == c) n++;
+        return n >= 3 ? n : 0;
+    }
+
+    private static int firstNonSpace(CharSequence s, int start, int end) {
+        int i = start;
+        while (i < end && s.charAt(i) == ' ') i++;
+        return i;
+    }
+
+    private static boolean isBlank(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(s.charAt(i))) return false;
+        }
+        return true;
+    }
+}
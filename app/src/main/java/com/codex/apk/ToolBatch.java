@@ -0,0 +1,223 @@
+package com.codex.apk;
+
+import android.util.Log;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tool_calls of one model turn concurrently while keeping the result of running
+ * them in order.
+ *
+ * Each call gets a footprint: the project paths it reads or writes. A call that writes
+ * waits for every earlier call whose footprint overlaps its own, and every later
+ * overlapping call waits for it. Read-only calls never wait on each other. Writes to
+ * unrelated paths also run side by side. Unknown tools are treated as writing the whole
+ * project, so they act as a barrier. A call is handed to the pool only once its
+ * dependencies are done, so pool threads never block on each other.
+ */
+public final class ToolBatch {
+    private static final String TAG = "ToolBatch";
+    private static final int MAX_PARALLEL = 4;
+
+    /** Tools that only read; anything else is treated as mutating. */
+    private static final Set<String> READ_ONLY = new HashSet<>(Arrays.asList(
+            "readFile", "readFileRange", "listFiles", "listProjectTree", "searchInProject", "grepSearch", "readUrlContent",
+            "findSymbol", "fileOutline"));
+    /** Tools that write only the paths named in their args. */
+    private static final Set<String> PATH_WRITERS = new HashSet<>(Arrays.asList(
+            "createFile", "updateFile", "deleteFile", "renameFile", "fixLint"));
+    /** Read-only tools that never touch project files. */
+    private static final Set<String> NO_FILES = new HashSet<>(Collections.singletonList("readUrlContent"));
+    private static final String[] PATH_ARGS = {"path", "oldPath", "newPath"};
+
+    private static final ThreadPoolExecutor POOL;
+    static {
+        final AtomicInteger ids = new AtomicInteger();
+        POOL = new ThreadPoolExecutor(MAX_PARALLEL, MAX_PARALLEL, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "CodeX-Tool-" + ids.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        POOL.allowCoreThreadTimeOut(true);
+    }
+
+    private ToolBatch() {}
+
+    /** Called on the thread that ran the tool, as soon as it finishes. */
+    public interface Listener {
+        void onToolFinished(int index, String name, JsonObject args, JsonObject result, long durationMs);
+    }
+
+    public static boolean isReadOnly(String name) {
+        return READ_ONLY.contains(name);
+    }
+
+    /**
+     * Runs calls (the model's tool_calls array) and returns their {name, result} payloads
+     * in call order, ready for {@link ToolExecutor#buildToolResultContinuation}. Blocks
+     * until every call has finished. If the current AI request is cancelled, calls that
+     * have not started yet are reported as cancelled.
+     */
+    public static JsonArray execute(File projectDir, JsonArray calls, Listener listener) {
+        int n = calls != null ? calls.size() : 0;
+        List<Node> nodes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) nodes.add(new Node(projectDir, i, calls.get(i)));
+        for (int j = 0; j < n; j++) {
+            Node later = nodes.get(j);
+            for (int i = 0; i < j; i++) {
+                Node earlier = nodes.get(i);
+                if ((earlier.mutating || later.mutating) && earlier.overlaps(later)) {
+                    earlier.dependents.add(later);
+                    later.pending.incrementAndGet();
+                }
+            }
+        }
+
+        final AiRequestExecutor.Handle owner = AiRequestExecutor.currentHandle();
+        long start = System.currentTimeMillis();
+        if (n == 1) {
+            nodes.get(0).run(projectDir, listener);
+        } else if (n > 1) {
+            CountDownLatch done = new CountDownLatch(n);
+            Batch batch = new Batch(projectDir, listener, owner, done);
+            for (Node node : nodes) {
+                if (node.pending.get() == 0) batch.submit(node);
+            }
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.cancelled = true;
+            }
+        }
+
+        JsonArray results = new JsonArray();
+        for (Node node : nodes) {
+            JsonObject payload = new JsonObject();
+            payload.addProperty("name", node.name);
+            payload.add("result", node.result != null ? node.result : error("Cancelled"));
+            results.add(payload);
+        }
+        if (n > 0) {
+            Log.i(TAG, "Ran " + n + " tool call(s) in " + (System.currentTimeMillis() - start) + " ms; "
+                    + ToolResultCache.getStats());
+        }
+        return results;
+    }
+
+    private static JsonObject error(String message) {
+        JsonObject result = new JsonObject();
+        result.addProperty("ok", false);
+        result.addProperty("error", message);
+        return result;
+    }
+
+    private static final class Batch {
+        final File projectDir;
+        final Listener listener;
+        final AiRequestExecutor.Handle owner;
+        final CountDownLatch done;
+        volatile boolean cancelled;
+
+        Batch(File projectDir, Listener listener, AiRequestExecutor.Handle owner, CountDownLatch done) {
+            this.projectDir = projectDir;
+            this.listener = listener;
+            this.owner = owner;
+            this.done = done;
+        }
+
+        void submit(Node node) {
+            POOL.execute(() -> AiRequestExecutor.runAs(owner, () -> {
+                try {
+                    if (!cancelled && !AiRequestExecutor.isCurrentCancelled()) node.run(projectDir, listener);
+                } finally {
+                    done.countDown();
+                    for (Node next : node.dependents) {
+                        if (next.pending.decrementAndGet() == 0) submit(next);
+                    }
+                }
+            }));
+        }
+    }
+
+    private static final class Node {
+        final int index;
+        final String name;
+        final JsonObject args;
+        final boolean mutating;
+        /** Absolute, normalized paths touched; null means the whole project. */
+        final List<Path> footprint;
+        final List<Node> dependents = new ArrayList<>();
+        final AtomicInteger pending = new AtomicInteger();
+        volatile JsonObject result;
+
+        Node(File projectDir, int index, JsonElement call) {
+            this.index = index;
+            JsonObject c = call != null && call.isJsonObject() ? call.getAsJsonObject() : new JsonObject();
+            this.name = c.has("name") && c.get("name").isJsonPrimitive() ? c.get("name").getAsString() : "unknown";
+            this.args = c.has("args") && c.get("args").isJsonObject() ? c.getAsJsonObject("args") : new JsonObject();
+            this.mutating = !READ_ONLY.contains(name);
+            this.footprint = footprintOf(projectDir);
+        }
+
+        private List<Path> footprintOf(File projectDir) {
+            if (NO_FILES.contains(name)) return Collections.emptyList();
+            if (projectDir == null || !READ_ONLY.contains(name) && !PATH_WRITERS.contains(name)) return null;
+            Path root = projectDir.getAbsoluteFile().toPath().normalize();
+            List<Path> paths = new ArrayList<>();
+            for (String key : PATH_ARGS) {
+                if (!args.has(key) || !args.get(key).isJsonPrimitive()) continue;
+                paths.add(root.resolve(args.get(key).getAsString().replaceFirst("^/+", "")).normalize());
+            }
+            // Searches without a path cover the project
+            return paths.isEmpty() ? null : paths;
+        }
+
+        boolean overlaps(Node other) {
+            if (footprint == null) return other.footprint == null || !other.footprint.isEmpty();
+            if (other.footprint == null) return !footprint.isEmpty();
+            for (Path a : footprint) {
+                for (Path b : other.footprint) {
+                    if (a.startsWith(b) || b.startsWith(a)) return true;
+                }
+            }
+            return false;
+        }
+
+        void run(File projectDir, Listener listener) {
+            long start = System.currentTimeMillis();
+            JsonObject r;
+            try {
+                r = ToolExecutor.execute(projectDir, name, args);
+            } catch (Exception e) {
+                Log.w(TAG, "Tool " + name + " failed", e);
+                r = error(e.getMessage());
+            }
+            result = r;
+            if (listener != null) {
+                try {
+                    listener.onToolFinished(index, name, args, r, System.currentTimeMillis() - start);
+                } catch (Exception e) {
+                    Log.w(TAG, "Tool listener failed", e);
+                }
+            }
+        }
+    }
+}
@@ -4,21 +4,51 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.codex.apk.util.FileOps;
+import com.codex.apk.util.FileTransaction;
+import com.codex.apk.util.LineOffsetIndex;
+import com.codex.apk.util.ProjectSnapshot;
+import com.codex.apk.util.SymbolIndex;
 
 import java.io.File;
+import java.util.List;
 
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
 /**
  * Model-agnostic tool executor used by the UI layer to run tool_calls
  * when models do not natively support executing tools.
  */
 public class ToolExecutor {
-    private static final OkHttpClient httpClient = new OkHttpClient();
+    private static final int DEFAULT_RANGE_LINES = 200;
+    private static final int MAX_RANGE_LINES = 2000;
+    private static final long MAX_RANGE_BYTES = 64 * 1024;
+    private static final int DEFAULT_SYMBOLS = 50;
+    private static final int MAX_SYMBOLS = 500;
+    private static final long SYMBOL_INDEX_WAIT_MS = 5_000L;
+    private static final OkHttpClient httpClient = CodeXApplication.getHttpRuntime()
+            .newClientBuilder("tools", 16, 5)
+            .build();
 
+    /**
+     * Runs one tool. Read-only tools are answered from {@link ToolResultCache} while what
+     * they read is unchanged; mutating tools invalidate that cache.
+     */
     public static JsonObject execute(File projectDir, String name, JsonObject args) {
+        ToolResultCache.Lookup lookup = ToolResultCache.lookup(projectDir, name, args);
+        if (lookup != null) {
+            JsonObject cached = ToolResultCache.get(lookup);
+            if (cached != null) return cached;
+        }
+        JsonObject result = run(projectDir, name, args);
+        if (lookup != null) {
+            ToolResultCache.put(lookup, result);
+        } else if (!ToolBatch.isReadOnly(name)) {
+            ToolResultCache.invalidateAfter(projectDir, args);
+        }
+        return result;
+    }
+
+    private static JsonObject run(File projectDir, String name, JsonObject args) {
         JsonObject result = new JsonObject();
         try {
             switch (name) {
@@ -96,7 +126,7 @@ public class ToolExecutor {
                         int maxLength = 20000;
                         if (content.length() > maxLength) {
                             content = content.substring(0, maxLength);
-                            result.addProperty("message", "File read (truncated): " + path);
+                            result.addProperty("message", "File read (truncated; use readFileRange for the rest): " + path);
                         } else {
                             result.addProperty("message", "File read: " + path);
                         }
@@ -104,23 +134,113 @@ public class ToolExecutor {
                     }
                     break;
                 }
+                case "readFileRange": {
+                    String path = args.get("path").getAsString();
+                    File file = new File(projectDir, path);
+                    if (!file.isFile()) {
+                        result.addProperty("ok", false);
+                        result.addProperty("error", "File not found: " + path);
+                        break;
+                    }
+                    LineOffsetIndex index = LineOffsetIndex.of(file);
+                    long from;
+                    long to;
+                    boolean byBytes = args.has("startByte") || args.has("endByte");
+                    if (byBytes) {
+                        from = args.has("startByte") ? Math.max(0L, args.get("startByte").getAsLong()) : 0L;
+                        to = args.has("endByte") ? args.get("endByte").getAsLong() : from + MAX_RANGE_BYTES;
+                        to = Math.min(Math.min(to, from + MAX_RANGE_BYTES), index.size);
+                    } else {
+                        int startLine = args.has("startLine") ? Math.max(1, args.get("startLine").getAsInt()) : 1;
+                        if (startLine > Math.max(1, index.getLineCount())) {
+                            result.addProperty("ok", false);
+                            result.addProperty("error", "startLine " + startLine + " is past the end of " + path + " (" + index.getLineCount() + " lines)");
+                            break;
+                        }
+                        int endLine = args.has("endLine") ? args.get("endLine").getAsInt() : startLine + DEFAULT_RANGE_LINES - 1;
+                        endLine = Math.min(Math.min(endLine, startLine + MAX_RANGE_LINES - 1), index.getLineCount());
+                        from = index.lineStart(startLine - 1);
+                        int last = Math.max(startLine, endLine);
+                        // Drop whole lines past the byte cap; a single long line is cut instead
+                        while (last > startLine && index.lineStart(last) - from > MAX_RANGE_BYTES) last--;
+                        to = Math.min(index.lineStart(last), from + MAX_RANGE_BYTES);
+                    }
+                    // Never split a UTF-8 character at either end
+                    from = LineOffsetIndex.charStartOf(file, from);
+                    to = Math.max(from, LineOffsetIndex.charStartOf(file, to));
+                    String content = LineOffsetIndex.read(file, from, to);
+                    int firstLine = index.lineAt(from) + 1;
+                    int lastLine = to > from ? index.lineAt(to - 1) + 1 : firstLine - 1;
+                    boolean hasMore = to < index.size;
+                    result.addProperty("ok", true);
+                    result.addProperty("content", content);
+                    result.addProperty("startLine", firstLine);
+                    result.addProperty("endLine", lastLine);
+                    result.addProperty("totalLines", index.getLineCount());
+                    result.addProperty("startByte", from);
+                    result.addProperty("endByte", to);
+                    result.addProperty("totalBytes", index.size);
+                    result.addProperty("hasMore", hasMore);
+                    if (hasMore) {
+                        // A line cut by the byte cap continues by byte offset
+                        if (byBytes || index.lineStart(lastLine) != to) result.addProperty("nextStartByte", to);
+                        else result.addProperty("nextStartLine", lastLine + 1);
+                    }
+                    result.addProperty("message", "Read " + path + " lines " + firstLine + "-" + lastLine + " of " + index.getLineCount());
+                    break;
+                }
+                case "findSymbol": {
+                    String query = args.get("query").getAsString();
+                    String kind = args.has("kind") ? args.get("kind").getAsString() : null;
+                    String path = args.has("path") ? args.get("path").getAsString() : null;
+                    int maxResults = args.has("maxResults") ? Math.max(1, Math.min(MAX_SYMBOLS, args.get("maxResults").getAsInt())) : DEFAULT_SYMBOLS;
+                    SymbolIndex index = SymbolIndex.open(projectDir);
+                    if (!index.awaitReady(SYMBOL_INDEX_WAIT_MS)) {
+                        result.addProperty("ok", false);
+                        result.addProperty("error", "Symbol index is still being built; retry shortly or use grepSearch");
+                        break;
+                    }
+                    List<SymbolIndex.Symbol> symbols = index.find(query, kind, path, maxResults + 1);
+                    boolean truncated = symbols.size() > maxResults;
+                    if (truncated) symbols = symbols.subList(0, maxResults);
+                    result.addProperty("ok", true);
+                    result.add("symbols", symbolsToJson(symbols, true));
+                    result.addProperty("truncated", truncated);
+                    break;
+                }
+                case "fileOutline": {
+                    String path = args.get("path").getAsString();
+                    if (!SymbolIndex.isIndexable(path)) {
+                        result.addProperty("ok", false);
+                        result.addProperty("error", "Outlines are available for HTML, CSS and JS/TS files");
+                        break;
+                    }
+                    List<SymbolIndex.Symbol> symbols = SymbolIndex.open(projectDir).outline(path);
+                    if (symbols == null) {
+                        result.addProperty("ok", false);
+                        result.addProperty("error", "File not found: " + path);
+                        break;
+                    }
+                    result.addProperty("ok", true);
+                    result.addProperty("path", path);
+                    result.add("symbols", symbolsToJson(symbols, false));
+                    break;
+                }
                 case "listFiles": {
                     String path = args.get("path").getAsString();
-                    File dir = new File(projectDir, path);
-                    if (!dir.exists() || !dir.isDirectory()) {
+                    List<ProjectSnapshot.Entry> entries = ProjectSnapshot.listDir(new File(projectDir, path));
+                    if (entries == null) {
                         result.addProperty("ok", false);
                         result.addProperty("error", "Directory not found: " + path);
                     } else {
                         JsonArray files = new JsonArray();
-                        File[] fileList = dir.listFiles();
-                        if (fileList != null) {
-                            for (File f : fileList) {
-                                JsonObject fileInfo = new JsonObject();
-                                fileInfo.addProperty("name", f.getName());
-                                fileInfo.addProperty("type", f.isDirectory() ? "directory" : "file");
-                                fileInfo.addProperty("size", f.length());
-                                files.add(fileInfo);
-                            }
+                        for (ProjectSnapshot.Entry e : entries) {
+                            if (FileTransaction.isInternal(e.file)) continue;
+                            JsonObject fileInfo = new JsonObject();
+                            fileInfo.addProperty("name", e.getName());
+                            fileInfo.addProperty("type", e.directory ? "directory" : "file");
+                            fileInfo.addProperty("size", e.size);
+                            files.add(fileInfo);
                         }
                         result.addProperty("ok", true);
                         result.add("files", files);
@@ -130,22 +250,10 @@ public class ToolExecutor {
                 }
                 case "readUrlContent": {
                     String url = args.get("url").getAsString();
-                    Request request = new Request.Builder().url(url).get().addHeader("Accept", "*/*").build();
-                    try (Response resp = httpClient.newCall(request).execute()) {
-                        if (resp.isSuccessful() && resp.body() != null) {
-                            String content = resp.body().string();
-                            String type = resp.header("Content-Type", "");
-                            int max = 200_000;
-                            if (content.length() > max) content = content.substring(0, max);
-                            result.addProperty("ok", true);
-                            result.addProperty("content", content);
-                            result.addProperty("contentType", type);
-                            result.addProperty("status", resp.code());
-                        } else {
-                            result.addProperty("ok", false);
-                            result.addProperty("error", "HTTP " + (resp != null ? resp.code() : 0));
-                        }
-                    }
+                    boolean stripHtml = args.has("stripHtml") && args.get("stripHtml").getAsBoolean();
+                    int maxChars = args.has("maxChars") ? args.get("maxChars").getAsInt() : UrlContentFetcher.DEFAULT_MAX_CHARS;
+                    maxChars = Math.max(1, Math.min(maxChars, UrlContentFetcher.DEFAULT_MAX_CHARS));
+                    result = UrlContentFetcher.fetch(httpClient, url, stripHtml, maxChars);
                     break;
                 }
                 case "grepSearch": {
@@ -173,6 +281,20 @@ public class ToolExecutor {
         return result;
     }
 
+    private static JsonArray symbolsToJson(List<SymbolIndex.Symbol> symbols, boolean withPath) {
+        JsonArray arr = new JsonArray();
+        for (SymbolIndex.Symbol s : symbols) {
+            JsonObject o = new JsonObject();
+            o.addProperty("name", s.name);
+            o.addProperty("kind", s.kind);
+            if (withPath) o.addProperty("path", s.path);
+            o.addProperty("line", s.line);
+            if (s.container != null) o.addProperty("container", s.container);
+            arr.add(o);
+        }
+        return arr;
+    }
+
     /** Build the tool_result continuation payload matching our prompt contract. */
     public static String buildToolResultContinuation(JsonArray results) {
         JsonObject payload = new JsonObject();
@@ -0,0 +1,241 @@
+package com.codex.apk;
+
+import com.codex.apk.util.ProjectSnapshot;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Results of read-only tools, reused when an agent repeats a call across continuation
+ * rounds. Entries are keyed by project, tool name and normalized args. Each entry is
+ * checked against the version of what it read:
+ * <ul>
+ *   <li>readFile and readFileRange: mtime and size of the file they name.</li>
+ *   <li>listFiles, tree and search tools: the project snapshot's change counter, which
+ *   moves on any change its watchers or FileManager report. listFiles also checks the
+ *   directory's own mtime and size.</li>
+ * </ul>
+ * Entries are also dropped on FileManager change events and after any mutating tool.
+ */
+public final class ToolResultCache {
+    private static final int MAX_ENTRIES = 64;
+    private static final Set<String> CACHEABLE = new HashSet<>(Arrays.asList(
+            "readFile", "readFileRange", "listFiles", "listProjectTree", "searchInProject", "grepSearch"));
+    /** Tools whose result depends on the one path they name, not on the whole project. */
+    private static final Set<String> SINGLE_PATH = new HashSet<>(Arrays.asList("readFile", "readFileRange", "listFiles"));
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    /** Moves on every invalidation; a result computed across one is not stored. */
+    private static long epoch;
+    private static long hits;
+    private static long misses;
+    private static long invalidations;
+
+    private ToolResultCache() {}
+
+    private static final class Entry {
+        final Path projectRoot;
+        final Path target; // null when the result covers the whole project
+        final long modified;
+        final long size;
+        final long snapshotVersion;
+        final JsonObject result;
+
+        Entry(Path projectRoot, Path target, long modified, long size, long snapshotVersion, JsonObject result) {
+            this.projectRoot = projectRoot;
+            this.target = target;
+            this.modified = modified;
+            this.size = size;
+            this.snapshotVersion = snapshotVersion;
+            this.result = result;
+        }
+    }
+
+    /** What a call depends on, captured before it runs. */
+    static final class Lookup {
+        final String key;
+        final Path projectRoot;
+        final Path target;
+        final long modified;
+        final long size;
+        final long snapshotVersion;
+        final long epoch;
+
+        Lookup(String key, Path projectRoot, Path target, long modified, long size, long snapshotVersion, long epoch) {
+            this.key = key;
+            this.projectRoot = projectRoot;
+            this.target = target;
+            this.modified = modified;
+            this.size = size;
+            this.snapshotVersion = snapshotVersion;
+            this.epoch = epoch;
+        }
+    }
+
+    public static boolean isCacheable(String tool) {
+        return CACHEABLE.contains(tool);
+    }
+
+    /** Captures the key and current versions for a call; null when the call is not cacheable. */
+    static Lookup lookup(File projectDir, String tool, JsonObject args) {
+        if (projectDir == null || !isCacheable(tool)) return null;
+        Path root = projectDir.getAbsoluteFile().toPath().normalize();
+        Path target = null;
+        long modified = 0L;
+        long size = 0L;
+        if (SINGLE_PATH.contains(tool)) {
+            if (!args.has("path") || !args.get("path").isJsonPrimitive()) return null;
+            target = root.resolve(args.get("path").getAsString().replaceFirst("^/+", "")).normalize();
+            File f = target.toFile();
+            modified = f.lastModified();
+            size = f.length();
+        }
+        // A file read is fully described by its stats; listings and searches also see children change
+        long snapshotVersion = tool.startsWith("readFile") ? 0L : ProjectSnapshot.versionOf(projectDir);
+        String key = root + "\n" + tool + "\n" + canonical(args, root);
+        synchronized (ToolResultCache.class) {
+            return new Lookup(key, root, target, modified, size, snapshotVersion, epoch);
+        }
+    }
+
+    /** Cached result for lookup, or null. The returned object is a copy the caller may keep. */
+    static synchronized JsonObject get(Lookup lookup) {
+        Entry e = ENTRIES.get(lookup.key);
+        if (e != null && e.modified == lookup.modified && e.size == lookup.size
+                && e.snapshotVersion == lookup.snapshotVersion) {
+            hits++;
+            return e.result.deepCopy();
+        }
+        if (e != null) ENTRIES.remove(lookup.key);
+        misses++;
+        return null;
+    }
+
+    /** Stores a successful result, unless something changed while it was computed. */
+    static synchronized void put(Lookup lookup, JsonObject result) {
+        if (lookup.epoch != epoch || result == null) return;
+        if (!result.has("ok") || !result.get("ok").getAsBoolean()) return;
+        ENTRIES.put(lookup.key, new Entry(lookup.projectRoot, lookup.target, lookup.modified, lookup.size,
+                lookup.snapshotVersion, result.deepCopy()));
+    }
+
+    /**
+     * Drops entries that may depend on changed: every project-wide entry of its project and
+     * every single-path entry whose path contains it or lies under it.
+     */
+    public static synchronized void invalidate(File changed) {
+        if (changed == null) return;
+        epoch++;
+        Path path = changed.getAbsoluteFile().toPath().normalize();
+        Iterator<Entry> it = ENTRIES.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (!path.startsWith(e.projectRoot)) continue;
+            if (e.target == null || e.target.startsWith(path) || path.startsWith(e.target)) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drops what a mutating tool may have made stale: entries touching the paths in its args,
+     * or the whole project when it names none.
+     */
+    static void invalidateAfter(File projectDir, JsonObject args) {
+        boolean named = false;
+        for (String key : new String[]{"path", "oldPath", "newPath"}) {
+            if (projectDir == null || !args.has(key) || !args.get(key).isJsonPrimitive()) continue;
+            invalidate(new File(projectDir, args.get(key).getAsString().replaceFirst("^/+", "")));
+            named = true;
+        }
+        if (!named) invalidateProject(projectDir);
+    }
+
+    /** Drops every entry of the project at projectDir. */
+    public static synchronized void invalidateProject(File projectDir) {
+        if (projectDir == null) return;
+        epoch++;
+        Path root = projectDir.getAbsoluteFile().toPath().normalize();
+        Iterator<Entry> it = ENTRIES.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().projectRoot.equals(root)) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /** Listener to register with {@link FileManager#addFileChangeListener}. */
+    public static FileManager.FileChangeListener asFileChangeListener() {
+        return new FileManager.FileChangeListener() {
+            @Override public void onFileCreated(File file) { invalidate(file); }
+            @Override public void onFileModified(File file) { invalidate(file); }
+            @Override public void onFileDeleted(File file) { invalidate(file); }
+            @Override public void onFileRenamed(File oldFile, File newFile) {
+                invalidate(oldFile);
+                invalidate(newFile);
+            }
+        };
+    }
+
+    public static synchronized Stats getStats() {
+        return new Stats(hits, misses, invalidations, ENTRIES.size());
+    }
+
+    /** Args as a string with sorted keys and "path"-like values normalized against root. */
+    private static String canonical(JsonObject args, Path root) {
+        List<String> keys = new ArrayList<>(args.keySet());
+        Collections.sort(keys);
+        StringBuilder sb = new StringBuilder("{");
+        for (String k : keys) {
+            JsonElement v = args.get(k);
+            sb.append(k).append('=');
+            if (v.isJsonObject()) {
+                sb.append(canonical(v.getAsJsonObject(), root));
+            } else if (k.toLowerCase().endsWith("path") && v.isJsonPrimitive()) {
+                sb.append(root.relativize(root.resolve(v.getAsString().replaceFirst("^/+", "")).normalize()));
+            } else {
+                sb.append(v);
+            }
+            sb.append(';');
+        }
+        return sb.append('}').toString();
+    }
+
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long invalidations;
+        public final int entries;
+
+        Stats(long hits, long misses, long invalidations, int entries) {
+            this.hits = hits;
+            this.misses = misses;
+            this.invalidations = invalidations;
+            this.entries = entries;
+        }
+
+        @Override
+        public String toString() {
+            return "toolCache{hits=" + hits + ", misses=" + misses + ", invalidations=" + invalidations
+                    + ", entries=" + entries + "}";
+        }
+    }
+}
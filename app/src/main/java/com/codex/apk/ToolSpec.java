@@ -107,6 +107,18 @@ public class ToolSpec {
                         new String[]{"Relative path to the file to read"}
                 )));
 
+        // readFileRange
+        tools.add(new ToolSpec(
+                "readFileRange",
+                "Read part of a file by 1-based inclusive line range (default 200 lines, max 2000) or by byte range (max 64 KB). Use it to page through large files; the result reports totalLines and nextStartLine/nextStartByte when more remains.",
+                buildSchema(
+                        new String[]{"path", "startLine", "endLine", "startByte", "endByte"},
+                        new String[]{"string", "integer", "integer", "integer", "integer"},
+                        new String[]{"Relative path to the file to read", "First line to read (1-based)", "Last line to read (inclusive)",
+                                "First byte offset to read (instead of lines)", "Byte offset to stop before"},
+                        new String[]{"path"}
+                )));
+
         // listFiles
         tools.add(new ToolSpec(
                 "listFiles",
@@ -157,6 +169,29 @@ public class ToolSpec {
                         new String[]{"Search query or regex pattern", "Maximum number of results", "Treat query as regex"}
                 )));
 
+        // findSymbol
+        tools.add(new ToolSpec(
+                "findSymbol",
+                "Find definitions by name across the project's HTML, CSS and JS files: functions, classes, methods, CSS selectors, custom properties, keyframes, HTML ids and classes. Exact matches come first, then prefix and substring matches. Cheaper than grepSearch for locating a definition.",
+                buildSchema(
+                        new String[]{"query", "kind", "path", "maxResults"},
+                        new String[]{"string", "string", "string", "integer"},
+                        new String[]{"Symbol name or part of it (a leading '.', '#' or '--' is optional)",
+                                "Only this kind: function, class, method, selector, customProperty, keyframes, id or htmlClass",
+                                "Relative directory or file to limit the search to", "Maximum number of results (default 50)"},
+                        new String[]{"query"}
+                )));
+
+        // fileOutline
+        tools.add(new ToolSpec(
+                "fileOutline",
+                "List the symbols defined in an HTML, CSS or JS file with their line numbers, without reading the file.",
+                buildSchema(
+                        new String[]{"path"},
+                        new String[]{"string"},
+                        new String[]{"Relative path to the file"}
+                )));
+
         // fixLint
         tools.add(new ToolSpec(
                 "fixLint",
@@ -188,11 +223,12 @@ public class ToolSpec {
     public static ToolSpec specReadUrlContent() {
         return new ToolSpec(
                 "readUrlContent",
-                "Fetch static content from an HTTP(S) URL for reference (HTML/JSON/text).",
+                "Fetch static content from an HTTP(S) URL for reference (HTML/JSON/text). Download stops at maxChars (default and max 200000); the result reports truncated.",
                 buildSchema(
-                        new String[]{"url"},
-                        new String[]{"string"},
-                        new String[]{"Absolute HTTP(S) URL to read"}
+                        new String[]{"url", "stripHtml", "maxChars"},
+                        new String[]{"string", "boolean", "integer"},
+                        new String[]{"Absolute HTTP(S) URL to read", "Reduce an HTML page to its readable text", "Maximum characters of content to return"},
+                        new String[]{"url"}
                 )
         );
     }
@@ -222,6 +258,13 @@ public class ToolSpec {
      * Enhanced schema builder with descriptions
      */
     private static JsonObject buildSchema(String[] keys, String[] types, String[] descriptions) {
+        return buildSchema(keys, types, descriptions, keys);
+    }
+
+    /**
+     * Schema builder where only the given keys are required
+     */
+    private static JsonObject buildSchema(String[] keys, String[] types, String[] descriptions, String[] required) {
         JsonObject schema = new JsonObject();
         schema.addProperty("type", "object");
 
@@ -238,7 +281,7 @@ public class ToolSpec {
 
         // required
         JsonArray req = new JsonArray();
-        for (String k : keys) req.add(k);
+        for (String k : required) req.add(k);
         schema.add("required", req);
         return schema;
     }
@@ -0,0 +1,202 @@
+package com.codex.apk;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.codex.apk.util.HtmlTextStripper;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Fetches a URL for the readUrlContent tool. The body is decoded as it streams in and the
+ * download stops as soon as maxChars of text are collected, so a large page is never held
+ * in memory whole. HTML can be reduced to text on the fly.
+ *
+ * Responses that carry an ETag or Last-Modified are kept on disk under the app's cache
+ * dir. The next fetch of the same URL sends them back as If-None-Match and
+ * If-Modified-Since, and a 304 is answered from the stored copy.
+ */
+public final class UrlContentFetcher {
+    private static final String TAG = "UrlContentFetcher";
+    public static final int DEFAULT_MAX_CHARS = 200_000;
+    /** Stop decoding after this many chars even if stripping kept little of them. */
+    private static final long MAX_SCANNED_CHARS = 8L * 1024 * 1024;
+    private static final int MAX_CACHED = 64;
+    private static final String CACHE_DIR = "url-cache";
+    private static final int BUFFER = 8 * 1024;
+
+    private UrlContentFetcher() {}
+
+    /**
+     * Result object for the tool: ok, content, contentType, status, truncated, and
+     * htmlStripped and fromCache. Fails with "HTTP code" for non-2xx responses.
+     */
+    public static JsonObject fetch(OkHttpClient client, String url, boolean stripHtml, int maxChars) throws IOException {
+        File cacheFile = cacheFileFor(url + "\n" + stripHtml + "\n" + maxChars);
+        JsonObject cached = readCache(cacheFile, url);
+
+        Request.Builder builder = new Request.Builder().url(url).get().addHeader("Accept", "*/*");
+        if (cached != null) {
+            if (cached.has("etag")) builder.header("If-None-Match", cached.get("etag").getAsString());
+            if (cached.has("lastModified")) builder.header("If-Modified-Since", cached.get("lastModified").getAsString());
+        }
+
+        JsonObject result = new JsonObject();
+        try (Response resp = AiRequestExecutor.bound(client.newCall(builder.build())).execute()) {
+            if (resp.code() == 304 && cached != null) {
+                cacheFile.setLastModified(System.currentTimeMillis());
+                result.addProperty("ok", true);
+                result.addProperty("content", cached.get("content").getAsString());
+                result.addProperty("contentType", cached.get("contentType").getAsString());
+                result.addProperty("status", cached.get("status").getAsInt());
+                result.addProperty("truncated", cached.get("truncated").getAsBoolean());
+                result.addProperty("htmlStripped", cached.get("htmlStripped").getAsBoolean());
+                result.addProperty("fromCache", true);
+                return result;
+            }
+            ResponseBody body = resp.body();
+            if (!resp.isSuccessful() || body == null) {
+                result.addProperty("ok", false);
+                result.addProperty("error", "HTTP " + resp.code());
+                return result;
+            }
+
+            String type = resp.header("Content-Type", "");
+            boolean html = stripHtml && (type.isEmpty() || type.toLowerCase().contains("html"));
+            StringBuilder out = new StringBuilder(Math.min(maxChars, 16 * 1024));
+            boolean truncated = read(body, html, out, maxChars);
+            String content = out.toString();
+
+            result.addProperty("ok", true);
+            result.addProperty("content", content);
+            result.addProperty("contentType", type);
+            result.addProperty("status", resp.code());
+            result.addProperty("truncated", truncated);
+            result.addProperty("htmlStripped", html);
+            result.addProperty("fromCache", false);
+
+            String etag = resp.header("ETag");
+            String lastModified = resp.header("Last-Modified");
+            if (cacheFile != null && (etag != null || lastModified != null)) {
+                JsonObject entry = result.deepCopy();
+                entry.remove("ok");
+                entry.remove("fromCache");
+                entry.addProperty("url", url);
+                if (etag != null) entry.addProperty("etag", etag);
+                if (lastModified != null) entry.addProperty("lastModified", lastModified);
+                writeCache(cacheFile, entry);
+            } else if (cacheFile != null && cached != null) {
+                // No validators any more; the stored copy can never be confirmed again
+                cacheFile.delete();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Decodes body into out until maxChars; true when the body had more to give. OkHttp's
+     * charStream honours a byte order mark over the Content-Type charset (UTF-8 when none)
+     * and replaces malformed input.
+     */
+    private static boolean read(ResponseBody body, boolean html, StringBuilder out, int maxChars) throws IOException {
+        HtmlTextStripper stripper = html ? new HtmlTextStripper(out, maxChars) : null;
+        char[] buf = new char[BUFFER];
+        long scanned = 0;
+        try (Reader reader = body.charStream()) {
+            int n;
+            while ((n = reader.read(buf)) > 0) {
+                scanned += n;
+                if (stripper != null) {
+                    stripper.feed(buf, 0, n);
+                    if (stripper.isFull()) return true;
+                } else {
+                    int take = Math.min(n, maxChars - out.length());
+                    out.append(buf, 0, take);
+                    if (take < n || out.length() >= maxChars) return take < n || reader.read() >= 0;
+                }
+                // Stripping a script-heavy page can keep almost nothing; don't download it all
+                if (scanned >= MAX_SCANNED_CHARS) return true;
+            }
+        }
+        return false;
+    }
+
+    private static File cacheFileFor(String key) {
+        Context context = CodeXApplication.getAppContext();
+        if (context == null) return null;
+        File dir = new File(context.getCacheDir(), CACHE_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) return null;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            StringBuilder name = new StringBuilder();
+            for (byte b : md.digest(key.getBytes(StandardCharsets.UTF_8))) name.append(String.format("%02x", b));
+            return new File(dir, name + ".json");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static JsonObject readCache(File file, String url) {
+        if (file == null || !file.isFile()) return null;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            JsonObject entry = JsonParser.parseReader(reader).getAsJsonObject();
+            // A hash collision or an entry from an older format is simply a miss
+            if (!entry.has("url") || !url.equals(entry.get("url").getAsString()) || !entry.has("content")
+                    || !entry.has("htmlStripped") || !(entry.has("etag") || entry.has("lastModified"))) {
+                return null;
+            }
+            return entry;
+        } catch (Exception e) {
+            Log.w(TAG, "Dropping unreadable cache entry " + file.getName(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private static void writeCache(File file, JsonObject entry) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writer.write(entry.toString());
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache " + file.getName(), e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        trim(file.getParentFile());
+    }
+
+    /** Keeps the most recently used entries; fetches and 304s both touch an entry. */
+    private static void trim(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null || files.length <= MAX_CACHED) return;
+        long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(modified[b], modified[a]));
+        for (int i = MAX_CACHED; i < order.length; i++) files[order[i]].delete();
+    }
+}
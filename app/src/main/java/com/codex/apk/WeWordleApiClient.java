@@ -17,9 +17,14 @@ public class WeWordleApiClient extends AnyProviderApiClient {
         super(context, actionListener);
     }
 
+    @Override
+    public String getPrewarmUrl() {
+        return API_ENDPOINT;
+    }
+
     @Override
     public void sendMessage(String message, AIModel model, List<ChatMessage> history, QwenConversationState state, boolean thinkingModeEnabled, boolean webSearchEnabled, List<ToolSpec> enabledTools, List<File> attachments) {
-        new Thread(() -> {
+        CodeXApplication.getAiRequestExecutor().submitChat(handle -> {
             Response response = null;
             try {
                 if (actionListener != null) actionListener.onAiRequestStarted();
@@ -51,7 +56,7 @@ public class WeWordleApiClient extends AnyProviderApiClient {
                 long backoff = 1000; // 1 second
 
                 for (int i = 0; i < maxRetries; i++) {
-                    response = httpClient.newCall(request).execute();
+                    response = AiRequestExecutor.bound(httpClient.newCall(request)).execute();
                     if (response.isSuccessful() && response.body() != null) {
                         break; // Success
                     }
@@ -106,6 +111,6 @@ public class WeWordleApiClient extends AnyProviderApiClient {
                 try { if (response != null) response.close(); } catch (Exception ignore) {}
                 if (actionListener != null) actionListener.onAiRequestCompleted();
             }
-        }).start();
+        });
     }
 }
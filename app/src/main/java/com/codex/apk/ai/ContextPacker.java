@@ -0,0 +1,257 @@
+package com.codex.apk.ai;
+
+import com.codex.apk.TabItem;
+import com.codex.apk.util.FileOps;
+import com.codex.apk.util.ProjectSnapshot;
+import com.codex.apk.util.SymbolIndex;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Picks the project files most relevant to a prompt and packs them into a token budget,
+ * instead of inlining one whole file or cutting text at a fixed char count.
+ *
+ * Files are scored by:
+ * <ul>
+ *   <li>being named in the prompt by path, file name or base name;</li>
+ *   <li>defining a symbol the prompt names (from {@link SymbolIndex}, when open);</li>
+ *   <li>being the active tab or another open tab;</li>
+ *   <li>recent modification ({@link FileOps#getRecentFiles}).</li>
+ * </ul>
+ * The best files go in whole while they fit. A file that does not fit is cut to the
+ * lines around the symbols that matched it, or to its head. Open tabs supply their
+ * unsaved text.
+ */
+public final class ContextPacker {
+    /** Used when a model does not report its context length. */
+    private static final int DEFAULT_CONTEXT_TOKENS = 32_000;
+    private static final int MIN_BUDGET = 1_000;
+    private static final int MAX_BUDGET = 16_000;
+    private static final int MAX_FILES = 12;
+    private static final int MAX_RECENT = 8;
+    private static final long MAX_FILE_BYTES = 256 * 1024;
+    /** Below this much room left, no further file is started. */
+    private static final int MIN_SNIPPET_TOKENS = 150;
+    private static final int SYMBOL_WINDOW = 15;
+    private static final int MAX_PROMPT_WORDS = 32;
+
+    private static final Pattern WORD = Pattern.compile("[A-Za-z0-9_$#.\\-/]+");
+    private static final Set<String> TEXT_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "html", "htm", "css", "scss", "less", "js", "mjs", "cjs", "jsx", "ts", "tsx", "json", "md", "txt",
+            "xml", "svg", "vue", "svelte", "yml", "yaml", "toml", "ini", "sh", "py", "java", "kt", "php"));
+
+    private ContextPacker() {}
+
+    /** Tokens of project context to send for a model: a quarter of what its window leaves after the reply, clamped. */
+    public static int budgetFor(ModelCapabilities caps) {
+        int context = caps != null && caps.maxContextLength > 0 ? caps.maxContextLength : DEFAULT_CONTEXT_TOKENS;
+        int reply = caps != null && caps.maxGenerationLength > 0 ? Math.min(caps.maxGenerationLength, context / 4) : context / 8;
+        return Math.max(MIN_BUDGET, Math.min(MAX_BUDGET, (context - reply) / 4));
+    }
+
+    private static final class Candidate {
+        final File file;  // null for text that only exists in memory
+        final String label;
+        String text;      // from the tab when open; read lazily otherwise
+        double score;
+        final TreeSet<Integer> hitLines = new TreeSet<>(); // 1-based lines of matched symbols
+        final List<String> reasons = new ArrayList<>();
+
+        Candidate(File file, String label) {
+            this.file = file;
+            this.label = label;
+        }
+
+        void add(double points, String reason) {
+            score += points;
+            if (!reasons.contains(reason)) reasons.add(reason);
+        }
+    }
+
+    /**
+     * Ranked, budgeted file context for query, or "" when nothing relevant fits.
+     * activeFile may be null; activeText is the active editor's current text.
+     */
+    public static String pack(File projectDir, String query, List<TabItem> openTabs, File activeFile, String activeText, int maxTokens) {
+        List<Candidate> ranked = rank(projectDir, query, openTabs, activeFile, activeText);
+        StringBuilder out = new StringBuilder();
+        int remaining = maxTokens;
+        int packed = 0;
+        for (Candidate c : ranked) {
+            if (packed >= MAX_FILES || remaining < MIN_SNIPPET_TOKENS) break;
+            if (c.text == null) c.text = readText(c.file);
+            if (c.text == null || c.text.isEmpty()) continue;
+            String header = "### " + c.label + " (" + String.join(", ", c.reasons) + ")\n```\n";
+            int overhead = TokenEstimator.estimate(header) + 4;
+            // The top file may take most of the budget; later ones share what is left
+            int cap = Math.max(Math.min(remaining, MIN_SNIPPET_TOKENS * 2), (int) (remaining * (packed == 0 ? 0.6 : 0.5))) - overhead;
+            if (cap <= 0) break;
+            String body = TokenEstimator.estimate(c.text) <= cap ? c.text : excerpt(c.text, c.hitLines, cap);
+            if (body.isEmpty()) continue;
+            out.append(header).append(body);
+            if (!body.endsWith("\n")) out.append('\n');
+            out.append("```\n");
+            remaining -= overhead + TokenEstimator.estimate(body);
+            packed++;
+        }
+        return out.toString();
+    }
+
+    private static List<Candidate> rank(File projectDir, String query, List<TabItem> openTabs, File activeFile, String activeText) {
+        Map<String, Candidate> byPath = new LinkedHashMap<>();
+        String lowerQuery = query != null ? query.toLowerCase(Locale.ROOT) : "";
+
+        if (activeText != null && !activeText.isEmpty()) {
+            Candidate c = candidate(byPath, projectDir, activeFile, activeFile != null ? null : "active file");
+            c.text = activeText;
+            c.add(80, "active");
+        }
+        if (openTabs != null) {
+            int order = 0;
+            for (TabItem tab : openTabs) {
+                if (tab == null || tab.getFile() == null) continue;
+                Candidate c = candidate(byPath, projectDir, tab.getFile(), null);
+                if (c.text == null) c.text = tab.getContent();
+                c.add(Math.max(10, 40 - 5 * order++), "open");
+                if (tab.isModified()) c.add(10, "unsaved");
+            }
+        }
+        if (projectDir != null) {
+            List<File> recent = FileOps.getRecentFiles(projectDir, MAX_RECENT);
+            for (int i = 0; i < recent.size(); i++) {
+                candidate(byPath, projectDir, recent.get(i), null).add(30 - 3 * i, "recent");
+            }
+            if (!lowerQuery.isEmpty()) addReferences(byPath, projectDir, query, lowerQuery);
+        }
+
+        List<Candidate> ranked = new ArrayList<>(byPath.values());
+        ranked.sort((a, b) -> Double.compare(b.score, a.score));
+        return ranked;
+    }
+
+    /** Scores files the prompt names directly or through a symbol they define. */
+    private static void addReferences(Map<String, Candidate> byPath, File projectDir, String query, String lowerQuery) {
+        Set<String> words = new HashSet<>();
+        Matcher m = WORD.matcher(query);
+        while (m.find()) {
+            String w = m.group().replaceAll("^[.\\-/]+|[.\\-/]+$", "");
+            if (w.length() >= 3) words.add(w);
+        }
+        Set<String> lowerWords = new HashSet<>();
+        for (String w : words) lowerWords.add(w.toLowerCase(Locale.ROOT));
+
+        String rootPath = projectDir.getAbsolutePath();
+        for (ProjectSnapshot.Entry e : ProjectSnapshot.listAllFiles(projectDir)) {
+            String rel = relativePath(rootPath, e.file);
+            if (rel == null) continue;
+            String name = e.getName().toLowerCase(Locale.ROOT);
+            int dot = name.lastIndexOf('.');
+            String base = dot > 0 ? name.substring(0, dot) : name;
+            if (rel.indexOf('/') > 0 && lowerQuery.contains(rel.toLowerCase(Locale.ROOT))) {
+                candidate(byPath, projectDir, e.file, null).add(100, "named");
+            } else if (lowerWords.contains(name)) {
+                candidate(byPath, projectDir, e.file, null).add(90, "named");
+            } else if (base.length() >= 4 && lowerWords.contains(base)) {
+                candidate(byPath, projectDir, e.file, null).add(40, "named");
+            }
+        }
+
+        SymbolIndex index = SymbolIndex.forPath(projectDir);
+        if (index == null || !index.isReady()) return;
+        int checked = 0;
+        for (String w : words) {
+            if (w.length() < 4 || checked++ >= MAX_PROMPT_WORDS) continue;
+            List<SymbolIndex.Symbol> symbols = index.exact(w);
+            // A name defined all over the project says little about any one file
+            if (symbols.isEmpty() || symbols.size() > 8) continue;
+            for (SymbolIndex.Symbol s : symbols) {
+                Candidate c = candidate(byPath, projectDir, new File(projectDir, s.path), null);
+                c.add(30, "defines " + s.name);
+                c.hitLines.add(s.line);
+            }
+        }
+    }
+
+    private static Candidate candidate(Map<String, Candidate> byPath, File projectDir, File file, String label) {
+        String key = file != null ? file.getAbsolutePath() : "\0" + label;
+        Candidate c = byPath.get(key);
+        if (c == null) {
+            String rel = file != null && projectDir != null ? relativePath(projectDir.getAbsolutePath(), file) : null;
+            c = new Candidate(file, rel != null ? rel : file != null ? file.getName() : label);
+            byPath.put(key, c);
+        }
+        return c;
+    }
+
+    /**
+     * Lines of text within maxTokens: windows around hitLines when there are any,
+     * otherwise the head of the file. Gaps are marked with their line numbers so the model
+     * can page with readFileRange.
+     */
+    static String excerpt(String text, TreeSet<Integer> hitLines, int maxTokens) {
+        String[] lines = text.split("\n", -1);
+        boolean[] keep = new boolean[lines.length];
+        if (hitLines.isEmpty()) {
+            Arrays.fill(keep, true);
+        } else {
+            for (int hit : hitLines) {
+                for (int i = Math.max(0, hit - 1 - SYMBOL_WINDOW / 3); i < Math.min(lines.length, hit - 1 + SYMBOL_WINDOW); i++) keep[i] = true;
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        int used = 0;
+        int i = 0;
+        while (i < lines.length) {
+            if (!keep[i]) {
+                int from = i;
+                while (i < lines.length && !keep[i]) i++;
+                String gap = "... (lines " + (from + 1) + "-" + i + " omitted)\n";
+                out.append(gap);
+                used += TokenEstimator.estimate(gap);
+                continue;
+            }
+            int t = TokenEstimator.count(lines[i], 0, lines[i].length()) + 1;
+            if (used + t > maxTokens) {
+                if (out.length() == 0) return TokenEstimator.truncate(lines[i], maxTokens);
+                out.append("... (truncated at line ").append(i + 1).append(" of ").append(lines.length)
+                        .append("; use readFileRange for more)\n");
+                break;
+            }
+            out.append(lines[i]).append('\n');
+            used += t;
+            i++;
+        }
+        return out.toString();
+    }
+
+    private static String readText(File file) {
+        if (file == null || !file.isFile() || file.length() > MAX_FILE_BYTES) return null;
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || !TEXT_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))) return null;
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String relativePath(String rootPath, File file) {
+        String path = file.getAbsolutePath();
+        if (!path.startsWith(rootPath + File.separator)) return null;
+        return path.substring(rootPath.length() + 1).replace(File.separatorChar, '/');
+    }
+}
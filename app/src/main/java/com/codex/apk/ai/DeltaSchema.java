@@ -0,0 +1,24 @@
+package com.codex.apk.ai;
+
+/**
+ * Shape of the streaming chunks a provider emits. Each ApiClient declares its schema and
+ * {@link StreamDeltaExtractor} pulls only the paths that schema defines.
+ */
+public enum DeltaSchema {
+    /**
+     * OpenAI-compatible chat completion chunks: choices[0].delta.content with
+     * choices[0].message.content as the non-streaming fallback.
+     */
+    OPENAI_CHAT(false),
+    /**
+     * Qwen chunks: choices[0].delta.{content,phase,status,extra.sources}, plus the
+     * "response.created" handshake and data.code / code / error.* error signals.
+     */
+    QWEN_PHASE(true);
+
+    final boolean qwenFields;
+
+    DeltaSchema(boolean qwenFields) {
+        this.qwenFields = qwenFields;
+    }
+}
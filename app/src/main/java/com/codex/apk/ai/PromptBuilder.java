@@ -2,13 +2,22 @@ package com.codex.apk.ai;
 
 import com.codex.apk.ChatMessage;
 import com.codex.apk.TabItem;
+import com.codex.apk.util.FileTransaction;
+import com.codex.apk.util.ProjectSnapshot;
 
 import java.io.File;
 import java.util.Deque;
+import java.util.List;
 
 public class PromptBuilder {
 
-    public static String buildPromptForStep(ChatMessage.PlanStep target, ChatMessage planMsg, int idx, Deque<String> executedStepSummaries, File projectDir, TabItem activeTab) {
+    /**
+     * Prompt for one plan step. The plan, the file tree and the files picked by
+     * {@link ContextPacker} share a token budget sized for the model.
+     */
+    public static String buildPromptForStep(ChatMessage.PlanStep target, ChatMessage planMsg, int idx, Deque<String> executedStepSummaries,
+                                            File projectDir, TabItem activeTab, List<TabItem> openTabs, ModelCapabilities caps) {
+        int budget = ContextPacker.budgetFor(caps);
         StringBuilder prompt = new StringBuilder();
         prompt.append("You are executing an approved plan step.\\n");
         prompt.append("Step ID: ").append(target.id != null ? target.id : String.valueOf(idx + 1)).append("\\n");
@@ -16,7 +25,7 @@ public class PromptBuilder {
         prompt.append("Output strictly a single JSON object with action=\\\"file_operation\\\" inside a ```json fenced code block.\\n");
         prompt.append("No natural language outside the JSON. Use fields appropriate to file operations.\\n\\n");
         prompt.append("Context summary:\\n");
-        prompt.append("- Plan (truncated): ").append(safeTruncate(planToJson(planMsg), 2000)).append("\\n");
+        prompt.append("- Plan: ").append(TokenEstimator.truncate(planToJson(planMsg), budget * 15 / 100)).append("\\n");
         if (!executedStepSummaries.isEmpty()) {
             prompt.append("- Executed steps so far:\\n");
             int count = 0;
@@ -26,12 +35,12 @@ public class PromptBuilder {
             }
         }
         prompt.append("- File tree (project root):\\n");
-        prompt.append(safeTruncate(buildFileTree(projectDir, 3, 200), 3000)).append("\\n");
-        if (activeTab != null) {
-            prompt.append("- Active file: ").append(activeTab.getFileName()).append("\\n");
-            prompt.append("- Active file content (truncated):\\n---\\n");
-            prompt.append(safeTruncate(activeTab.getContent(), 2000)).append("\\n---\\n");
-        }
+        prompt.append(TokenEstimator.truncate(buildFileTree(projectDir, 3, 200), budget * 15 / 100)).append("\\n");
+        if (activeTab != null) prompt.append("- Active file: ").append(activeTab.getFileName()).append("\\n");
+        String files = ContextPacker.pack(projectDir, target.title, openTabs,
+                activeTab != null ? activeTab.getFile() : null, activeTab != null ? activeTab.getContent() : null,
+                budget - TokenEstimator.estimate(prompt.toString()));
+        if (!files.isEmpty()) prompt.append("- Relevant files:\\n").append(files);
         prompt.append("Proceed now with the step. Return only the JSON.\\n");
         return prompt.toString();
     }
@@ -49,12 +58,6 @@ public class PromptBuilder {
         return "{\\\"action\\\":\\\"plan\\\"}";
     }
 
-    private static String safeTruncate(String s, int max) {
-        if (s == null) return "";
-        if (s.length() <= max) return s;
-        return s.substring(0, Math.max(0, max)) + "\\n...";
-    }
-
     private static String buildFileTree(File root, int maxDepth, int maxEntries) {
         StringBuilder sb = new StringBuilder();
         buildFileTreeRec(root, 0, maxDepth, sb, new int[]{0}, maxEntries);
@@ -62,15 +65,16 @@ public class PromptBuilder {
     }
 
     private static void buildFileTreeRec(File dir, int depth, int maxDepth, StringBuilder sb, int[] count, int maxEntries) {
-        if (dir == null || !dir.exists() || count[0] >= maxEntries) return;
+        if (dir == null || count[0] >= maxEntries) return;
         if (depth > maxDepth) return;
-        File[] files = dir.listFiles();
-        if (files == null) return;
-        for (File f : files) {
+        List<ProjectSnapshot.Entry> entries = ProjectSnapshot.listDir(dir);
+        if (entries == null) return;
+        for (ProjectSnapshot.Entry e : entries) {
+            if (FileTransaction.isInternal(e.file)) continue;
             if (count[0]++ >= maxEntries) return;
             for (int i = 0; i < depth; i++) sb.append("  ");
-            sb.append(f.isDirectory() ? "[d] " : "[f] ").append(f.getName()).append("\\n");
-            if (f.isDirectory()) buildFileTreeRec(f, depth + 1, maxDepth, sb, count, maxEntries);
+            sb.append(e.directory ? "[d] " : "[f] ").append(e.getName()).append("\\n");
+            if (e.directory) buildFileTreeRec(e.file, depth + 1, maxDepth, sb, count, maxEntries);
         }
     }
 
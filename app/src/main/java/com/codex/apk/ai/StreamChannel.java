@@ -0,0 +1,14 @@
+package com.codex.apk.ai;
+
+/**
+ * Channel a streamed delta belongs to. Providers that expose reasoning (e.g. Qwen "think" phase)
+ * emit on THINKING; everything the user should see as the reply goes to ANSWER.
+ */
+public enum StreamChannel {
+    THINKING,
+    ANSWER;
+
+    public static StreamChannel fromThinking(boolean isThinking) {
+        return isThinking ? THINKING : ANSWER;
+    }
+}
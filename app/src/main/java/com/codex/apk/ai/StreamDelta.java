@@ -0,0 +1,46 @@
+package com.codex.apk.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fields pulled out of one streaming chunk by {@link StreamDeltaExtractor}.
+ * The instance is reused for every chunk of a stream; copy what must outlive the callback.
+ */
+public final class StreamDelta {
+    /** choices[0].delta.content (completion 0 only), or null when absent. */
+    public String content;
+    /** choices[0].message.content for providers that send a full message instead of deltas. */
+    public String messageContent;
+    public String finishReason;
+
+    // QWEN_PHASE only
+    public String phase;
+    public String status;
+    public boolean created;
+    public String createdChatId;
+    public String createdResponseId;
+    /** Raw JSON text of data.code / code / error.code, or error.message; null when the chunk is not an error. */
+    public String errorCode;
+    public final List<WebSource> webSources = new ArrayList<>();
+
+    public boolean hasUsage;
+
+    public boolean hasContent() {
+        return content != null && !content.isEmpty();
+    }
+
+    void reset() {
+        content = null;
+        messageContent = null;
+        finishReason = null;
+        phase = null;
+        status = null;
+        created = false;
+        createdChatId = null;
+        createdResponseId = null;
+        errorCode = null;
+        webSources.clear();
+        hasUsage = false;
+    }
+}
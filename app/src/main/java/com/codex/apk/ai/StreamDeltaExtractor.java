@@ -0,0 +1,416 @@
+package com.codex.apk.ai;
+
+/**
+ * Pull extractor for streaming provider chunks.
+ *
+ * Walks the chunk text once and decodes only the string values on the paths its
+ * {@link DeltaSchema} defines; everything else is skipped without building a JSON tree.
+ * Object keys are compared through a reused buffer, so a typical delta chunk allocates
+ * nothing but the extracted values. Not thread-safe: use one instance per stream.
+ */
+public final class StreamDeltaExtractor {
+
+    /** Thrown internally on malformed input; preallocated and stackless. */
+    private static final class Malformed extends RuntimeException {
+        Malformed() { super(null, null, false, false); }
+    }
+
+    private static final Malformed MALFORMED = new Malformed();
+
+    private final DeltaSchema schema;
+    private final StreamDelta delta = new StreamDelta();
+    private final StringBuilder key = new StringBuilder(32);
+    private final StringBuilder value = new StringBuilder(64);
+    private CharSequence s;
+    private int pos;
+    private int end;
+
+    public StreamDeltaExtractor(DeltaSchema schema) {
+        this.schema = schema != null ? schema : DeltaSchema.OPENAI_CHAT;
+    }
+
+    public DeltaSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Extracts the schema fields from one chunk.
+     * @return the reused delta, or null when the chunk is not a well-formed JSON object
+     */
+    public StreamDelta extract(CharSequence json) {
+        delta.reset();
+        if (json == null) return null;
+        s = json;
+        pos = 0;
+        end = json.length();
+        try {
+            skipWs();
+            if (pos >= end || s.charAt(pos) != '{') return null;
+            readRoot();
+            return delta;
+        } catch (Malformed e) {
+            return null;
+        } finally {
+            s = null;
+        }
+    }
+
+    private void readRoot() {
+        expect('{');
+        if (consumeIf('}')) return;
+        do {
+            readKey();
+            if (keyIs("choices")) {
+                readChoices();
+            } else if (keyIs("usage")) {
+                delta.hasUsage = peek() == '{';
+                skipValue();
+            } else if (schema.qwenFields && keyIs("response.created")) {
+                readCreated();
+            } else if (schema.qwenFields && keyIs("data")) {
+                readNestedCode();
+            } else if (schema.qwenFields && keyIs("code")) {
+                delta.errorCode = readRawValue();
+            } else if (schema.qwenFields && keyIs("error")) {
+                readError();
+            } else {
+                skipValue();
+            }
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    private void readChoices() {
+        if (!isOpen('[')) return;
+        expect('[');
+        if (consumeIf(']')) return;
+        int position = 0;
+        boolean read = false;
+        do {
+            // Only completion 0: with n > 1 the other choices are separate answers
+            if (!read && isPrimaryChoice(position)) {
+                readChoice();
+                read = true;
+            } else {
+                skipValue();
+            }
+            position++;
+        } while (consumeIf(','));
+        expect(']');
+    }
+
+    /**
+     * True when the choice object at pos is completion 0, going by its "index" field or, when
+     * it has none, by its position in the array. Leaves pos where it was.
+     */
+    private boolean isPrimaryChoice(int position) {
+        if (peek() != '{') return position == 0;
+        int start = pos;
+        String index = null;
+        expect('{');
+        if (!consumeIf('}')) {
+            do {
+                readKey();
+                if (keyIs("index")) index = readRawValue();
+                else skipValue();
+            } while (index == null && consumeIf(','));
+        }
+        pos = start;
+        return index != null ? "0".equals(index) : position == 0;
+    }
+
+    private void readChoice() {
+        if (!isOpen('{')) return;
+        expect('{');
+        if (consumeIf('}')) return;
+        do {
+            readKey();
+            if (keyIs("delta")) {
+                readDelta();
+            } else if (keyIs("message")) {
+                readMessage();
+            } else if (keyIs("finish_reason")) {
+                delta.finishReason = readStringOrNull();
+            } else {
+                skipValue();
+            }
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    private void readDelta() {
+        if (!isOpen('{')) return;
+        expect('{');
+        if (consumeIf('}')) return;
+        do {
+            readKey();
+            if (keyIs("content")) {
+                delta.content = readStringOrNull();
+            } else if (schema.qwenFields && keyIs("phase")) {
+                delta.phase = readStringOrNull();
+            } else if (schema.qwenFields && keyIs("status")) {
+                delta.status = readStringOrNull();
+            } else if (schema.qwenFields && keyIs("extra")) {
+                readExtra();
+            } else {
+                skipValue();
+            }
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    private void readMessage() {
+        if (!isOpen('{')) return;
+        expect('{');
+        if (consumeIf('}')) return;
+        do {
+            readKey();
+            if (keyIs("content") && delta.messageContent == null) {
+                delta.messageContent = readStringOrNull();
+            } else {
+                skipValue();
+            }
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    private void readExtra() {
+        if (!isOpen('{')) return;
+        expect('{');
+        if (consumeIf('}')) return;
+        do {
+            readKey();
+            if (keyIs("sources") && isOpen('[')) {
+                expect('[');
+                if (!consumeIf(']')) {
+                    do {
+                        readSource();
+                    } while (consumeIf(','));
+                    expect(']');
+                }
+            } else {
+                skipValue();
+            }
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    private void readSource() {
+        if (!isOpen('{')) return;
+        String url = null, title = null, snippet = null, favicon = null;
+        expect('{');
+        if (!consumeIf('}')) {
+            do {
+                readKey();
+                if (keyIs("url")) url = readStringOrNull();
+                else if (keyIs("title")) title = readStringOrNull();
+                else if (keyIs("snippet")) snippet = readStringOrNull();
+                else if (keyIs("favicon")) favicon = readStringOrNull();
+                else skipValue();
+            } while (consumeIf(','));
+            expect('}');
+        }
+        delta.webSources.add(new WebSource(url, title, snippet, favicon));
+    }
+
+    private void readCreated() {
+        if (!isOpen('{')) return;
+        delta.created = true;
+        expect('{');
+        if (consumeIf('}')) return;
+        do {
+            readKey();
+            if (keyIs("chat_id")) delta.createdChatId = readStringOrNull();
+            else if (keyIs("response_id")) delta.createdResponseId = readStringOrNull();
+            else skipValue();
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    private void readNestedCode() {
+        if (!isOpen('{')) return;
+        expect('{');
+        if (consumeIf('}')) return;
+        do {
+            readKey();
+            if (keyIs("code")) delta.errorCode = readRawValue();
+            else skipValue();
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    private void readError() {
+        if (!isOpen('{')) return;
+        String code = null;
+        String message = null;
+        expect('{');
+        if (!consumeIf('}')) {
+            do {
+                readKey();
+                if (keyIs("code")) code = readRawValue();
+                else if (keyIs("message")) message = readStringOrNull();
+                else skipValue();
+            } while (consumeIf(','));
+            expect('}');
+        }
+        if (code != null) delta.errorCode = code;
+        else if (message != null) delta.errorCode = message;
+    }
+
+    // --- scanner ---
+
+    private void readKey() {
+        skipWs();
+        key.setLength(0);
+        readStringInto(key);
+        expect(':');
+    }
+
+    private boolean keyIs(String name) {
+        if (key.length() != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (key.charAt(i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /** True when the next value starts with open; otherwise skips that value. */
+    private boolean isOpen(char open) {
+        if (peek() == open) return true;
+        skipValue();
+        return false;
+    }
+
+    private String readStringOrNull() {
+        char c = peek();
+        if (c != '"') {
+            skipValue(); // null, or a type the schema does not expect
+            return null;
+        }
+        int start = pos + 1;
+        int i = start;
+        while (i < end) {
+            char ch = s.charAt(i);
+            if (ch == '"') {
+                pos = i + 1;
+                return s.subSequence(start, i).toString();
+            }
+            if (ch == '\\') break;
+            i++;
+        }
+        value.setLength(0);
+        readStringInto(value);
+        return value.toString();
+    }
+
+    /** JSON text of the next value; strings keep their quotes, like JsonElement#toString. */
+    private String readRawValue() {
+        skipWs();
+        int start = pos;
+        skipValue();
+        return s.subSequence(start, pos).toString();
+    }
+
+    private void readStringInto(StringBuilder out) {
+        expect('"');
+        while (true) {
+            if (pos >= end) throw MALFORMED;
+            char c = s.charAt(pos++);
+            if (c == '"') return;
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (pos >= end) throw MALFORMED;
+            char e = s.charAt(pos++);
+            switch (e) {
+                case '"': case '\\': case '/': out.append(e); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > end) throw MALFORMED;
+                    int cp = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int d = Character.digit(s.charAt(pos++), 16);
+                        if (d < 0) throw MALFORMED;
+                        cp = (cp << 4) | d;
+                    }
+                    out.append((char) cp);
+                    break;
+                default:
+                    throw MALFORMED;
+            }
+        }
+    }
+
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < end) {
+                char ch = s.charAt(pos);
+                if (ch == '"') {
+                    skipString();
+                    continue;
+                }
+                pos++;
+                if (ch == '{' || ch == '[') {
+                    depth++;
+                } else if (ch == '}' || ch == ']') {
+                    if (--depth == 0) return;
+                }
+            }
+            throw MALFORMED;
+        } else {
+            int start = pos;
+            while (pos < end) {
+                char ch = s.charAt(pos);
+                if (ch == ',' || ch == '}' || ch == ']' || Character.isWhitespace(ch)) break;
+                pos++;
+            }
+            if (pos == start) throw MALFORMED;
+        }
+    }
+
+    private void skipString() {
+        pos++; // opening quote
+        while (pos < end) {
+            char c = s.charAt(pos++);
+            if (c == '\\') pos++;
+            else if (c == '"') return;
+        }
+        throw MALFORMED;
+    }
+
+    private char peek() {
+        skipWs();
+        if (pos >= end) throw MALFORMED;
+        return s.charAt(pos);
+    }
+
+    private boolean consumeIf(char c) {
+        skipWs();
+        if (pos < end && s.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!consumeIf(c)) throw MALFORMED;
+    }
+
+    private void skipWs() {
+        while (pos < end) {
+            char c = s.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+            pos++;
+        }
+    }
+}
@@ -6,8 +6,10 @@ import com.codex.apk.AIChatFragment;
 import com.codex.apk.AiProcessor;
 import com.codex.apk.ChatMessage;
 import com.codex.apk.EditorActivity;
+import com.codex.apk.util.FileTransaction;
+import com.codex.apk.util.SnapshotStore;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -34,28 +36,18 @@ public class AiActionApplier {
     }
 
     /**
-     * Applies actions approved by the user (non-agent mode).
+     * Applies actions approved by the user (non-agent mode). All of them are staged first
+     * and committed as one transaction, so a failing action leaves the project untouched.
      */
     public void applyAcceptedActions(int messagePosition, ChatMessage message) {
         executorService.execute(() -> {
+            FileTransaction tx = new FileTransaction(activity.getProjectDirectory());
             try {
                 List<String> appliedSummaries = new ArrayList<>();
-                List<File> changedFiles = new ArrayList<>();
                 for (ChatMessage.FileActionDetail detail : message.getProposedFileChanges()) {
-                    String summary = aiProcessor.applyFileAction(detail);
-                    appliedSummaries.add(summary);
-                    // Track changed files to refresh them
-                    File fileToRefresh = new File(activity.getProjectDirectory(), detail.path);
-                    if (fileToRefresh.exists()) {
-                        changedFiles.add(fileToRefresh);
-                    }
-                    if ("renameFile".equalsIgnoreCase(detail.type) && detail.newPath != null) {
-                        File newFile = new File(activity.getProjectDirectory(), detail.newPath);
-                        if (newFile.exists()) {
-                            changedFiles.add(newFile);
-                        }
-                    }
+                    appliedSummaries.add(aiProcessor.stageFileAction(tx, detail));
                 }
+                List<FileTransaction.Change> changes = aiProcessor.commit(tx, message.getProposedFileChanges(), snapshotLabel(message));
                 activity.runOnUiThread(() -> {
                     activity.showToast("AI actions applied successfully!");
                     message.setStatus(ChatMessage.STATUS_ACCEPTED);
@@ -64,11 +56,10 @@ public class AiActionApplier {
                     if (aiChatFragment != null) {
                         aiChatFragment.updateMessage(messagePosition, message);
                     }
-                    // Refresh tabs and file tree
-                    activity.tabManager.refreshOpenTabsAfterAi();
-                    activity.loadFileTree();
+                    onChangesCommitted(changes);
                 });
             } catch (Exception e) {
+                tx.rollback();
                 Log.e(TAG, "Error applying AI actions: " + e.getMessage(), e);
                 activity.runOnUiThread(() -> activity.showToast("Failed to apply AI actions: " + e.getMessage()));
             }
@@ -76,50 +67,67 @@ public class AiActionApplier {
     }
 
     /**
-     * Applies actions when agent mode is active.
+     * Applies actions when agent mode is active. Every step is staged and marked with its
+     * outcome; only if all of them succeed is the batch committed. Otherwise nothing is
+     * written and the steps that had staged fine are reported as not applied.
      */
     public void applyAgentActions(int messagePosition, ChatMessage message) {
         executorService.execute(() -> {
             List<String> appliedSummaries = new ArrayList<>();
             List<ChatMessage.FileActionDetail> steps = message.getProposedFileChanges();
+            FileTransaction tx = new FileTransaction(activity.getProjectDirectory());
 
-            boolean anyFailed = false;
+            String failure = null;
             for (int i = 0; i < steps.size(); i++) {
                 ChatMessage.FileActionDetail step = steps.get(i);
-
                 try {
-                    String summary = aiProcessor.applyFileAction(step);
-                    appliedSummaries.add(summary);
-                    if (planExecutor != null && planExecutor.isExecutingPlan()) {
-                        planExecutor.addExecutedStepSummary(summary);
-                    }
+                    appliedSummaries.add(aiProcessor.stageFileAction(tx, step));
                     step.stepStatus = "completed";
                     step.stepMessage = "Completed";
                 } catch (Exception ex) {
                     Log.e(TAG, "Agent step failed: " + step.getSummary(), ex);
                     step.stepStatus = "failed";
                     step.stepMessage = ex.getMessage();
-                    if (planExecutor != null && planExecutor.isExecutingPlan()) {
-                        planExecutor.addExecutedStepSummary("FAILED: " + step.getSummary() + " - " + ex.getMessage());
-                    }
-                    anyFailed = true;
+                    failure = "FAILED: " + step.getSummary() + " - " + ex.getMessage();
+                    break;
                 }
+            }
 
-                activity.runOnUiThread(() -> {
-                    AIChatFragment frag = activity.getAiChatFragment();
-                    if (frag != null) {
-                        frag.updateMessage(messagePosition, message);
+            List<FileTransaction.Change> changes = new ArrayList<>();
+            if (failure == null) {
+                try {
+                    changes = aiProcessor.commit(tx, steps, snapshotLabel(message));
+                } catch (Exception ex) {
+                    Log.e(TAG, "Agent commit failed", ex);
+                    failure = "FAILED: writing changes - " + ex.getMessage();
+                }
+            } else {
+                tx.rollback();
+            }
+
+            if (failure != null) {
+                for (ChatMessage.FileActionDetail step : steps) {
+                    if (!"failed".equals(step.stepStatus)) {
+                        step.stepStatus = "failed";
+                        step.stepMessage = "Not applied; the batch was rolled back";
                     }
-                });
+                }
+            }
+            if (planExecutor != null && planExecutor.isExecutingPlan()) {
+                if (failure == null) {
+                    for (String summary : appliedSummaries) planExecutor.addExecutedStepSummary(summary);
+                } else {
+                    planExecutor.addExecutedStepSummary(failure + " (no changes were written)");
+                }
             }
 
-            final boolean finalAnyFailed = anyFailed;
+            final boolean finalAnyFailed = failure != null;
+            final List<FileTransaction.Change> finalChanges = changes;
             activity.runOnUiThread(() -> {
                 message.setStatus(ChatMessage.STATUS_ACCEPTED);
                 AIChatFragment frag = activity.getAiChatFragment();
                 if (frag != null) frag.updateMessage(messagePosition, message);
-                activity.tabManager.refreshOpenTabsAfterAi();
-                activity.loadFileTree();
+                onChangesCommitted(finalChanges);
                 activity.showToast(finalAnyFailed ? "Agent steps completed with issues" : "Agent step applied");
                 if (planExecutor != null && planExecutor.isExecutingPlan()) {
                     planExecutor.onStepActionsApplied();
@@ -127,4 +135,63 @@ public class AiActionApplier {
             });
         });
     }
+
+    /**
+     * Puts the files an accepted message changed back as they were, from the snapshot taken
+     * when it was applied. Files edited since are not overwritten unless force is set.
+     */
+    public void revertActions(int messagePosition, ChatMessage message, boolean force) {
+        String versionId = versionIdOf(message);
+        if (versionId == null) {
+            activity.showToast("No snapshot to revert to");
+            return;
+        }
+        executorService.execute(() -> {
+            try {
+                List<FileTransaction.Change> changes = aiProcessor.revert(versionId, force);
+                activity.runOnUiThread(() -> {
+                    activity.showToast("AI changes reverted");
+                    message.setStatus(ChatMessage.STATUS_REVERTED);
+                    AIChatFragment aiChatFragment = activity.getAiChatFragment();
+                    if (aiChatFragment != null) {
+                        aiChatFragment.updateMessage(messagePosition, message);
+                    }
+                    onChangesCommitted(changes);
+                });
+            } catch (SnapshotStore.ConflictException e) {
+                activity.runOnUiThread(() -> new MaterialAlertDialogBuilder(activity)
+                        .setTitle("Files changed since")
+                        .setMessage(String.join("\n", e.paths) + "\n\nReverting discards these later edits.")
+                        .setPositiveButton("Revert anyway", (dialog, which) -> revertActions(messagePosition, message, true))
+                        .setNegativeButton("Cancel", null)
+                        .show());
+            } catch (Exception e) {
+                Log.e(TAG, "Error reverting AI actions: " + e.getMessage(), e);
+                activity.runOnUiThread(() -> activity.showToast("Failed to revert: " + e.getMessage()));
+            }
+        });
+    }
+
+    /** The snapshot an accepted message was applied with, or null when it has none. */
+    public static String versionIdOf(ChatMessage message) {
+        if (message.getProposedFileChanges() == null) return null;
+        for (ChatMessage.FileActionDetail detail : message.getProposedFileChanges()) {
+            if (detail.versionId != null && !detail.versionId.isEmpty()) return detail.versionId;
+        }
+        return null;
+    }
+
+    private static String snapshotLabel(ChatMessage message) {
+        String content = message.getContent();
+        if (content == null) return null;
+        content = content.trim();
+        return content.length() > 120 ? content.substring(0, 120) : content;
+    }
+
+    /** One refresh of tabs and file tree for a whole committed batch. Runs on the UI thread. */
+    private void onChangesCommitted(List<FileTransaction.Change> changes) {
+        if (changes.isEmpty()) return;
+        activity.tabManager.applyCommittedChanges(changes);
+        activity.loadFileTree();
+    }
 }
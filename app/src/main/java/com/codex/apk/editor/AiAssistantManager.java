@@ -10,6 +10,7 @@ import android.os.Looper;
 import com.codex.apk.AIChatFragment;
 import com.codex.apk.AIAssistant;
 import com.codex.apk.ai.AIModel;
+import com.codex.apk.ai.StreamChannel;
 import com.codex.apk.ai.WebSource;
 import com.codex.apk.AiProcessor;
 import com.codex.apk.ChatMessage;
@@ -20,6 +21,7 @@ import com.codex.apk.SettingsActivity;
 import com.codex.apk.TabItem;
 import com.codex.apk.DiffGenerator;
 import com.codex.apk.QwenResponseParser;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
@@ -28,6 +30,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 
@@ -48,6 +51,7 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
     private final AiStreamingHandler streamingHandler;
     private final PlanExecutor planExecutor;
     private final AiResponseRenderer responseRenderer;
+    private final StreamFrameSink streamSink;
     private List<ChatMessage.ToolUsage> lastToolUsages;
     private Integer currentToolsMessagePosition = null;
     private Integer currentStreamingMessagePosition = null;
@@ -64,10 +68,12 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
         this.toolCoordinator = new ToolExecutionCoordinator(activity, executorService, this::handleToolContinuation);
         this.streamingHandler = new AiStreamingHandler(activity, this);
         this.responseRenderer = new AiResponseRenderer();
+        this.streamSink = new StreamFrameSink(SettingsActivity.getStreamMaxUpdatesPerSecond(activity), this::onStreamFrame);
 
         String apiKey = SettingsActivity.getGeminiApiKey(activity);
         this.aiAssistant = new AIAssistant(activity, apiKey, projectDir, projectName, executorService, this);
         this.aiAssistant.setEnabledTools(com.codex.apk.ToolSpec.defaultFileToolsPlusSearchNet());
+        this.aiAssistant.setOpenTabsSupplier(activity::getOpenTabsList);
 
         // Model selection: prefer per-project last-used, else global default, else fallback
         SharedPreferences settingsPrefs = activity.getSharedPreferences("settings", Context.MODE_PRIVATE);
@@ -94,6 +100,10 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
         this.currentStreamingMessagePosition = position;
     }
 
+    public Integer getCurrentStreamingMessagePosition() {
+        return currentStreamingMessagePosition;
+    }
+
     public void recordToolUsages(List<ChatMessage.ToolUsage> toolUsages) {
         if (toolUsages == null || toolUsages.isEmpty()) {
             return;
@@ -124,10 +134,10 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
             return;
         }
         String currentFileContent = "";
-        String currentFileName = "";
+        File currentFile = null;
         if (activeTabItem != null) {
             currentFileContent = activeTabItem.getContent();
-            currentFileName = activeTabItem.getFileName();
+            currentFile = activeTabItem.getFile();
         }
 
         if (aiAssistant == null) {
@@ -152,7 +162,7 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
                 }
             } catch (Exception ignore) {}
 
-            aiAssistant.sendPrompt(userPrompt, effectiveHistory, qwenState, currentFileName, currentFileContent);
+            aiAssistant.sendPrompt(userPrompt, effectiveHistory, qwenState, currentFile, currentFileContent);
             // Persist per-project last used model
             String projectKey = "project_" + (activity.getProjectName() != null ? activity.getProjectName() : "default") + "_last_model";
             activity.getSharedPreferences("settings", Context.MODE_PRIVATE)
@@ -165,6 +175,28 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
         }
     }
 
+    /**
+     * Sends a prompt that carries its own file context, like a plan step. promptBuilder runs
+     * in the request task, off the UI thread.
+     */
+    public void sendPreparedAiPrompt(Supplier<String> promptBuilder, com.codex.apk.QwenConversationState qwenState) {
+        if (!isNetworkAvailable()) {
+            activity.showToast("No internet connection.");
+            return;
+        }
+        if (aiAssistant == null) {
+            activity.showToast("AI Assistant is not available.");
+            Log.e(TAG, "sendPreparedAiPrompt: AIAssistant not initialized!");
+            return;
+        }
+        try {
+            aiAssistant.sendPreparedPrompt(promptBuilder, new ArrayList<>(), qwenState);
+        } catch (Exception e) {
+            activity.showToast("AI Error: " + e.getMessage());
+            Log.e(TAG, "AI processing error", e);
+        }
+    }
+
     public void onAiAcceptActions(int messagePosition, ChatMessage message) {
         Log.d(TAG, "User accepted AI actions for message at position: " + messagePosition);
         if (message.getProposedFileChanges() == null || message.getProposedFileChanges().isEmpty()) {
@@ -193,6 +225,16 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
         activity.showToast("AI actions discarded.");
     }
 
+    public void onAiRevertActions(int messagePosition, ChatMessage message) {
+        Log.d(TAG, "User requested to revert AI actions for message at position: " + messagePosition);
+        new MaterialAlertDialogBuilder(activity)
+                .setTitle("Revert AI changes?")
+                .setMessage("Files changed by this message go back to how they were before it was applied.")
+                .setPositiveButton("Revert", (dialog, which) -> actionApplier.revertActions(messagePosition, message, false))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
     public void onReapplyActions(int messagePosition, ChatMessage message) {
         Log.d(TAG, "User requested to reapply AI actions for message at position: " + messagePosition);
         onAiAcceptActions(messagePosition, message);
@@ -327,6 +369,8 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
                                               String aiModelDisplayName,
                                               String thinkingContent, List<WebSource> webSources) {
         activity.runOnUiThread(() -> {
+            // Pending stream frames must not overwrite the final message
+            streamSink.close();
             AIChatFragment uiFrag = activity.getAiChatFragment();
             if (uiFrag == null) {
                 Log.w(TAG, "AiChatFragment is null! Cannot add message to UI.");
@@ -425,7 +469,9 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
 
     @Override
     public void onAiError(String errorMessage) {
+        if (aiAssistant != null) aiAssistant.getFirstTokenLatency().onRequestFinished();
         activity.runOnUiThread(() -> {
+            streamSink.close();
             activity.showToast("AI Error: " + errorMessage);
             // If we have a streaming message, show the error inline with a retry affordance instead of adding a separate system message.
             AIChatFragment frag = activity.getAiChatFragment();
@@ -433,6 +479,7 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
                 ChatMessage err = frag.getMessageAt(currentStreamingMessagePosition);
                 if (err != null) {
                     err.setContent("Error: " + (errorMessage != null ? errorMessage : "Unknown error"));
+                    err.setStreaming(false);
                     // Mark status none and clear thinking/live chips
                     err.setThinkingContent(null);
                     err.setToolUsages(null);
@@ -493,6 +540,7 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
 
     @Override
     public void onAiStreamUpdate(String partialResponse, boolean isThinking) {
+        if (aiAssistant != null) aiAssistant.getFirstTokenLatency().onFirstToken();
         activity.runOnUiThread(() -> {
             if (aiAssistant != null && aiAssistant.isAgentModeEnabled() && planExecutor != null && planExecutor.isExecutingPlan()) return;
             AIChatFragment chatFragment = activity.getAiChatFragment();
@@ -501,9 +549,37 @@ public class AiAssistantManager implements AIAssistant.AIActionListener { // Dir
         });
     }
 
+    @Override
+    public void onAiStreamDelta(String delta, long sequence, StreamChannel channel) {
+        if (aiAssistant != null) aiAssistant.getFirstTokenLatency().onFirstToken();
+        // No per-chunk UI post: the sink coalesces deltas and renders once per frame
+        streamSink.offer(delta, sequence, channel);
+    }
+
+    private void onStreamFrame(boolean reset, String thinkingDelta, String answerDelta) {
+        // The deltas are already drained from the sink: always hand them over so the text is
+        // kept, and only render when there is a visible message to render into
+        boolean suppressed = aiAssistant != null && aiAssistant.isAgentModeEnabled() && planExecutor != null && planExecutor.isExecutingPlan();
+        Integer position = suppressed ? null : currentStreamingMessagePosition;
+        streamingHandler.handleStreamFrame(activity.getAiChatFragment(), position, reset, thinkingDelta, answerDelta);
+    }
+
     @Override
     public void onAiRequestCompleted() {
-        activity.runOnUiThread(() -> streamingHandler.handleRequestCompleted(activity.getAiChatFragment()));
+        if (aiAssistant != null) aiAssistant.getFirstTokenLatency().onRequestFinished();
+        activity.runOnUiThread(() -> {
+            streamSink.close();
+            streamingHandler.handleRequestCompleted(activity.getAiChatFragment());
+        });
+    }
+
+    @Override
+    public void onAiRequestCancelled() {
+        if (aiAssistant != null) aiAssistant.getFirstTokenLatency().onRequestFinished();
+        activity.runOnUiThread(() -> {
+            streamSink.close();
+            streamingHandler.handleRequestCancelled(activity.getAiChatFragment());
+        });
     }
 
     @Override
@@ -4,14 +4,23 @@ import com.codex.apk.AIChatFragment;
 import com.codex.apk.AIAssistant;
 import com.codex.apk.ChatMessage;
 import com.codex.apk.EditorActivity;
+import com.codex.apk.ai.StreamChannel;
 
 /**
  * Handles the lifecycle of streaming chat messages (showing and clearing the
  * "thinking" placeholder) while the AI generates responses.
+ *
+ * Owns the accumulated streamed text: providers send append-only deltas,
+ * {@link StreamFrameSink} batches them per frame and this handler stitches them together.
+ * The streaming message renders the buffer itself rather than a copy of it, so a buffer is
+ * only ever appended to; a reset or a snapshot swaps in a new one. All methods run on the
+ * UI thread.
  */
 public class AiStreamingHandler {
     private final EditorActivity activity;
     private final AiAssistantManager manager;
+    private StringBuilder thinkingBuffer = new StringBuilder();
+    private StringBuilder answerBuffer = new StringBuilder();
 
     public AiStreamingHandler(EditorActivity activity, AiAssistantManager manager) {
         this.activity = activity;
@@ -21,6 +30,7 @@ public class AiStreamingHandler {
     public void handleRequestStarted(AIChatFragment chatFragment,
                                      AIAssistant aiAssistant,
                                      boolean suppressThinkingMessage) {
+        resetBuffers();
         if (suppressThinkingMessage) {
             if (chatFragment != null) {
                 chatFragment.hideThinkingMessage();
@@ -48,12 +58,64 @@ public class AiStreamingHandler {
             chatFragment.hideThinkingMessage();
         }
         manager.setCurrentStreamingMessagePosition(null);
+        resetBuffers();
+    }
+
+    /** Keeps whatever answer was streamed before the user stopped the request. */
+    public void handleRequestCancelled(AIChatFragment chatFragment) {
+        Integer position = manager.getCurrentStreamingMessagePosition();
+        ChatMessage existing = chatFragment != null && position != null ? chatFragment.getMessageAt(position) : null;
+        if (existing == null || answerBuffer.length() == 0) {
+            handleRequestCompleted(chatFragment);
+            return;
+        }
+        existing.setStreaming(false);
+        existing.setContent(answerBuffer.toString());
+        chatFragment.addMessage(existing); // replaces the status message and ends processing
+        manager.setCurrentStreamingMessagePosition(null);
+        resetBuffers();
+    }
+
+    /**
+     * Applies one frame's worth of coalesced deltas (see {@link StreamFrameSink}) with a single
+     * rebind. With no message to render into (messagePosition null) the text is still kept and
+     * shows up with the next frame that has one.
+     */
+    public void handleStreamFrame(AIChatFragment chatFragment,
+                                  Integer messagePosition,
+                                  boolean reset,
+                                  String thinkingDelta,
+                                  String answerDelta) {
+        if (reset) {
+            // A new stream (first request or a tool continuation) starts from scratch
+            resetBuffers();
+        }
+        boolean hasThinking = thinkingDelta != null && !thinkingDelta.isEmpty();
+        boolean hasAnswer = answerDelta != null && !answerDelta.isEmpty();
+        if (hasThinking) thinkingBuffer.append(thinkingDelta);
+        if (hasAnswer) answerBuffer.append(answerDelta);
+        if ((!hasThinking && !hasAnswer) || messagePosition == null) {
+            return;
+        }
+        render(chatFragment, messagePosition, hasAnswer ? StreamChannel.ANSWER : StreamChannel.THINKING);
     }
 
     public void handleStreamUpdate(AIChatFragment chatFragment,
                                    int messagePosition,
                                    String partialResponse,
                                    boolean isThinking) {
+        if (partialResponse != null) {
+            // Snapshot providers replace the whole text; keep the buffer in sync so deltas can follow
+            if (isThinking) {
+                thinkingBuffer = new StringBuilder(partialResponse);
+            } else {
+                answerBuffer = new StringBuilder(partialResponse);
+            }
+        }
+        render(chatFragment, messagePosition, StreamChannel.fromThinking(isThinking));
+    }
+
+    private void render(AIChatFragment chatFragment, int messagePosition, StreamChannel channel) {
         if (chatFragment == null) {
             return;
         }
@@ -63,12 +125,19 @@ public class AiStreamingHandler {
             return;
         }
 
-        if (isThinking) {
-            existing.setContent(partialResponse != null ? partialResponse : existing.getContent());
+        existing.setStreaming(true);
+        if (channel == StreamChannel.THINKING) {
+            existing.setStreamingContent(thinkingBuffer);
         } else {
-            existing.setContent(partialResponse != null ? partialResponse : existing.getContent());
+            existing.setStreamingContent(answerBuffer);
             existing.setThinkingContent(null);
         }
-        chatFragment.updateMessage(messagePosition, existing);
+        chatFragment.updateStreamingMessage(messagePosition, existing);
+    }
+
+    private void resetBuffers() {
+        // New builders, not setLength(0): a finished message may still be showing the old ones
+        thinkingBuffer = new StringBuilder();
+        answerBuffer = new StringBuilder();
     }
 }
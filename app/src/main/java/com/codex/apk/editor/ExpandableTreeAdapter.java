@@ -75,7 +75,7 @@ public class ExpandableTreeAdapter extends RecyclerView.Adapter<ExpandableTreeAd
         holder.textFileName.setText(f.getName());
 
         // Set icon per state
-        if (f.isDirectory()) {
+        if (node.directory) {
             holder.imageFileIcon.setImageResource(node.expanded ? R.drawable.ic_folder_open_outline : R.drawable.ic_folder_outline);
             // Hide chevron if folder has no children
             holder.imageExpandIcon.setVisibility(node.hasVisibleChildren() ? View.VISIBLE : View.INVISIBLE);
@@ -106,7 +106,7 @@ public class ExpandableTreeAdapter extends RecyclerView.Adapter<ExpandableTreeAd
         }
 
         holder.itemView.setOnClickListener(v -> {
-            if (f.isDirectory()) {
+            if (node.directory) {
                 node.expanded = !node.expanded;
                 rebuildVisible();
                 notifyDataSetChanged();
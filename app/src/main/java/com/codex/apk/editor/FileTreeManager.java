@@ -10,12 +10,14 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.codex.apk.EditorActivity;
 import com.codex.apk.R;
+import com.codex.apk.util.FileTransaction;
+import com.codex.apk.util.ProjectChanges;
+import com.codex.apk.util.ProjectSnapshot;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
@@ -57,7 +59,11 @@ public class FileTreeManager {
         View btnNewFolder = activity.findViewById(R.id.btn_new_folder);
         if (btnNewFolder != null) btnNewFolder.setOnClickListener(v -> showNewFolderDialog(activity.getProjectDirectory()));
         View btnRefresh = activity.findViewById(R.id.btn_refresh_file_tree);
-        if (btnRefresh != null) btnRefresh.setOnClickListener(v -> loadFileTree());
+        if (btnRefresh != null) btnRefresh.setOnClickListener(v -> {
+            ProjectSnapshot snapshot = ProjectSnapshot.forPath(activity.getProjectDirectory());
+            if (snapshot != null) snapshot.invalidateAll();
+            loadFileTree();
+        });
 
         loadFileTree();
     }
@@ -66,7 +72,7 @@ public class FileTreeManager {
         File root = activity.getProjectDirectory();
         List<TreeNode> roots = new ArrayList<>();
         if (root != null && root.exists()) {
-            TreeNode rootNode = buildTree(root, 0, null);
+            TreeNode rootNode = buildTree(root, root.isDirectory(), 0, null);
             // Do not show the top-level project folder; use its children as roots
             if (!rootNode.children.isEmpty()) {
                 roots.addAll(rootNode.children);
@@ -95,23 +101,27 @@ public class FileTreeManager {
         }
     }
 
-    private TreeNode buildTree(File file, int level, TreeNode parent) {
-        TreeNode node = new TreeNode(file, level);
+    private TreeNode buildTree(File file, boolean directory, int level, TreeNode parent) {
+        TreeNode node = new TreeNode(file, directory, level);
         node.parent = parent;
-        if (file.isDirectory()) {
-            File[] list = file.listFiles();
-            if (list != null) {
-                Arrays.sort(list, new Comparator<File>() {
-                    @Override public int compare(File f1, File f2) {
-                        if (f1.isDirectory() && !f2.isDirectory()) return -1;
-                        if (!f1.isDirectory() && f2.isDirectory()) return 1;
+        if (directory) {
+            List<ProjectSnapshot.Entry> entries = ProjectSnapshot.listDir(file);
+            if (entries != null) {
+                List<ProjectSnapshot.Entry> list = new ArrayList<>(entries.size());
+                for (ProjectSnapshot.Entry e : entries) {
+                    if (!FileTransaction.isInternal(e.file)) list.add(e);
+                }
+                list.sort(new Comparator<ProjectSnapshot.Entry>() {
+                    @Override public int compare(ProjectSnapshot.Entry f1, ProjectSnapshot.Entry f2) {
+                        if (f1.directory && !f2.directory) return -1;
+                        if (!f1.directory && f2.directory) return 1;
                         return f1.getName().compareToIgnoreCase(f2.getName());
                     }
                 });
-                for (int i = 0; i < list.length; i++) {
-                    File child = list[i];
-                    TreeNode childNode = buildTree(child, level + 1, node);
-                    childNode.isLast = (i == list.length - 1);
+                for (int i = 0; i < list.size(); i++) {
+                    ProjectSnapshot.Entry child = list.get(i);
+                    TreeNode childNode = buildTree(child.file, child.directory, level + 1, node);
+                    childNode.isLast = (i == list.size() - 1);
                     node.children.add(childNode);
                 }
             }
@@ -174,6 +184,7 @@ public class FileTreeManager {
                 }
                 try {
                     if (newFile.createNewFile()) {
+                        ProjectChanges.notifyChanged(newFile);
                         activity.showToast("File created: " + full);
                         loadFileTree();
                         activity.openFile(newFile);
@@ -206,6 +217,7 @@ public class FileTreeManager {
                     return;
                 }
                 if (newFolder.mkdir()) {
+                    ProjectChanges.notifyChanged(newFolder);
                     activity.showToast("Folder created: " + folderName);
                     loadFileTree();
                 } else {
@@ -218,6 +230,7 @@ public class FileTreeManager {
 
     public void renameFileOrDir(File oldFile, File newFile) {
         if (oldFile.renameTo(newFile)) {
+            ProjectChanges.notifyRenamed(oldFile, newFile);
             activity.showToast("Renamed successfully");
             loadFileTree();
         } else {
@@ -226,7 +239,9 @@ public class FileTreeManager {
     }
 
     public void deleteFileByPath(File fileOrDirectory) {
-        if (deleteRecursively(fileOrDirectory)) {
+        boolean deleted = deleteRecursively(fileOrDirectory);
+        ProjectChanges.notifyDeleted(fileOrDirectory);
+        if (deleted) {
             activity.showToast("Deleted successfully");
             loadFileTree();
         } else {
@@ -259,19 +274,20 @@ public class FileTreeManager {
     // TreeNode model
     static class TreeNode {
         final File file;
+        final boolean directory;
         int level;
         boolean expanded = true;
         final List<TreeNode> children = new ArrayList<>();
         TreeNode parent = null;
         boolean isLast = false;
 
-        TreeNode(File file, int level) { this.file = file; this.level = level; }
+        TreeNode(File file, boolean directory, int level) { this.file = file; this.directory = directory; this.level = level; }
 
         boolean hasVisibleChildren() { return !children.isEmpty(); }
 
         TreeNode copyPruned(String query, TreeNode newParent) {
             boolean matches = file.getName().toLowerCase().contains(query);
-            TreeNode copy = new TreeNode(file, level);
+            TreeNode copy = new TreeNode(file, directory, level);
             copy.parent = newParent;
             for (TreeNode c : children) {
                 TreeNode pruned = c.copyPruned(query, copy);
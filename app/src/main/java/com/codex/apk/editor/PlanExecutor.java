@@ -4,12 +4,15 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.codex.apk.AIAssistant;
 import com.codex.apk.AIChatFragment;
 import com.codex.apk.ChatMessage;
 import com.codex.apk.EditorActivity;
 import com.codex.apk.TabItem;
 
+import com.codex.apk.ai.ModelCapabilities;
 import com.codex.apk.ai.PromptBuilder;
+import java.io.File;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -232,7 +235,14 @@ public class PlanExecutor {
         }
 
         ChatMessage.PlanStep target = steps.get(idx);
-        String prompt = PromptBuilder.buildPromptForStep(target, planMsg, idx, executedStepSummaries, activity.getProjectDirectory(), activity.getActiveTab());
+        AIAssistant assistant = aiAssistantManager.getAIAssistant();
+        ModelCapabilities caps = assistant != null && assistant.getCurrentModel() != null ? assistant.getCurrentModel().getCapabilities() : null;
+        // Snapshot the inputs here; the prompt itself (file tree and packed files) is built in the request task
+        final int stepIndex = idx;
+        final Deque<String> summaries = new ArrayDeque<>(executedStepSummaries);
+        final File projectDir = activity.getProjectDirectory();
+        final TabItem activeTab = activity.getActiveTab();
+        final List<TabItem> openTabs = new ArrayList<>(activity.getOpenTabsList());
 
         isExecutingPlan = true;
         setNextPlanStepStatus("running");
@@ -243,7 +253,9 @@ public class PlanExecutor {
             }
         });
 
-        aiAssistantManager.sendAiPrompt(prompt.toString(), new ArrayList<>(), activity.getQwenState(), activity.getActiveTab());
+        // The step prompt already carries the packed file context
+        aiAssistantManager.sendPreparedAiPrompt(() -> PromptBuilder.buildPromptForStep(target, planMsg, stepIndex, summaries,
+                projectDir, activeTab, openTabs, caps), activity.getQwenState());
     }
 
     private boolean isActionableStepKind(String kind) {
@@ -0,0 +1,129 @@
+package com.codex.apk.editor;
+
+import android.view.Choreographer;
+
+import com.codex.apk.ai.StreamChannel;
+
+/**
+ * Coalesces streamed deltas arriving on network threads into at most one UI update per
+ * display frame, optionally capped further by a max update rate.
+ *
+ * Deltas are only appended to small pending buffers under a lock; the main thread drains
+ * them from a Choreographer frame callback, so a burst of chunks costs a single bind.
+ * Must be constructed on the main thread.
+ */
+public class StreamFrameSink implements Choreographer.FrameCallback {
+
+    public interface Consumer {
+        /**
+         * Called on the main thread with everything that arrived since the previous frame.
+         * When reset is true the consumer must drop previously streamed text before appending.
+         */
+        void onStreamFrame(boolean reset, String thinkingDelta, String answerDelta);
+    }
+
+    /** Slack for vsync jitter while the display period is still unknown. */
+    private static final long DEFAULT_JITTER_NS = 2_000_000L;
+
+    private final Object lock = new Object();
+    private final Choreographer choreographer;
+    private final Consumer consumer;
+    private final StringBuilder pendingThinking = new StringBuilder();
+    private final StringBuilder pendingAnswer = new StringBuilder();
+    private boolean pendingReset = false;
+    private boolean frameScheduled = false;
+    private long lastSequence = -1L;
+    private long minFrameIntervalNs;
+    private long lastFlushNs = 0L;
+    private long lastFrameNs = 0L;
+    // Shortest gap seen between two frame callbacks, i.e. the display's vsync period; 0 until known
+    private long frameIntervalNs = 0L;
+
+    public StreamFrameSink(int maxUpdatesPerSecond, Consumer consumer) {
+        this.choreographer = Choreographer.getInstance();
+        this.consumer = consumer;
+        setMaxUpdatesPerSecond(maxUpdatesPerSecond);
+    }
+
+    /** Caps UI updates per second; values <= 0 mean one update per display frame. */
+    public void setMaxUpdatesPerSecond(int maxUpdatesPerSecond) {
+        synchronized (lock) {
+            this.minFrameIntervalNs = maxUpdatesPerSecond > 0 ? 1_000_000_000L / maxUpdatesPerSecond : 0L;
+        }
+    }
+
+    /** Thread-safe; follows the sequence contract of AIAssistant.AIActionListener#onAiStreamDelta. */
+    public void offer(String delta, long sequence, StreamChannel channel) {
+        synchronized (lock) {
+            if (sequence == 0L) {
+                pendingThinking.setLength(0);
+                pendingAnswer.setLength(0);
+                pendingReset = true;
+            } else if (sequence <= lastSequence) {
+                return; // duplicate, out-of-order, or a stream that has already been closed
+            }
+            lastSequence = sequence;
+            if (delta == null || delta.isEmpty()) {
+                if (!pendingReset) return;
+            } else if (channel == StreamChannel.THINKING) {
+                pendingThinking.append(delta);
+            } else {
+                pendingAnswer.append(delta);
+            }
+            if (!frameScheduled) {
+                frameScheduled = true;
+                choreographer.postFrameCallback(this);
+            }
+        }
+    }
+
+    /**
+     * Drops anything not yet rendered and ignores further deltas of the current stream.
+     * The next stream (sequence 0) opens the sink again.
+     */
+    public void close() {
+        synchronized (lock) {
+            pendingThinking.setLength(0);
+            pendingAnswer.setLength(0);
+            pendingReset = false;
+            lastSequence = Long.MAX_VALUE;
+            if (frameScheduled) {
+                frameScheduled = false;
+                choreographer.removeFrameCallback(this);
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        boolean reset;
+        String thinking;
+        String answer;
+        synchronized (lock) {
+            if (!frameScheduled) return;
+            long sinceLastFrame = frameTimeNanos - lastFrameNs;
+            if (lastFrameNs != 0L && sinceLastFrame > 0L && (frameIntervalNs == 0L || sinceLastFrame < frameIntervalNs)) {
+                frameIntervalNs = sinceLastFrame;
+            }
+            lastFrameNs = frameTimeNanos;
+            // A vsync arriving slightly early still counts: without the slack, a cap equal to the
+            // refresh rate would reject every other frame and halve the update rate
+            long slack = frameIntervalNs > 0L ? frameIntervalNs / 2 : DEFAULT_JITTER_NS;
+            if (minFrameIntervalNs > 0L && lastFlushNs != 0L && frameTimeNanos - lastFlushNs < minFrameIntervalNs - slack) {
+                choreographer.postFrameCallback(this); // rate cap: keep accumulating until a later frame
+                return;
+            }
+            frameScheduled = false;
+            lastFlushNs = frameTimeNanos;
+            reset = pendingReset;
+            thinking = pendingThinking.length() > 0 ? pendingThinking.toString() : "";
+            answer = pendingAnswer.length() > 0 ? pendingAnswer.toString() : "";
+            pendingReset = false;
+            pendingThinking.setLength(0);
+            pendingAnswer.setLength(0);
+        }
+        if (consumer != null) {
+            consumer.onStreamFrame(reset, thinking, answer);
+        }
+    }
+}
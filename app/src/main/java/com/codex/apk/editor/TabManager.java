@@ -12,6 +12,7 @@ import com.codex.apk.FileManager;
 import com.codex.apk.R;
 import com.codex.apk.SimpleSoraTabAdapter;
 import com.codex.apk.TabItem;
+import com.codex.apk.util.FileTransaction;
 import com.codex.apk.DialogHelper; // Added import for DialogHelper
 import com.codex.apk.SettingsActivity;
 
@@ -441,70 +442,70 @@ public class TabManager {
     }
 
     /**
-     * Refreshes the content of open tabs after an AI action,
-     * checking for file existence, content changes, and path updates.
-     * This method is now called *after* user approval.
+     * Brings open tabs in line with one committed batch of AI changes: tabs follow renames,
+     * tabs of deleted files close, and written files take the committed text without
+     * reading it back. Tabs the batch did not touch are left alone, and the tab UI is
+     * refreshed once at the end.
      */
-    public void refreshOpenTabsAfterAi() {
+    public void applyCommittedChanges(List<FileTransaction.Change> changes) {
+        if (changes == null || changes.isEmpty()) return;
         boolean tabsChanged = false;
         List<TabItem> toRemove = new ArrayList<>();
-        List<TabItem> currentOpenTabs = new ArrayList<>(openTabs);
 
-        if (fileManager == null || activity.getProjectDirectory() == null) {
-            Log.e(TAG, "refreshOpenTabsAfterAi: FileManager or projectDir not initialized!");
-            activity.showToast("Error refreshing tabs after AI.");
-            return;
-        }
-
-        for (TabItem tab : currentOpenTabs) {
-            // Skip diff tabs as they are not real files and don't need content refresh from disk
-            if (tab.getFile().getName().startsWith("DIFF_")) {
-                continue;
+        for (TabItem tab : new ArrayList<>(openTabs)) {
+            if (tab.getFile().getName().startsWith("DIFF_")) continue;
+            File file = tab.getFile();
+            boolean deleted = false;
+            String content = null;
+            for (FileTransaction.Change c : changes) {
+                switch (c.type) {
+                    case RENAMED: {
+                        File moved = rebase(file, c.oldFile, c.file);
+                        if (moved != null) file = moved;
+                        break;
+                    }
+                    case DELETED:
+                        if (rebase(file, c.file, c.file) != null) deleted = true;
+                        break;
+                    default:
+                        if (file.equals(c.file)) {
+                            content = c.content;
+                            deleted = false;
+                        }
+                        break;
+                }
             }
-
-            File tabFile = tab.getFile();
-            String relativePath = fileManager.getRelativePath(tabFile, activity.getProjectDirectory());
-            if (relativePath == null) {
-                Log.e(TAG, "Could not determine relative path for tab: " + tabFile.getAbsolutePath());
+            if (deleted) {
+                Log.d(TAG, "Tab file " + file.getPath() + " deleted by AI. Removing tab.");
                 toRemove.add(tab);
                 tabsChanged = true;
                 continue;
             }
-            File currentFileInProjectDir = new File(activity.getProjectDirectory(), relativePath);
-
-            if (!currentFileInProjectDir.exists()) {
-                Log.d(TAG, "Tab file " + currentFileInProjectDir.getPath() + " no longer exists. Removing tab.");
-                toRemove.add(tab);
+            if (!file.equals(tab.getFile())) {
+                tab.setFile(file);
+                tabsChanged = true;
+            }
+            if (content != null && !content.equals(tab.getContent())) {
+                tab.setContent(content);
+                tab.setModified(false); // Mark as not modified as content is synced
                 tabsChanged = true;
-            } else {
-                try {
-                    String newContent = fileManager.readFileContent(currentFileInProjectDir);
-                    if (!newContent.equals(tab.getContent())) {
-                        tab.setContent(newContent);
-                        tab.setModified(false); // Mark as not modified as content is synced
-                        tabsChanged = true;
-                        Log.d(TAG, "Tab content for " + tab.getFileName() + " updated by AI.");
-                    }
-                    // Check if the file path itself changed (e.g., due to rename)
-                    if (!tab.getFile().getAbsolutePath().equals(currentFileInProjectDir.getAbsolutePath())) {
-                        Log.d(TAG, "Tab file path updated for " + tab.getFileName() + " from " + tab.getFile().getAbsolutePath() + " to " + currentFileInProjectDir.getAbsolutePath());
-                        tab.setFile(currentFileInProjectDir);
-                        tabsChanged = true;
-                    }
-
-                } catch (IOException e) {
-                    Log.e(TAG, "Error reloading tab content after AI action: " + currentFileInProjectDir.getName(), e);
-                    toRemove.add(tab); // Remove tab if content cannot be reloaded
-                    tabsChanged = true;
-                }
             }
         }
 
         openTabs.removeAll(toRemove);
 
-        if (tabsChanged) {
+        if (tabsChanged && activity.getCodeEditorFragment() != null) {
             activity.getCodeEditorFragment().refreshAllFileTabs();
             activity.getCodeEditorFragment().refreshFileTabLayout();
         }
     }
+
+    /** file moved from under oldRoot to under newRoot, or null when it is not inside oldRoot. */
+    private static File rebase(File file, File oldRoot, File newRoot) {
+        String path = file.getAbsolutePath();
+        String from = oldRoot.getAbsolutePath();
+        if (path.equals(from)) return newRoot;
+        if (path.startsWith(from + File.separator)) return new File(newRoot, path.substring(from.length() + 1));
+        return null;
+    }
 }
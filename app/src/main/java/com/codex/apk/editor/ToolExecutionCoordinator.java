@@ -1,9 +1,7 @@
 package com.codex.apk.editor;
 
-import android.util.Log;
-
 import com.codex.apk.ChatMessage;
-import com.codex.apk.ToolExecutor;
+import com.codex.apk.ToolBatch;
 import com.codex.apk.AIChatFragment;
 import com.codex.apk.EditorActivity;
 
@@ -20,8 +18,6 @@ import java.util.function.Consumer;
  * Coordinates execution of AI-requested tool invocations, updating the chat UI as tools run.
  */
 public class ToolExecutionCoordinator {
-    private static final String TAG = "ToolExecutionCoordinator";
-
     private final EditorActivity activity;
     private final ExecutorService executorService;
     private final Consumer<JsonArray> continuationCallback;
@@ -85,46 +81,17 @@ public class ToolExecutionCoordinator {
 
         executorService.execute(() -> {
             long startAll = System.currentTimeMillis();
-            for (int i = 0; i < toolCalls.size(); i++) {
-                JsonObject call = toolCalls.get(i).getAsJsonObject();
-                ChatMessage.ToolUsage usage = lastToolUsages.get(i);
-                long startOne = System.currentTimeMillis();
-                try {
-                    String name = call.get("name").getAsString();
-                    JsonObject args = call.has("args") && call.get("args").isJsonObject()
-                            ? call.getAsJsonObject("args")
-                            : new JsonObject();
-                    JsonObject result = ToolExecutor.execute(projectDir, name, args);
-
-                    JsonObject payload = new JsonObject();
-                    payload.addProperty("name", name);
-                    payload.add("result", result);
-                    synchronized (results) {
-                        results.add(payload);
-                    }
-
-                    updateUsage(usage, name, args, result, System.currentTimeMillis() - startOne);
-                } catch (Exception ex) {
-                    Log.w(TAG, "Tool execution failed", ex);
-                    JsonObject payload = new JsonObject();
-                    payload.addProperty("name", "unknown");
-                    JsonObject err = new JsonObject();
-                    err.addProperty("ok", false);
-                    err.addProperty("error", ex.getMessage());
-                    payload.add("result", err);
-                    synchronized (results) {
-                        results.add(payload);
-                    }
-                    usage.ok = false;
-                    usage.resultJson = err.toString();
-                    usage.status = "failed";
-                    usage.durationMs = System.currentTimeMillis() - startOne;
-                }
-
+            // Independent calls run in parallel; results stay in call order
+            JsonArray batch = ToolBatch.execute(projectDir, toolCalls, (index, name, args, result, durationMs) -> {
+                ChatMessage.ToolUsage usage = index < lastToolUsages.size() ? lastToolUsages.get(index) : null;
+                if (usage != null) updateUsage(usage, name, args, result, durationMs);
                 if (uiFrag != null && toolsMessagePosition != null) {
                     int finalIndex = toolsMessagePosition;
                     activity.runOnUiThread(() -> uiFrag.updateMessage(finalIndex, uiFrag.getMessageAt(finalIndex)));
                 }
+            });
+            synchronized (results) {
+                results.addAll(batch);
             }
 
             long allDuration = System.currentTimeMillis() - startAll;
@@ -0,0 +1,176 @@
+package com.codex.apk.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds matches in a file through a fixed-size sliding char window instead of loading the
+ * whole file. UTF-8 is decoded incrementally, so offsets are the same char offsets that
+ * {@code new String(bytes, UTF_8)} would give. Case-insensitive matching folds chars during
+ * the compare; no lower-cased copy is made. Snippets are cut from the window only when a
+ * handler asks for one.
+ *
+ * Heap use per scan is a few {@link #WINDOW}s of chars whatever the file size. A regex
+ * match up to {@link #REGEX_SPAN} chars long is found wherever it falls, window boundaries
+ * included; a longer one may be missed.
+ */
+public final class ChunkedTextScanner {
+    private ChunkedTextScanner() {}
+
+    /** Chars of context on each side of a snippet. */
+    public static final int CONTEXT = 80;
+    private static final int WINDOW = 64 * 1024;
+    private static final int REGEX_SPAN = WINDOW;
+
+    /** One match; only valid during {@link HitHandler#onHit}. */
+    public interface Hit {
+        long start();
+        long end();
+        /** Up to CONTEXT chars before and after the match, plus the match. */
+        String snippet();
+    }
+
+    public interface HitHandler {
+        /** Return false to stop scanning. */
+        boolean onHit(Hit hit);
+    }
+
+    /** Plain substring search; matches do not overlap. */
+    public static void scanLiteral(File file, String needle, boolean caseSensitive, HitHandler handler) throws IOException {
+        final int n = needle.length();
+        if (n == 0) return;
+        char[] lower = new char[n];
+        char[] upper = new char[n];
+        for (int k = 0; k < n; k++) {
+            char c = needle.charAt(k);
+            lower[k] = caseSensitive ? c : Character.toLowerCase(c);
+            upper[k] = caseSensitive ? c : Character.toUpperCase(c);
+        }
+        try (Window w = new Window(file, n)) {
+            int from = 0;
+            while (true) {
+                w.fill();
+                // A start is decided once the match and its trailing context are in the window
+                int last = w.eof ? w.len - n : w.len - n - CONTEXT;
+                int i = from;
+                while (i <= last) {
+                    if (matchesAt(w.buf, i, lower, upper, caseSensitive)) {
+                        if (!handler.onHit(w.hit(i, i + n))) return;
+                        i += n;
+                    } else {
+                        i++;
+                    }
+                }
+                from = Math.max(from, i);
+                if (w.eof) return;
+                from -= w.slide(from);
+            }
+        }
+    }
+
+    /** Regex search, equivalent to {@code pattern.matcher(content).find()} in a loop. */
+    public static void scanRegex(File file, Pattern pattern, HitHandler handler) throws IOException {
+        try (Window w = new Window(file, REGEX_SPAN)) {
+            int from = 0;
+            while (true) {
+                w.fill();
+                int safeEnd = w.eof ? w.len : w.len - CONTEXT;
+                Matcher m = pattern.matcher(CharBuffer.wrap(w.buf, 0, w.len));
+                m.useTransparentBounds(true);
+                m.useAnchoringBounds(false);
+                m.region(from, w.len);
+                int resume = -1;
+                while (m.find()) {
+                    int start = m.start();
+                    int end = m.end();
+                    // A match too long to ever fit is taken as cut by the window
+                    if (!w.eof && end > safeEnd && end - start < REGEX_SPAN) {
+                        resume = start; // needs more text to be sure of the match and its context
+                        break;
+                    }
+                    if (!handler.onHit(w.hit(start, end))) return;
+                    from = end > start ? end : end + 1;
+                    if (from > w.len) break;
+                }
+                if (w.eof) return;
+                if (resume < 0) {
+                    // No match decided past from; a start near the end may still match with more text
+                    resume = m.hitEnd() ? Math.max(from, w.len - REGEX_SPAN) : Math.max(from, safeEnd);
+                }
+                from = resume - w.slide(resume);
+            }
+        }
+    }
+
+    private static boolean matchesAt(char[] buf, int i, char[] lower, char[] upper, boolean caseSensitive) {
+        for (int k = 0; k < lower.length; k++) {
+            char c = buf[i + k];
+            if (c == lower[k]) continue;
+            if (caseSensitive) return false;
+            if (c != upper[k] && Character.toLowerCase(c) != lower[k] && Character.toUpperCase(c) != upper[k]) return false;
+        }
+        return true;
+    }
+
+    /** Sliding window over the decoded file. */
+    private static final class Window implements AutoCloseable, Hit {
+        final Reader in;
+        final char[] buf;
+        int len = 0;
+        long base = 0; // file offset (chars) of buf[0]
+        boolean eof = false;
+        private int hitStart;
+        private int hitEnd;
+
+        Window(File file, int span) throws IOException {
+            this.in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+            this.buf = new char[WINDOW + 2 * CONTEXT + 2 * span];
+        }
+
+        void fill() throws IOException {
+            while (len < buf.length && !eof) {
+                int r = in.read(buf, len, buf.length - len);
+                if (r < 0) eof = true; else len += r;
+            }
+        }
+
+        /** Drops text before keepFrom minus CONTEXT; returns how far indexes moved. */
+        int slide(int keepFrom) {
+            int drop = Math.max(0, Math.min(len, keepFrom - CONTEXT));
+            if (drop > 0) {
+                System.arraycopy(buf, drop, buf, 0, len - drop);
+                len -= drop;
+                base += drop;
+            }
+            return drop;
+        }
+
+        Hit hit(int start, int end) {
+            hitStart = start;
+            hitEnd = end;
+            return this;
+        }
+
+        @Override public long start() { return base + hitStart; }
+        @Override public long end() { return base + hitEnd; }
+
+        @Override
+        public String snippet() {
+            int s = Math.max(0, hitStart - CONTEXT);
+            int e = Math.min(len, hitEnd + CONTEXT);
+            return new String(buf, s, e - s);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -9,14 +9,10 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public final class FileOps {
@@ -24,10 +20,16 @@ public final class FileOps {
 
     public static boolean deleteRecursively(File f) {
         if (f == null) return false;
+        boolean deleted = deleteTree(f);
+        ProjectChanges.notifyDeleted(f);
+        return deleted;
+    }
+
+    private static boolean deleteTree(File f) {
         if (f.isDirectory()) {
             File[] children = f.listFiles();
             if (children != null) {
-                for (File c : children) deleteRecursively(c);
+                for (File c : children) deleteTree(c);
             }
         }
         return f.delete();
@@ -40,15 +42,15 @@ public final class FileOps {
     }
 
     private static void explore(File dir, int depth, int maxDepth, StringBuilder sb, int[] count, int maxEntries) {
-        if (dir == null || !dir.exists() || count[0] >= maxEntries || depth > maxDepth) return;
-        File[] files = dir.listFiles();
-        if (files == null) return;
-        Arrays.sort(files, (a, b) -> a.getName().compareToIgnoreCase(b.getName()));
-        for (File f : files) {
+        if (dir == null || count[0] >= maxEntries || depth > maxDepth) return;
+        List<ProjectSnapshot.Entry> entries = ProjectSnapshot.listDir(dir);
+        if (entries == null) return;
+        for (ProjectSnapshot.Entry e : entries) {
+            if (FileTransaction.isInternal(e.file)) continue;
             if (count[0]++ >= maxEntries) return;
             for (int i = 0; i < depth; i++) sb.append("  ");
-            sb.append(f.isDirectory() ? "[d] " : "[f] ").append(f.getName()).append("\n");
-            if (f.isDirectory()) explore(f, depth + 1, maxDepth, sb, count, maxEntries);
+            sb.append(e.directory ? "[d] " : "[f] ").append(e.getName()).append("\n");
+            if (e.directory) explore(e.file, depth + 1, maxDepth, sb, count, maxEntries);
         }
     }
 
@@ -152,90 +154,72 @@ public final class FileOps {
         List<File> results = new ArrayList<>();
         if (projectDir == null || !projectDir.exists() || !projectDir.isDirectory() || pattern == null) return results;
         String probe = caseSensitive ? pattern : pattern.toLowerCase();
-        searchFilesByNameRecursive(projectDir, probe, caseSensitive, results);
-        return results;
-    }
-
-    private static void searchFilesByNameRecursive(File dir, String pattern, boolean caseSensitive, List<File> results) {
-        File[] files = dir.listFiles();
-        if (files == null) return;
-        for (File file : files) {
-            if (file.isDirectory()) {
-                String name = file.getName();
-                if (!name.startsWith(".") && !name.equals("node_modules") && !name.equals("build") && !name.equals("dist")) {
-                    searchFilesByNameRecursive(file, pattern, caseSensitive, results);
-                }
-            } else {
-                String name = file.getName();
-                String target = caseSensitive ? name : name.toLowerCase();
-                if (target.contains(pattern)) results.add(file);
-            }
+        for (File file : ParallelFileSearch.listFiles(projectDir, null)) {
+            String name = file.getName();
+            String target = caseSensitive ? name : name.toLowerCase();
+            if (target.contains(probe)) results.add(file);
         }
+        return results;
     }
 
     // Public: search in files and return line-number oriented results
     public static List<LineSearchResult> searchInFiles(File projectDir, String searchText, boolean caseSensitive,
                                                        boolean useRegex, List<String> fileExtensions, int maxResults) {
-        List<LineSearchResult> results = new ArrayList<>();
         if (projectDir == null || !projectDir.exists() || !projectDir.isDirectory() || searchText == null || searchText.trim().isEmpty()) {
-            return results;
+            return new ArrayList<>();
         }
         Pattern searchPattern = null;
         if (useRegex) {
             try { searchPattern = Pattern.compile(searchText, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE); }
             catch (Exception ignored) { useRegex = false; }
         }
-        searchInFilesRecursive(projectDir, searchText, searchPattern, caseSensitive, useRegex, fileExtensions, results, maxResults);
-        return results;
+        final Pattern pattern = useRegex ? searchPattern : null;
+        return searchFiles(projectDir, searchText, caseSensitive, useRegex, fileExtensions, maxResults,
+                (file, limit) -> searchInFile(file, searchText, pattern, caseSensitive, limit));
     }
 
-    private static void searchInFilesRecursive(File dir, String searchText, Pattern searchPattern,
-                                               boolean caseSensitive, boolean useRegex, List<String> fileExtensions,
-                                               List<LineSearchResult> results, int maxResults) {
-        if (results.size() >= maxResults) return;
-        File[] files = dir.listFiles();
-        if (files == null) return;
-        for (File file : files) {
-            if (results.size() >= maxResults) break;
-            if (file.isDirectory()) {
-                String dirName = file.getName();
-                if (!dirName.startsWith(".") && !dirName.equals("node_modules") && !dirName.equals("build") && !dirName.equals("dist")) {
-                    searchInFilesRecursive(file, searchText, searchPattern, caseSensitive, useRegex, fileExtensions, results, maxResults);
-                }
-            } else {
-                if (fileExtensions != null && !fileExtensions.isEmpty()) {
-                    String fileNameLower = file.getName().toLowerCase();
-                    boolean ok = false;
-                    for (String ext : fileExtensions) {
-                        if (fileNameLower.endsWith("." + ext.toLowerCase())) { ok = true; break; }
-                    }
-                    if (!ok) continue;
-                }
-                searchInFile(file, searchText, searchPattern, caseSensitive, useRegex, results, maxResults);
-            }
+    /**
+     * Runs matcher over the files that may contain searchText: the project index's candidates
+     * when it can answer, otherwise a breadth-first walk of root.
+     */
+    private static <R> List<R> searchFiles(File root, String searchText, boolean caseSensitive, boolean useRegex,
+                                           List<String> fileExtensions, int maxResults,
+                                           ParallelFileSearch.FileMatcher<R> matcher) {
+        List<File> candidates = ProjectSearchIndex.candidatesFor(root, searchText, caseSensitive, useRegex);
+        if (candidates == null) return ParallelFileSearch.searchTree(root, fileExtensions, maxResults, matcher);
+        List<File> files = new ArrayList<>(candidates.size());
+        for (File f : candidates) {
+            if (ParallelFileSearch.hasExtension(f, fileExtensions)) files.add(f);
         }
+        return ParallelFileSearch.search(files, maxResults, matcher);
     }
 
-    private static void searchInFile(File file, String searchText, Pattern searchPattern,
-                                     boolean caseSensitive, boolean useRegex, List<LineSearchResult> results, int maxResults) {
-        if (results.size() >= maxResults) return;
+    private static List<LineSearchResult> searchInFile(File file, String searchText, Pattern searchPattern,
+                                                       boolean caseSensitive, int maxResults) {
+        List<LineSearchResult> results = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
             String line; int lineNumber = 1;
             while ((line = reader.readLine()) != null && results.size() < maxResults) {
-                String searchLine = caseSensitive ? line : line.toLowerCase();
-                String target = caseSensitive ? searchText : searchText.toLowerCase();
-                if (useRegex && searchPattern != null) {
+                if (searchPattern != null) {
                     if (searchPattern.matcher(line).find()) {
                         results.add(new LineSearchResult(file, file.getName(), lineNumber, line.trim(), searchText));
                     }
                 } else {
-                    if (searchLine.contains(target)) {
+                    if (caseSensitive ? line.contains(searchText) : containsIgnoreCase(line, searchText)) {
                         results.add(new LineSearchResult(file, file.getName(), lineNumber, line.trim(), searchText));
                     }
                 }
                 lineNumber++;
             }
         } catch (IOException ignored) {}
+        return results;
+    }
+
+    private static boolean containsIgnoreCase(String line, String target) {
+        for (int i = 0, last = line.length() - target.length(); i <= last; i++) {
+            if (line.regionMatches(true, i, target, 0, target.length())) return true;
+        }
+        return false;
     }
 
     // Public: search in files and return offset/snippet oriented results
@@ -248,57 +232,32 @@ public final class FileOps {
             try { pattern = Pattern.compile(searchText, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.MULTILINE); }
             catch (Exception ignored) { useRegex = false; }
         }
-        Deque<File> dq = new ArrayDeque<>(); dq.add(projectDir);
-        while (!dq.isEmpty() && out.size() < maxResults) {
-            File cur = dq.pollFirst();
-            File[] files = cur != null ? cur.listFiles() : null; if (files == null) continue;
-            for (File f : files) {
-                if (out.size() >= maxResults) break;
-                if (f.isDirectory()) {
-                    String dn = f.getName();
-                    if (!dn.startsWith(".") && !dn.equals("node_modules") && !dn.equals("build") && !dn.equals("dist")) dq.addLast(f);
-                    continue;
-                }
-                if (fileExtensions != null && !fileExtensions.isEmpty()) {
-                    String lower = f.getName().toLowerCase(); boolean ok = false;
-                    for (String ext : fileExtensions) { if (lower.endsWith("." + ext.toLowerCase())) { ok = true; break; } }
-                    if (!ok) continue;
-                }
-                try {
-                    String content = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
-                    if (useRegex && pattern != null) {
-                        Matcher m = pattern.matcher(content); int hits = 0;
-                        while (m.find() && out.size() < maxResults) {
-                            JsonObject o = new JsonObject();
-                            o.addProperty("path", projectDir.toPath().relativize(f.toPath()).toString());
-                            o.addProperty("start", m.start());
-                            o.addProperty("end", m.end());
-                            int s = Math.max(0, m.start() - 80); int e = Math.min(content.length(), m.end() + 80);
-                            o.addProperty("snippet", content.substring(s, e));
-                            out.add(o);
-                            if (++hits > 10) break;
-                        }
-                    } else {
-                        String hay = caseSensitive ? content : content.toLowerCase();
-                        String needle = caseSensitive ? searchText : searchText.toLowerCase();
-                        int from = 0; int hits = 0;
-                        while (from <= hay.length() && out.size() < maxResults) {
-                            int idx = hay.indexOf(needle, from);
-                            if (idx < 0) break;
-                            JsonObject o = new JsonObject();
-                            o.addProperty("path", projectDir.toPath().relativize(f.toPath()).toString());
-                            o.addProperty("start", idx);
-                            o.addProperty("end", idx + needle.length());
-                            int s = Math.max(0, idx - 80); int e = Math.min(content.length(), idx + needle.length() + 80);
-                            o.addProperty("snippet", content.substring(s, e));
-                            out.add(o);
-                            from = idx + Math.max(1, needle.length());
-                            if (++hits > 10) break;
-                        }
-                    }
-                } catch (Exception ignored) {}
-            }
-        }
+        final Pattern regex = useRegex ? pattern : null;
+        List<JsonObject> matches = searchFiles(projectDir, searchText, caseSensitive, useRegex, fileExtensions, maxResults,
+                (f, limit) -> searchFileOffsets(projectDir, f, searchText, caseSensitive, regex, limit));
+        for (JsonObject o : matches) out.add(o);
+        return out;
+    }
+
+    /** Streams f through ChunkedTextScanner, so big files are never held in memory whole. */
+    private static List<JsonObject> searchFileOffsets(File projectDir, File f, String searchText, boolean caseSensitive,
+                                                      Pattern pattern, int maxResults) {
+        List<JsonObject> out = new ArrayList<>();
+        final String path = projectDir.toPath().relativize(f.toPath()).toString();
+        final int cap = Math.min(maxResults, 11);
+        ChunkedTextScanner.HitHandler handler = hit -> {
+            JsonObject o = new JsonObject();
+            o.addProperty("path", path);
+            o.addProperty("start", hit.start());
+            o.addProperty("end", hit.end());
+            o.addProperty("snippet", hit.snippet());
+            out.add(o);
+            return out.size() < cap;
+        };
+        try {
+            if (pattern != null) ChunkedTextScanner.scanRegex(f, pattern, handler);
+            else ChunkedTextScanner.scanLiteral(f, searchText, caseSensitive, handler);
+        } catch (Exception ignored) {}
         return out;
     }
 
@@ -306,22 +265,13 @@ public final class FileOps {
     public static List<File> getRecentFiles(File projectDir, int maxFiles) {
         List<File> files = new ArrayList<>();
         if (projectDir == null || !projectDir.exists() || !projectDir.isDirectory()) return files;
-        collectAllFiles(projectDir, files);
-        files.sort(Comparator.comparingLong(File::lastModified).reversed());
-        if (files.size() > maxFiles) return new ArrayList<>(files.subList(0, Math.max(0, maxFiles)));
-        return files;
-    }
-
-    private static void collectAllFiles(File dir, List<File> out) {
-        File[] arr = dir.listFiles(); if (arr == null) return;
-        for (File f : arr) {
-            if (f.isDirectory()) {
-                String dn = f.getName();
-                if (!dn.startsWith(".") && !dn.equals("node_modules") && !dn.equals("build") && !dn.equals("dist")) collectAllFiles(f, out);
-            } else {
-                out.add(f);
-            }
+        List<ProjectSnapshot.Entry> entries = ProjectSnapshot.listAllFiles(projectDir);
+        entries.sort((a, b) -> Long.compare(b.modified, a.modified));
+        for (ProjectSnapshot.Entry e : entries) {
+            if (files.size() >= maxFiles) break;
+            files.add(e.file);
         }
+        return files;
     }
 
     // Convenience helpers using projectDir and relative paths
@@ -330,6 +280,7 @@ public final class FileOps {
         File parent = file.getParentFile();
         if (parent != null) parent.mkdirs();
         Files.write(file.toPath(), (content != null ? content : "").getBytes(StandardCharsets.UTF_8));
+        ProjectChanges.notifyChanged(file);
     }
 
     public static void updateFile(File projectDir, String relativePath, String content) throws java.io.IOException {
@@ -337,6 +288,7 @@ public final class FileOps {
         File parent = file.getParentFile();
         if (parent != null) parent.mkdirs();
         Files.write(file.toPath(), (content != null ? content : "").getBytes(StandardCharsets.UTF_8));
+        ProjectChanges.notifyChanged(file);
     }
 
     public static boolean renameFile(File projectDir, String oldPath, String newPath) {
@@ -344,7 +296,11 @@ public final class FileOps {
         File newFile = new File(projectDir, newPath);
         File parent = newFile.getParentFile();
         if (parent != null) parent.mkdirs();
-        return oldFile.renameTo(newFile);
+        boolean renamed = oldFile.renameTo(newFile);
+        if (renamed) {
+            ProjectChanges.notifyRenamed(oldFile, newFile);
+        }
+        return renamed;
     }
 
     public static String readFile(File projectDir, String relativePath) throws java.io.IOException {
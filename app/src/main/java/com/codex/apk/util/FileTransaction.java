@@ -0,0 +1,512 @@
+package com.codex.apk.util;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A batch of file writes, deletes and renames under a project root that reaches the disk
+ * all at once or not at all.
+ *
+ * Until {@link #commit()}, operations only go into an in-memory log. {@link #read} and
+ * {@link #exists} see the project as if the log had already been applied, so later actions
+ * in a batch build on earlier ones. Commit has two phases:
+ * <ol>
+ *   <li>Every written file goes to a temp file in a hidden staging dir under the root and
+ *   is fsynced.</li>
+ *   <li>The log is replayed with renames only, within the same filesystem. Files that get
+ *   overwritten or deleted are moved aside, not destroyed.</li>
+ * </ol>
+ * If any step fails, the steps already done are undone in reverse and the project is left
+ * as it was. Files read from disk are checked before commit; if one changed in the
+ * meantime, the commit is refused.
+ *
+ * Before phase 2 the log is written to a journal in the staging dir, and the journal is
+ * deleted as soon as phase 2 finishes. If the process dies in between, {@link #recover}
+ * (called when the project is opened) finds the journal and undoes the renames that had
+ * been made, judging each step by what is left in the staging dir.
+ *
+ * Not thread-safe; a transaction belongs to the thread that builds it.
+ */
+public final class FileTransaction {
+    private static final String TAG = "FileTransaction";
+    private static final String STAGING_DIR = ".codex-tx";
+    private static final String JOURNAL = "journal";
+
+    public enum ChangeType { CREATED, MODIFIED, DELETED, RENAMED }
+
+    /** One committed change. content is the written text for CREATED and MODIFIED, else null. */
+    public static final class Change {
+        public final ChangeType type;
+        public final File file;
+        public final File oldFile; // RENAMED only
+        public final String content;
+
+        Change(ChangeType type, File file, File oldFile, String content) {
+            this.type = type;
+            this.file = file;
+            this.oldFile = oldFile;
+            this.content = content;
+        }
+    }
+
+    private enum OpType { WRITE, DELETE, RENAME }
+
+    private static final class Op {
+        final OpType type;
+        final String path; // target for WRITE/DELETE, source for RENAME
+        final String to;
+        final String content;
+        final byte[] data; // WRITE of raw bytes, instead of content
+
+        Op(OpType type, String path, String to, String content, byte[] data) {
+            this.type = type;
+            this.path = path;
+            this.to = to;
+            this.content = content;
+            this.data = data;
+        }
+
+        byte[] bytes() {
+            return data != null ? data : content.getBytes(StandardCharsets.UTF_8);
+        }
+
+        String text() {
+            return content != null ? content : new String(data, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** What a path holds after the log: a staged write, a file on disk, or nothing. */
+    private static final class Resolved {
+        final Op staged;
+        final File disk;
+
+        Resolved(Op staged, File disk) {
+            this.staged = staged;
+            this.disk = disk;
+        }
+    }
+
+    private final File root;
+    private final Path rootPath;
+    private final List<Op> ops = new ArrayList<>();
+    // Size and mtime of every disk file read, to catch edits made before commit
+    private final Map<File, long[]> readStamps = new HashMap<>();
+    private boolean finished;
+
+    public FileTransaction(File root) {
+        this.root = root;
+        this.rootPath = root.toPath().toAbsolutePath().normalize();
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public boolean isEmpty() {
+        return ops.isEmpty();
+    }
+
+    public boolean exists(String relativePath) throws IOException {
+        Resolved r = resolve(normalize(relativePath));
+        return r != null && (r.staged != null || r.disk.exists());
+    }
+
+    /** Text of a file as the transaction sees it, or null when it does not exist. */
+    public String read(String relativePath) throws IOException {
+        byte[] bytes = readBytes(relativePath);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    /** Bytes of a file as the transaction sees it (staged text as UTF-8), or null when it does not exist. */
+    public byte[] readBytes(String relativePath) throws IOException {
+        Resolved r = resolve(normalize(relativePath));
+        if (r == null) return null;
+        if (r.staged != null) return r.staged.bytes();
+        if (!r.disk.isFile()) {
+            if (r.disk.exists()) throw new IOException("Not a file: " + relativePath);
+            return null;
+        }
+        if (!readStamps.containsKey(r.disk)) readStamps.put(r.disk, new long[]{r.disk.length(), r.disk.lastModified()});
+        return Files.readAllBytes(r.disk.toPath());
+    }
+
+    /**
+     * Relative paths of every file whose content may differ between the disk and this view:
+     * files written, and every file inside what is deleted or moved, at both ends of a move.
+     */
+    public Set<String> touchedFiles() {
+        Set<String> touched = new LinkedHashSet<>();
+        for (int i = 0; i < ops.size(); i++) {
+            Op op = ops.get(i);
+            if (op.type == OpType.WRITE) {
+                touched.add(op.path);
+                continue;
+            }
+            Set<String> inside = new LinkedHashSet<>();
+            Resolved r = resolve(op.path, i);
+            if (r != null && r.disk != null) {
+                String diskRel = rootPath.relativize(r.disk.toPath().toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+                for (String f : listFiles(r.disk)) inside.add(op.path + f.substring(diskRel.length()));
+            }
+            // Files staged earlier inside the moved or deleted tree
+            for (String t : touched) if (isWithin(t, op.path)) inside.add(t);
+            touched.addAll(inside);
+            if (op.type == OpType.RENAME) {
+                for (String f : inside) touched.add(op.to + f.substring(op.path.length()));
+            }
+        }
+        return touched;
+    }
+
+    /** Relative paths of the files at or under f on disk. */
+    private List<String> listFiles(File f) {
+        List<String> out = new ArrayList<>();
+        if (f.isFile()) {
+            out.add(rootPath.relativize(f.toPath().toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/'));
+        } else {
+            File[] children = f.listFiles();
+            if (children != null) for (File c : children) out.addAll(listFiles(c));
+        }
+        return out;
+    }
+
+    public void write(String relativePath, String content) throws IOException {
+        stageWrite(relativePath, content != null ? content : "", null);
+    }
+
+    /** Like {@link #write(String, String)} for content that may not be text. */
+    public void write(String relativePath, byte[] data) throws IOException {
+        stageWrite(relativePath, null, data != null ? data : new byte[0]);
+    }
+
+    private void stageWrite(String relativePath, String content, byte[] data) throws IOException {
+        checkOpen();
+        String path = normalize(relativePath);
+        Resolved r = resolve(path);
+        if (r != null && r.disk != null && r.disk.isDirectory()) throw new IOException("Is a directory: " + relativePath);
+        Op op = new Op(OpType.WRITE, path, null, content, data);
+        // A later write to the same path replaces an earlier one, unless a rename or delete came in between
+        for (int i = ops.size() - 1; i >= 0; i--) {
+            Op prev = ops.get(i);
+            if (prev.type == OpType.WRITE) {
+                if (!prev.path.equals(path)) continue;
+                ops.set(i, op);
+                return;
+            }
+            if (isWithin(path, prev.path) || (prev.to != null && isWithin(path, prev.to))) break;
+        }
+        ops.add(op);
+    }
+
+    public void delete(String relativePath) throws IOException {
+        checkOpen();
+        String path = normalize(relativePath);
+        if (!exists(path)) throw new IOException("Not found: " + relativePath);
+        ops.add(new Op(OpType.DELETE, path, null, null, null));
+    }
+
+    public void rename(String fromPath, String toPath) throws IOException {
+        checkOpen();
+        String from = normalize(fromPath);
+        String to = normalize(toPath);
+        if (!exists(from)) throw new IOException("Not found: " + fromPath);
+        if (exists(to)) throw new IOException("Already exists: " + toPath);
+        if (to.startsWith(from + "/")) throw new IOException("Cannot move " + fromPath + " into itself");
+        ops.add(new Op(OpType.RENAME, from, to, null, null));
+    }
+
+    /** Drops everything staged; nothing on disk has been touched yet. */
+    public void rollback() {
+        ops.clear();
+        readStamps.clear();
+        finished = true;
+    }
+
+    /**
+     * Applies the log to disk. On failure the project is restored and the cause rethrown.
+     * Either way the transaction is finished afterwards.
+     */
+    public List<Change> commit() throws IOException {
+        checkOpen();
+        finished = true;
+        if (ops.isEmpty()) return Collections.emptyList();
+        for (Map.Entry<File, long[]> e : readStamps.entrySet()) {
+            File f = e.getKey();
+            if (f.length() != e.getValue()[0] || f.lastModified() != e.getValue()[1]) {
+                throw new IOException("Changed on disk since it was read: " + rootPath.relativize(f.toPath().toAbsolutePath()));
+            }
+        }
+
+        File staging = new File(root, STAGING_DIR + File.separator + Long.toHexString(System.nanoTime()));
+        if (!staging.mkdirs()) throw new IOException("Cannot create staging dir " + staging);
+        File journal = new File(staging, JOURNAL);
+        List<Runnable> undo = new ArrayList<>();
+        List<Change> changes = new ArrayList<>();
+        try {
+            // Phase 1: every new text durable on disk before anything is replaced
+            File[] temps = new File[ops.size()];
+            for (int i = 0; i < ops.size(); i++) {
+                Op op = ops.get(i);
+                if (op.type != OpType.WRITE) continue;
+                temps[i] = new File(staging, i + ".new");
+                try (FileOutputStream out = new FileOutputStream(temps[i])) {
+                    out.write(op.bytes());
+                    out.getFD().sync();
+                }
+            }
+
+            writeJournal(journal, ops);
+
+            // Phase 2: renames only, each with its inverse recorded
+            for (int i = 0; i < ops.size(); i++) {
+                Op op = ops.get(i);
+                File target = new File(root, op.path);
+                switch (op.type) {
+                    case WRITE: {
+                        boolean existed = target.exists();
+                        if (existed) moveAside(target, new File(staging, i + ".old"), undo);
+                        makeParents(target, undo);
+                        move(temps[i], target);
+                        undo.add(() -> target.delete());
+                        changes.add(new Change(existed ? ChangeType.MODIFIED : ChangeType.CREATED, target, null, op.text()));
+                        break;
+                    }
+                    case DELETE:
+                        moveAside(target, new File(staging, i + ".old"), undo);
+                        changes.add(new Change(ChangeType.DELETED, target, null, null));
+                        break;
+                    case RENAME: {
+                        File dest = new File(root, op.to);
+                        makeParents(dest, undo);
+                        move(target, dest);
+                        undo.add(() -> dest.renameTo(target));
+                        changes.add(new Change(ChangeType.RENAMED, dest, target, null));
+                        break;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            boolean undone = true;
+            for (int i = undo.size() - 1; i >= 0; i--) {
+                try { undo.get(i).run(); } catch (Exception ex) { undone = false; Log.w(TAG, "Undo step failed", ex); }
+            }
+            // Keep the journal and originals if the undo was incomplete; recover() retries on next open
+            if (undone) {
+                journal.delete();
+                removeStaging(staging);
+            }
+            throw e;
+        }
+        // Committed: from here on recovery must not roll back, and the originals are no longer needed
+        if (!journal.delete()) Log.w(TAG, "Could not delete journal " + journal);
+        removeStaging(staging);
+        return changes;
+    }
+
+    /**
+     * Cleans up after transactions interrupted by a crash: a staging dir with a journal had
+     * started replacing files, so its steps are undone; one without had not, and is just
+     * deleted. Cheap when there is nothing to do; call before anything reads the project.
+     */
+    public static void recover(File root) {
+        File base = new File(root, STAGING_DIR);
+        File[] dirs = base.listFiles();
+        if (dirs == null) return;
+        for (File staging : dirs) {
+            File journal = new File(staging, JOURNAL);
+            if (journal.isFile()) {
+                try {
+                    rollBack(root, staging, readJournal(journal));
+                    Log.w(TAG, "Rolled back an interrupted transaction in " + root);
+                } catch (IOException e) {
+                    // Leave everything in place rather than lose the originals
+                    Log.w(TAG, "Could not roll back interrupted transaction " + staging, e);
+                    continue;
+                }
+                journal.delete();
+            }
+            removeStaging(staging);
+        }
+    }
+
+    /**
+     * True for the dirs kept inside a project for transactions and {@link SnapshotStore}: the
+     * staging dir, the snapshot store, and a .codex dir that holds nothing but the store.
+     * File trees, prompts, listings and exports leave these out.
+     */
+    public static boolean isInternal(File file) {
+        String name = file.getName();
+        if (name.equals(STAGING_DIR)) return true;
+        int slash = SnapshotStore.STORE_DIR.indexOf('/');
+        String storeParent = SnapshotStore.STORE_DIR.substring(0, slash);
+        String storeName = SnapshotStore.STORE_DIR.substring(slash + 1);
+        if (name.equals(storeName)) {
+            File parent = file.getParentFile();
+            return parent != null && parent.getName().equals(storeParent);
+        }
+        if (!name.equals(storeParent)) return false;
+        String[] children = file.list();
+        return children != null && children.length == 1 && children[0].equals(storeName);
+    }
+
+    /**
+     * Undoes phase 2 of ops in reverse, from the disk state alone: a write whose temp file is
+     * gone had been moved in, and an original still in staging had been moved aside. Safe
+     * to repeat after a partial run.
+     */
+    private static void rollBack(File root, File staging, List<Op> ops) throws IOException {
+        for (int i = ops.size() - 1; i >= 0; i--) {
+            Op op = ops.get(i);
+            File target = new File(root, op.path);
+            File aside = new File(staging, i + ".old");
+            switch (op.type) {
+                case WRITE:
+                    if (!new File(staging, i + ".new").exists() && target.isFile() && !target.delete()) {
+                        throw new IOException("Cannot remove " + target);
+                    }
+                    if (aside.exists()) move(aside, target);
+                    break;
+                case DELETE:
+                    if (aside.exists()) move(aside, target);
+                    break;
+                case RENAME: {
+                    File dest = new File(root, op.to);
+                    if (dest.exists() && !target.exists()) move(dest, target);
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Writes the op list (types and paths, not contents) durably, before phase 2 starts. */
+    private static void writeJournal(File journal, List<Op> ops) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(journal);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(ops.size());
+            for (Op op : ops) {
+                out.writeByte(op.type.ordinal());
+                out.writeUTF(op.path);
+                out.writeUTF(op.to != null ? op.to : "");
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    private static List<Op> readJournal(File journal) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            int count = in.readInt();
+            List<Op> ops = new ArrayList<>(count);
+            OpType[] types = OpType.values();
+            for (int i = 0; i < count; i++) {
+                int type = in.readByte();
+                if (type < 0 || type >= types.length) throw new IOException("Bad journal entry " + i);
+                String path = in.readUTF();
+                String to = in.readUTF();
+                ops.add(new Op(types[type], path, to.isEmpty() ? null : to, null, null));
+            }
+            return ops;
+        }
+    }
+
+    private static void removeStaging(File staging) {
+        deleteTree(staging);
+        File parent = staging.getParentFile();
+        String[] left = parent != null ? parent.list() : null;
+        if (left != null && left.length == 0) parent.delete();
+    }
+
+    private Resolved resolve(String path) {
+        return resolve(path, ops.size());
+    }
+
+    /** What path holds once the first upTo ops are applied. */
+    private Resolved resolve(String path, int upTo) {
+        // Walk the log backwards, following renames to where the path's data came from
+        for (int i = upTo - 1; i >= 0; i--) {
+            Op op = ops.get(i);
+            switch (op.type) {
+                case WRITE:
+                    if (op.path.equals(path)) return new Resolved(op, null);
+                    break;
+                case DELETE:
+                    if (isWithin(path, op.path)) return null;
+                    break;
+                case RENAME:
+                    if (isWithin(path, op.to)) {
+                        path = op.path + path.substring(op.to.length());
+                    } else if (isWithin(path, op.path)) {
+                        return null;
+                    }
+                    break;
+            }
+        }
+        return new Resolved(null, new File(root, path));
+    }
+
+    private static boolean isWithin(String path, String dir) {
+        return path.equals(dir) || path.startsWith(dir + "/");
+    }
+
+    /** Project-relative, '/'-separated, without "." segments; paths leaving the root are refused. */
+    private String normalize(String relativePath) throws IOException {
+        if (relativePath == null || relativePath.trim().isEmpty()) throw new IOException("Empty path");
+        String p = relativePath.trim().replace('\\', '/');
+        while (p.startsWith("/")) p = p.substring(1);
+        Path resolved = rootPath.resolve(p).normalize();
+        if (!resolved.startsWith(rootPath) || resolved.equals(rootPath)) {
+            throw new IOException("Path outside project: " + relativePath);
+        }
+        String rel = rootPath.relativize(resolved).toString().replace(File.separatorChar, '/');
+        if (isWithin(rel, STAGING_DIR) || isWithin(rel, SnapshotStore.STORE_DIR)) throw new IOException("Reserved path: " + relativePath);
+        return rel;
+    }
+
+    private void checkOpen() {
+        if (finished) throw new IllegalStateException("Transaction already finished");
+    }
+
+    private static void moveAside(File target, File aside, List<Runnable> undo) throws IOException {
+        move(target, aside);
+        undo.add(() -> aside.renameTo(target));
+    }
+
+    private static void move(File from, File to) throws IOException {
+        if (!from.renameTo(to)) throw new IOException("Failed to move " + from + " to " + to);
+    }
+
+    /** Creates missing parents of file, recording their removal (deepest first) for undo. */
+    private static void makeParents(File file, List<Runnable> undo) throws IOException {
+        List<File> missing = new ArrayList<>();
+        for (File d = file.getParentFile(); d != null && !d.exists(); d = d.getParentFile()) missing.add(d);
+        for (int i = missing.size() - 1; i >= 0; i--) {
+            File d = missing.get(i);
+            if (!d.mkdir() && !d.isDirectory()) throw new IOException("Cannot create directory " + d);
+            undo.add(d::delete);
+        }
+    }
+
+    private static void deleteTree(File f) {
+        File[] children = f.listFiles();
+        if (children != null) for (File c : children) deleteTree(c);
+        f.delete();
+    }
+}
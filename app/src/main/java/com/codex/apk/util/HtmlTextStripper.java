@@ -0,0 +1,195 @@
+package com.codex.apk.util;
+
+/**
+ * Turns HTML into readable text as it streams in, one chunk at a time, without building a
+ * DOM. Tags are dropped, along with the contents of script, style, noscript and template
+ * elements and comments. Block-level tags become line breaks and table cells a space;
+ * inline tags such as sub or b leave no gap, so "H<sub>2</sub>O" reads "H2O". A '<' that
+ * cannot start a tag (not followed by a letter, '/', '!' or '?') is kept as text. Common
+ * entities are decoded and runs of whitespace are collapsed. Output stops growing at
+ * maxChars.
+ */
+public final class HtmlTextStripper {
+    private static final String[] SKIPPED = {"script", "style", "noscript", "template"};
+    private static final String[] BLOCKS = {"p", "div", "br", "li", "ul", "ol", "tr", "table", "section", "article",
+            "header", "footer", "nav", "aside", "main", "h1", "h2", "h3", "h4", "h5", "h6", "pre", "blockquote",
+            "hr", "title", "form", "dd", "dt", "figure", "figcaption"};
+    private static final String[] CELLS = {"td", "th"};
+    private static final int MAX_TAG = 256;
+    private static final int MAX_ENTITY = 10;
+
+    private enum State { TEXT, LT, TAG, ENTITY, COMMENT, SKIP }
+
+    private final StringBuilder out;
+    private final int maxChars;
+    private final StringBuilder pending = new StringBuilder(); // tag name, entity or comment tail
+    private State state = State.TEXT;
+    private String skipUntil; // closing tag that ends SKIP, e.g. "</script"
+    private boolean inTagName;
+    private boolean pendingSpace;
+
+    public HtmlTextStripper(StringBuilder out, int maxChars) {
+        this.out = out;
+        this.maxChars = maxChars;
+    }
+
+    public boolean isFull() {
+        return out.length() >= maxChars;
+    }
+
+    public void feed(char[] buf, int off, int len) {
+        for (int i = off; i < off + len && !isFull(); i++) feed(buf[i]);
+    }
+
+    private void feed(char c) {
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    state = State.LT;
+                } else if (c == '&') {
+                    state = State.ENTITY;
+                    pending.setLength(0);
+                } else {
+                    text(c);
+                }
+                break;
+            case LT:
+                if (Character.isLetter(c) || c == '/' || c == '!' || c == '?') {
+                    state = State.TAG;
+                    inTagName = true;
+                    pending.setLength(0);
+                } else {
+                    // "a < b", "<3", "<=": not a tag
+                    state = State.TEXT;
+                    text('<');
+                }
+                feed(c);
+                break;
+            case TAG:
+                if (c == '>') {
+                    endTag();
+                } else if (inTagName) {
+                    if (Character.isWhitespace(c) || (c == '/' && pending.length() > 0)) {
+                        inTagName = false;
+                    } else if (pending.length() < MAX_TAG) {
+                        pending.append(Character.toLowerCase(c));
+                        if (pending.length() == 3 && "!--".contentEquals(pending)) {
+                            state = State.COMMENT;
+                            pending.setLength(0);
+                        }
+                    }
+                }
+                break;
+            case ENTITY:
+                if (c == ';') {
+                    appendEntity();
+                    state = State.TEXT;
+                } else if (pending.length() >= MAX_ENTITY || !(Character.isLetterOrDigit(c) || c == '#')) {
+                    text('&');
+                    for (int i = 0; i < pending.length(); i++) text(pending.charAt(i));
+                    state = State.TEXT;
+                    feed(c);
+                } else {
+                    pending.append(c);
+                }
+                break;
+            case COMMENT:
+                pending.append(c);
+                if (pending.length() > 3) pending.deleteCharAt(0);
+                if (c == '>' && pending.length() >= 3 && pending.charAt(0) == '-' && pending.charAt(1) == '-') {
+                    state = State.TEXT;
+                }
+                break;
+            case SKIP:
+                // Keep only as many chars as the closing tag has, to match it across chunks
+                pending.append(Character.toLowerCase(c));
+                if (pending.length() > skipUntil.length()) pending.deleteCharAt(0);
+                if (skipUntil.contentEquals(pending)) {
+                    state = State.TAG;
+                    inTagName = false;
+                    pending.setLength(0);
+                }
+                break;
+        }
+    }
+
+    private void endTag() {
+        String name = pending.toString();
+        state = State.TEXT;
+        boolean closing = name.startsWith("/");
+        String bare = closing ? name.substring(1) : name;
+        if (!closing) {
+            for (String s : SKIPPED) {
+                if (s.equals(bare)) {
+                    state = State.SKIP;
+                    skipUntil = "</" + s;
+                    pending.setLength(0);
+                    return;
+                }
+            }
+        }
+        for (String b : BLOCKS) {
+            if (b.equals(bare)) {
+                newline();
+                return;
+            }
+        }
+        for (String cell : CELLS) {
+            if (cell.equals(bare)) {
+                pendingSpace = pendingSpace || out.length() > 0;
+                return;
+            }
+        }
+    }
+
+    private void appendEntity() {
+        String e = pending.toString();
+        int code = -1;
+        try {
+            if (e.startsWith("#x") || e.startsWith("#X")) code = Integer.parseInt(e.substring(2), 16);
+            else if (e.startsWith("#")) code = Integer.parseInt(e.substring(1));
+        } catch (NumberFormatException ignore) {}
+        if (code < 0) {
+            switch (e) {
+                case "amp": code = '&'; break;
+                case "lt": code = '<'; break;
+                case "gt": code = '>'; break;
+                case "quot": code = '"'; break;
+                case "apos": code = '\''; break;
+                case "nbsp": code = ' '; break;
+                default:
+                    text('&');
+                    for (int i = 0; i < e.length(); i++) text(e.charAt(i));
+                    text(';');
+                    return;
+            }
+        }
+        if (code > 0 && Character.isValidCodePoint(code)) {
+            for (char ch : Character.toChars(code)) text(ch);
+        }
+    }
+
+    private void text(char c) {
+        if (isFull()) return;
+        if (Character.isWhitespace(c)) {
+            pendingSpace = out.length() > 0;
+            return;
+        }
+        if (pendingSpace) {
+            char last = out.length() > 0 ? out.charAt(out.length() - 1) : '\n';
+            if (last != '\n' && last != ' ') out.append(' ');
+            pendingSpace = false;
+            if (isFull()) return;
+        }
+        out.append(c);
+    }
+
+    private void newline() {
+        pendingSpace = false;
+        int n = out.length();
+        if (n == 0 || isFull()) return;
+        // At most one blank line in a row
+        if (out.charAt(n - 1) != '\n') out.append('\n');
+        else if (n < 2 || out.charAt(n - 2) != '\n') out.append('\n');
+    }
+}
@@ -0,0 +1,127 @@
+package com.codex.apk.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Byte offset of every line start in a file, so a range of lines can be read by seeking
+ * instead of decoding everything before it. Built with one pass over the bytes and cached
+ * per file until its size or mtime changes.
+ *
+ * Lines end at '\n' (a preceding '\r' stays part of the line). A trailing newline does
+ * not start an extra empty line, and an empty file has no lines.
+ */
+public final class LineOffsetIndex {
+    private static final int MAX_CACHED = 16;
+    private static final int BUFFER = 64 * 1024;
+
+    private static final Map<String, LineOffsetIndex> CACHE = new LinkedHashMap<String, LineOffsetIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LineOffsetIndex> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    public final long size;
+    public final long modified;
+    private final long[] starts; // starts[i] = offset of line i; length == lineCount
+    private final int lineCount;
+
+    private LineOffsetIndex(long size, long modified, long[] starts, int lineCount) {
+        this.size = size;
+        this.modified = modified;
+        this.starts = starts;
+        this.lineCount = lineCount;
+    }
+
+    /** Index for file, reused while its size and mtime are unchanged. */
+    public static LineOffsetIndex of(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long size = file.length();
+        long modified = file.lastModified();
+        synchronized (CACHE) {
+            LineOffsetIndex cached = CACHE.get(key);
+            if (cached != null && cached.size == size && cached.modified == modified) return cached;
+        }
+        LineOffsetIndex built = build(file, modified);
+        synchronized (CACHE) {
+            CACHE.put(key, built);
+        }
+        return built;
+    }
+
+    private static LineOffsetIndex build(File file, long modified) throws IOException {
+        long[] starts = new long[1024];
+        int count = 0;
+        long pos = 0;
+        boolean atLineStart = true;
+        byte[] buf = new byte[BUFFER];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (atLineStart) {
+                        if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+                        starts[count++] = pos + i;
+                        atLineStart = false;
+                    }
+                    if (buf[i] == '\n') atLineStart = true;
+                }
+                pos += n;
+            }
+        }
+        return new LineOffsetIndex(pos, modified, starts, count);
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /** Offset of 0-based line; {@link #size} for line == lineCount. */
+    public long lineStart(int line) {
+        return line >= lineCount ? size : starts[Math.max(0, line)];
+    }
+
+    /** 0-based line containing byteOffset. */
+    public int lineAt(long byteOffset) {
+        int i = Arrays.binarySearch(starts, 0, lineCount, byteOffset);
+        return i >= 0 ? i : Math.max(0, -i - 2);
+    }
+
+    /** Decodes bytes [from, to) of file as UTF-8; see {@link #charStartOf} to avoid split characters. */
+    public static String read(File file, long from, long to) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            from = Math.max(0, Math.min(from, length));
+            to = Math.max(from, Math.min(to, length));
+            byte[] bytes = new byte[(int) (to - from)];
+            raf.seek(from);
+            raf.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** offset moved back to the start of the UTF-8 character it falls in. */
+    public static long charStartOf(File file, long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return charStart(raf, Math.max(0, Math.min(offset, raf.length())));
+        }
+    }
+
+    private static long charStart(RandomAccessFile raf, long offset) throws IOException {
+        // A UTF-8 character is at most 4 bytes; skip back over continuation bytes (10xxxxxx)
+        for (int k = 0; k < 3 && offset > 0 && offset < raf.length(); k++) {
+            raf.seek(offset);
+            if ((raf.read() & 0xC0) != 0x80) break;
+            offset--;
+        }
+        return offset;
+    }
+}
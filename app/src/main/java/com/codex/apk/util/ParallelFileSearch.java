@@ -0,0 +1,256 @@
+package com.codex.apk.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-core engine behind the FileOps searches.
+ *
+ * The tree is walked one depth level at a time, in batches of directories. Each batch is
+ * listed in parallel, and its files are matched in parallel. Results are merged in a fixed
+ * breadth-first order: depth, then parent directory, then name. The output therefore
+ * equals a sequential search over that order, whatever the thread timing. The walk stops
+ * once maxResults are found, and files after that point in a batch are skipped.
+ */
+public final class ParallelFileSearch {
+    private ParallelFileSearch() {}
+
+    /** Below this many files the search runs on the calling thread. */
+    private static final int INLINE_FILES = 16;
+    /** Files matched by one leaf task. */
+    private static final int LEAF_FILES = 4;
+    /** Directories listed per step of a level; bounds the work done past maxResults. */
+    private static final int DIR_BATCH = 32;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() - 1),
+            pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("CodeX-Search-" + t.getPoolIndex());
+                return t;
+            },
+            null, false);
+
+    /** Matches one file; at most limit results, never null. */
+    public interface FileMatcher<R> {
+        List<R> match(File file, int limit);
+    }
+
+    /**
+     * All searchable files under root (same skip rules as the scans: dot dirs, node_modules,
+     * build, dist) that have one of extensions (all files when empty), in breadth-first order.
+     */
+    public static List<File> listFiles(File root, List<String> extensions) {
+        List<File> files = new ArrayList<>();
+        List<File> dirs = Collections.singletonList(root);
+        while (!dirs.isEmpty()) {
+            Level level = POOL.invoke(new ListTask(dirs, 0, dirs.size(), extensions));
+            files.addAll(level.files);
+            dirs = level.dirs;
+        }
+        return files;
+    }
+
+    /** Walks root breadth-first and matches its files, stopping once maxResults are found. */
+    public static <R> List<R> searchTree(File root, List<String> extensions, int maxResults, FileMatcher<R> matcher) {
+        List<R> out = new ArrayList<>();
+        List<File> dirs = Collections.singletonList(root);
+        while (!dirs.isEmpty() && out.size() < maxResults) {
+            List<File> next = new ArrayList<>();
+            for (int i = 0; i < dirs.size() && out.size() < maxResults; i += DIR_BATCH) {
+                Level batch = POOL.invoke(new ListTask(dirs, i, Math.min(dirs.size(), i + DIR_BATCH), extensions));
+                out.addAll(search(batch.files, maxResults - out.size(), matcher));
+                next.addAll(batch.dirs);
+            }
+            dirs = next;
+        }
+        return out;
+    }
+
+    /**
+     * Runs matcher over files in parallel and returns the first maxResults results in file
+     * order.
+     */
+    public static <R> List<R> search(List<File> files, int maxResults, FileMatcher<R> matcher) {
+        List<R> out = new ArrayList<>();
+        if (files.isEmpty() || maxResults <= 0) return out;
+        if (files.size() < INLINE_FILES) {
+            for (File f : files) {
+                if (out.size() >= maxResults) break;
+                out.addAll(matcher.match(f, maxResults - out.size()));
+            }
+            return out;
+        }
+        Progress<R> progress = new Progress<>(files, maxResults, matcher);
+        POOL.invoke(new MatchTask<>(progress, 0, files.size()));
+        for (List<R> slot : progress.slots) {
+            if (slot == null) continue; // skipped past the cutoff
+            for (R r : slot) {
+                if (out.size() >= maxResults) return out;
+                out.add(r);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Orders '/'-separated relative paths the way the walk visits them: by depth, then
+     * component by component. Index-driven searches sort their candidates with it, so
+     * both paths truncate at maxResults on the same files.
+     */
+    static int compareBreadthFirst(String a, String b) {
+        int byDepth = Integer.compare(depth(a), depth(b));
+        if (byDepth != 0) return byDepth;
+        int i = 0, j = 0;
+        while (true) {
+            int endA = a.indexOf('/', i);
+            int endB = b.indexOf('/', j);
+            if (endA < 0) endA = a.length();
+            if (endB < 0) endB = b.length();
+            int c = a.substring(i, endA).compareTo(b.substring(j, endB));
+            if (c != 0 || endA == a.length()) return c; // equal depth: both end together
+            i = endA + 1;
+            j = endB + 1;
+        }
+    }
+
+    private static int depth(String rel) {
+        int d = 0;
+        for (int i = 0; i < rel.length(); i++) if (rel.charAt(i) == '/') d++;
+        return d;
+    }
+
+    static boolean isSkippedDir(String name) {
+        return name.startsWith(".") || name.equals("node_modules") || name.equals("build") || name.equals("dist");
+    }
+
+    static boolean hasExtension(File file, List<String> extensions) {
+        if (extensions == null || extensions.isEmpty()) return true;
+        String lower = file.getName().toLowerCase();
+        for (String ext : extensions) {
+            if (lower.endsWith("." + ext.toLowerCase())) return true;
+        }
+        return false;
+    }
+
+    /** Files and subdirectories found at one depth, ordered by parent directory, then name. */
+    private static final class Level {
+        final List<File> files = new ArrayList<>();
+        final List<File> dirs = new ArrayList<>();
+    }
+
+    /** Lists dirs[from, to) in parallel, keeping their order. */
+    private static final class ListTask extends RecursiveTask<Level> {
+        private final List<File> dirs;
+        private final int from;
+        private final int to;
+        private final List<String> extensions;
+
+        ListTask(List<File> dirs, int from, int to, List<String> extensions) {
+            this.dirs = dirs;
+            this.from = from;
+            this.to = to;
+            this.extensions = extensions;
+        }
+
+        @Override
+        protected Level compute() {
+            Level level = new Level();
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                ListTask right = new ListTask(dirs, mid, to, extensions);
+                right.fork();
+                Level left = new ListTask(dirs, from, mid, extensions).compute();
+                Level r = right.join();
+                level.files.addAll(left.files);
+                level.files.addAll(r.files);
+                level.dirs.addAll(left.dirs);
+                level.dirs.addAll(r.dirs);
+            } else if (to > from) {
+                File[] children = dirs.get(from).listFiles();
+                if (children != null) {
+                    Arrays.sort(children);
+                    for (File f : children) {
+                        if (f.isDirectory()) {
+                            if (!isSkippedDir(f.getName())) level.dirs.add(f);
+                        } else if (hasExtension(f, extensions)) {
+                            level.files.add(f);
+                        }
+                    }
+                }
+            }
+            return level;
+        }
+    }
+
+    /** Per-file results plus the completed prefix that drives the early cutoff. */
+    private static final class Progress<R> {
+        final List<File> files;
+        final int maxResults;
+        final FileMatcher<R> matcher;
+        final List<R>[] slots;
+        final boolean[] done;
+        /** Files at or after this index are not needed any more. */
+        final AtomicInteger cutoff;
+        private int prefix = 0; // files [0, prefix) are all done
+        private int prefixResults = 0;
+
+        @SuppressWarnings("unchecked")
+        Progress(List<File> files, int maxResults, FileMatcher<R> matcher) {
+            this.files = files;
+            this.maxResults = maxResults;
+            this.matcher = matcher;
+            this.slots = (List<R>[]) new List[files.size()];
+            this.done = new boolean[files.size()];
+            this.cutoff = new AtomicInteger(files.size());
+        }
+
+        synchronized void complete(int index, List<R> results) {
+            slots[index] = results;
+            done[index] = true;
+            while (prefix < done.length && done[prefix]) {
+                prefixResults += slots[prefix].size();
+                prefix++;
+                if (prefixResults >= maxResults) {
+                    cutoff.set(prefix);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class MatchTask<R> extends RecursiveAction {
+        private final Progress<R> progress;
+        private final int from;
+        private final int to;
+
+        MatchTask(Progress<R> progress, int from, int to) {
+            this.progress = progress;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (from >= progress.cutoff.get()) return;
+            if (to - from > LEAF_FILES) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new MatchTask<>(progress, from, mid), new MatchTask<>(progress, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                if (i >= progress.cutoff.get()) return;
+                List<R> results = progress.matcher.match(progress.files.get(i), progress.maxResults);
+                progress.complete(i, results != null ? results : Collections.<R>emptyList());
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.codex.apk.util;
+
+import com.codex.apk.FileManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The caches and indexes kept for each open project, and the one place file changes are
+ * reported to them. Each registers itself here when its project is opened. FileManager
+ * events (through {@link #asFileChangeListener}) and writers outside FileManager (through
+ * the notify methods) report a change once, and it reaches every one of them.
+ */
+public final class ProjectChanges {
+
+    /** Receives the changes under the project it was opened for. */
+    public interface Listener {
+        /** file was created or written; a directory may have gained new entries. */
+        void onChanged(File file);
+
+        /** file is gone, with everything below it if it was a directory. */
+        void onDeleted(File file);
+    }
+
+    // Project root path -> its listeners, in the order they were opened
+    private static final Map<String, List<Listener>> OPEN = new HashMap<>();
+
+    private static final FileManager.FileChangeListener FILE_MANAGER_LISTENER = new FileManager.FileChangeListener() {
+        @Override public void onFileCreated(File file) { notifyChanged(file); }
+        @Override public void onFileModified(File file) { notifyChanged(file); }
+        @Override public void onFileDeleted(File file) { notifyDeleted(file); }
+        @Override public void onFileRenamed(File oldFile, File newFile) { notifyRenamed(oldFile, newFile); }
+    };
+
+    private ProjectChanges() {}
+
+    /**
+     * Returns projectRoot's listener of the given type, creating it with factory and
+     * registering it on first use. factory runs under the registry lock, so it must be quick.
+     */
+    public static <T extends Listener> T open(File projectRoot, Class<T> type, Supplier<T> factory) {
+        String key = projectRoot.getAbsolutePath();
+        synchronized (OPEN) {
+            List<Listener> listeners = OPEN.get(key);
+            if (listeners == null) {
+                listeners = new ArrayList<>();
+                OPEN.put(key, listeners);
+            }
+            for (Listener l : listeners) {
+                if (type.isInstance(l)) return type.cast(l);
+            }
+            T created = factory.get();
+            listeners.add(created);
+            return created;
+        }
+    }
+
+    /** Unregisters projectRoot's listener of the given type and returns it, or null when none was open. */
+    public static <T extends Listener> T close(File projectRoot, Class<T> type) {
+        String key = projectRoot.getAbsolutePath();
+        synchronized (OPEN) {
+            List<Listener> listeners = OPEN.get(key);
+            if (listeners == null) return null;
+            for (int i = 0; i < listeners.size(); i++) {
+                if (!type.isInstance(listeners.get(i))) continue;
+                T removed = type.cast(listeners.remove(i));
+                if (listeners.isEmpty()) OPEN.remove(key);
+                return removed;
+            }
+            return null;
+        }
+    }
+
+    /** Listener of the given type whose project contains file (or is file), or null when none is open. */
+    public static <T extends Listener> T forPath(File file, Class<T> type) {
+        if (file == null) return null;
+        synchronized (OPEN) {
+            List<Listener> listeners = listenersFor(file);
+            if (listeners == null) return null;
+            for (Listener l : listeners) {
+                if (type.isInstance(l)) return type.cast(l);
+            }
+            return null;
+        }
+    }
+
+    /** Reports that file was created or written outside FileManager. */
+    public static void notifyChanged(File file) {
+        for (Listener l : snapshotFor(file)) l.onChanged(file);
+    }
+
+    public static void notifyDeleted(File file) {
+        for (Listener l : snapshotFor(file)) l.onDeleted(file);
+    }
+
+    public static void notifyRenamed(File oldFile, File newFile) {
+        notifyDeleted(oldFile);
+        notifyChanged(newFile);
+    }
+
+    /** Listener to register with {@link FileManager#addFileChangeListener}; serves every open project. */
+    public static FileManager.FileChangeListener asFileChangeListener() {
+        return FILE_MANAGER_LISTENER;
+    }
+
+    // Listeners are called outside the lock; each one does its own locking
+    private static List<Listener> snapshotFor(File file) {
+        if (file == null) return new ArrayList<>();
+        synchronized (OPEN) {
+            List<Listener> listeners = listenersFor(file);
+            return listeners != null ? new ArrayList<>(listeners) : new ArrayList<>();
+        }
+    }
+
+    private static List<Listener> listenersFor(File file) {
+        String path = file.getAbsolutePath();
+        for (Map.Entry<String, List<Listener>> e : OPEN.entrySet()) {
+            String root = e.getKey();
+            if (path.equals(root) || path.startsWith(root + File.separator)) return e.getValue();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,669 @@
+package com.codex.apk.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persistent trigram index of a project's files. FileOps search uses it to pick candidate
+ * files, then verifies the matches by reading only those files.
+ *
+ * Trigrams are taken over the raw UTF-8 bytes with ASCII letters folded to lower case and
+ * hashed into {@link #BUCKETS} buckets. Each bucket holds a bitset of file ids, so a query
+ * is the AND of the bitsets of its trigrams. Hash collisions and case folding only add
+ * candidates; they never drop a real match.
+ *
+ * The index is built on a background thread when the project is opened. Files whose size
+ * and mtime are unchanged are reused from the copy saved under filesDir/search-index.
+ * After that it is updated per file from the changes reported through {@link ProjectChanges}.
+ */
+public final class ProjectSearchIndex implements ProjectChanges.Listener {
+    private static final String TAG = "ProjectSearchIndex";
+    private static final String STORE_DIR = "search-index";
+    private static final int MAGIC = 0x43585349; // "CXSI"
+    private static final int VERSION = 1;
+    private static final int BUCKETS = 4096; // power of two
+    private static final int BUCKET_SHIFT = 32 - 12;
+    /** Bigger files are not indexed and are always candidates. */
+    private static final long MAX_INDEXED_BYTES = 4L * 1024 * 1024;
+    /** A query this long after the last full validation triggers a background one. */
+    private static final long REVALIDATE_MS = 30_000L;
+    private static final long SAVE_DELAY_MS = 5_000L;
+    private static final int MIN_SELECTIVE_FILES = 64;
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CodeX-SearchIndex");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    // Only delays saves; the save itself runs on WORKER, so it never overlaps indexing
+    private static final ScheduledExecutorService SAVE_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "CodeX-SearchIndex-Save");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final File root;
+    private final String rootPath;
+    private final File store;
+
+    // Guarded by this
+    private final List<Entry> entries = new ArrayList<>(); // file id -> entry, null when free
+    private final Map<String, Integer> idsByPath = new HashMap<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private final long[][] postings = new long[BUCKETS][];
+    private long[] unindexed = new long[0]; // files that are always candidates
+    private boolean ready;
+    private boolean dirty;
+    private boolean saveScheduled;
+    // Directories queued for reindexing; queries under them fall back to a scan until then
+    private final List<String> pendingDirs = new ArrayList<>();
+    private long lastValidated;
+    private boolean validating;
+
+    private static final class Entry {
+        final String path; // relative to root, '/' separated
+        long modified;
+        long size;
+
+        Entry(String path, long modified, long size) {
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+
+    private ProjectSearchIndex(File root, File store) {
+        this.root = root;
+        this.rootPath = root.getAbsolutePath();
+        this.store = store;
+    }
+
+    /**
+     * Returns the index for projectRoot, loading the saved copy and starting a background
+     * refresh on first use. Queries return null until that refresh has finished.
+     */
+    public static ProjectSearchIndex open(Context context, File projectRoot) {
+        return ProjectChanges.open(projectRoot, ProjectSearchIndex.class, () -> {
+            File dir = new File(context.getFilesDir(), STORE_DIR);
+            if (!dir.exists() && !dir.mkdirs()) Log.w(TAG, "Could not create " + dir);
+            ProjectSearchIndex index = new ProjectSearchIndex(projectRoot, new File(dir, storeName(projectRoot.getAbsolutePath()) + ".idx"));
+            WORKER.execute(() -> {
+                index.load();
+                index.refresh();
+            });
+            return index;
+        });
+    }
+
+    /** Saves pending changes and forgets the index; the project was closed. */
+    public static void close(File projectRoot) {
+        ProjectSearchIndex index = ProjectChanges.close(projectRoot, ProjectSearchIndex.class);
+        if (index != null) WORKER.execute(index::saveIfDirty);
+    }
+
+    /** Index whose project contains file (or is file), or null when none is open. */
+    public static ProjectSearchIndex forPath(File file) {
+        return ProjectChanges.forPath(file, ProjectSearchIndex.class);
+    }
+
+    /**
+     * Candidate files under searchRoot that may contain query, ordered breadth-first like
+     * the plain scan. Returns null when the index cannot help (not built yet, query without
+     * a literal run of three bytes, searchRoot inside a directory the index skips, or most
+     * files match); the caller then scans.
+     */
+    public static List<File> candidatesFor(File searchRoot, String query, boolean caseSensitive, boolean regex) {
+        ProjectSearchIndex index = forPath(searchRoot);
+        return index != null ? index.candidates(searchRoot, query, caseSensitive, regex) : null;
+    }
+
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    public synchronized int getFileCount() {
+        return idsByPath.size();
+    }
+
+    public List<File> candidates(File searchRoot, String query, boolean caseSensitive, boolean regex) {
+        String scope = relativeScope(searchRoot);
+        if (scope == null) return null;
+        List<String> literals = regex ? requiredLiterals(query) : Arrays.asList(query);
+        if (literals == null) return null;
+        Set<Integer> buckets = new HashSet<>();
+        for (String literal : literals) addQueryBuckets(literal, !caseSensitive, buckets);
+        if (buckets.isEmpty()) return null;
+
+        List<Entry> matched = new ArrayList<>();
+        boolean revalidate;
+        synchronized (this) {
+            if (!ready) return null;
+            for (String dir : pendingDirs) {
+                if (dir.isEmpty() || scope.isEmpty() || (dir + "/").startsWith(scope) || scope.startsWith(dir + "/")) return null;
+            }
+            long[] hits = null;
+            for (int bucket : buckets) {
+                long[] bits = postings[bucket];
+                if (bits == null) {
+                    hits = new long[0];
+                    break;
+                }
+                if (hits == null) {
+                    hits = Arrays.copyOf(bits, bits.length);
+                } else {
+                    int n = Math.min(hits.length, bits.length);
+                    for (int w = 0; w < n; w++) hits[w] &= bits[w];
+                    for (int w = n; w < hits.length; w++) hits[w] = 0L;
+                }
+            }
+            int words = Math.max(hits.length, unindexed.length);
+            for (int w = 0; w < words; w++) {
+                long word = (w < hits.length ? hits[w] : 0L) | (w < unindexed.length ? unindexed[w] : 0L);
+                while (word != 0L) {
+                    int id = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    Entry e = id < entries.size() ? entries.get(id) : null;
+                    if (e != null && (scope.isEmpty() || e.path.startsWith(scope))) matched.add(e);
+                }
+            }
+            revalidate = !validating && System.currentTimeMillis() - lastValidated > REVALIDATE_MS;
+            if (revalidate) validating = true;
+        }
+        if (revalidate) WORKER.execute(this::refresh); // catches writes that bypassed FileManager
+        // A query that most files match is cheaper as a plain scan, which stops at maxResults early
+        if (matched.size() > MIN_SELECTIVE_FILES && matched.size() * 2 > getFileCount()) return null;
+
+        matched.sort((a, b) -> ParallelFileSearch.compareBreadthFirst(a.path, b.path));
+        List<File> files = new ArrayList<>(matched.size());
+        for (Entry e : matched) files.add(new File(root, e.path));
+        return files;
+    }
+
+    // --- maintenance (worker thread) ---
+
+    @Override
+    public void onChanged(File file) {
+        String rel = relativePath(file);
+        if (rel == null) return;
+        boolean directory = file.isDirectory();
+        // Until the worker has reindexed it, the change must not hide matches from a query
+        synchronized (this) {
+            if (directory) pendingDirs.add(rel);
+            else markStaleLocked(rel);
+        }
+        WORKER.execute(() -> {
+            if (directory) {
+                walk(file, (f, r) -> indexFile(f, r, false));
+                synchronized (this) { pendingDirs.remove(rel); }
+            } else {
+                indexFile(file, rel, false);
+            }
+            scheduleSave();
+        });
+    }
+
+    /** Makes rel a candidate for every query until it is next indexed. */
+    private void markStaleLocked(String rel) {
+        if (isInSkippedDir(rel)) return;
+        Integer id = idsByPath.get(rel);
+        // A size and mtime no file has, so a refresh reindexes it too
+        if (id == null) id = allocateLocked(new Entry(rel, -1L, -1L));
+        unindexed = setBit(unindexed, id);
+    }
+
+    @Override
+    public void onDeleted(File file) {
+        WORKER.execute(() -> {
+            String rel = relativePath(file);
+            if (rel == null) return;
+            synchronized (this) {
+                if (rel.isEmpty()) {
+                    for (String path : new ArrayList<>(idsByPath.keySet())) removeLocked(path);
+                } else {
+                    removeLocked(rel);
+                    String prefix = rel + "/";
+                    for (String path : new ArrayList<>(idsByPath.keySet())) {
+                        if (path.startsWith(prefix)) removeLocked(path);
+                    }
+                }
+                dirty = true;
+            }
+            scheduleSave();
+        });
+    }
+
+    /** Walks the project, reindexing new or changed files and dropping vanished ones. */
+    private void refresh() {
+        long start = System.currentTimeMillis();
+        Set<String> seen = new HashSet<>();
+        int[] reindexed = new int[]{0};
+        walk(root, (f, rel) -> {
+            seen.add(rel);
+            if (indexFile(f, rel, true)) reindexed[0]++;
+        });
+        int removed = 0;
+        synchronized (this) {
+            for (String path : new ArrayList<>(idsByPath.keySet())) {
+                if (!seen.contains(path)) {
+                    removeLocked(path);
+                    removed++;
+                }
+            }
+            if (removed > 0) dirty = true;
+            ready = true;
+            validating = false;
+            lastValidated = System.currentTimeMillis();
+        }
+        if (reindexed[0] > 0 || removed > 0) {
+            Log.i(TAG, "Indexed " + rootPath + ": " + seen.size() + " files, " + reindexed[0] + " reindexed, "
+                    + removed + " removed in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        saveIfDirty();
+    }
+
+    private interface FileVisitor {
+        void visit(File file, String relativePath);
+    }
+
+    /** Same directory rules as the FileOps scans: skips dot dirs, node_modules, build and dist. */
+    private void walk(File dir, FileVisitor visitor) {
+        if (relativePath(dir) == null) return;
+        Deque<File> dq = new ArrayDeque<>();
+        dq.add(dir);
+        while (!dq.isEmpty()) {
+            File cur = dq.pollFirst();
+            File[] files = cur.listFiles();
+            if (files == null) continue;
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    if (!ParallelFileSearch.isSkippedDir(f.getName())) dq.addLast(f);
+                } else {
+                    String rel = relativePath(f);
+                    if (rel != null) visitor.visit(f, rel);
+                }
+            }
+        }
+    }
+
+    /**
+     * (Re)indexes one file. With onlyIfChanged, a file whose size and mtime match the index
+     * is left alone. Returns true when the file was read.
+     */
+    private boolean indexFile(File file, String rel, boolean onlyIfChanged) {
+        if (isInSkippedDir(rel)) return false;
+        long modified = file.lastModified();
+        long size = file.length();
+        if (!file.isFile()) {
+            synchronized (this) {
+                if (removeLocked(rel)) dirty = true;
+            }
+            return false;
+        }
+        if (onlyIfChanged) {
+            synchronized (this) {
+                Integer id = idsByPath.get(rel);
+                Entry e = id != null ? entries.get(id) : null;
+                if (e != null && e.modified == modified && e.size == size) return false;
+            }
+        }
+        long[] signature = null;
+        if (size <= MAX_INDEXED_BYTES) {
+            try {
+                signature = signatureOf(file);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not index " + rel + ": " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            removeLocked(rel);
+            int id = allocateLocked(new Entry(rel, modified, size));
+            if (signature == null) {
+                unindexed = setBit(unindexed, id);
+            } else {
+                for (int w = 0; w < signature.length; w++) {
+                    long word = signature[w];
+                    while (word != 0L) {
+                        int bucket = (w << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        postings[bucket] = setBit(postings[bucket], id);
+                    }
+                }
+            }
+            dirty = true;
+        }
+        return true;
+    }
+
+    /** Bucket bitset (BUCKETS bits) of every trigram in the file, read in one streaming pass. */
+    private static long[] signatureOf(File file) throws IOException {
+        long[] signature = new long[BUCKETS / 64];
+        byte[] buf = new byte[16 * 1024];
+        int b0 = -1, b1 = -1;
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    int b2 = fold(buf[i] & 0xFF);
+                    if (b0 >= 0) {
+                        int bucket = bucketOf(b0, b1, b2);
+                        signature[bucket >>> 6] |= 1L << bucket;
+                    }
+                    b0 = b1;
+                    b1 = b2;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private int allocateLocked(Entry entry) {
+        Integer id = freeIds.pollFirst();
+        if (id == null) {
+            id = entries.size();
+            entries.add(entry);
+        } else {
+            entries.set(id, entry);
+        }
+        idsByPath.put(entry.path, id);
+        return id;
+    }
+
+    private boolean removeLocked(String rel) {
+        Integer id = idsByPath.remove(rel);
+        if (id == null) return false;
+        entries.set(id, null);
+        int word = id >>> 6;
+        long mask = ~(1L << id);
+        for (long[] bits : postings) {
+            if (bits != null && word < bits.length) bits[word] &= mask;
+        }
+        if (word < unindexed.length) unindexed[word] &= mask;
+        freeIds.addLast(id);
+        return true;
+    }
+
+    // --- persistence ---
+
+    private void scheduleSave() {
+        synchronized (this) {
+            if (saveScheduled) return;
+            saveScheduled = true;
+        }
+        SAVE_TIMER.schedule(() -> WORKER.execute(() -> {
+            synchronized (this) { saveScheduled = false; }
+            saveIfDirty();
+        }), SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void saveIfDirty() {
+        synchronized (this) {
+            if (!dirty) return;
+            dirty = false;
+        }
+        File tmp = new File(store.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(tmp))))) {
+            synchronized (this) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(rootPath);
+                out.writeInt(entries.size());
+                for (Entry e : entries) {
+                    out.writeBoolean(e != null);
+                    if (e == null) continue;
+                    out.writeUTF(e.path);
+                    out.writeLong(e.modified);
+                    out.writeLong(e.size);
+                }
+                writeBits(out, unindexed);
+                for (long[] bits : postings) writeBits(out, bits);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save search index", e);
+            synchronized (this) { dirty = true; }
+            return;
+        }
+        if (!tmp.renameTo(store)) Log.w(TAG, "Could not replace " + store);
+    }
+
+    private void load() {
+        if (!store.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new FileInputStream(store))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !rootPath.equals(in.readUTF())) return;
+            int count = in.readInt();
+            List<Entry> loaded = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                loaded.add(in.readBoolean() ? new Entry(in.readUTF(), in.readLong(), in.readLong()) : null);
+            }
+            long[] loadedUnindexed = readBits(in);
+            long[][] loadedPostings = new long[BUCKETS][];
+            for (int b = 0; b < BUCKETS; b++) loadedPostings[b] = readBits(in);
+            synchronized (this) {
+                entries.clear();
+                idsByPath.clear();
+                freeIds.clear();
+                for (int id = 0; id < loaded.size(); id++) {
+                    Entry e = loaded.get(id);
+                    entries.add(e);
+                    if (e != null) idsByPath.put(e.path, id); else freeIds.addLast(id);
+                }
+                unindexed = loadedUnindexed != null ? loadedUnindexed : new long[0];
+                System.arraycopy(loadedPostings, 0, postings, 0, BUCKETS);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable search index: " + e.getMessage());
+        }
+    }
+
+    private static void writeBits(DataOutputStream out, long[] bits) throws IOException {
+        int length = bits != null ? bits.length : 0;
+        while (length > 0 && bits[length - 1] == 0L) length--;
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) out.writeLong(bits[i]);
+    }
+
+    private static long[] readBits(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == 0) return null;
+        long[] bits = new long[length];
+        for (int i = 0; i < length; i++) bits[i] = in.readLong();
+        return bits;
+    }
+
+    // --- helpers ---
+
+    private static long[] setBit(long[] bits, int id) {
+        int word = id >>> 6;
+        if (bits == null) bits = new long[Math.max(word + 1, 4)];
+        else if (word >= bits.length) bits = Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+        bits[word] |= 1L << id;
+        return bits;
+    }
+
+    private static int fold(int b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    private static int bucketOf(int b0, int b1, int b2) {
+        return ((b0 << 16 | b1 << 8 | b2) * 0x9E3779B1) >>> BUCKET_SHIFT;
+    }
+
+    /**
+     * Adds the buckets of literal's trigrams. For case-insensitive queries, trigrams with
+     * non-ASCII bytes are skipped: their lower-case forms may differ in bytes.
+     */
+    private static void addQueryBuckets(String literal, boolean asciiOnly, Set<Integer> out) {
+        byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + 2 < bytes.length; i++) {
+            int b0 = bytes[i] & 0xFF, b1 = bytes[i + 1] & 0xFF, b2 = bytes[i + 2] & 0xFF;
+            if (asciiOnly && (b0 >= 0x80 || b1 >= 0x80 || b2 >= 0x80)) continue;
+            out.add(bucketOf(fold(b0), fold(b1), fold(b2)));
+        }
+    }
+
+    /** Letters of two-char escapes: classes, anchors and control characters. */
+    private static final String FIXED_ESCAPES = "dDsSwWbBAGZzhHvVRXtnrfea";
+
+    /**
+     * Literal runs every match of regex must contain, or null when the pattern has
+     * alternation, groups or variable-length escapes and no runs can be derived cheaply.
+     */
+    static List<String> requiredLiterals(String regex) {
+        List<String> runs = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        int n = regex.length();
+        while (i < n) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+            char value = c;
+            if (c == '(' || c == ')' || c == '|') {
+                return null;
+            } else if (c == '\\') {
+                if (i + 1 >= n) return null;
+                char next = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(next)) {
+                    // Escapes like \x41, \u0041, \0101, \cA, \k<name>, \p{L}, \Q..\E and multi-digit
+                    // back-references run past two chars; their tail is not literal text
+                    if (FIXED_ESCAPES.indexOf(next) < 0) return null;
+                    i += 2; // class or anchor
+                    flush(run, runs);
+                    continue;
+                }
+                literal = true;
+                value = next;
+                i += 2;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                flush(run, runs);
+                i = skipQuantifier(regex, i);
+                continue;
+            } else if (c == '.' || c == '^' || c == '$') {
+                i++;
+                flush(run, runs);
+                i = skipQuantifier(regex, i);
+                continue;
+            } else if (c == '?' || c == '*' || c == '+' || c == '{') {
+                i = skipQuantifier(regex, i);
+                continue;
+            } else {
+                literal = true;
+                i++;
+            }
+            if (!literal) continue;
+            char q = i < n ? regex.charAt(i) : 0;
+            if (q == '?' || q == '*' || q == '{') {
+                // Optional or counted: the atom may be absent
+                flush(run, runs);
+                i = skipQuantifier(regex, i);
+            } else if (q == '+') {
+                run.append(value);
+                flush(run, runs);
+                i = skipQuantifier(regex, i);
+            } else {
+                run.append(value);
+            }
+        }
+        flush(run, runs);
+        return runs;
+    }
+
+    private static void flush(StringBuilder run, List<String> runs) {
+        if (run.length() >= 3) runs.add(run.toString());
+        run.setLength(0);
+    }
+
+    private static int skipClass(String regex, int i) {
+        int j = i + 1;
+        if (j < regex.length() && regex.charAt(j) == '^') j++;
+        if (j < regex.length() && regex.charAt(j) == ']') j++;
+        while (j < regex.length() && regex.charAt(j) != ']') {
+            if (regex.charAt(j) == '\\') j++;
+            j++;
+        }
+        return Math.min(regex.length(), j + 1);
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        int n = regex.length();
+        if (i >= n) return i;
+        char c = regex.charAt(i);
+        if (c == '{') {
+            int close = regex.indexOf('}', i);
+            i = close < 0 ? n : close + 1;
+        } else if (c == '?' || c == '*' || c == '+') {
+            i++;
+        } else {
+            return i;
+        }
+        if (i < n && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) i++; // lazy or possessive
+        return i;
+    }
+
+    private static boolean isInSkippedDir(String rel) {
+        int start = 0;
+        int slash;
+        while ((slash = rel.indexOf('/', start)) >= 0) {
+            if (ParallelFileSearch.isSkippedDir(rel.substring(start, slash))) return true;
+            start = slash + 1;
+        }
+        return false;
+    }
+
+    /** Relative path of file under root ("" for root itself), or null when outside. */
+    private String relativePath(File file) {
+        String path = file.getAbsolutePath();
+        if (path.equals(rootPath)) return "";
+        if (!path.startsWith(rootPath + File.separator)) return null;
+        return path.substring(rootPath.length() + 1).replace(File.separatorChar, '/');
+    }
+
+    /** Path prefix for files under searchRoot, or null when the index does not cover it. */
+    private String relativeScope(File searchRoot) {
+        String rel = relativePath(searchRoot);
+        if (rel == null) return null;
+        if (rel.isEmpty()) return "";
+        if (isInSkippedDir(rel + "/")) return null;
+        return rel + "/";
+    }
+
+    private static String storeName(String rootPath) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(rootPath.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 10; i++) sb.append(String.format("%02x", digest[i]));
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(rootPath.hashCode());
+        }
+    }
+}
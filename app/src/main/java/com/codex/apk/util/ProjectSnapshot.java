@@ -0,0 +1,300 @@
+package com.codex.apk.util;
+
+import android.os.FileObserver;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory copy of a project's directory listings with the stat info of every entry.
+ * The file tree, the prompt's project tree, the recent-files list and the listFiles and
+ * listProjectTree tools all read from it, so repeated refreshes and agent steps do not
+ * stat the file system again.
+ *
+ * Directories are listed the first time they are asked for. After that each one is kept
+ * current by a FileObserver and by the changes reported through {@link ProjectChanges}.
+ * Directories the searches skip (dot dirs, node_modules, build, dist) are not watched.
+ * Instead their mtime is checked on access, which catches added and removed entries.
+ */
+public final class ProjectSnapshot implements ProjectChanges.Listener {
+    private static final int STRUCTURE_EVENTS = FileObserver.CREATE | FileObserver.DELETE
+            | FileObserver.MOVED_FROM | FileObserver.MOVED_TO;
+    private static final int CONTENT_EVENTS = FileObserver.CLOSE_WRITE | FileObserver.ATTRIB;
+    private static final int SELF_EVENTS = FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    /** Case-insensitive name order, the order FileOps.buildFileTree has always used. */
+    private static final Comparator<Entry> BY_NAME = (a, b) -> {
+        int c = a.getName().compareToIgnoreCase(b.getName());
+        return c != 0 ? c : a.getName().compareTo(b.getName());
+    };
+
+    /** Stat info of one file or directory, taken when its parent was listed or it changed. */
+    public static final class Entry {
+        public final File file;
+        public final boolean directory;
+        public final long size;
+        public final long modified;
+
+        Entry(File file) {
+            this.file = file;
+            this.directory = file.isDirectory();
+            this.size = file.length();
+            this.modified = file.lastModified();
+        }
+
+        public String getName() {
+            return file.getName();
+        }
+    }
+
+    private static final class Dir {
+        final File file;
+        List<Entry> children; // null until listed, and again after a structural change
+        long listedModified;
+        FileObserver observer;
+
+        Dir(File file) {
+            this.file = file;
+        }
+    }
+
+    private final String rootPath;
+    // Guarded by this
+    private final Map<String, Dir> dirs = new HashMap<>();
+    private long generation;
+    private boolean closed;
+
+    private ProjectSnapshot(File root) {
+        this.rootPath = root.getAbsolutePath();
+    }
+
+    /** Returns the snapshot for projectRoot, creating it on first use. */
+    public static ProjectSnapshot open(File projectRoot) {
+        return ProjectChanges.open(projectRoot, ProjectSnapshot.class, () -> new ProjectSnapshot(projectRoot));
+    }
+
+    /** Stops the watchers and forgets the snapshot; the project was closed. */
+    public static void close(File projectRoot) {
+        ProjectSnapshot snapshot = ProjectChanges.close(projectRoot, ProjectSnapshot.class);
+        if (snapshot != null) snapshot.release();
+    }
+
+    /** Snapshot whose project contains file (or is file), or null when none is open. */
+    public static ProjectSnapshot forPath(File file) {
+        return ProjectChanges.forPath(file, ProjectSnapshot.class);
+    }
+
+    /**
+     * Entries of dir in case-insensitive name order, or null when dir is not a directory.
+     * Served from the open snapshot when dir belongs to one, otherwise listed directly.
+     * The returned list must not be modified.
+     */
+    public static List<Entry> listDir(File dir) {
+        if (dir == null) return null;
+        ProjectSnapshot snapshot = forPath(dir);
+        return snapshot != null ? snapshot.list(dir) : scan(dir);
+    }
+
+    /**
+     * All files under root, breadth-first, skipping the directories the searches skip. A
+     * root that is itself a skipped directory is still walked.
+     */
+    public static List<Entry> listAllFiles(File root) {
+        List<Entry> out = new ArrayList<>();
+        Deque<File> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            List<Entry> children = listDir(queue.poll());
+            if (children == null) continue;
+            for (Entry e : children) {
+                if (!e.directory) out.add(e);
+                else if (!ParallelFileSearch.isSkippedDir(e.getName())) queue.add(e.file);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Change counter of the snapshot containing file; it moves on every change seen, from
+     * watchers or notifications. -1 when no snapshot is open for file.
+     */
+    public static long versionOf(File file) {
+        ProjectSnapshot snapshot = forPath(file);
+        return snapshot != null ? snapshot.getVersion() : -1L;
+    }
+
+    public synchronized long getVersion() {
+        return generation;
+    }
+
+    /** Drops every cached listing so the next reads go to disk; watchers stay in place. */
+    public synchronized void invalidateAll() {
+        generation++;
+        for (Dir d : dirs.values()) d.children = null;
+    }
+
+    public List<Entry> list(File dir) {
+        String key = dir.getAbsolutePath();
+        long startGeneration;
+        synchronized (this) {
+            Dir d = dirs.get(key);
+            if (d != null && d.children != null
+                    && (d.observer != null || d.file.lastModified() == d.listedModified)) {
+                return d.children;
+            }
+            startGeneration = generation;
+        }
+        long dirModified = dir.lastModified();
+        List<Entry> fresh = scan(dir);
+        synchronized (this) {
+            if (fresh == null) {
+                dropTree(key);
+                return null;
+            }
+            // A change that raced with the scan may not be in it; serve it but do not keep it
+            if (closed || generation != startGeneration) return fresh;
+            Dir d = dirs.get(key);
+            if (d == null) {
+                d = new Dir(dir);
+                dirs.put(key, d);
+                if (isWatched(key)) d.observer = watch(d);
+            }
+            if (d.children != null) pruneRemovedDirs(d.children, fresh);
+            d.children = fresh;
+            d.listedModified = dirModified;
+            return fresh;
+        }
+    }
+
+    private static List<Entry> scan(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return null;
+        Entry[] entries = new Entry[files.length];
+        for (int i = 0; i < files.length; i++) entries[i] = new Entry(files[i]);
+        Arrays.sort(entries, BY_NAME);
+        return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    @Override
+    public synchronized void onChanged(File file) {
+        generation++;
+        // Walk up until a cached listing already has the entry; everything below it is new
+        File f = file.getAbsoluteFile();
+        while (f != null && !f.getPath().equals(rootPath)) {
+            File parent = f.getParentFile();
+            if (parent == null) return;
+            Dir d = dirs.get(parent.getPath());
+            if (d != null && d.children != null && restat(d, f)) return;
+            if (d != null) d.children = null;
+            f = parent;
+        }
+    }
+
+    @Override
+    public synchronized void onDeleted(File file) {
+        generation++;
+        File f = file.getAbsoluteFile();
+        dropTree(f.getPath());
+        File parent = f.getParentFile();
+        Dir d = parent != null ? dirs.get(parent.getPath()) : null;
+        if (d != null) d.children = null;
+    }
+
+    private synchronized void onWatchEvent(Dir d, int event, String name) {
+        if (closed || dirs.get(d.file.getPath()) != d) return;
+        generation++;
+        if ((event & SELF_EVENTS) != 0) {
+            onDeleted(d.file);
+            return;
+        }
+        if (name == null) return;
+        File child = new File(d.file, name);
+        if ((event & (FileObserver.DELETE | FileObserver.MOVED_FROM)) != 0) dropTree(child.getPath());
+        if ((event & STRUCTURE_EVENTS) != 0) {
+            d.children = null;
+        } else if ((event & CONTENT_EVENTS) != 0 && d.children != null && !restat(d, child)) {
+            d.children = null;
+        }
+    }
+
+    /** Replaces the entry for child in d's listing with fresh stat info; false when absent. */
+    private boolean restat(Dir d, File child) {
+        String name = child.getName();
+        List<Entry> children = d.children;
+        for (int i = 0; i < children.size(); i++) {
+            if (!children.get(i).getName().equals(name)) continue;
+            if (!child.exists()) return false;
+            Entry[] copy = children.toArray(new Entry[0]);
+            copy[i] = new Entry(child);
+            d.children = Collections.unmodifiableList(Arrays.asList(copy));
+            return true;
+        }
+        return false;
+    }
+
+    /** Forgets path and every directory below it. */
+    private void dropTree(String path) {
+        String prefix = path + File.separator;
+        Iterator<Map.Entry<String, Dir>> it = dirs.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Dir> e = it.next();
+            if (e.getKey().equals(path) || e.getKey().startsWith(prefix)) {
+                stopWatching(e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    private void pruneRemovedDirs(List<Entry> before, List<Entry> after) {
+        for (Entry old : before) {
+            if (!old.directory) continue;
+            boolean kept = false;
+            for (Entry e : after) {
+                if (e.directory && e.getName().equals(old.getName())) { kept = true; break; }
+            }
+            if (!kept) dropTree(old.file.getAbsolutePath());
+        }
+    }
+
+    private boolean isWatched(String path) {
+        if (path.length() <= rootPath.length()) return true;
+        for (String part : path.substring(rootPath.length() + 1).split(java.util.regex.Pattern.quote(File.separator))) {
+            if (ParallelFileSearch.isSkippedDir(part)) return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("deprecation") // FileObserver(File, int) needs API 29
+    private FileObserver watch(Dir d) {
+        FileObserver observer = new FileObserver(d.file.getAbsolutePath(), STRUCTURE_EVENTS | CONTENT_EVENTS | SELF_EVENTS) {
+            @Override
+            public void onEvent(int event, String name) {
+                onWatchEvent(d, event & FileObserver.ALL_EVENTS, name);
+            }
+        };
+        observer.startWatching();
+        return observer;
+    }
+
+    private static void stopWatching(Dir d) {
+        if (d.observer != null) {
+            try { d.observer.stopWatching(); } catch (Exception ignore) {}
+            d.observer = null;
+        }
+    }
+
+    private synchronized void release() {
+        closed = true;
+        for (Dir d : dirs.values()) stopWatching(d);
+        dirs.clear();
+    }
+}
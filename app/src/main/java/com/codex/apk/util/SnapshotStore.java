@@ -0,0 +1,441 @@
+package com.codex.apk.util;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reversible history of the AI edits applied to a project, kept under
+ * {@code <project>/.codex/snapshots}.
+ *
+ * File contents are stored once per distinct content, as deflated blobs named by their
+ * SHA-1 under {@code objects/}. Each applied batch gets a small JSON manifest under
+ * {@code manifests/} that lists, for every file the batch touched, the blob before and
+ * after it (null for "did not exist"). Only touched files are read, so the cost of a
+ * snapshot follows the size of the edit, not of the project, and an edit that puts back
+ * earlier content costs no new blob at all.
+ *
+ * Reverting a manifest writes the "before" blobs back in one {@link FileTransaction}. It is
+ * refused if a touched file changed since the batch was applied, unless forced.
+ *
+ * Old manifests are pruned and unreferenced blobs swept on a background thread, at most
+ * once per {@link #GC_INTERVAL_MS}.
+ */
+public final class SnapshotStore {
+    private static final String TAG = "SnapshotStore";
+    public static final String STORE_DIR = ".codex/snapshots";
+    private static final String OBJECTS_DIR = "objects";
+    private static final String MANIFESTS_DIR = "manifests";
+    private static final String MANIFEST_SUFFIX = ".json";
+    /** Bigger files are listed in the manifest but not stored; reverting them is refused. */
+    private static final long MAX_BLOB_BYTES = 16L * 1024 * 1024;
+    private static final int KEEP_MANIFESTS = 100;
+    private static final long MAX_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+    /** Unreferenced blobs younger than this may belong to a snapshot still being prepared. */
+    private static final long GC_GRACE_MS = 10L * 60 * 1000;
+    private static final long GC_INTERVAL_MS = 10L * 60 * 1000;
+
+    private static final Gson GSON = new GsonBuilder().serializeNulls().create();
+    private static final Map<String, SnapshotStore> OPEN = new HashMap<>();
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CodeX-Snapshots");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    /** One touched file. before and after are blob hashes, null when the file did not exist. */
+    public static final class Entry {
+        public String path;
+        public String before;
+        public String after;
+        public boolean skipped; // too big to store
+
+        Entry() {}
+
+        Entry(String path) {
+            this.path = path;
+        }
+    }
+
+    /** Thrown by {@link #planRevert} when touched files changed after the snapshot; force overrides it. */
+    public static final class ConflictException extends IOException {
+        public final List<String> paths;
+
+        ConflictException(List<String> paths) {
+            super("Changed since the edit was applied: " + String.join(", ", paths));
+            this.paths = paths;
+        }
+    }
+
+    public static final class Manifest {
+        public String id;
+        public String label;
+        public long createdAt;
+        public boolean reverted;
+        public List<Entry> entries = new ArrayList<>();
+    }
+
+    /** A manifest whose blobs are stored but which is only written by {@link #save()}. */
+    public final class Snapshot {
+        private final Manifest manifest;
+
+        Snapshot(Manifest manifest) {
+            this.manifest = manifest;
+        }
+
+        public String getId() {
+            return manifest.id;
+        }
+
+        /** Manifest location relative to the project root. */
+        public String getManifestPath() {
+            return STORE_DIR + "/" + MANIFESTS_DIR + "/" + manifest.id + MANIFEST_SUFFIX;
+        }
+
+        /** Records the snapshot; call once the transaction it was prepared from has committed. */
+        public void save() throws IOException {
+            synchronized (lock) {
+                writeManifest(manifest);
+            }
+            scheduleGc();
+        }
+    }
+
+    private final File root;
+    private final File objects;
+    private final File manifests;
+    // Held while blobs and manifests are written, reverted or collected
+    private final Object lock = new Object();
+    private long lastGc; // guarded by lock
+    private boolean gcScheduled; // guarded by lock
+
+    private SnapshotStore(File root) {
+        this.root = root;
+        File store = new File(root, STORE_DIR);
+        this.objects = new File(store, OBJECTS_DIR);
+        this.manifests = new File(store, MANIFESTS_DIR);
+    }
+
+    public static SnapshotStore forProject(File projectRoot) {
+        String key = projectRoot.getAbsolutePath();
+        synchronized (OPEN) {
+            SnapshotStore store = OPEN.get(key);
+            if (store == null) {
+                store = new SnapshotStore(projectRoot);
+                OPEN.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Stores the current and the staged content of every file tx touches. Nothing is
+     * recorded until {@link Snapshot#save()}; blobs of a snapshot never saved are collected.
+     */
+    public Snapshot prepare(FileTransaction tx, String label) throws IOException {
+        Manifest m = new Manifest();
+        m.createdAt = System.currentTimeMillis();
+        m.id = Long.toString(m.createdAt, 36) + "-" + Long.toHexString(System.nanoTime() & 0xffffff);
+        m.label = label;
+        synchronized (lock) {
+            for (String path : tx.touchedFiles()) {
+                if (isStorePath(path)) continue;
+                Entry e = new Entry(path);
+                File current = new File(root, path);
+                if (current.isFile() && current.length() > MAX_BLOB_BYTES) {
+                    e.skipped = true;
+                } else {
+                    e.before = current.isFile() ? putBlob(readFile(current)) : null;
+                    byte[] after = tx.readBytes(path);
+                    if (after != null && after.length > MAX_BLOB_BYTES) {
+                        e.skipped = true;
+                    } else {
+                        e.after = after != null ? putBlob(after) : null;
+                    }
+                }
+                if (!e.skipped && equal(e.before, e.after)) continue;
+                m.entries.add(e);
+            }
+        }
+        return new Snapshot(m);
+    }
+
+    /**
+     * Stages into a new transaction everything needed to put the files of manifest id back
+     * as they were before it. Throws if the snapshot was already reverted, or if a touched
+     * file no longer matches what the batch left there and force is false. Commit the result,
+     * then call {@link #finishRevert}.
+     */
+    public FileTransaction planRevert(String id, boolean force) throws IOException {
+        synchronized (lock) {
+            Manifest m = readManifest(manifestFile(id));
+            if (m.reverted) throw new IOException("Already reverted");
+            FileTransaction tx = new FileTransaction(root);
+            List<String> conflicts = new ArrayList<>();
+            List<String> unsaved = new ArrayList<>();
+            List<Entry> restores = new ArrayList<>();
+            for (Entry e : m.entries) {
+                if (e.skipped) {
+                    unsaved.add(e.path);
+                    continue;
+                }
+                byte[] current = tx.readBytes(e.path);
+                String currentHash = current != null ? hash(current) : null;
+                if (equal(currentHash, e.before)) continue;
+                if (!equal(currentHash, e.after)) conflicts.add(e.path);
+                if (e.before == null) {
+                    if (current != null) tx.delete(e.path);
+                } else {
+                    restores.add(e);
+                }
+            }
+            if (!unsaved.isEmpty()) {
+                tx.rollback();
+                throw new IOException("Too large to have been saved: " + String.join(", ", unsaved));
+            }
+            if (!conflicts.isEmpty() && !force) {
+                tx.rollback();
+                throw new ConflictException(conflicts);
+            }
+            // Deletes first, so a file can come back where a directory was created
+            for (Entry e : restores) tx.write(e.path, getBlob(e.before));
+            return tx;
+        }
+    }
+
+    /**
+     * Marks manifest id reverted once its revert has committed, and removes the directories
+     * that the revert left empty (a transaction only moves files, so a reverted folder
+     * rename would otherwise leave the new folder tree behind).
+     */
+    public void finishRevert(String id) throws IOException {
+        synchronized (lock) {
+            Manifest m = readManifest(manifestFile(id));
+            m.reverted = true;
+            writeManifest(m);
+            for (Entry e : m.entries) {
+                if (e.before != null) continue;
+                File dir = new File(root, e.path).getParentFile();
+                while (dir != null && !dir.equals(root)) {
+                    String[] left = dir.list();
+                    if (left == null || left.length > 0 || !dir.delete()) break;
+                    dir = dir.getParentFile();
+                }
+            }
+        }
+    }
+
+    /** Content of a stored blob. */
+    public byte[] getBlob(String hash) throws IOException {
+        File f = blobFile(hash);
+        try (InputStream in = new InflaterInputStream(new FileInputStream(f))) {
+            byte[] data = readAll(in);
+            if (!hash.equals(hash(data))) throw new IOException("Corrupt snapshot blob " + hash);
+            return data;
+        }
+    }
+
+    /** Stores data unless an identical blob exists, and returns its hash. */
+    private String putBlob(byte[] data) throws IOException {
+        String hash = hash(data);
+        File f = blobFile(hash);
+        if (f.isFile()) {
+            // Keep a reused blob clear of the sweep's grace period until its manifest is saved
+            f.setLastModified(System.currentTimeMillis());
+            return hash;
+        }
+        File dir = f.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        File tmp = new File(dir, f.getName() + ".tmp");
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DeflaterOutputStream out = new DeflaterOutputStream(fos, deflater)) {
+            out.write(data);
+            out.finish();
+            fos.getFD().sync();
+        } finally {
+            deflater.end();
+        }
+        if (!tmp.renameTo(f)) {
+            tmp.delete();
+            if (!f.isFile()) throw new IOException("Cannot store snapshot blob " + hash);
+        }
+        return hash;
+    }
+
+    private File blobFile(String hash) {
+        return new File(objects, hash.substring(0, 2) + File.separator + hash.substring(2));
+    }
+
+    private File manifestFile(String id) throws IOException {
+        if (id == null || !id.matches("[0-9a-z-]+")) throw new IOException("Bad snapshot id: " + id);
+        return new File(manifests, id + MANIFEST_SUFFIX);
+    }
+
+    private void writeManifest(Manifest m) throws IOException {
+        if (!manifests.isDirectory() && !manifests.mkdirs()) throw new IOException("Cannot create " + manifests);
+        File f = manifestFile(m.id);
+        File tmp = new File(manifests, m.id + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             Writer w = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
+            GSON.toJson(m, w);
+            w.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(f)) {
+            tmp.delete();
+            throw new IOException("Cannot write snapshot manifest " + m.id);
+        }
+    }
+
+    private static Manifest readManifest(File f) throws IOException {
+        if (!f.isFile()) throw new IOException("No such snapshot: " + f.getName());
+        try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
+            Manifest m = GSON.fromJson(r, Manifest.class);
+            if (m == null || m.id == null || m.entries == null) throw new IOException("Bad snapshot manifest " + f.getName());
+            return m;
+        } catch (RuntimeException e) {
+            throw new IOException("Bad snapshot manifest " + f.getName(), e);
+        }
+    }
+
+    /** Manifest files, newest first (ids sort by creation time). */
+    private File[] manifestFiles() {
+        File[] files = manifests.listFiles((dir, name) -> name.endsWith(MANIFEST_SUFFIX));
+        if (files == null) return new File[0];
+        Arrays.sort(files, (a, b) -> compareIds(b.getName(), a.getName()));
+        return files;
+    }
+
+    private static int compareIds(String a, String b) {
+        // Ids start with base-36 millis; a shorter prefix is an older time
+        int dash = a.indexOf('-'), dashB = b.indexOf('-');
+        if (dash != dashB) return Integer.compare(dash, dashB);
+        return a.compareTo(b);
+    }
+
+    private void scheduleGc() {
+        synchronized (lock) {
+            if (gcScheduled || System.currentTimeMillis() - lastGc < GC_INTERVAL_MS) return;
+            gcScheduled = true;
+        }
+        WORKER.execute(() -> {
+            try {
+                gc();
+            } catch (Exception e) {
+                Log.w(TAG, "Snapshot cleanup failed", e);
+            } finally {
+                synchronized (lock) {
+                    gcScheduled = false;
+                    lastGc = System.currentTimeMillis();
+                }
+            }
+        });
+    }
+
+    /** Drops manifests beyond the newest KEEP_MANIFESTS or older than MAX_AGE_MS, then sweeps unreferenced blobs. */
+    void gc() {
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            Set<String> live = new HashSet<>();
+            File[] files = manifestFiles();
+            for (int i = 0; i < files.length; i++) {
+                File f = files[i];
+                Manifest m;
+                try {
+                    m = readManifest(f);
+                } catch (IOException e) {
+                    // Leave it for inspection, but it keeps nothing alive
+                    Log.w(TAG, "Unreadable manifest " + f.getName(), e);
+                    continue;
+                }
+                if (i >= KEEP_MANIFESTS || now - m.createdAt > MAX_AGE_MS) {
+                    if (!f.delete()) Log.w(TAG, "Cannot delete manifest " + f.getName());
+                    continue;
+                }
+                for (Entry e : m.entries) {
+                    if (e.before != null) live.add(e.before);
+                    if (e.after != null) live.add(e.after);
+                }
+            }
+            File[] fans = objects.listFiles();
+            if (fans == null) return;
+            int swept = 0;
+            for (File fan : fans) {
+                File[] blobs = fan.listFiles();
+                if (blobs == null) continue;
+                for (File b : blobs) {
+                    if (now - b.lastModified() < GC_GRACE_MS) continue;
+                    String name = b.getName();
+                    if (name.endsWith(".tmp") || !live.contains(fan.getName() + name)) {
+                        if (b.delete()) swept++;
+                    }
+                }
+                String[] left = fan.list();
+                if (left != null && left.length == 0) fan.delete();
+            }
+            if (swept > 0) Log.d(TAG, "Swept " + swept + " unreferenced snapshot blobs");
+        }
+    }
+
+    private boolean isStorePath(String path) {
+        return path.equals(".codex") || path.startsWith(STORE_DIR + "/") || path.equals(STORE_DIR);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static byte[] readFile(File f) throws IOException {
+        try (InputStream in = new FileInputStream(f)) {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[16384];
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
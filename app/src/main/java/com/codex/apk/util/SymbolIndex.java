@@ -0,0 +1,777 @@
+package com.codex.apk.util;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of the definitions in a project's web files, for the findSymbol and
+ * fileOutline tools:
+ * <ul>
+ *   <li>JS/TS: functions, classes and class methods, including functions assigned to
+ *   variables and properties.</li>
+ *   <li>CSS/SCSS/LESS: rule selectors, custom properties and keyframes.</li>
+ *   <li>HTML: element ids and class names, plus the symbols of inline script and style
+ *   blocks.</li>
+ * </ul>
+ * Extraction is a light lexical pass (comments and strings blanked, then per-line
+ * patterns and brace tracking), not a parser, so unusual syntax may be missed.
+ *
+ * The index is built on a background thread when the project is opened. After that it is
+ * updated per file from the changes reported through {@link ProjectChanges}. Only the
+ * worker thread writes the index. A reported change marks its path pending at once, and
+ * until the worker has applied it, lookups read that path's symbols from disk instead of
+ * the index, so they never see a state older than the last reported write.
+ */
+public final class SymbolIndex implements ProjectChanges.Listener {
+    private static final String TAG = "SymbolIndex";
+    /** Bigger files are usually bundles or minified output; they are not indexed. */
+    private static final long MAX_INDEXED_BYTES = 1024 * 1024;
+    /** A query this long after the last full validation triggers a background one. */
+    private static final long REVALIDATE_MS = 30_000L;
+
+    public static final String FUNCTION = "function";
+    public static final String CLASS = "class";
+    public static final String METHOD = "method";
+    public static final String SELECTOR = "selector";
+    public static final String CUSTOM_PROPERTY = "customProperty";
+    public static final String KEYFRAMES = "keyframes";
+    public static final String ID = "id";
+    public static final String HTML_CLASS = "htmlClass";
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CodeX-SymbolIndex");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    /** One definition. line is 1-based; container is the enclosing class, rule or at-rule, or null. */
+    public static final class Symbol {
+        public final String name;
+        public final String kind;
+        public final String path; // relative to the project root, '/' separated
+        public final int line;
+        public final String container;
+
+        Symbol(String name, String kind, String path, int line, String container) {
+            this.name = name;
+            this.kind = kind;
+            this.path = path;
+            this.line = line;
+            this.container = container;
+        }
+    }
+
+    private static final class FileSymbols {
+        final long modified;
+        final long size;
+        final List<Symbol> symbols;
+
+        FileSymbols(long modified, long size, List<Symbol> symbols) {
+            this.modified = modified;
+            this.size = size;
+            this.symbols = symbols;
+        }
+    }
+
+    private final File root;
+    private final String rootPath;
+
+    // Guarded by this
+    private final Map<String, FileSymbols> files = new HashMap<>();
+    private final Map<String, List<Symbol>> byName = new HashMap<>(); // lower-case name -> symbols
+    // Paths with reported changes the worker has not applied yet -> number of queued updates
+    private final Map<String, Integer> pending = new HashMap<>();
+    private boolean ready;
+    private long lastValidated;
+    private boolean validating;
+
+    private SymbolIndex(File root) {
+        this.root = root;
+        this.rootPath = root.getAbsolutePath();
+    }
+
+    /** Returns the index for projectRoot, starting a background build on first use. */
+    public static SymbolIndex open(File projectRoot) {
+        return ProjectChanges.open(projectRoot, SymbolIndex.class, () -> {
+            SymbolIndex index = new SymbolIndex(projectRoot);
+            WORKER.execute(index::refresh);
+            return index;
+        });
+    }
+
+    /** Forgets the index; the project was closed. */
+    public static void close(File projectRoot) {
+        ProjectChanges.close(projectRoot, SymbolIndex.class);
+    }
+
+    /** Index whose project contains file (or is file), or null when none is open. */
+    public static SymbolIndex forPath(File file) {
+        return ProjectChanges.forPath(file, SymbolIndex.class);
+    }
+
+    /** True for the file types the index extracts symbols from. */
+    public static boolean isIndexable(String name) {
+        return languageOf(name) != null;
+    }
+
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    /** Waits up to timeoutMs for the initial build; returns whether it has finished. */
+    public synchronized boolean awaitReady(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long left;
+        while (!ready && (left = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return ready;
+    }
+
+    public synchronized int getSymbolCount() {
+        int n = 0;
+        for (FileSymbols f : files.values()) n += f.symbols.size();
+        return n;
+    }
+
+    /**
+     * Symbols whose name matches query, case-insensitively: exact matches first, then
+     * prefix matches, then the rest. A leading '.', '#' or '--' in a name or the query is
+     * ignored for matching, so "btn" finds ".btn". kind and scope (a relative directory or
+     * file) are optional filters. Returns at most max symbols.
+     */
+    public List<Symbol> find(String query, String kind, String scope, int max) {
+        String q = bare(query.trim().toLowerCase(Locale.ROOT));
+        String prefix = scope == null || scope.isEmpty() || scope.equals(".") ? "" : scope.replaceFirst("^/+", "").replaceFirst("/+$", "");
+        List<Symbol> exact = new ArrayList<>();
+        List<Symbol> starts = new ArrayList<>();
+        List<Symbol> contains = new ArrayList<>();
+        List<String> pendingPaths = pendingPaths();
+        synchronized (this) {
+            for (Map.Entry<String, List<Symbol>> e : byName.entrySet()) {
+                String name = bare(e.getKey());
+                List<Symbol> bucket;
+                if (name.equals(q)) bucket = exact;
+                else if (name.startsWith(q)) bucket = starts;
+                else if (name.contains(q)) bucket = contains;
+                else continue;
+                for (Symbol s : e.getValue()) {
+                    if (kind != null && !kind.equals(s.kind)) continue;
+                    if (!prefix.isEmpty() && !s.path.equals(prefix) && !s.path.startsWith(prefix + "/")) continue;
+                    if (isUnder(s.path, pendingPaths)) continue;
+                    bucket.add(s);
+                }
+            }
+        }
+        for (Symbol s : readPending(pendingPaths)) {
+            String name = bare(s.name.toLowerCase(Locale.ROOT));
+            if (kind != null && !kind.equals(s.kind)) continue;
+            if (!prefix.isEmpty() && !s.path.equals(prefix) && !s.path.startsWith(prefix + "/")) continue;
+            if (name.equals(q)) exact.add(s);
+            else if (name.startsWith(q)) starts.add(s);
+            else if (name.contains(q)) contains.add(s);
+        }
+        scheduleRevalidation();
+        Comparator<Symbol> order = (a, b) -> {
+            int c = a.path.compareTo(b.path);
+            return c != 0 ? c : Integer.compare(a.line, b.line);
+        };
+        List<Symbol> out = new ArrayList<>();
+        for (List<Symbol> bucket : Arrays.asList(exact, starts, contains)) {
+            bucket.sort(order);
+            for (Symbol s : bucket) {
+                if (out.size() >= max) return out;
+                out.add(s);
+            }
+        }
+        return out;
+    }
+
+    /** Symbols named exactly name, ignoring case; a single map lookup when nothing is pending. */
+    public List<Symbol> exact(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        List<String> pendingPaths = pendingPaths();
+        List<Symbol> out = new ArrayList<>();
+        synchronized (this) {
+            List<Symbol> list = byName.get(key);
+            if (list != null) {
+                for (Symbol s : list) {
+                    if (!isUnder(s.path, pendingPaths)) out.add(s);
+                }
+            }
+        }
+        for (Symbol s : readPending(pendingPaths)) {
+            if (s.name.toLowerCase(Locale.ROOT).equals(key)) out.add(s);
+        }
+        return out;
+    }
+
+    /**
+     * Symbols of the file at relative path in line order. A supported file that is not in
+     * the index yet (the build is still running) or has a pending change is read now, and
+     * the index is left to the worker. Null for unsupported or missing files.
+     */
+    public List<Symbol> outline(String path) {
+        String rel = path.replaceFirst("^/+", "").replace('\\', '/');
+        List<String> pendingPaths = pendingPaths();
+        if (!isUnder(rel, pendingPaths)) {
+            synchronized (this) {
+                FileSymbols f = files.get(rel);
+                if (f != null) return f.symbols;
+            }
+        }
+        File file = new File(root, rel);
+        if (!isIndexable(rel) || !file.isFile()) return null;
+        return readSymbols(file, rel);
+    }
+
+    // --- maintenance (worker thread) ---
+
+    @Override
+    public void onChanged(File file) {
+        String rel = relativePath(file);
+        if (rel == null) return;
+        markPending(rel);
+        WORKER.execute(() -> {
+            try {
+                if (file.isDirectory()) {
+                    for (ProjectSnapshot.Entry e : ProjectSnapshot.listAllFiles(file)) {
+                        String r = relativePath(e.file);
+                        if (r != null && isIndexable(r)) indexFile(e.file, r, false);
+                    }
+                } else if (isIndexable(rel)) {
+                    indexFile(file, rel, false);
+                }
+            } finally {
+                unmarkPending(rel);
+            }
+        });
+    }
+
+    @Override
+    public void onDeleted(File file) {
+        String rel = relativePath(file);
+        if (rel == null) return;
+        markPending(rel);
+        WORKER.execute(() -> {
+            synchronized (this) {
+                String prefix = rel + "/";
+                for (String path : new ArrayList<>(files.keySet())) {
+                    if (rel.isEmpty() || path.equals(rel) || path.startsWith(prefix)) removeLocked(path);
+                }
+            }
+            unmarkPending(rel);
+        });
+    }
+
+    private synchronized void markPending(String rel) {
+        Integer queued = pending.get(rel);
+        pending.put(rel, queued == null ? 1 : queued + 1);
+    }
+
+    private synchronized void unmarkPending(String rel) {
+        Integer queued = pending.get(rel);
+        if (queued == null || queued <= 1) pending.remove(rel);
+        else pending.put(rel, queued - 1);
+    }
+
+    private synchronized List<String> pendingPaths() {
+        return pending.isEmpty() ? Collections.emptyList() : new ArrayList<>(pending.keySet());
+    }
+
+    /** True if path is one of paths or lies below one of them. */
+    private static boolean isUnder(String path, List<String> paths) {
+        for (String p : paths) {
+            if (p.isEmpty() || path.equals(p) || path.startsWith(p + "/")) return true;
+        }
+        return false;
+    }
+
+    /** Current symbols of the indexable files at or below the pending paths, read from disk. */
+    private List<Symbol> readPending(List<String> pendingPaths) {
+        if (pendingPaths.isEmpty()) return Collections.emptyList();
+        List<Symbol> out = new ArrayList<>();
+        Set<String> read = new HashSet<>(); // a file below two pending paths is read once
+        for (String rel : pendingPaths) {
+            File file = rel.isEmpty() ? root : new File(root, rel);
+            if (file.isDirectory()) {
+                for (ProjectSnapshot.Entry e : ProjectSnapshot.listAllFiles(file)) {
+                    String r = relativePath(e.file);
+                    if (r != null && isIndexable(r) && read.add(r)) out.addAll(readSymbols(e.file, r));
+                }
+            } else if (isIndexable(rel) && file.isFile() && read.add(rel)) {
+                out.addAll(readSymbols(file, rel));
+            }
+        }
+        return out;
+    }
+
+    private void scheduleRevalidation() {
+        synchronized (this) {
+            if (!ready || validating || System.currentTimeMillis() - lastValidated <= REVALIDATE_MS) return;
+            validating = true;
+        }
+        WORKER.execute(this::refresh); // catches writes that bypassed FileManager
+    }
+
+    /** Walks the project, reindexing new or changed files and dropping vanished ones. */
+    private void refresh() {
+        long start = System.currentTimeMillis();
+        Set<String> seen = new HashSet<>();
+        int reindexed = 0;
+        for (ProjectSnapshot.Entry e : ProjectSnapshot.listAllFiles(root)) {
+            String rel = relativePath(e.file);
+            if (rel == null || !isIndexable(rel)) continue;
+            seen.add(rel);
+            if (indexFile(e.file, rel, true)) reindexed++;
+        }
+        int removed = 0;
+        synchronized (this) {
+            for (String path : new ArrayList<>(files.keySet())) {
+                if (!seen.contains(path)) {
+                    removeLocked(path);
+                    removed++;
+                }
+            }
+            ready = true;
+            validating = false;
+            lastValidated = System.currentTimeMillis();
+            notifyAll();
+        }
+        if (reindexed > 0 || removed > 0) {
+            Log.i(TAG, "Indexed " + rootPath + ": " + seen.size() + " files, " + reindexed + " reindexed, "
+                    + removed + " removed in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * (Re)indexes one file. With onlyIfChanged, a file whose size and mtime match the index
+     * is left alone. Returns true when the file was read.
+     */
+    private boolean indexFile(File file, String rel, boolean onlyIfChanged) {
+        long modified = file.lastModified();
+        long size = file.length();
+        if (!file.isFile()) {
+            synchronized (this) {
+                removeLocked(rel);
+            }
+            return false;
+        }
+        if (onlyIfChanged) {
+            synchronized (this) {
+                FileSymbols f = files.get(rel);
+                if (f != null && f.modified == modified && f.size == size) return false;
+            }
+        }
+        List<Symbol> symbols = readSymbols(file, rel);
+        synchronized (this) {
+            removeLocked(rel);
+            files.put(rel, new FileSymbols(modified, size, symbols));
+            for (Symbol s : symbols) {
+                String key = s.name.toLowerCase(Locale.ROOT);
+                List<Symbol> list = byName.get(key);
+                if (list == null) {
+                    list = new ArrayList<>(2);
+                    byName.put(key, list);
+                }
+                list.add(s);
+            }
+        }
+        return true;
+    }
+
+    /** Symbols of file as it is on disk now; empty when it is too big or unreadable. */
+    private static List<Symbol> readSymbols(File file, String rel) {
+        if (file.length() > MAX_INDEXED_BYTES) return Collections.emptyList();
+        try {
+            String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            return Collections.unmodifiableList(extract(rel, text));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not index " + rel + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private void removeLocked(String rel) {
+        FileSymbols old = files.remove(rel);
+        if (old == null) return;
+        for (Symbol s : old.symbols) {
+            String key = s.name.toLowerCase(Locale.ROOT);
+            List<Symbol> list = byName.get(key);
+            if (list == null) continue;
+            list.remove(s);
+            if (list.isEmpty()) byName.remove(key);
+        }
+    }
+
+    // --- extraction ---
+
+    private enum Language { JS, CSS, HTML }
+
+    private static Language languageOf(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return null;
+        switch (name.substring(dot + 1).toLowerCase(Locale.ROOT)) {
+            case "js": case "mjs": case "cjs": case "jsx": case "ts": case "tsx":
+                return Language.JS;
+            case "css": case "scss": case "less":
+                return Language.CSS;
+            case "html": case "htm":
+                return Language.HTML;
+            default:
+                return null;
+        }
+    }
+
+    /** Symbols of a file's text, in line order. */
+    static List<Symbol> extract(String rel, String text) {
+        List<Symbol> out = new ArrayList<>();
+        Language language = languageOf(rel);
+        if (language == Language.JS) extractJs(rel, text, 0, out);
+        else if (language == Language.CSS) extractCss(rel, text, 0, out);
+        else if (language == Language.HTML) extractHtml(rel, text, out);
+        out.sort((a, b) -> Integer.compare(a.line, b.line));
+        return out;
+    }
+
+    private static final String IDENT = "[A-Za-z_$][\\w$]*";
+    private static final Pattern JS_FUNCTION = Pattern.compile("\\bfunction\\b\\s*\\*?\\s*(" + IDENT + ")\\s*\\(");
+    private static final Pattern JS_CLASS = Pattern.compile("\\bclass\\s+(" + IDENT + ")");
+    private static final Pattern JS_VAR = Pattern.compile("\\b(?:const|let|var)\\s+(" + IDENT + ")\\s*=\\s*(?:async\\b\\s*)?"
+            + "(function\\b|class\\b|\\([^()]*\\)\\s*=>|" + IDENT + "\\s*=>)");
+    private static final Pattern JS_ASSIGN = Pattern.compile("^\\s*((?:" + IDENT + "\\.)+)(" + IDENT + ")\\s*=\\s*(?:async\\b\\s*)?"
+            + "(?:function\\b|\\([^()]*\\)\\s*=>|" + IDENT + "\\s*=>)");
+    private static final Pattern JS_METHOD = Pattern.compile("^\\s*(?:(?:static|async|get|set|public|private|protected|override)\\s+)*\\*?\\s*"
+            + "(#?" + IDENT + ")\\s*(?:<[^>]*>)?\\([^()]*(?:\\([^()]*\\)[^()]*)*\\)\\s*(?::[^{]*)?\\{");
+    private static final Pattern JS_FIELD_FUNCTION = Pattern.compile("^\\s*(?:(?:static|public|private|protected|readonly)\\s+)*"
+            + "(#?" + IDENT + ")\\s*=\\s*(?:async\\b\\s*)?(?:function\\b|\\([^()]*\\)\\s*=>|" + IDENT + "\\s*=>)");
+    private static final Set<String> JS_KEYWORDS = new HashSet<>(Arrays.asList(
+            "if", "for", "while", "switch", "catch", "with", "function", "return", "do", "else", "try", "new", "typeof"));
+
+    private static final class OpenClass {
+        final String name;
+        final int bodyDepth;
+
+        OpenClass(String name, int bodyDepth) {
+            this.name = name;
+            this.bodyDepth = bodyDepth;
+        }
+    }
+
+    private static void extractJs(String rel, String text, int lineOffset, List<Symbol> out) {
+        String code = blankJs(text);
+        List<OpenClass> classes = new ArrayList<>();
+        String pendingClass = null;
+        int depth = 0;
+        int lineNo = lineOffset;
+        int start = 0;
+        while (start <= code.length()) {
+            int end = code.indexOf('\n', start);
+            if (end < 0) end = code.length();
+            String line = code.substring(start, end);
+            lineNo++;
+            OpenClass inClass = classes.isEmpty() ? null : classes.get(classes.size() - 1);
+            String container = inClass != null ? inClass.name : null;
+
+            if (inClass != null && depth == inClass.bodyDepth) {
+                Matcher m = JS_METHOD.matcher(line);
+                if (m.find() && !JS_KEYWORDS.contains(m.group(1))) {
+                    out.add(new Symbol(m.group(1), METHOD, rel, lineNo, container));
+                } else if ((m = JS_FIELD_FUNCTION.matcher(line)).find()) {
+                    out.add(new Symbol(m.group(1), METHOD, rel, lineNo, container));
+                }
+            }
+            Matcher m = JS_CLASS.matcher(line);
+            while (m.find()) {
+                out.add(new Symbol(m.group(1), CLASS, rel, lineNo, null));
+                pendingClass = m.group(1);
+            }
+            m = JS_FUNCTION.matcher(line);
+            while (m.find()) out.add(new Symbol(m.group(1), FUNCTION, rel, lineNo, container));
+            m = JS_VAR.matcher(line);
+            while (m.find()) {
+                String value = line.substring(m.start(2));
+                if (m.group(2).startsWith("class")) {
+                    // "const A = class B {" was recorded as B above
+                    if (JS_CLASS.matcher(value).lookingAt()) continue;
+                    out.add(new Symbol(m.group(1), CLASS, rel, lineNo, null));
+                    pendingClass = m.group(1);
+                    continue;
+                }
+                Matcher named = JS_FUNCTION.matcher(value);
+                if (named.lookingAt()) {
+                    // Named function expression: keep the variable name, not the inner one
+                    removeLast(out, named.group(1), lineNo);
+                }
+                out.add(new Symbol(m.group(1), FUNCTION, rel, lineNo, container));
+            }
+            m = JS_ASSIGN.matcher(line);
+            if (m.find()) {
+                String owner = m.group(1).substring(0, m.group(1).length() - 1);
+                out.add(new Symbol(m.group(2), owner.endsWith(".prototype") ? METHOD : FUNCTION, rel, lineNo,
+                        owner.endsWith(".prototype") ? owner.substring(0, owner.length() - ".prototype".length()) : owner));
+            }
+
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '{') {
+                    depth++;
+                    if (pendingClass != null) {
+                        classes.add(new OpenClass(pendingClass, depth));
+                        pendingClass = null;
+                    }
+                } else if (c == '}') {
+                    depth = Math.max(0, depth - 1);
+                    while (!classes.isEmpty() && classes.get(classes.size() - 1).bodyDepth > depth) {
+                        classes.remove(classes.size() - 1);
+                    }
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    private static void removeLast(List<Symbol> out, String name, int lineNo) {
+        for (int i = out.size() - 1; i >= 0 && out.get(i).line == lineNo; i--) {
+            if (out.get(i).name.equals(name) && out.get(i).kind.equals(FUNCTION)) {
+                out.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * text with comments and string contents replaced by spaces (newlines kept), so
+     * patterns and braces only see code. Template literals are blanked whole; regex
+     * literals are left as they are.
+     */
+    private static String blankJs(String text) {
+        char[] c = text.toCharArray();
+        int i = 0;
+        int n = c.length;
+        while (i < n) {
+            char ch = c[i];
+            char next = i + 1 < n ? c[i + 1] : 0;
+            if (ch == '/' && next == '/') {
+                while (i < n && c[i] != '\n') c[i++] = ' ';
+            } else if (ch == '/' && next == '*') {
+                i = blankUntil(c, i, "*/");
+            } else if (ch == '"' || ch == '\'' || ch == '`') {
+                i++;
+                while (i < n && c[i] != ch && (ch == '`' || c[i] != '\n')) {
+                    if (c[i] == '\\' && i + 1 < n) c[i++] = ' ';
+                    if (c[i] != '\n') c[i] = ' ';
+                    i++;
+                }
+                i++;
+            } else {
+                i++;
+            }
+        }
+        return new String(c);
+    }
+
+    /** Blanks c from i through the end of terminator (or the end of c); returns the next index. */
+    private static int blankUntil(char[] c, int i, String terminator) {
+        int n = c.length;
+        while (i < n) {
+            boolean end = i + terminator.length() <= n && new String(c, i, terminator.length()).equals(terminator);
+            if (end) {
+                for (int k = 0; k < terminator.length(); k++) c[i++] = ' ';
+                return i;
+            }
+            if (c[i] != '\n') c[i] = ' ';
+            i++;
+        }
+        return i;
+    }
+
+    private static final Pattern CSS_CUSTOM_PROPERTY = Pattern.compile("^\\s*(--[\\w-]+)\\s*:");
+    private static final Pattern CSS_KEYFRAMES = Pattern.compile("^@(?:-[a-z]+-)?keyframes\\s+([\\w-]+)");
+
+    private static void extractCss(String rel, String text, int lineOffset, List<Symbol> out) {
+        char[] c = text.toCharArray();
+        for (int i = 0; i < c.length; ) {
+            if (c[i] == '/' && i + 1 < c.length && c[i + 1] == '*') i = blankUntil(c, i, "*/");
+            else i++;
+        }
+        int[] lineStarts = lineStarts(c);
+        // Preludes of the open blocks; "@" ones are at-rules, null marks keyframes bodies
+        List<String> stack = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < c.length; i++) {
+            char ch = c[i];
+            if (ch != '{' && ch != '}' && ch != ';') continue;
+            String chunk = new String(c, start, i - start);
+            int line = lineOffset + lineOf(lineStarts, start + leadingSpace(chunk));
+            if (ch == '{') {
+                String prelude = chunk.trim().replaceAll("\\s+", " ");
+                boolean inKeyframes = !stack.isEmpty() && stack.get(stack.size() - 1) == null;
+                if (prelude.startsWith("@")) {
+                    Matcher m = CSS_KEYFRAMES.matcher(prelude);
+                    if (m.find()) {
+                        out.add(new Symbol(m.group(1), KEYFRAMES, rel, line, null));
+                        stack.add(null);
+                    } else {
+                        stack.add(prelude);
+                    }
+                } else {
+                    if (!inKeyframes && !prelude.isEmpty()) {
+                        String container = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+                        for (String selector : splitSelectors(prelude)) {
+                            out.add(new Symbol(selector, SELECTOR, rel, line, container));
+                        }
+                    }
+                    stack.add(inKeyframes ? null : prelude);
+                }
+            } else {
+                Matcher m = CSS_CUSTOM_PROPERTY.matcher(chunk);
+                if (m.find()) {
+                    String container = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+                    out.add(new Symbol(m.group(1), CUSTOM_PROPERTY, rel, line, container));
+                }
+                if (ch == '}' && !stack.isEmpty()) stack.remove(stack.size() - 1);
+            }
+            start = i + 1;
+        }
+    }
+
+    /** Selector list split at top-level commas. */
+    private static List<String> splitSelectors(String prelude) {
+        List<String> out = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= prelude.length(); i++) {
+            char ch = i < prelude.length() ? prelude.charAt(i) : ',';
+            if (ch == '(' || ch == '[') depth++;
+            else if (ch == ')' || ch == ']') depth--;
+            else if (ch == ',' && depth <= 0) {
+                String s = prelude.substring(start, i).trim();
+                if (!s.isEmpty()) out.add(s);
+                start = i + 1;
+            }
+        }
+        return out;
+    }
+
+    private static final Pattern HTML_COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+    private static final Pattern HTML_BLOCK = Pattern.compile("(<(script|style)\\b[^>]*>)(.*?)</\\2\\s*>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern HTML_TAG = Pattern.compile("<([a-zA-Z][\\w-]*)(\\s[^<>]*)?>");
+    private static final Pattern HTML_ATTR = Pattern.compile("(?<![\\w-])(id|class)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))",
+            Pattern.CASE_INSENSITIVE);
+
+    private static void extractHtml(String rel, String text, List<Symbol> out) {
+        char[] c = text.toCharArray();
+        blank(c, HTML_COMMENT.matcher(text));
+        String html = new String(c);
+        int[] lineStarts = lineStarts(c);
+
+        // Inline scripts and styles get their own extractors; their bodies are hidden from the tag scan
+        Matcher block = HTML_BLOCK.matcher(html);
+        List<int[]> bodies = new ArrayList<>();
+        while (block.find()) {
+            String open = block.group(1).toLowerCase(Locale.ROOT);
+            int bodyStart = block.start(3);
+            int line = lineOf(lineStarts, bodyStart) - 1;
+            if (block.group(2).equalsIgnoreCase("style")) {
+                extractCss(rel, block.group(3), line, out);
+            } else if (!open.contains(" src") && !open.matches("(?s).*\\btype\\s*=\\s*[\"']?(text/template|text/html|application/(ld\\+)?json)\\b.*")) {
+                extractJs(rel, block.group(3), line, out);
+            }
+            bodies.add(new int[]{bodyStart, block.end(3)});
+        }
+        for (int[] b : bodies) {
+            for (int i = b[0]; i < b[1]; i++) if (c[i] != '\n') c[i] = ' ';
+        }
+        html = new String(c);
+
+        Set<String> seenClasses = new HashSet<>();
+        Matcher tag = HTML_TAG.matcher(html);
+        while (tag.find()) {
+            if (tag.group(2) == null) continue;
+            String element = tag.group(1).toLowerCase(Locale.ROOT);
+            Matcher attr = HTML_ATTR.matcher(tag.group(2));
+            while (attr.find()) {
+                String value = attr.group(2) != null ? attr.group(2) : attr.group(3) != null ? attr.group(3) : attr.group(4);
+                int line = lineOf(lineStarts, tag.start(2) + attr.start());
+                if (attr.group(1).equalsIgnoreCase("id")) {
+                    if (!value.trim().isEmpty()) out.add(new Symbol(value.trim(), ID, rel, line, element));
+                } else {
+                    // Class names repeat a lot; each one is listed once per file, where it first appears
+                    for (String name : value.trim().split("\\s+")) {
+                        if (!name.isEmpty() && seenClasses.add(name)) out.add(new Symbol(name, HTML_CLASS, rel, line, element));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void blank(char[] c, Matcher m) {
+        while (m.find()) {
+            for (int i = m.start(); i < m.end(); i++) if (c[i] != '\n') c[i] = ' ';
+        }
+    }
+
+    // --- helpers ---
+
+    private static int[] lineStarts(char[] c) {
+        int count = 1;
+        for (char ch : c) if (ch == '\n') count++;
+        int[] starts = new int[count];
+        int k = 1;
+        for (int i = 0; i < c.length; i++) if (c[i] == '\n') starts[k++] = i + 1;
+        return starts;
+    }
+
+    /** 1-based line of offset. */
+    private static int lineOf(int[] lineStarts, int offset) {
+        int i = Arrays.binarySearch(lineStarts, offset);
+        return (i >= 0 ? i : -i - 2) + 1;
+    }
+
+    private static int leadingSpace(String s) {
+        int i = 0;
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+
+    /** Name without the '.', '#' or '--' sigil, for matching. */
+    private static String bare(String name) {
+        if (name.startsWith("--")) return name.substring(2);
+        if (name.startsWith(".") || name.startsWith("#")) return name.substring(1);
+        return name;
+    }
+
+    /** Relative path of file under root ("" for root itself), or null when outside. */
+    private String relativePath(File file) {
+        String path = file.getAbsolutePath();
+        if (path.equals(rootPath)) return "";
+        if (!path.startsWith(rootPath + File.separator)) return null;
+        return path.substring(rootPath.length() + 1).replace(File.separatorChar, '/');
+    }
+}
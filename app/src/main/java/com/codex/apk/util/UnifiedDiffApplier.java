@@ -1,71 +1,296 @@
 package com.codex.apk.util;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Applies a unified diff to text without mutating a line list per hunk. It works in two
+ * steps:
+ * <ol>
+ *   <li>Every hunk is located against the original lines, which are interned to int ids.
+ *   Candidate positions come from an index of where each id occurs, seeded from the
+ *   hunk's rarest line, so a hunk that drifted is found anywhere in the file and the
+ *   search does not scan a window.</li>
+ *   <li>The located hunks are sorted, and the output is built in one copy over the
+ *   original.</li>
+ * </ol>
+ *
+ * Fuzz works as in patch(1): at fuzz n, up to n context lines at each end of a hunk may
+ * fail to match, and those lines are left as they are in the file. Among matches, the
+ * one nearest the header's line, shifted by the previous hunk's offset, wins. Matches
+ * that overlap an earlier hunk are skipped.
+ */
 public final class UnifiedDiffApplier {
+    public static final int DEFAULT_FUZZ = 2;
+    /** Candidate positions tried per hunk and fuzz level before giving up. */
+    private static final int MAX_CANDIDATES = 4096;
+
     private UnifiedDiffApplier() {}
 
+    /** Outcome of one hunk. Line numbers are 1-based. appliedAt is -1 when the hunk failed. */
+    public static final class HunkResult {
+        public final int index;
+        public final int expectedLine;
+        public final int appliedAt;
+        public final int offset;
+        public final int fuzz;
+        public final String error;
+
+        HunkResult(int index, int expectedLine, int appliedAt, int offset, int fuzz, String error) {
+            this.index = index;
+            this.expectedLine = expectedLine;
+            this.appliedAt = appliedAt;
+            this.offset = offset;
+            this.fuzz = fuzz;
+            this.error = error;
+        }
+
+        public boolean isApplied() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            String name = "hunk " + (index + 1);
+            if (error != null) return name + " FAILED at line " + expectedLine + ": " + error;
+            return name + " applied at line " + appliedAt
+                    + (offset != 0 ? " (offset " + offset + ")" : "")
+                    + (fuzz != 0 ? " (fuzz " + fuzz + ")" : "");
+        }
+    }
+
+    /** Patched text, with hunks that failed left out, plus one entry per hunk in patch order. */
+    public static final class Result {
+        public final String content;
+        public final List<HunkResult> hunks;
+
+        Result(String content, List<HunkResult> hunks) {
+            this.content = content;
+            this.hunks = hunks;
+        }
+
+        public int failedCount() {
+            int n = 0;
+            for (HunkResult h : hunks) if (!h.isApplied()) n++;
+            return n;
+        }
+
+        public boolean isComplete() {
+            return failedCount() == 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (HunkResult h : hunks) {
+                if (sb.length() > 0) sb.append('\n');
+                sb.append(h);
+            }
+            return sb.toString();
+        }
+    }
+
+    /** Applies patch at {@link #DEFAULT_FUZZ}; hunks that cannot be placed are skipped. */
     public static String apply(String original, String patch) {
-        List<String> source = new ArrayList<>(Arrays.asList(original.split("\n", -1)));
+        return apply(original, patch, DEFAULT_FUZZ).content;
+    }
+
+    public static Result apply(String original, String patch, int fuzz) {
+        String[] source = original.split("\n", -1);
         List<Hunk> hunks = parseHunks(patch);
-        int offset = 0;
-        for (Hunk hunk : hunks) {
-            int expectedIndex = Math.max(0, Math.min(source.size(), hunk.startOld - 1 + offset));
-            int matchedIndex = findBestMatch(source, hunk, expectedIndex);
-            if (matchedIndex < 0) {
+        LineIndex index = new LineIndex(source);
+
+        TreeMap<Integer, Placed> taken = new TreeMap<>();
+        List<HunkResult> results = new ArrayList<>(hunks.size());
+        int drift = 0;
+        for (int h = 0; h < hunks.size(); h++) {
+            Hunk hunk = hunks.get(h);
+            // "-n,0" inserts after line n; otherwise line n is the first one the hunk touches
+            int expected = hunk.old.isEmpty() ? hunk.startOld : hunk.startOld - 1;
+            expected = Math.max(0, Math.min(source.length, expected));
+            Placed placed = null;
+            for (int f = 0; f <= Math.max(0, fuzz) && placed == null; f++) {
+                placed = locate(index, hunk, expected + drift, f, taken);
+            }
+            if (placed == null) {
+                results.add(new HunkResult(h, expected + 1, -1, 0, 0, "context not found"));
                 continue;
             }
+            taken.put(placed.start, placed);
+            int at = placed.start - placed.lead;
+            drift = at - expected;
+            results.add(new HunkResult(h, expected + 1, at + 1, drift, placed.fuzz, null));
+        }
 
-            int removeCount = Math.min(hunk.lenOld, Math.max(0, source.size() - matchedIndex));
-            for (int i = 0; i < removeCount; i++) {
-                if (matchedIndex < source.size()) {
-                    source.remove(matchedIndex);
-                }
+        StringBuilder out = new StringBuilder(original.length() + patch.length());
+        int cursor = 0;
+        boolean first = true;
+        for (Placed p : taken.values()) {
+            for (; cursor < p.start; cursor++) first = appendLine(out, source[cursor], first);
+            Hunk hunk = p.hunk;
+            for (int i = p.firstLine; i < p.lastLine; i++) {
+                String line = hunk.lines.get(i);
+                if (line.charAt(0) != '-') first = appendLine(out, line.substring(1), first);
             }
+            cursor = p.start + p.length;
+        }
+        for (; cursor < source.length; cursor++) first = appendLine(out, source[cursor], first);
+        return new Result(out.toString(), results);
+    }
 
-            List<String> toInsert = new ArrayList<>();
-            for (String line : hunk.lines) {
-                if (line.startsWith(" ") || line.startsWith("+")) {
-                    toInsert.add(line.length() > 0 ? line.substring(1) : "");
-                }
-            }
-            source.addAll(matchedIndex, toInsert);
-            offset += toInsert.size() - removeCount;
+    private static boolean appendLine(StringBuilder out, String line, boolean first) {
+        if (!first) out.append('\n');
+        out.append(line);
+        return false;
+    }
+
+    /** A hunk placed on the original: lines [start, start + length) are replaced. */
+    private static final class Placed {
+        final Hunk hunk;
+        final int start;
+        final int length;
+        final int lead;      // leading context lines dropped by fuzz
+        final int firstLine; // hunk.lines range that is applied
+        final int lastLine;
+        final int fuzz;
+
+        Placed(Hunk hunk, int start, int length, int lead, int firstLine, int lastLine, int fuzz) {
+            this.hunk = hunk;
+            this.start = start;
+            this.length = length;
+            this.lead = lead;
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+            this.fuzz = fuzz;
         }
-        return String.join("\n", source);
     }
 
-    private static int findBestMatch(List<String> source, Hunk hunk, int expectedIndex) {
-        if (contextMatches(source, expectedIndex, hunk)) {
-            return expectedIndex;
+    /**
+     * Nearest free position to expected where the hunk's old side matches, with up to fuzz
+     * context lines ignored at each end; null if there is none.
+     */
+    private static Placed locate(LineIndex index, Hunk hunk, int expected, int fuzz, TreeMap<Integer, Placed> taken) {
+        int lead = Math.min(fuzz, hunk.leadingContext);
+        int trail = Math.min(fuzz, hunk.trailingContext);
+        if (fuzz > 0 && lead == Math.min(fuzz - 1, hunk.leadingContext)
+                && trail == Math.min(fuzz - 1, hunk.trailingContext)) {
+            return null; // no more context to drop than at the previous level
         }
-        int window = 50;
-        for (int delta = 1; delta <= window; delta++) {
-            int left = expectedIndex - delta;
-            int right = expectedIndex + delta;
-            if (left >= 0 && contextMatches(source, left, hunk)) {
-                return left;
+        int oldLen = hunk.old.size();
+        if (lead + trail > oldLen) return null;
+        int coreLen = oldLen - lead - trail;
+        // Edge context is contiguous, so dropping it trims the same count off hunk.lines
+        int firstLine = lead;
+        int lastLine = hunk.lines.size() - trail;
+        int target = Math.max(0, Math.min(index.size(), expected + lead));
+
+        if (coreLen == 0) {
+            // Pure insertion: nothing to match, so it goes where the header says
+            return free(taken, target, 0) ? new Placed(hunk, target, 0, lead, firstLine, lastLine, fuzz) : null;
+        }
+
+        int[] ids = new int[coreLen];
+        int anchor = -1;
+        int anchorCount = Integer.MAX_VALUE;
+        for (int i = 0; i < coreLen; i++) {
+            ids[i] = index.idOf(hunk.old.get(lead + i));
+            if (ids[i] < 0) return null; // a line the file does not contain anywhere
+            int count = index.positions(ids[i]).length;
+            if (count < anchorCount) {
+                anchorCount = count;
+                anchor = i;
+            }
+        }
+
+        // Occurrences of the anchor are sorted, so walk outward from the expected position
+        int[] at = index.positions(ids[anchor]);
+        int right = lowerBound(at, target + anchor);
+        int left = right - 1;
+        for (int tried = 0; (left >= 0 || right < at.length) && tried < MAX_CANDIDATES; tried++) {
+            int start;
+            if (right >= at.length || (left >= 0 && (target + anchor) - at[left] <= at[right] - (target + anchor))) {
+                start = at[left--] - anchor;
+            } else {
+                start = at[right++] - anchor;
             }
-            if (right <= source.size() && contextMatches(source, right, hunk)) {
-                return right;
+            if (start < 0 || start + coreLen > index.size()) continue;
+            if (index.matches(start, ids) && free(taken, start, coreLen)) {
+                return new Placed(hunk, start, coreLen, lead, firstLine, lastLine, fuzz);
             }
         }
-        return -1;
+        return null;
+    }
+
+    /** True when [start, start + length) overlaps no placed hunk and no insertion sits at start. */
+    private static boolean free(TreeMap<Integer, Placed> taken, int start, int length) {
+        Map.Entry<Integer, Placed> before = taken.floorEntry(start);
+        if (before != null) {
+            Placed p = before.getValue();
+            if (p.start == start || p.start + p.length > start) return false;
+        }
+        Map.Entry<Integer, Placed> after = taken.higherEntry(start);
+        return after == null || after.getKey() >= start + length;
+    }
+
+    private static int lowerBound(int[] sorted, int value) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) lo = mid + 1; else hi = mid;
+        }
+        return lo;
     }
 
-    private static boolean contextMatches(List<String> source, int index, Hunk hunk) {
-        int cursor = index;
-        for (String line : hunk.lines) {
-            if (line.startsWith(" ") || line.startsWith("-")) {
-                String expected = line.length() > 0 ? line.substring(1) : "";
-                if (cursor >= source.size()) return false;
-                if (!source.get(cursor).equals(expected)) return false;
-                cursor++;
+    /** Original lines as int ids, with the sorted positions of every id. */
+    private static final class LineIndex {
+        private final Map<String, Integer> ids;
+        private final int[] lineIds;
+        private final int[][] positions;
+
+        LineIndex(String[] lines) {
+            ids = new HashMap<>(Math.max(16, lines.length * 2));
+            lineIds = new int[lines.length];
+            int[] counts = new int[lines.length];
+            for (int i = 0; i < lines.length; i++) {
+                Integer id = ids.get(lines[i]);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(lines[i], id);
+                }
+                lineIds[i] = id;
+                counts[id]++;
+            }
+            positions = new int[ids.size()][];
+            for (int id = 0; id < positions.length; id++) positions[id] = new int[counts[id]];
+            int[] fill = new int[positions.length];
+            for (int i = 0; i < lines.length; i++) {
+                int id = lineIds[i];
+                positions[id][fill[id]++] = i;
+            }
+        }
+
+        int size() {
+            return lineIds.length;
+        }
+
+        int idOf(String line) {
+            Integer id = ids.get(line);
+            return id != null ? id : -1;
+        }
+
+        int[] positions(int id) {
+            return positions[id];
+        }
+
+        boolean matches(int start, int[] want) {
+            for (int i = 0; i < want.length; i++) {
+                if (lineIds[start + i] != want[i]) return false;
             }
+            return true;
         }
-        return true;
     }
 
     private static List<Hunk> parseHunks(String patch) {
@@ -75,7 +300,7 @@ public final class UnifiedDiffApplier {
         for (String line : lines) {
             if (line.startsWith("@@")) {
                 if (current != null) {
-                    hunks.add(current);
+                    hunks.add(current.finish());
                 }
                 current = new Hunk();
                 int[] header = parseHeader(line);
@@ -83,12 +308,21 @@ public final class UnifiedDiffApplier {
                 current.lenOld = header[1];
                 current.startNew = header[2];
                 current.lenNew = header[3];
-            } else if (current != null && (line.startsWith(" ") || line.startsWith("+") || line.startsWith("-"))) {
-                current.lines.add(line);
+            } else if (current != null) {
+                if (current.isFull() && (line.startsWith("--- ") || line.startsWith("+++ ") || line.startsWith("diff "))) {
+                    // Next file's header; a single-file applier has nothing more to read
+                    break;
+                }
+                if (line.startsWith(" ") || line.startsWith("+") || line.startsWith("-")) {
+                    current.add(line);
+                } else if (line.isEmpty() && !current.isFull()) {
+                    // Blank context line whose leading space was stripped by an editor
+                    current.add(" ");
+                }
             }
         }
         if (current != null) {
-            hunks.add(current);
+            hunks.add(current.finish());
         }
         return hunks;
     }
@@ -123,5 +357,27 @@ public final class UnifiedDiffApplier {
         int startNew;
         int lenNew;
         final List<String> lines = new ArrayList<>();
+        final List<String> old = new ArrayList<>(); // context and removed lines, in order
+        int newCount;
+        int leadingContext;
+        int trailingContext;
+
+        void add(String line) {
+            lines.add(line);
+            if (line.charAt(0) != '+') old.add(line.substring(1));
+            if (line.charAt(0) != '-') newCount++;
+        }
+
+        /** True once the header's line counts are used up; headers that gave none never fill. */
+        boolean isFull() {
+            return (lenOld > 0 || lenNew > 0) && old.size() >= lenOld && newCount >= lenNew;
+        }
+
+        Hunk finish() {
+            while (leadingContext < lines.size() && lines.get(leadingContext).charAt(0) == ' ') leadingContext++;
+            while (trailingContext < lines.size() - leadingContext
+                    && lines.get(lines.size() - 1 - trailingContext).charAt(0) == ' ') trailingContext++;
+            return this;
+        }
     }
 }
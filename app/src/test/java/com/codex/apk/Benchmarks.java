@@ -0,0 +1,58 @@
+package com.codex.apk;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Timing helpers for the *Benchmark classes. Those only run when the build is given
+ * -Pbenchmark, e.g. {@code ./gradlew :app:testDebugUnitTest -Pbenchmark --tests '*Benchmark'},
+ * and print their results to stdout.
+ */
+public final class Benchmarks {
+    private Benchmarks() {}
+
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    /** Skips the calling test unless benchmarks were asked for. */
+    public static void assumeEnabled() {
+        assumeTrue("benchmarks run with -Pbenchmark", Boolean.getBoolean("codex.benchmark"));
+    }
+
+    /** Wall time in ms of each of runs calls to body, after warmups uncounted ones. */
+    public static double[] timeMs(int warmups, int runs, Body body) throws Exception {
+        for (int i = 0; i < warmups; i++) body.run();
+        double[] out = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            body.run();
+            out[i] = (System.nanoTime() - start) / 1e6;
+        }
+        return out;
+    }
+
+    public static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) sum += v;
+        return sum / values.length;
+    }
+
+    public static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    /** Bytes allocated so far by the calling thread, or -1 where the JVM cannot tell. */
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1L;
+    }
+}
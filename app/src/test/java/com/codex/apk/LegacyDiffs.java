@@ -0,0 +1,63 @@
+package com.codex.apk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The diff code LineDiff replaced, kept as the baseline for LineDiffBenchmark: the full
+ * N*M LCS table behind DiffUtils.countAddRemoveFromContents, and DiffGenerator's Myers
+ * search that kept a copy of the V array per d.
+ */
+final class LegacyDiffs {
+    private LegacyDiffs() {}
+
+    /** Bytes the LCS table needs for n and m lines. */
+    static long lcsBytes(int n, int m) {
+        return (n + 1L) * (m + 1L) * 4L;
+    }
+
+    /** Bytes the per-d V copies need for n and m lines at edit distance d. */
+    static long traceBytes(int n, int m, int d) {
+        return (d + 1L) * (2L * (n + m) + 1) * 4L;
+    }
+
+    static int[] lcsCount(String[] a, String[] b) {
+        int n = a.length, m = b.length;
+        int[][] dp = new int[n + 1][m + 1];
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                if (a[i - 1].equals(b[j - 1])) dp[i][j] = dp[i - 1][j - 1] + 1;
+                else dp[i][j] = Math.max(dp[i - 1][j], dp[i][j - 1]);
+            }
+        }
+        int lcs = dp[n][m];
+        return new int[]{m - lcs, n - lcs};
+    }
+
+    /**
+     * Edit distance found by the old Myers search. Its cost is the trace of V copies built
+     * here; the backtrack over that trace, linear in d, is left out.
+     */
+    static int traceMyers(String[] a, String[] b) {
+        int n = a.length, m = b.length;
+        int max = n + m;
+        int offset = max;
+        int[] v = new int[2 * max + 1];
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            trace.add(Arrays.copyOf(v, v.length));
+            for (int k = -d; k <= d; k += 2) {
+                int idx = k + offset;
+                int x;
+                if (k == -d || (k != d && v[idx - 1] < v[idx + 1])) x = v[idx + 1];
+                else x = v[idx - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[x].equals(b[y])) { x++; y++; }
+                v[idx] = x;
+                if (x >= n && y >= m) return d;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,71 @@
+package com.codex.apk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * LineDiff against the diffs it replaced (see {@link LegacyDiffs}). A baseline that would
+ * need more than half the heap is reported as skipped with its estimated size instead of
+ * being run into an OutOfMemoryError.
+ */
+public class LineDiffBenchmark {
+
+    @Test
+    public void newVersusOld() throws Exception {
+        Benchmarks.assumeEnabled();
+        Random random = new Random(7);
+        System.out.printf("%-32s %-14s %10s %14s %14s%n", "pair", "+added/-removed", "LineDiff", "old LCS count", "old Myers");
+
+        String[] rewriteA = LineDiffTest.randomLines(random, 5000);
+        String[] rewriteB = LineDiffTest.randomLines(random, 5000);
+        run("5000-line full rewrite", rewriteA, rewriteB);
+
+        String[] big = numbered(20000);
+        List<String> edited = new ArrayList<>(java.util.Arrays.asList(big));
+        for (int i = 0; i < 50; i++) edited.set(random.nextInt(edited.size()), "edited " + i);
+        run("20000 lines, 50 scattered edits", big, edited.toArray(new String[0]));
+
+        List<List<String>> blocks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            List<String> block = new ArrayList<>();
+            for (int j = 0; j < 25; j++) block.add("block " + i + " line " + j);
+            blocks.add(block);
+        }
+        List<String> before = new ArrayList<>();
+        for (List<String> block : blocks) before.addAll(block);
+        Collections.shuffle(blocks, random);
+        List<String> after = new ArrayList<>();
+        for (List<String> block : blocks) after.addAll(block);
+        run("200 shuffled 25-line blocks", before.toArray(new String[0]), after.toArray(new String[0]));
+    }
+
+    private static void run(String name, String[] a, String[] b) throws Exception {
+        String oldText = String.join("\n", a);
+        String newText = String.join("\n", b);
+        int[] counts = LineDiff.countAddRemove(oldText, newText);
+        double lineDiff = Benchmarks.mean(Benchmarks.timeMs(2, 5, () -> LineDiff.countAddRemove(oldText, newText)));
+
+        long budget = Runtime.getRuntime().maxMemory() / 2;
+        long lcsBytes = LegacyDiffs.lcsBytes(a.length, b.length);
+        long traceBytes = LegacyDiffs.traceBytes(a.length, b.length, counts[0] + counts[1]);
+        String lcs = lcsBytes > budget ? skipped(lcsBytes)
+                : String.format("%.1f ms", Benchmarks.mean(Benchmarks.timeMs(1, 3, () -> LegacyDiffs.lcsCount(a, b))));
+        String trace = traceBytes > budget ? skipped(traceBytes)
+                : String.format("%.1f ms", Benchmarks.mean(Benchmarks.timeMs(1, 3, () -> LegacyDiffs.traceMyers(a, b))));
+        System.out.printf("%-32s %-14s %7.1f ms %14s %14s%n", name, "+" + counts[0] + "/-" + counts[1], lineDiff, lcs, trace);
+    }
+
+    private static String skipped(long bytes) {
+        return "needs " + (bytes >> 20) + " MB";
+    }
+
+    private static String[] numbered(int n) {
+        String[] lines = new String[n];
+        for (int i = 0; i < n; i++) lines[i] = "line " + i;
+        return lines;
+    }
+}
@@ -0,0 +1,107 @@
+package com.codex.apk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class LineDiffTest {
+
+    @Test
+    public void randomPairsGiveMinimalScriptsThatRebuildTheNewSide() {
+        Random random = new Random(21);
+        for (int t = 0; t < 3000; t++) {
+            String[] a = randomLines(random, random.nextInt(60));
+            String[] b = mutate(random, a);
+            List<LineDiff.Edit> edits = LineDiff.diff(a, b);
+            assertEquals(Arrays.asList(b), apply(a, b, edits));
+            int cost = 0;
+            for (LineDiff.Edit e : edits) cost += (e.aEnd - e.aStart) + (e.bEnd - e.bStart);
+            int lcs = lcs(a, b);
+            assertEquals("pair " + t, a.length + b.length - 2 * lcs, cost);
+        }
+    }
+
+    @Test
+    public void editsAreOrderedAndNotAdjacent() {
+        Random random = new Random(5);
+        for (int t = 0; t < 500; t++) {
+            String[] a = randomLines(random, 80);
+            List<LineDiff.Edit> edits = LineDiff.diff(a, mutate(random, a));
+            for (int i = 1; i < edits.size(); i++) {
+                assertTrue(edits.get(i).aStart > edits.get(i - 1).aEnd || edits.get(i).bStart > edits.get(i - 1).bEnd);
+            }
+        }
+    }
+
+    @Test
+    public void largeRewriteStaysCorrectPastTheCostCap() {
+        Random random = new Random(9);
+        String[] a = randomLines(random, 5000);
+        String[] b = randomLines(random, 5000);
+        assertEquals(Arrays.asList(b), apply(a, b, LineDiff.diff(a, b)));
+    }
+
+    @Test
+    public void countAddRemoveMatchesLcs() {
+        assertArrayEquals(new int[]{1, 1}, LineDiff.countAddRemove("a\nb\nc", "a\nx\nc"));
+        assertArrayEquals(new int[]{0, 0}, LineDiff.countAddRemove("same\n", "same\n"));
+        assertArrayEquals(new int[]{2, 0}, LineDiff.countAddRemove("a", "a\nb\nc"));
+    }
+
+    @Test
+    public void identicalInputsGiveHeadersOnly() {
+        assertEquals("--- a\n+++ b\n", DiffGenerator.generateUnifiedDiff("x\ny\n", "x\ny\n", "a", "b"));
+    }
+
+    static String[] randomLines(Random random, int n) {
+        String[] lines = new String[n];
+        for (int i = 0; i < n; i++) lines[i] = "line " + random.nextInt(Math.max(4, n / 2));
+        return lines;
+    }
+
+    /** a with random runs of lines deleted, inserted and replaced. */
+    static String[] mutate(Random random, String[] a) {
+        List<String> out = new ArrayList<>(Arrays.asList(a));
+        int changes = random.nextInt(6);
+        for (int c = 0; c < changes; c++) {
+            int at = out.isEmpty() ? 0 : random.nextInt(out.size());
+            int kind = random.nextInt(3);
+            int len = 1 + random.nextInt(4);
+            if (kind != 1) for (int i = 0; i < len && at < out.size(); i++) out.remove(at);
+            if (kind != 0) for (int i = 0; i < len; i++) out.add(Math.min(at, out.size()), "new " + random.nextInt(50));
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private static List<String> apply(String[] a, String[] b, List<LineDiff.Edit> edits) {
+        List<String> out = new ArrayList<>();
+        int i = 0;
+        for (LineDiff.Edit e : edits) {
+            while (i < e.aStart) out.add(a[i++]);
+            for (int j = e.bStart; j < e.bEnd; j++) out.add(b[j]);
+            i = e.aEnd;
+        }
+        while (i < a.length) out.add(a[i++]);
+        return out;
+    }
+
+    /** LCS length with two rolling rows. */
+    private static int lcs(String[] a, String[] b) {
+        int[] prev = new int[b.length + 1];
+        int[] cur = new int[b.length + 1];
+        for (String x : a) {
+            for (int j = 1; j <= b.length; j++) {
+                cur[j] = x.equals(b[j - 1]) ? prev[j - 1] + 1 : Math.max(prev[j], cur[j - 1]);
+            }
+            int[] t = prev; prev = cur; cur = t;
+        }
+        return prev[b.length];
+    }
+}
@@ -0,0 +1,83 @@
+package com.codex.apk;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * SSE framing throughput and allocation: SseEventParser against the line loop it replaced
+ * (readUtf8LineStrict, trim, split, substring). Framing only; no JSON parsing.
+ */
+public class SseEventParserBenchmark {
+    private static final int EVENTS = 20_000;
+    private static final int RUNS = 50;
+
+    @Test
+    public void framing() throws Exception {
+        Benchmarks.assumeEnabled();
+        Buffer stream = new Buffer();
+        for (int i = 0; i < EVENTS; i++) {
+            stream.writeUtf8("data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"tok")
+                    .writeUtf8(Integer.toString(i)).writeUtf8("\"}}]}\n\n");
+        }
+        System.out.printf("%d events, %d bytes each on average%n", EVENTS, stream.size() / EVENTS);
+        report("old line loop", stream, source -> {
+            int[] n = {0};
+            oldLoop(source, n);
+            return n[0];
+        });
+        report("SseEventParser (lenient)", stream, source -> {
+            int[] n = {0};
+            new SseEventParser(true).parse(source, e -> { if (e.dataView().length() > 0) n[0]++; });
+            return n[0];
+        });
+    }
+
+    private interface Framer {
+        int frame(BufferedSource source) throws IOException;
+    }
+
+    private static void report(String name, Buffer stream, Framer framer) throws Exception {
+        for (int i = 0; i < 10; i++) framer.frame(stream.clone());
+        double[] ms = new double[RUNS];
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            Buffer copy = stream.clone();
+            long before = Benchmarks.allocatedBytes();
+            long start = System.nanoTime();
+            int events = framer.frame(copy);
+            ms[i] = (System.nanoTime() - start) / 1e6;
+            allocated += Benchmarks.allocatedBytes() - before;
+            if (events != EVENTS) throw new AssertionError(name + " saw " + events + " events");
+        }
+        System.out.printf("%-26s median %.1f M events/s, %d bytes allocated per event%n", name,
+                EVENTS / Benchmarks.median(ms) / 1000, allocated / RUNS / EVENTS);
+    }
+
+    /** The framing SseClient did before SseEventParser, minus the Gson parse. */
+    private static void oldLoop(BufferedSource source, int[] events) throws IOException {
+        while (true) {
+            String line;
+            try {
+                line = source.readUtf8LineStrict();
+            } catch (EOFException eof) {
+                break;
+            }
+            if (line.isEmpty()) continue;
+            String trimmedBlock = line.trim();
+            if (trimmedBlock.isEmpty()) continue;
+            for (String l : trimmedBlock.split("\n")) {
+                String trimmed = l.trim();
+                if (trimmed.isEmpty()) continue;
+                if (trimmed.startsWith("data:")) {
+                    String jsonPart = trimmed.substring("data:".length()).trim();
+                    if (!jsonPart.isEmpty()) events[0]++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.codex.apk;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okio.Buffer;
+
+public class SseEventParserTest {
+
+    @Test
+    public void nonJsonLineAfterJsonIsItsOwnEvent() throws IOException {
+        assertEquals(Arrays.asList("{\"a\":1}", "ok"), parse(true, "data: {\"a\":1}\ndata: ok\n\n"));
+    }
+
+    @Test
+    public void doneAfterJsonIsItsOwnEvent() throws IOException {
+        assertEquals(Arrays.asList("{\"a\":1}", "[DONE]"), parse(true, "data: {\"a\":1}\ndata: [DONE]\n"));
+    }
+
+    @Test
+    public void backToBackJsonLinesSplit() throws IOException {
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"b\":2}", "{\"c\":3}"),
+                parse(true, "data: {\"a\":1}\ndata: {\"b\":2}\ndata: {\"c\":3}\n\n"));
+    }
+
+    @Test
+    public void multiLineJsonWithInnerLineEndingInBraceStaysWhole() throws IOException {
+        assertEquals(Arrays.asList("{\"a\":{\"b\":1}\n,\"c\":2}"),
+                parse(true, "data: {\"a\":{\"b\":1}\ndata: ,\"c\":2}\n\n"));
+    }
+
+    @Test
+    public void braceInsideStringDoesNotCloseValue() throws IOException {
+        assertEquals(Arrays.asList("{\"a\":\"}\"\n}"), parse(true, "data: {\"a\":\"}\"\ndata: }\n\n"));
+    }
+
+    @Test
+    public void bareJsonLineBeforeStreamIsAnEvent() throws IOException {
+        assertEquals(Arrays.asList("{\"id\":1}", "x"), parse(true, "{\"id\":1}\ndata: x\n\n"));
+    }
+
+    @Test
+    public void strictModeJoinsDataLines() throws IOException {
+        assertEquals(Arrays.asList("{\"a\":1}\n{\"b\":2}"), parse(false, "data: {\"a\":1}\ndata: {\"b\":2}\n\n"));
+    }
+
+    @Test
+    public void fieldsCommentsAndCrLf() throws IOException {
+        List<String> seen = new ArrayList<>();
+        new SseEventParser(false).parse(new Buffer().writeUtf8(": ping\r\nevent: delta\r\nid: 7\r\nretry: 250\r\ndata: x\r\n\r\n"),
+                e -> seen.add(e.type() + "|" + e.lastEventId() + "|" + e.retryMs() + "|" + e.data()));
+        assertEquals(Arrays.asList("delta|7|250|x"), seen);
+    }
+
+    private static List<String> parse(boolean lenient, String stream) throws IOException {
+        List<String> out = new ArrayList<>();
+        new SseEventParser(lenient).parse(new Buffer().writeUtf8(stream), e -> out.add(e.data()));
+        return out;
+    }
+}
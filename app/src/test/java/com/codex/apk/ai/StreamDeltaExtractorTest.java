@@ -0,0 +1,43 @@
+package com.codex.apk.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class StreamDeltaExtractorTest {
+
+    private final StreamDeltaExtractor extractor = new StreamDeltaExtractor(DeltaSchema.OPENAI_CHAT);
+
+    @Test
+    public void readsFirstChoiceOnly() {
+        StreamDelta d = extractor.extract("{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"a\"}},"
+                + "{\"index\":1,\"delta\":{\"content\":\"b\"}}]}");
+        assertEquals("a", d.content);
+    }
+
+    @Test
+    public void picksChoiceByIndexFieldNotPosition() {
+        StreamDelta d = extractor.extract("{\"choices\":[{\"delta\":{\"content\":\"b\"},\"index\":1},"
+                + "{\"delta\":{\"content\":\"a\"},\"finish_reason\":\"stop\",\"index\":0}]}");
+        assertEquals("a", d.content);
+        assertEquals("stop", d.finishReason);
+    }
+
+    @Test
+    public void skipsChunkOfAnotherCompletion() {
+        StreamDelta d = extractor.extract("{\"choices\":[{\"index\":2,\"delta\":{\"content\":\"c\"}}]}");
+        assertNull(d.content);
+    }
+
+    @Test
+    public void withoutIndexFieldTakesFirstPosition() {
+        StreamDelta d = extractor.extract("{\"choices\":[{\"message\":{\"content\":\"m\"}},{\"message\":{\"content\":\"n\"}}]}");
+        assertEquals("m", d.messageContent);
+    }
+
+    @Test
+    public void malformedChunkIsNull() {
+        assertNull(extractor.extract("{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"a"));
+    }
+}
@@ -0,0 +1,38 @@
+package com.codex.apk.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class TokenEstimatorTest {
+
+    @Test
+    public void textsSharingHashAndLengthDoNotShareACachedEstimate() {
+        // " a" and "!B" hash alike (32 * 31 + 97 == 33 * 31 + 66), so any run of them does too
+        String words = repeat(" a", 300);
+        String symbols = repeat("!B", 300);
+        assertEquals(words.hashCode(), symbols.hashCode());
+        assertEquals(words.length(), symbols.length());
+
+        int wordTokens = TokenEstimator.estimate(words);
+        int symbolTokens = TokenEstimator.estimate(symbols);
+        assertEquals(TokenEstimator.count(words, 0, words.length()), wordTokens);
+        assertEquals(TokenEstimator.count(symbols, 0, symbols.length()), symbolTokens);
+        assertNotEquals(wordTokens, symbolTokens);
+    }
+
+    @Test
+    public void cachedEstimateMatchesCount() {
+        String text = repeat("int value = compute(x, y);\n", 40);
+        int first = TokenEstimator.estimate(text);
+        assertEquals(first, TokenEstimator.estimate(new String(text)));
+        assertEquals(TokenEstimator.count(text, 0, text.length()), first);
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) sb.append(s);
+        return sb.toString();
+    }
+}
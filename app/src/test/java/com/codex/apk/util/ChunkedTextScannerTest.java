@@ -0,0 +1,88 @@
+package com.codex.apk.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ChunkedTextScannerTest {
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void matchAfterAnotherAtWindowBoundaryIsNotCut() throws IOException {
+        String text = repeat('x', 196600) + "b" + repeat('a', 200) + repeat('x', 500);
+        assertSameAsWholeString(text, Pattern.compile("b|a+"));
+    }
+
+    @Test
+    public void longMatchAcrossWindowBoundaryIsFound() throws IOException {
+        Pattern p = Pattern.compile("a[^b]*b");
+        for (int len : new int[] {5000, 40000, 65000}) {
+            for (int start = 50000; start < 200000; start += 15013) {
+                char[] c = new char[260000];
+                Arrays.fill(c, 'x');
+                for (int i = 97; i < c.length; i += 97) c[i] = '\n';
+                c[start] = 'a';
+                c[start + len - 1] = 'b';
+                assertSameAsWholeString(new String(c), p);
+            }
+        }
+    }
+
+    @Test
+    public void literalMatchesWholeString() throws IOException {
+        String text = repeat('x', 70000) + "Needle" + repeat('y', 131000) + "nEEDLE" + "z";
+        File file = write(text);
+        List<String> hits = new ArrayList<>();
+        ChunkedTextScanner.scanLiteral(file, "needle", false, hit -> {
+            hits.add(hit.start() + ":" + hit.end() + ":" + hit.snippet());
+            return true;
+        });
+        assertEquals(Arrays.asList(
+                70000 + ":" + 70006 + ":" + text.substring(70000 - 80, 70006 + 80),
+                201006 + ":" + 201012 + ":" + text.substring(201006 - 80)), hits);
+    }
+
+    private void assertSameAsWholeString(String text, Pattern pattern) throws IOException {
+        List<String> expected = new ArrayList<>();
+        Matcher m = pattern.matcher(text);
+        while (m.find()) expected.add(describe(text, m.start(), m.end()));
+
+        List<String> actual = new ArrayList<>();
+        ChunkedTextScanner.scanRegex(write(text), pattern, hit -> {
+            actual.add(hit.start() + ":" + hit.end() + ":" + hit.snippet());
+            return true;
+        });
+        assertEquals(expected, actual);
+    }
+
+    private static String describe(String text, int start, int end) {
+        int s = Math.max(0, start - ChunkedTextScanner.CONTEXT);
+        int e = Math.min(text.length(), end + ChunkedTextScanner.CONTEXT);
+        return start + ":" + end + ":" + text.substring(s, e);
+    }
+
+    private File write(String text) throws IOException {
+        File file = tmp.newFile();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String repeat(char c, int n) {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
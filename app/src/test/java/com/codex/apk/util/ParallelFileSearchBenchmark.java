@@ -0,0 +1,40 @@
+package com.codex.apk.util;
+
+import com.codex.apk.Benchmarks;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * ParallelFileSearch against a one-thread walk in the same order over a synthetic
+ * 5,000-file project. The gain depends on the cores available; the core count is printed.
+ */
+public class ParallelFileSearchBenchmark {
+    private static final List<String> EXTENSIONS = Arrays.asList("html", "css", "js", "json", "md");
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void sequentialVersusParallel() throws Exception {
+        Benchmarks.assumeEnabled();
+        File root = tmp.newFolder("project");
+        SyntheticProject.write(root, 5000, 42);
+        String[] queries = {SyntheticProject.UNIQUE, "unique\\w+Handler", SyntheticProject.COMMON, "noSuchWord"};
+        int[] caps = {500, 500, 100, 500};
+
+        System.out.printf("%d cores%n%-22s %12s %12s%n", Runtime.getRuntime().availableProcessors(), "query", "sequential", "parallel");
+        for (int q = 0; q < queries.length; q++) {
+            ParallelFileSearch.FileMatcher<String> matcher = SequentialSearch.matcher(root, Pattern.compile(queries[q]));
+            int cap = caps[q];
+            double sequential = Benchmarks.mean(Benchmarks.timeMs(2, 5, () -> SequentialSearch.searchTree(root, EXTENSIONS, cap, matcher)));
+            double parallel = Benchmarks.mean(Benchmarks.timeMs(2, 5, () -> ParallelFileSearch.searchTree(root, EXTENSIONS, cap, matcher)));
+            System.out.printf("%-22s %9.1f ms %9.1f ms%n", queries[q] + (cap < 500 ? " (cap " + cap + ")" : ""), sequential, parallel);
+        }
+    }
+}
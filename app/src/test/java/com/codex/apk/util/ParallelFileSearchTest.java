@@ -0,0 +1,62 @@
+package com.codex.apk.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class ParallelFileSearchTest {
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = tmp.newFolder("project");
+        SyntheticProject.write(root, 600, 5);
+        new File(root, "node_modules").mkdirs();
+        java.nio.file.Files.write(new File(root, "node_modules/skipped.js").toPath(), SyntheticProject.COMMON.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void resultsEqualSequentialWalkAtEveryCap() {
+        for (String query : new String[] {SyntheticProject.UNIQUE, SyntheticProject.RARE, SyntheticProject.COMMON, "render\\d+", "noSuchWord"}) {
+            ParallelFileSearch.FileMatcher<String> matcher = SequentialSearch.matcher(root, Pattern.compile(query));
+            for (int max : new int[] {1, 7, 50, 100000}) {
+                List<String> expected = SequentialSearch.searchTree(root, Collections.emptyList(), max, matcher);
+                assertEquals(query + " max " + max, expected, ParallelFileSearch.searchTree(root, Collections.emptyList(), max, matcher));
+            }
+        }
+    }
+
+    @Test
+    public void extensionsFilterFiles() {
+        ParallelFileSearch.FileMatcher<String> matcher = SequentialSearch.matcher(root, Pattern.compile(SyntheticProject.COMMON));
+        List<String> exts = Arrays.asList("js", "html");
+        List<String> found = ParallelFileSearch.searchTree(root, exts, 100000, matcher);
+        assertEquals(SequentialSearch.searchTree(root, exts, 100000, matcher), found);
+        for (String hit : found) assertTrue(hit, hit.contains(".js:") || hit.contains(".html:"));
+    }
+
+    @Test
+    public void compareBreadthFirstMatchesWalkOrder() {
+        List<File> files = ParallelFileSearch.listFiles(root, Collections.emptyList());
+        List<String> rel = new ArrayList<>();
+        for (File f : files) rel.add(root.toPath().relativize(f.toPath()).toString().replace(File.separatorChar, '/'));
+        List<String> sorted = new ArrayList<>(rel);
+        Collections.shuffle(sorted, new java.util.Random(1));
+        sorted.sort(ParallelFileSearch::compareBreadthFirst);
+        assertEquals(rel, sorted);
+    }
+}
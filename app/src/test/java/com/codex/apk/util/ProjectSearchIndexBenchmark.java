@@ -0,0 +1,62 @@
+package com.codex.apk.util;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import com.codex.apk.Benchmarks;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/** Project search with and without the trigram index over a synthetic 5,000-file project. */
+public class ProjectSearchIndexBenchmark {
+    private static final List<String> EXTENSIONS = Arrays.asList("html", "css", "js", "json", "md");
+    private static final String[][] QUERIES = {
+            {SyntheticProject.UNIQUE, "false"},
+            {SyntheticProject.RARE, "false"},
+            {"unique\\w+Handler", "true"},
+            {SyntheticProject.COMMON, "false"}};
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void scanVersusIndex() throws Exception {
+        Benchmarks.assumeEnabled();
+        File root = tmp.newFolder("project");
+        File filesDir = tmp.newFolder("files");
+        SyntheticProject.write(root, 5000, 42);
+
+        double[] scan = new double[QUERIES.length];
+        for (int q = 0; q < QUERIES.length; q++) scan[q] = time(root, QUERIES[q]);
+
+        Context context = new ContextWrapper(null) {
+            @Override public File getFilesDir() { return filesDir; }
+        };
+        long start = System.nanoTime();
+        ProjectSearchIndex index = ProjectSearchIndex.open(context, root);
+        while (!index.isReady()) Thread.sleep(5);
+        double buildMs = (System.nanoTime() - start) / 1e6;
+        try {
+            System.out.printf("%-22s %10s %10s%n", "query", "scan", "indexed");
+            for (int q = 0; q < QUERIES.length; q++) {
+                boolean usesIndex = index.candidates(root, QUERIES[q][0], false, Boolean.parseBoolean(QUERIES[q][1])) != null;
+                System.out.printf("%-22s %7.1f ms %7.1f ms%s%n", QUERIES[q][0], scan[q], time(root, QUERIES[q]),
+                        usesIndex ? "" : " (falls back to scan)");
+            }
+            System.out.printf("initial build %.0f ms for %d files%n", buildMs, index.getFileCount());
+        } finally {
+            ProjectSearchIndex.close(root);
+        }
+    }
+
+    /** Mean of 5 runs after 2 warm-ups. */
+    private static double time(File root, String[] query) throws Exception {
+        boolean regex = Boolean.parseBoolean(query[1]);
+        return Benchmarks.mean(Benchmarks.timeMs(2, 5, () -> FileOps.searchInFilesOffsets(root, query[0], false, regex, EXTENSIONS, 500)));
+    }
+}
@@ -0,0 +1,97 @@
+package com.codex.apk.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import com.google.gson.JsonArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ProjectSearchIndexTest {
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File root;
+    private File filesDir;
+
+    @Before
+    public void setUp() throws Exception {
+        root = tmp.newFolder("project");
+        filesDir = tmp.newFolder("files");
+        SyntheticProject.write(root, 400, 11);
+    }
+
+    @After
+    public void tearDown() {
+        ProjectSearchIndex.close(root);
+    }
+
+    @Test
+    public void requiredLiteralsKeepsRunsAroundClasses() {
+        assertEquals(Arrays.asList("unique", "Handler"), ProjectSearchIndex.requiredLiterals("unique\\w+Handler"));
+        assertEquals(Arrays.asList("foo.bar"), ProjectSearchIndex.requiredLiterals("foo\\.bar"));
+        assertEquals(Collections.singletonList("abc"), ProjectSearchIndex.requiredLiterals("abcd?"));
+    }
+
+    @Test
+    public void requiredLiteralsGivesUpOnLongEscapesAndGroups() {
+        for (String regex : new String[] {"\\x41bcdef", "\\u0041bcdef", "abc\\Qdef\\E", "\\p{L}abcdef", "(abc)\\1def", "abc|def"}) {
+            assertNull(regex, ProjectSearchIndex.requiredLiterals(regex));
+        }
+    }
+
+    @Test
+    public void indexedSearchFindsWhatTheScanFinds() throws Exception {
+        List<String> exts = Arrays.asList("html", "css", "js", "json", "md");
+        String[][] queries = {
+                {SyntheticProject.UNIQUE, "false"}, {SyntheticProject.RARE, "false"},
+                {"unique\\w+Handler", "true"}, {"rarely.sed", "true"}};
+        JsonArray[] scanned = new JsonArray[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            scanned[i] = FileOps.searchInFilesOffsets(root, queries[i][0], false, Boolean.parseBoolean(queries[i][1]), exts, 100);
+        }
+
+        ProjectSearchIndex index = openAndWait();
+        for (int i = 0; i < queries.length; i++) {
+            boolean regex = Boolean.parseBoolean(queries[i][1]);
+            assertNotNull(queries[i][0], index.candidates(root, queries[i][0], false, regex));
+            assertEquals(queries[i][0], scanned[i], FileOps.searchInFilesOffsets(root, queries[i][0], false, regex, exts, 100));
+        }
+        assertEquals(1, scanned[0].size());
+        assertEquals(3, scanned[1].size());
+    }
+
+    @Test
+    public void changedFileIsFoundRightAway() throws Exception {
+        openAndWait();
+        File file = new File(root, "late.js");
+        java.nio.file.Files.write(file.toPath(), "const justWrittenWord = 1;\n".getBytes("UTF-8"));
+        ProjectChanges.notifyChanged(file);
+        assertEquals(1, FileOps.searchInFilesOffsets(root, "justWrittenWord", false, false, Collections.emptyList(), 10).size());
+    }
+
+    private ProjectSearchIndex openAndWait() throws InterruptedException {
+        Context context = new ContextWrapper(null) {
+            @Override public File getFilesDir() { return filesDir; }
+        };
+        ProjectSearchIndex index = ProjectSearchIndex.open(context, root);
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!index.isReady() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertTrue("index not ready", index.isReady());
+        return index;
+    }
+}
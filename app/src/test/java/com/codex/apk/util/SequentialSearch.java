@@ -0,0 +1,56 @@
+package com.codex.apk.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reference for ParallelFileSearch: the same breadth-first order walked on one thread, one
+ * file at a time, stopping at maxResults. Also holds the file matcher both are run with.
+ */
+final class SequentialSearch {
+    private SequentialSearch() {}
+
+    static <R> List<R> searchTree(File root, List<String> extensions, int maxResults, ParallelFileSearch.FileMatcher<R> matcher) {
+        List<R> out = new ArrayList<>();
+        List<File> dirs = new ArrayList<>();
+        dirs.add(root);
+        while (!dirs.isEmpty() && out.size() < maxResults) {
+            List<File> next = new ArrayList<>();
+            for (File dir : dirs) {
+                File[] children = dir.listFiles();
+                if (children == null) continue;
+                Arrays.sort(children);
+                for (File f : children) {
+                    if (f.isDirectory()) {
+                        if (!ParallelFileSearch.isSkippedDir(f.getName())) next.add(f);
+                    } else if (ParallelFileSearch.hasExtension(f, extensions) && out.size() < maxResults) {
+                        out.addAll(matcher.match(f, maxResults - out.size()));
+                    }
+                }
+            }
+            dirs = next;
+        }
+        return out;
+    }
+
+    /** "path:offset" of each match of pattern in a file, at most limit of them. */
+    static ParallelFileSearch.FileMatcher<String> matcher(File root, Pattern pattern) {
+        return (file, limit) -> {
+            List<String> hits = new ArrayList<>();
+            try {
+                String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                Matcher m = pattern.matcher(text);
+                String rel = root.toPath().relativize(file.toPath()).toString();
+                while (hits.size() < limit && m.find()) hits.add(rel + ":" + m.start());
+            } catch (IOException ignored) {}
+            return hits;
+        };
+    }
+}
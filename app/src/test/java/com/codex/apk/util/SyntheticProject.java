@@ -0,0 +1,58 @@
+package com.codex.apk.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * A deterministic fake web project for the search tests and benchmarks: files spread over
+ * a few directory levels, filled with code-like lines, with known words planted in them.
+ */
+final class SyntheticProject {
+    /** Planted in exactly one file. */
+    static final String UNIQUE = "uniqueNeedleHandler";
+    /** Planted in three files. */
+    static final String RARE = "rarelyUsedThing";
+    /** Planted in about one file in ten. */
+    static final String COMMON = "querySelector";
+
+    private static final String[] DIRS = {"src", "lib", "pages", "assets", "components", "utils", "styles", "docs"};
+    private static final String[] EXTENSIONS = {"html", "css", "js", "json", "md"};
+    private static final String[] WORDS = {
+            "const", "let", "function", "return", "value", "element", "document", "window", "style",
+            "color", "margin", "padding", "render", "state", "props", "index", "item", "list", "map",
+            "filter", "event", "target", "listener", "class", "div", "span", "button", "title"};
+
+    private SyntheticProject() {}
+
+    static void write(File root, int files, long seed) throws IOException {
+        Random random = new Random(seed);
+        int unique = random.nextInt(files);
+        for (int i = 0; i < files; i++) {
+            StringBuilder path = new StringBuilder();
+            int depth = random.nextInt(4);
+            for (int d = 0; d < depth; d++) path.append(DIRS[random.nextInt(DIRS.length)]).append('/');
+            path.append("file").append(i).append('.').append(EXTENSIONS[i % EXTENSIONS.length]);
+
+            StringBuilder text = new StringBuilder();
+            int lines = 40 + random.nextInt(60);
+            for (int l = 0; l < lines; l++) {
+                int words = 3 + random.nextInt(8);
+                for (int w = 0; w < words; w++) {
+                    text.append(WORDS[random.nextInt(WORDS.length)]);
+                    text.append(w % 3 == 2 ? Integer.toString(random.nextInt(1000)) : "").append(' ');
+                }
+                text.append('\n');
+            }
+            if (i == unique) text.append("export function ").append(UNIQUE).append("() {}\n");
+            if (i % (files / 3 + 1) == 7) text.append("// ").append(RARE).append('\n');
+            if (i % 10 == 3) text.append("document.").append(COMMON).append("('#app');\n");
+
+            File file = new File(root, path.toString());
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
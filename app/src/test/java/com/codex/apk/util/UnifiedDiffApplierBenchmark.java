@@ -0,0 +1,62 @@
+package com.codex.apk.util;
+
+import com.codex.apk.Benchmarks;
+import com.codex.apk.DiffGenerator;
+
+import org.junit.Test;
+
+/**
+ * UnifiedDiffApplier against {@link LegacyDiffApplier} on a generated diff with one hunk
+ * per 50 lines (an insertion and a changed line), applied in place and after prepending
+ * lines that shift every hunk. A run whose output is wrong is marked, as the old applier
+ * drops hunks more than 50 lines from their header.
+ */
+public class UnifiedDiffApplierBenchmark {
+
+    @Test
+    public void oldVersusNew() throws Exception {
+        Benchmarks.assumeEnabled();
+        System.out.printf("%-12s %-10s %14s %14s%n", "lines/hunks", "case", "old", "new");
+        for (int lines : new int[]{10_000, 50_000, 100_000}) {
+            String original = file(lines);
+            String patched = edit(original);
+            String patch = DiffGenerator.generateUnifiedDiff(original, patched, "a", "b");
+            for (int drift : new int[]{0, 40, 500}) {
+                String prefix = file(drift).replace("line", "drift");
+                String source = prefix + original;
+                String expected = prefix + patched;
+                String old = time(() -> LegacyDiffApplier.apply(source, patch), expected);
+                String now = time(() -> UnifiedDiffApplier.apply(source, patch, 0).content, expected);
+                System.out.printf("%-12s %-10s %14s %14s%n", lines / 1000 + "k/" + lines / 50,
+                        drift == 0 ? "in place" : "drift " + drift, old, now);
+            }
+        }
+    }
+
+    private interface Apply {
+        String run();
+    }
+
+    private static String time(Apply apply, String expected) throws Exception {
+        boolean correct = apply.run().equals(expected);
+        double ms = Benchmarks.median(Benchmarks.timeMs(200, 101, apply::run));
+        return String.format("%.2f ms%s", ms, correct ? "" : " *wrong");
+    }
+
+    private static String file(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) sb.append("line ").append(i).append('\n');
+        return sb.toString();
+    }
+
+    private static String edit(String original) {
+        String[] lines = original.split("\n", -1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            if (i % 50 == 25) sb.append("inserted ").append(i).append('\n');
+            sb.append(i % 50 == 30 ? "changed " + i : lines[i]);
+            if (i < lines.length - 1) sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
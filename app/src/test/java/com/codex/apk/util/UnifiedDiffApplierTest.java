@@ -0,0 +1,87 @@
+package com.codex.apk.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.codex.apk.DiffGenerator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class UnifiedDiffApplierTest {
+
+    @Test
+    public void generatedDiffsRebuildTheNewTextInPlace() {
+        Random random = new Random(23);
+        for (int t = 0; t < 2000; t++) {
+            String[] pair = randomPair(random, false);
+            String patch = DiffGenerator.generateUnifiedDiff(pair[0], pair[1], "a", "b");
+            UnifiedDiffApplier.Result result = UnifiedDiffApplier.apply(pair[0], patch, 0);
+            assertTrue("pair " + t + ": " + result, result.isComplete());
+            assertEquals("pair " + t, pair[1], result.content);
+        }
+    }
+
+    @Test
+    public void generatedDiffsRebuildTheNewTextAfterDrift() {
+        Random random = new Random(29);
+        String drift = "drift 1\ndrift 2\ndrift 3\n";
+        for (int t = 0; t < 2000; t++) {
+            // Distinct lines: with repeats, an equal context block nearer the header is an
+            // equally valid place for the hunk.
+            String[] pair = randomPair(random, true);
+            String patch = DiffGenerator.generateUnifiedDiff(pair[0], pair[1], "a", "b");
+            UnifiedDiffApplier.Result result = UnifiedDiffApplier.apply(drift + pair[0], patch, 0);
+            assertTrue("pair " + t + ": " + result, result.isComplete());
+            assertEquals("pair " + t, drift + pair[1], result.content);
+        }
+    }
+
+    @Test
+    public void hunkFarFromItsHeaderStillApplies() {
+        String original = body(0, 20);
+        String patched = original.replace("line 10\n", "line ten\n");
+        String patch = DiffGenerator.generateUnifiedDiff(original, patched, "a", "b");
+        String shifted = body(1000, 600) + original;
+        UnifiedDiffApplier.Result result = UnifiedDiffApplier.apply(shifted, patch, 0);
+        assertTrue(result.toString(), result.isComplete());
+        assertEquals(body(1000, 600) + patched, result.content);
+    }
+
+    @Test
+    public void fuzzToleratesChangedOuterContext() {
+        String original = body(0, 20);
+        String patched = original.replace("line 10\n", "line ten\n");
+        String patch = DiffGenerator.generateUnifiedDiff(original, patched, "a", "b");
+        String drifted = original.replace("line 7\n", "line seven\n");
+        assertTrue(!UnifiedDiffApplier.apply(drifted, patch, 0).isComplete());
+        UnifiedDiffApplier.Result fuzzed = UnifiedDiffApplier.apply(drifted, patch, UnifiedDiffApplier.DEFAULT_FUZZ);
+        assertTrue(fuzzed.toString(), fuzzed.isComplete());
+        assertEquals(drifted.replace("line 10\n", "line ten\n"), fuzzed.content);
+    }
+
+    private static String body(int from, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < from + count; i++) sb.append("line ").append(i).append('\n');
+        return sb.toString();
+    }
+
+    /** A random text and an edited copy, both ending in a newline. */
+    private static String[] randomPair(Random random, boolean distinct) {
+        int n = 1 + random.nextInt(80);
+        List<String> a = new ArrayList<>();
+        for (int i = 0; i < n; i++) a.add("line " + (distinct ? i : random.nextInt(Math.max(3, n / 2))));
+        List<String> b = new ArrayList<>(a);
+        int changes = 1 + random.nextInt(5);
+        for (int c = 0; c < changes; c++) {
+            int at = random.nextInt(b.size() + 1);
+            int kind = random.nextInt(3);
+            if (kind != 1 && at < b.size() && b.size() > 1) b.remove(at);
+            if (kind != 0) b.add(Math.min(at, b.size()), "new " + (distinct ? c : random.nextInt(100)));
+        }
+        return new String[]{String.join("\n", a) + "\n", String.join("\n", b) + "\n"};
+    }
+}